@@ -0,0 +1,109 @@
+package ro.unitbv.famr.weka;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ro.unitbv.pythia.Pattern;
+import ro.unitbv.pythia.Storage;
+import ro.unitbv.pythia.SyntheticData;
+import weka.classifiers.functions.FAMR_Classification;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+/**
+ * FAMR_Classification end to end, through the Weka API: buildClassifier on
+ * a whole training set, and classifyInstance one instance at a time
+ *
+ * @author Lucian Sasu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassificationBenchmark {
+
+	@Param({ "BLOBS", "OVERLAPPING" })
+	public SyntheticData.Kind kind;
+
+	@Param({ "8", "32" })
+	public int dimension;
+
+	@Param({ "HEAP", "FIXED16" })
+	public Storage storage;
+
+	private Instances training;
+	private Instances test;
+	private FAMR_Classification trained;
+	private int next = 0;
+
+	@Setup
+	public void setup() throws Exception {
+		ro.unitbv.pythia.Settings.debugMode = false;
+		ro.unitbv.famr.weka.log.Logger.setEnabled(false);
+		training = instances(SyntheticData.generate(kind, 5000, dimension, 5, 7, 1));
+		test = instances(SyntheticData.generate(kind, 2000, dimension, 5, 7, 2));
+		trained = classifier();
+		trained.buildClassifier(training);
+	}
+
+	private FAMR_Classification classifier() {
+		FAMR_Classification classifier = new FAMR_Classification();
+		classifier.setEnableLog(false);
+		classifier.setIMin(SyntheticData.MIN);
+		classifier.setIMax(SyntheticData.MAX);
+		classifier.setStorage(storage);
+		return classifier;
+	}
+
+	private Instances instances(List<Pattern> patterns) {
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		for (int i = 0; i < dimension; i++) {
+			attributes.add(new Attribute("a" + i));
+		}
+		List<String> classes = new ArrayList<String>();
+		for (int c = 0; c < 5; c++) {
+			classes.add("c" + c);
+		}
+		attributes.add(new Attribute("class", classes));
+		Instances result = new Instances(kind.name(), attributes, patterns.size());
+		result.setClassIndex(dimension);
+		for (Pattern pattern : patterns) {
+			double[] values = new double[dimension + 1];
+			System.arraycopy(pattern.getInput(), 0, values, 0, dimension);
+			values[dimension] = pattern.getClassIndex();
+			result.add(new DenseInstance(1.0, values));
+		}
+		return result;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public FAMR_Classification buildClassifier() throws Exception {
+		FAMR_Classification classifier = classifier();
+		classifier.buildClassifier(training);
+		return classifier;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public double classifyInstance() throws Exception {
+		double label = trained.classifyInstance(test.get(next));
+		next = (next + 1) % test.numInstances();
+		return label;
+	}
+}
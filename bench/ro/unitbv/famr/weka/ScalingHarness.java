@@ -0,0 +1,496 @@
+package ro.unitbv.famr.weka;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ro.unitbv.pythia.FAMR;
+import ro.unitbv.pythia.ModelFormat;
+import ro.unitbv.pythia.Pattern;
+import ro.unitbv.pythia.PreparedDataset;
+import ro.unitbv.pythia.Storage;
+import ro.unitbv.pythia.SyntheticData;
+import weka.classifiers.functions.FAMR_Classification;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+/**
+ * Characterizes how training and classification scale, one axis at a time
+ * around a baseline configuration, over SyntheticData. Every point trains
+ * and scores through FAMR, or through FAMR_Classification with -entry WEKA,
+ * and reports the training throughput, the percentiles of the latency of a
+ * single classification, the heap retained by a trained network and the
+ * size of its saved model. Each axis is written to its own CSV file in the
+ * output directory, one line per point, ready to be plotted.
+ *
+ * The axes are categories (swept through the vigilance rho_init_a, the
+ * number of categories being reported), dimension, classes, size (training
+ * patterns) and threads. A network is trained by one thread, so the thread
+ * axis trains and scores that many independent networks at once, as
+ * ParameterSweep and FAMR_Voting do, and reports the aggregate throughput.
+ *
+ * The heap is measured as the growth of the used heap after a collection,
+ * divided by the number of networks, so it is an estimate; the native memory
+ * of the DIRECT storage is reported apart.
+ *
+ * Options: -out (directory, default scaling), -axes (comma separated,
+ * default all), -entry (FAMR or WEKA, default FAMR), -kind (default BLOBS),
+ * -storage (default HEAP), the baseline -n (10000), -d (16), -k (5), -a
+ * (0.8), -test (patterns classified per network, 2000), -repeat (measured
+ * runs per point, after a warm-up run; default 3), and the comma separated
+ * values of the axes -sweep-categories (values of rho_init_a),
+ * -sweep-dimension, -sweep-classes, -sweep-size and -sweep-threads.
+ *
+ * Run by the scaling target of build_bench.xml.
+ *
+ * @author Lucian Sasu
+ */
+public final class ScalingHarness {
+
+	/**
+	 * The entry point a point is trained and scored through
+	 */
+	enum Entry {
+		FAMR, WEKA
+	}
+
+	private static final String[] AXES = { "categories", "dimension", "classes", "size", "threads" };
+
+	private File out = new File("scaling");
+	private Entry entry = Entry.FAMR;
+	private SyntheticData.Kind kind = SyntheticData.Kind.BLOBS;
+	private Storage storage = Storage.HEAP;
+	private int repeat = 3;
+	private int testSize = 2000;
+
+	/**
+	 * A point of a sweep
+	 */
+	static final class Point {
+		int size = 10000;
+		int dimension = 16;
+		int classes = 5;
+		double rho = 0.8;
+		int threads = 1;
+
+		Point copy() {
+			Point point = new Point();
+			point.size = size;
+			point.dimension = dimension;
+			point.classes = classes;
+			point.rho = rho;
+			point.threads = threads;
+			return point;
+		}
+
+		Point with(String axis, String value) {
+			Point point = copy();
+			if (axis.equals("categories")) {
+				point.rho = Double.parseDouble(value);
+			} else if (axis.equals("dimension")) {
+				point.dimension = Integer.parseInt(value);
+			} else if (axis.equals("classes")) {
+				point.classes = Integer.parseInt(value);
+			} else if (axis.equals("size")) {
+				point.size = Integer.parseInt(value);
+			} else if (axis.equals("threads")) {
+				point.threads = Integer.parseInt(value);
+			} else {
+				throw new IllegalArgumentException("Unknown axis " + axis);
+			}
+			return point;
+		}
+	}
+
+	/**
+	 * What one network measured
+	 */
+	private static final class Run {
+		long trainNanos;
+		long classifyNanos;
+		long[] latencies;
+		int correct;
+		int categories;
+		long modelBytes;
+		long nativeBytes;
+		Object model;
+	}
+
+	private ScalingHarness() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		ro.unitbv.pythia.Settings.debugMode = false;
+		ro.unitbv.famr.weka.log.Logger.setEnabled(false);
+		ScalingHarness harness = new ScalingHarness();
+		Point baseline = new Point();
+		String value = weka.core.Utils.getOption("out", args);
+		if (value.length() != 0) {
+			harness.out = new File(value);
+		}
+		value = weka.core.Utils.getOption("entry", args);
+		if (value.length() != 0) {
+			harness.entry = Entry.valueOf(value.toUpperCase());
+		}
+		value = weka.core.Utils.getOption("kind", args);
+		if (value.length() != 0) {
+			harness.kind = SyntheticData.Kind.valueOf(value.toUpperCase());
+		}
+		value = weka.core.Utils.getOption("storage", args);
+		if (value.length() != 0) {
+			harness.storage = Storage.valueOf(value.toUpperCase());
+		}
+		value = weka.core.Utils.getOption("repeat", args);
+		if (value.length() != 0) {
+			harness.repeat = Integer.parseInt(value);
+		}
+		value = weka.core.Utils.getOption("test", args);
+		if (value.length() != 0) {
+			harness.testSize = Integer.parseInt(value);
+		}
+		value = weka.core.Utils.getOption('n', args);
+		if (value.length() != 0) {
+			baseline.size = Integer.parseInt(value);
+		}
+		value = weka.core.Utils.getOption('d', args);
+		if (value.length() != 0) {
+			baseline.dimension = Integer.parseInt(value);
+		}
+		value = weka.core.Utils.getOption('k', args);
+		if (value.length() != 0) {
+			baseline.classes = Integer.parseInt(value);
+		}
+		value = weka.core.Utils.getOption('a', args);
+		if (value.length() != 0) {
+			baseline.rho = Double.parseDouble(value);
+		}
+		value = weka.core.Utils.getOption("axes", args);
+		String[] axes = value.length() == 0 ? AXES : value.split(",");
+		String[][] values = new String[axes.length][];
+		for (int a = 0; a < axes.length; a++) {
+			value = weka.core.Utils.getOption("sweep-" + axes[a], args);
+			values[a] = value.length() == 0 ? defaultValues(axes[a]) : value.split(",");
+		}
+		if (harness.repeat <= 0 || harness.testSize <= 0) {
+			throw new IllegalArgumentException("-repeat and -test should be positive");
+		}
+		if (!harness.out.isDirectory() && !harness.out.mkdirs()) {
+			throw new IOException("Can not create " + harness.out);
+		}
+		for (int a = 0; a < axes.length; a++) {
+			harness.sweep(axes[a], values[a], baseline);
+		}
+	}
+
+	private static String[] defaultValues(String axis) {
+		if (axis.equals("categories")) {
+			return new String[] { "0.5", "0.7", "0.8", "0.9", "0.95" };
+		} else if (axis.equals("dimension")) {
+			return new String[] { "4", "8", "16", "32", "64", "128" };
+		} else if (axis.equals("classes")) {
+			return new String[] { "2", "5", "10", "20", "50" };
+		} else if (axis.equals("size")) {
+			return new String[] { "1000", "5000", "10000", "50000", "100000" };
+		} else if (axis.equals("threads")) {
+			List<String> threads = new ArrayList<String>();
+			int cores = Runtime.getRuntime().availableProcessors();
+			for (int t = 1; t < cores; t *= 2) {
+				threads.add(Integer.toString(t));
+			}
+			threads.add(Integer.toString(cores));
+			return threads.toArray(new String[threads.size()]);
+		}
+		throw new IllegalArgumentException("Unknown axis " + axis);
+	}
+
+	/**
+	 * Measures every value of one axis and writes the axis CSV file
+	 */
+	private void sweep(String axis, String[] values, Point baseline) throws Exception {
+		File file = new File(out, axis + ".csv");
+		PrintWriter writer = new PrintWriter(new FileWriter(file));
+		try {
+			writer.println(csvHeader());
+			System.out.println(file + ": " + csvHeader());
+			for (String value : values) {
+				String line = measure(axis, value.trim(), baseline.with(axis, value.trim()));
+				writer.println(line);
+				writer.flush();
+				System.out.println(line);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static String csvHeader() {
+		return "axis,value,entry,kind,storage,patterns,dimension,classes,rho_init_a,threads,categories,"
+				+ "train_ms,train_pairs_per_s,classify_per_s,latency_p50_us,latency_p90_us,latency_p99_us,"
+				+ "latency_max_us,heap_bytes_per_network,native_bytes_per_network,model_bytes,accuracy";
+	}
+
+	/**
+	 * Measures one point: a warm-up run, then repeat runs whose median
+	 * training and scoring times are reported
+	 */
+	private String measure(String axis, String value, Point point) throws Exception {
+		List<List<Pattern>> tests = new ArrayList<List<Pattern>>();
+		for (int t = 0; t < point.threads; t++) {
+			tests.add(SyntheticData.generate(kind, testSize, point.dimension, point.classes, 7, 2));
+		}
+		List<Pattern> patterns = SyntheticData.generate(kind, point.size, point.dimension, point.classes, 7, 1);
+		Object training;
+		if (entry == Entry.FAMR) {
+			training = new PreparedDataset(patterns, SyntheticData.MIN, SyntheticData.MAX, point.classes);
+		} else {
+			training = instances(patterns, point);
+		}
+		List<Instances> testInstances = new ArrayList<Instances>();
+		if (entry == Entry.WEKA) {
+			for (List<Pattern> test : tests) {
+				testInstances.add(instances(test, point));
+			}
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(point.threads);
+		try {
+			run(executor, point, training, tests, testInstances);
+			long[] trainNanos = new long[repeat];
+			long[] classifyNanos = new long[repeat];
+			List<long[]> latencies = new ArrayList<long[]>();
+			long heap = 0;
+			List<Run> runs = null;
+			for (int r = 0; r < repeat; r++) {
+				long before = usedHeap();
+				runs = run(executor, point, training, tests, testInstances);
+				if (r == repeat - 1) {
+					heap = (usedHeap() - before) / point.threads;
+				}
+				for (Run run : runs) {
+					trainNanos[r] = Math.max(trainNanos[r], run.trainNanos);
+					classifyNanos[r] = Math.max(classifyNanos[r], run.classifyNanos);
+					latencies.add(run.latencies);
+				}
+				if (r < repeat - 1) {
+					release(runs);
+				}
+			}
+			Run first = runs.get(0);
+			long correct = 0;
+			for (Run run : runs) {
+				correct += run.correct;
+			}
+			long[] latency = merge(latencies);
+			double train = median(trainNanos);
+			double classify = median(classifyNanos);
+			String line = String.format(Locale.US,
+					"%s,%s,%s,%s,%s,%d,%d,%d,%s,%d,%d,%.3f,%.1f,%.1f,%.3f,%.3f,%.3f,%.3f,%d,%d,%d,%.4f", axis, value,
+					entry, kind, storage, point.size, point.dimension, point.classes, Double.toString(point.rho),
+					point.threads, first.categories, train / 1e6, point.threads * (double) point.size / (train / 1e9),
+					point.threads * (double) testSize / (classify / 1e9), percentile(latency, 0.5) / 1e3,
+					percentile(latency, 0.9) / 1e3, percentile(latency, 0.99) / 1e3,
+					latency[latency.length - 1] / 1e3, heap, first.nativeBytes, first.modelBytes,
+					(double) correct / (point.threads * testSize));
+			release(runs);
+			return line;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Trains and scores one network per thread, all of them starting at the
+	 * same time
+	 */
+	private List<Run> run(ExecutorService executor, final Point point, final Object training,
+			final List<List<Pattern>> tests, final List<Instances> testInstances) throws Exception {
+		final CyclicBarrier start = new CyclicBarrier(point.threads);
+		List<Callable<Run>> tasks = new ArrayList<Callable<Run>>();
+		for (int t = 0; t < point.threads; t++) {
+			final int thread = t;
+			tasks.add(new Callable<Run>() {
+				public Run call() throws Exception {
+					start.await();
+					if (entry == Entry.FAMR) {
+						return runFAMR(point, (PreparedDataset) training, tests.get(thread));
+					}
+					return runWeka(point, new Instances((Instances) training), testInstances.get(thread));
+				}
+			});
+		}
+		List<Run> runs = new ArrayList<Run>();
+		for (Future<Run> future : executor.invokeAll(tasks)) {
+			runs.add(future.get());
+		}
+		return runs;
+	}
+
+	private Run runFAMR(Point point, PreparedDataset training, List<Pattern> test) throws IOException {
+		Run run = new Run();
+		FAMR famr = new FAMR(point.rho, 1, 0, 1, SyntheticData.MIN, SyntheticData.MAX, point.classes, storage);
+		long start = System.nanoTime();
+		famr.train(training, null);
+		run.trainNanos = System.nanoTime() - start;
+		run.latencies = new long[test.size()];
+		long classifyStart = System.nanoTime();
+		for (int p = 0; p < test.size(); p++) {
+			Pattern pattern = test.get(p);
+			long begin = System.nanoTime();
+			int label = famr.classifySingleInstance(pattern);
+			run.latencies[p] = System.nanoTime() - begin;
+			run.correct += label == pattern.getClassIndex() ? 1 : 0;
+		}
+		run.classifyNanos = System.nanoTime() - classifyStart;
+		run.categories = famr.getInputCategoriesNo();
+		run.nativeBytes = famr.getNativeMemory();
+		CountingStream counter = new CountingStream();
+		ModelFormat.write(famr, counter);
+		run.modelBytes = counter.count;
+		run.model = famr;
+		return run;
+	}
+
+	private Run runWeka(Point point, Instances training, Instances test) throws Exception {
+		Run run = new Run();
+		Classifier classifier = new Classifier();
+		classifier.setEnableLog(false);
+		classifier.setIMin(SyntheticData.MIN);
+		classifier.setIMax(SyntheticData.MAX);
+		classifier.setRhoInitA(point.rho);
+		classifier.setStorage(storage);
+		long start = System.nanoTime();
+		classifier.buildClassifier(training);
+		run.trainNanos = System.nanoTime() - start;
+		run.latencies = new long[test.numInstances()];
+		long classifyStart = System.nanoTime();
+		for (int p = 0; p < test.numInstances(); p++) {
+			long begin = System.nanoTime();
+			double label = classifier.classifyInstance(test.instance(p));
+			run.latencies[p] = System.nanoTime() - begin;
+			run.correct += label == test.instance(p).classValue() ? 1 : 0;
+		}
+		run.classifyNanos = System.nanoTime() - classifyStart;
+		CountingStream counter = new CountingStream();
+		ObjectOutputStream stream = new ObjectOutputStream(counter);
+		stream.writeObject(classifier);
+		stream.close();
+		run.modelBytes = counter.count;
+		run.categories = classifier.network().getInputCategoriesNo();
+		run.nativeBytes = classifier.network().getNativeMemory();
+		run.model = classifier.network();
+		return run;
+	}
+
+	/**
+	 * FAMR_Classification giving access to its trained network
+	 */
+	private static final class Classifier extends FAMR_Classification {
+		private static final long serialVersionUID = 1L;
+
+		FAMR network() {
+			return famr;
+		}
+	}
+
+	private static void release(List<Run> runs) {
+		for (Run run : runs) {
+			if (run.model instanceof FAMR) {
+				((FAMR) run.model).release();
+			}
+			run.model = null;
+		}
+	}
+
+	private Instances instances(List<Pattern> patterns, Point point) {
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		for (int i = 0; i < point.dimension; i++) {
+			attributes.add(new Attribute("a" + i));
+		}
+		List<String> classes = new ArrayList<String>();
+		for (int c = 0; c < point.classes; c++) {
+			classes.add("c" + c);
+		}
+		attributes.add(new Attribute("class", classes));
+		Instances result = new Instances(kind.name(), attributes, patterns.size());
+		result.setClassIndex(point.dimension);
+		for (Pattern pattern : patterns) {
+			double[] values = new double[point.dimension + 1];
+			System.arraycopy(pattern.getInput(), 0, values, 0, point.dimension);
+			values[point.dimension] = pattern.getClassIndex();
+			result.add(new DenseInstance(1.0, values));
+		}
+		return result;
+	}
+
+	private static long usedHeap() {
+		long used = Long.MAX_VALUE;
+		// a few collections, since one may leave garbage behind
+		for (int k = 0; k < 3; k++) {
+			System.gc();
+			used = Math.min(used, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+		}
+		return used;
+	}
+
+	private static long[] merge(List<long[]> parts) {
+		int length = 0;
+		for (long[] part : parts) {
+			length += part.length;
+		}
+		long[] result = new long[length];
+		int offset = 0;
+		for (long[] part : parts) {
+			System.arraycopy(part, 0, result, offset, part.length);
+			offset += part.length;
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * @param sorted
+	 *            sorted values
+	 */
+	private static long percentile(long[] sorted, double quantile) {
+		int index = (int) Math.ceil(quantile * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	private static double median(long[] values) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		int middle = sorted.length / 2;
+		return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2.0;
+	}
+
+	/**
+	 * Counts the bytes written to it, for the size of a model
+	 */
+	private static final class CountingStream extends OutputStream {
+		long count = 0;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
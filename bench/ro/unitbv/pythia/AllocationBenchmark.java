@@ -0,0 +1,73 @@
+package ro.unitbv.pythia;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The paths checked by AllocationBudgetTest, to be run with the gc profiler:
+ * -prof gc reports gc.alloc.rate.norm, the bytes allocated per training pair
+ * or per classified pattern
+ *
+ * @author Lucian Sasu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocationBenchmark {
+
+	static final int PATTERNS = 5000;
+
+	@Param({ "HEAP", "DIRECT", "FLOAT", "FIXED16" })
+	public Storage storage;
+
+	private PreparedDataset training;
+	private List<Pattern> test;
+	private FAMR famr;
+
+	@Setup
+	public void setup() {
+		Settings.debugMode = false;
+		training = new PreparedDataset(SyntheticData.generate(SyntheticData.Kind.BLOBS, PATTERNS, 16, 5, 7, 1),
+				SyntheticData.MIN, SyntheticData.MAX, 5);
+		test = new PreparedDataset(SyntheticData.generate(SyntheticData.Kind.BLOBS, PATTERNS, 16, 5, 7, 2),
+				SyntheticData.MIN, SyntheticData.MAX, 5).getPatterns();
+		famr = new FAMR(0.8, 1, 0, 1, SyntheticData.MIN, SyntheticData.MAX, 5, storage);
+		famr.train(training, null);
+	}
+
+	/**
+	 * An epoch over data the network has already learned: no new category
+	 */
+	@Benchmark
+	@OperationsPerInvocation(PATTERNS)
+	public FAMR trainSteadyState() {
+		famr.train(training, null);
+		return famr;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PATTERNS)
+	public int classifySingleInstance() {
+		int sum = 0;
+		for (Pattern pattern : test) {
+			sum += famr.classifySingleInstance(pattern);
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,71 @@
+package ro.unitbv.pythia;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Classification by a trained network, one pattern at a time and over a
+ * whole test set; both scores are per classified pattern
+ *
+ * @author Lucian Sasu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassifyBenchmark {
+
+	static final int TEST_PATTERNS = 2000;
+
+	@Param({ "BLOBS", "OVERLAPPING" })
+	public SyntheticData.Kind kind;
+
+	@Param({ "8", "32" })
+	public int dimension;
+
+	@Param({ "HEAP", "FLOAT", "FIXED16" })
+	public Storage storage;
+
+	private FAMR famr;
+	private List<Pattern> test;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		Settings.debugMode = false;
+		PreparedDataset training = new PreparedDataset(SyntheticData.generate(kind, 5000, dimension, 5, 7, 1),
+				SyntheticData.MIN, SyntheticData.MAX, 5);
+		famr = new FAMR(0.8, 1, 0, 1, SyntheticData.MIN, SyntheticData.MAX, 5, storage);
+		famr.train(training, null);
+		test = new PreparedDataset(SyntheticData.generate(kind, TEST_PATTERNS, dimension, 5, 7, 2),
+				SyntheticData.MIN, SyntheticData.MAX, 5).getPatterns();
+	}
+
+	@Benchmark
+	public int single() {
+		int label = famr.classifySingleInstance(test.get(next));
+		next = (next + 1) % TEST_PATTERNS;
+		return label;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TEST_PATTERNS)
+	public double batch() {
+		return famr.computeAccuracy(test);
+	}
+}
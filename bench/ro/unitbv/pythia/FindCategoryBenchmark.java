@@ -0,0 +1,70 @@
+package ro.unitbv.pythia;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * FuzzyArt.findCategory, the choice and vigilance scan over all the
+ * categories, for a classification (rho = 0) query
+ *
+ * @author Lucian Sasu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindCategoryBenchmark {
+
+	private static final int QUERIES = 1024;
+
+	@Param({ "100", "1000", "10000" })
+	public int categories;
+
+	@Param({ "8", "64" })
+	public int dimension;
+
+	@Param({ "HEAP", "FLOAT", "FIXED16" })
+	public Storage storage;
+
+	private FuzzyArt art;
+	private double[][] queries;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		art = new FuzzyArt(1.0, 1.0, storage);
+		for (double[] input : SyntheticData.vectors(categories, dimension, 1)) {
+			art.newInput(input);
+			art.createNewCategory();
+			art.learn(art.numCategories() - 1);
+		}
+		art.setRhoToZero();
+		queries = SyntheticData.vectors(QUERIES, dimension, 2);
+	}
+
+	@TearDown
+	public void tearDown() {
+		art.release();
+	}
+
+	@Benchmark
+	public int findCategory() {
+		art.newInput(queries[next]);
+		next = (next + 1) & (QUERIES - 1);
+		return art.findCategory();
+	}
+}
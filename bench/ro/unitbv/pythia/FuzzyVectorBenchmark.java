@@ -0,0 +1,67 @@
+package ro.unitbv.pythia;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The FuzzyVector kernels used by the map field and the output layer
+ *
+ * @author Lucian Sasu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FuzzyVectorBenchmark {
+
+	@Param({ "4", "64", "1024" })
+	public int dimension;
+
+	private FuzzyVector a;
+	private FuzzyVector b;
+
+	@Setup
+	public void setup() {
+		double[][] vectors = SyntheticData.vectors(2, dimension, 42);
+		a = new FuzzyVector(vectors[0]);
+		b = new FuzzyVector(vectors[1]);
+	}
+
+	@Benchmark
+	public FuzzyVector and() {
+		return a.and(b);
+	}
+
+	@Benchmark
+	public FuzzyVector or() {
+		return a.or(b);
+	}
+
+	@Benchmark
+	public double norm() {
+		return a.norm();
+	}
+
+	@Benchmark
+	public double prod() {
+		return a.prod(b);
+	}
+
+	@Benchmark
+	public int posMax() {
+		return a.posMax();
+	}
+}
@@ -0,0 +1,128 @@
+package ro.unitbv.pythia;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded generators of synthetic classification datasets for the
+ * benchmarks. The values lie in [MIN, MAX], so the patterns are scaled with
+ * iMin = MIN and iMax = MAX; the same seed always gives the same dataset.
+ *
+ * @author Lucian Sasu
+ */
+public final class SyntheticData {
+
+	public static final double MIN = 0.0;
+	public static final double MAX = 1.0;
+
+	/**
+	 * The kind of generated dataset
+	 */
+	public enum Kind {
+		/** well separated Gaussian blobs, one per class */
+		BLOBS,
+		/** Gaussian classes whose centers are close, so they overlap */
+		OVERLAPPING,
+		/** uniform values with random labels, the worst case for FAMR */
+		UNIFORM
+	}
+
+	private SyntheticData() {
+	}
+
+	/**
+	 * @param kind
+	 *            the kind of dataset
+	 * @param n
+	 *            the number of patterns
+	 * @param d
+	 *            the input dimension
+	 * @param k
+	 *            the number of classes
+	 * @param classSeed
+	 *            the seed of the class centers; a training and a test set
+	 *            of the same problem share it
+	 * @param sampleSeed
+	 *            the seed of the patterns drawn around the centers
+	 * @return unscaled patterns, labelled 0..k-1
+	 */
+	public static List<Pattern> generate(Kind kind, int n, int d, int k, long classSeed, long sampleSeed) {
+		switch (kind) {
+		case OVERLAPPING:
+			return gaussian(n, d, k, 0.25, classSeed, sampleSeed);
+		case UNIFORM:
+			return uniform(n, d, k, sampleSeed);
+		default:
+			return gaussian(n, d, k, 0.05, classSeed, sampleSeed);
+		}
+	}
+
+	/**
+	 * Gaussian classes with centers drawn uniformly in [0.2, 0.8]^d
+	 *
+	 * @param spread
+	 *            the standard deviation of every class
+	 */
+	private static List<Pattern> gaussian(int n, int d, int k, double spread, long classSeed, long sampleSeed) {
+		Random random = new Random(classSeed);
+		double[][] centers = new double[k][d];
+		for (double[] center : centers) {
+			for (int i = 0; i < d; i++) {
+				center[i] = 0.2 + 0.6 * random.nextDouble();
+			}
+		}
+		random = new Random(sampleSeed);
+		List<Pattern> patterns = new ArrayList<Pattern>(n);
+		for (int p = 0; p < n; p++) {
+			int label = random.nextInt(k);
+			double[] input = new double[d];
+			for (int i = 0; i < d; i++) {
+				double value = centers[label][i] + spread * random.nextGaussian();
+				input[i] = Math.min(MAX, Math.max(MIN, value));
+			}
+			patterns.add(pattern(input, label));
+		}
+		return patterns;
+	}
+
+	private static List<Pattern> uniform(int n, int d, int k, long seed) {
+		Random random = new Random(seed);
+		List<Pattern> patterns = new ArrayList<Pattern>(n);
+		for (int p = 0; p < n; p++) {
+			double[] input = new double[d];
+			for (int i = 0; i < d; i++) {
+				input[i] = random.nextDouble();
+			}
+			patterns.add(pattern(input, random.nextInt(k)));
+		}
+		return patterns;
+	}
+
+	private static Pattern pattern(double[] input, int label) {
+		Pattern pattern = new Pattern();
+		pattern.setInput(input);
+		pattern.setClassIndex(label);
+		return pattern;
+	}
+
+	/**
+	 * @param n
+	 *            the number of vectors
+	 * @param d
+	 *            their length
+	 * @param seed
+	 *            the seed of the generator
+	 * @return vectors of uniform values in [0, 1]
+	 */
+	public static double[][] vectors(int n, int d, long seed) {
+		Random random = new Random(seed);
+		double[][] vectors = new double[n][d];
+		for (double[] vector : vectors) {
+			for (int i = 0; i < d; i++) {
+				vector[i] = random.nextDouble();
+			}
+		}
+		return vectors;
+	}
+}
@@ -0,0 +1,59 @@
+package ro.unitbv.pythia;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * FAMR.train on a prepared dataset, from an empty network; the score is the
+ * throughput in training pairs per second
+ *
+ * @author Lucian Sasu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrainBenchmark {
+
+	static final int PAIRS = 5000;
+
+	@Param({ "BLOBS", "OVERLAPPING" })
+	public SyntheticData.Kind kind;
+
+	@Param({ "8", "32" })
+	public int dimension;
+
+	@Param({ "HEAP", "FLOAT", "FIXED16" })
+	public Storage storage;
+
+	private PreparedDataset dataset;
+
+	@Setup
+	public void setup() {
+		Settings.debugMode = false;
+		dataset = new PreparedDataset(SyntheticData.generate(kind, PAIRS, dimension, 5, 7, 1), SyntheticData.MIN,
+				SyntheticData.MAX, 5);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PAIRS)
+	public FAMR train() {
+		FAMR famr = new FAMR(0.8, 1, 0, 1, SyntheticData.MIN, SyntheticData.MAX, dataset.getNumClasses(), storage);
+		famr.train(dataset, null);
+		return famr;
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * 
+ */
+package ro.unitbv.famr.weka;
+
+import java.util.List;
+import java.util.Random;
+
+import ro.unitbv.pythia.Pattern;
+import ro.unitbv.pythia.PreparedDataset;
+import ro.unitbv.pythia.Scaler;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+
+/**
+ * Dataset options shared by the command line runners: -t train file, -T test
+ * file (otherwise a -split-percentage holdout of the training file is used,
+ * default 66), -s (seed of the holdout split, default 1), -iMin, -iMax,
+ * -autoScale (per-attribute scaling fitted on the training data, instead of
+ * iMin/iMax).
+ * 
+ * @author Lucian Sasu
+ *
+ */
+class CommandLine {
+
+	private CommandLine() {
+	}
+
+	/**
+	 * Reads the training and test data and scales them once, the same way.
+	 * The instances with a missing class are dropped from both.
+	 * 
+	 * @param args
+	 *            the command line; the dataset options are removed from it
+	 * @return the training and the test set
+	 * @throws Exception
+	 *             if the data can not be read, or if the test file has
+	 *             another header than the training file
+	 */
+	static PreparedDataset[] readDatasets(String[] args) throws Exception {
+		String trainFile = weka.core.Utils.getOption('t', args);
+		if (trainFile.length() == 0) {
+			throw new IllegalArgumentException("A training file must be given with -t");
+		}
+		Instances training = DataSource.read(trainFile);
+		training.setClassIndex(training.numAttributes() - 1);
+		training.deleteWithMissingClass();
+
+		Instances test;
+		String testFile = weka.core.Utils.getOption('T', args);
+		String percentage = weka.core.Utils.getOption("split-percentage", args);
+		String seed = weka.core.Utils.getOption('s', args);
+		if (testFile.length() != 0) {
+			test = DataSource.read(testFile);
+			test.setClassIndex(test.numAttributes() - 1);
+			test.deleteWithMissingClass();
+		} else {
+			training.randomize(new Random(seed.length() == 0 ? 1 : Long.parseLong(seed)));
+			int trainSize = (int) Math.round(training.numInstances()
+					* (percentage.length() == 0 ? 66 : Double.parseDouble(percentage)) / 100);
+			test = new Instances(training, trainSize, training.numInstances() - trainSize);
+			training = new Instances(training, 0, trainSize);
+		}
+
+		String iMin = weka.core.Utils.getOption("iMin", args);
+		String iMax = weka.core.Utils.getOption("iMax", args);
+		double min = iMin.length() == 0 ? 0.1 : Double.parseDouble(iMin);
+		double max = iMax.length() == 0 ? 7.9 : Double.parseDouble(iMax);
+		boolean autoScale = weka.core.Utils.getFlag("autoScale", args);
+
+		InputLayout layout = new InputLayout(training);
+		// the test file is mapped through the layout of the training header
+		layout.checkCompatible(test);
+		List<Pattern> trainingPatterns = Utils.getPatternsFromInstances(training, layout);
+		List<Pattern> testPatterns = Utils.getPatternsFromInstances(test, layout);
+		if (autoScale) {
+			Scaler scaler = Scaler.fit(trainingPatterns, Runtime.getRuntime().availableProcessors());
+			return new PreparedDataset[] { new PreparedDataset(trainingPatterns, scaler, training.numClasses()),
+					new PreparedDataset(testPatterns, scaler, training.numClasses()) };
+		}
+		return new PreparedDataset[] { new PreparedDataset(trainingPatterns, min, max, training.numClasses()),
+				new PreparedDataset(testPatterns, min, max, training.numClasses()) };
+	}
+
+	/**
+	 * @param values
+	 *            comma separated numbers
+	 * @return the numbers
+	 */
+	static double[] parseDoubles(String values) {
+		String[] items = values.split(",");
+		double[] result = new double[items.length];
+		for (int k = 0; k < items.length; k++) {
+			result[k] = Double.parseDouble(items[k].trim());
+		}
+		return result;
+	}
+}
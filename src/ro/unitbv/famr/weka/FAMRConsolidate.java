@@ -0,0 +1,72 @@
+/**
+ *
+ */
+package ro.unitbv.famr.weka;
+
+import ro.unitbv.pythia.Consolidation;
+import ro.unitbv.pythia.FAMR;
+import ro.unitbv.pythia.ModelFormat;
+import ro.unitbv.pythia.PreparedDataset;
+import ro.unitbv.pythia.Storage;
+
+/**
+ * Command line runner for Consolidation: trains a network, consolidates it
+ * and reports the number of input categories and the test accuracy before
+ * and after, with the classification time of the test set.
+ *
+ * Options: the dataset options of CommandLine (-t, -T, -split-percentage, -s,
+ * -iMin, -iMax, -autoScale), -a (rhoInitA, default 0.8), -c (betaA, default
+ * 1), -r (rhoAB, default 0), -i (epochs, default 1), -storage (default HEAP),
+ * -rho (vigilance of the merged categories, default rhoInitA), -minMass (the
+ * categories with a smaller summed relevance Q_t are dropped, default 0),
+ * -threads (default the number of processors), -d (file the consolidated
+ * model is saved to, in ModelFormat).
+ *
+ * @author Lucian Sasu
+ *
+ */
+public class FAMRConsolidate {
+
+	public static void main(String[] args) throws Exception {
+		PreparedDataset[] datasets = CommandLine.readDatasets(args);
+
+		String value = weka.core.Utils.getOption('a', args);
+		double rhoInitA = value.length() == 0 ? 0.8 : Double.parseDouble(value);
+		value = weka.core.Utils.getOption('c', args);
+		double betaA = value.length() == 0 ? 1 : Double.parseDouble(value);
+		value = weka.core.Utils.getOption('r', args);
+		double rhoAB = value.length() == 0 ? 0 : Double.parseDouble(value);
+		value = weka.core.Utils.getOption('i', args);
+		int epochs = value.length() == 0 ? 1 : Integer.parseInt(value);
+		value = weka.core.Utils.getOption("storage", args);
+		Storage storage = value.length() == 0 ? Storage.HEAP : Storage.valueOf(value.toUpperCase());
+		value = weka.core.Utils.getOption("rho", args);
+		double vigilance = value.length() == 0 ? rhoInitA : Double.parseDouble(value);
+		value = weka.core.Utils.getOption("minMass", args);
+		double minimumMass = value.length() == 0 ? 0 : Double.parseDouble(value);
+		value = weka.core.Utils.getOption("threads", args);
+		int threads = value.length() == 0 ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(value);
+		String modelFile = weka.core.Utils.getOption('d', args);
+
+		PreparedDataset training = datasets[0];
+		FAMR famr = new FAMR(rhoInitA, betaA, rhoAB, epochs, training.getIMin(), training.getIMax(),
+				training.getNumClasses(), storage);
+		famr.setScaler(training.getScaler());
+		famr.train(training, null);
+
+		long start = System.nanoTime();
+		famr.computeAccuracy(datasets[1].getPatterns());
+		long before = System.nanoTime() - start;
+		Consolidation consolidation = Consolidation.run(famr, datasets[1].getPatterns(), vigilance, minimumMass,
+				threads);
+		start = System.nanoTime();
+		famr.computeAccuracy(datasets[1].getPatterns());
+		long after = System.nanoTime() - start;
+
+		System.out.println(consolidation);
+		System.out.println("classification time (ms): " + before / 1e6 + " -> " + after / 1e6);
+		if (modelFile.length() > 0) {
+			ModelFormat.save(famr, modelFile);
+		}
+	}
+}
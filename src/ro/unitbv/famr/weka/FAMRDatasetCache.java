@@ -0,0 +1,52 @@
+/**
+ * 
+ */
+package ro.unitbv.famr.weka;
+
+import ro.unitbv.pythia.DatasetCache;
+import ro.unitbv.pythia.Scaler;
+
+/**
+ * Command line runner converting an ARFF or CSV file into a dataset cache:
+ * the file is parsed and scaled once, and later runs of FAMRStreamTraining
+ * map the cache instead.
+ * 
+ * Options: -t data file (ARFF or CSV, the class is the last attribute), -d
+ * cache file to be written, -iMin (default 0.1), -iMax (default 7.9),
+ * -autoScale (per-attribute scaling, fitted in an extra scan of the file),
+ * -float (store the scaled values as floats, half the size), -chunk (patterns
+ * read at a time, default 10000).
+ * 
+ * @author Lucian Sasu
+ *
+ */
+public class FAMRDatasetCache {
+
+	public static void main(String[] args) throws Exception {
+		String dataFile = weka.core.Utils.getOption('t', args);
+		String cacheFile = weka.core.Utils.getOption('d', args);
+		if (dataFile.length() == 0 || cacheFile.length() == 0) {
+			throw new IllegalArgumentException("A data file must be given with -t and a cache file with -d");
+		}
+		String value = weka.core.Utils.getOption("iMin", args);
+		double iMin = value.length() == 0 ? 0.1 : Double.parseDouble(value);
+		value = weka.core.Utils.getOption("iMax", args);
+		double iMax = value.length() == 0 ? 7.9 : Double.parseDouble(value);
+		value = weka.core.Utils.getOption("chunk", args);
+		int chunkSize = value.length() == 0 ? 10000 : Integer.parseInt(value);
+		boolean autoScale = weka.core.Utils.getFlag("autoScale", args);
+		boolean singlePrecision = weka.core.Utils.getFlag("float", args);
+
+		FilePatternSource source = new FilePatternSource(dataFile);
+		try {
+			Scaler scaler = autoScale ? Scaler.fit(source, chunkSize) : null;
+			long start = System.nanoTime();
+			DatasetCache.write(source, source.getStructure().numClasses(), scaler, iMin, iMax, singlePrecision,
+					chunkSize, cacheFile);
+			System.out.println("cached " + dataFile + " in " + cacheFile + " in "
+					+ (System.nanoTime() - start) / 1000000 + " ms");
+		} finally {
+			source.close();
+		}
+	}
+}
@@ -0,0 +1,41 @@
+/**
+ * 
+ */
+package ro.unitbv.famr.weka;
+
+import ro.unitbv.pythia.PrecisionComparison;
+import ro.unitbv.pythia.PreparedDataset;
+import ro.unitbv.pythia.Storage;
+
+/**
+ * Command line runner for PrecisionComparison: reports how often the double
+ * precision network and a reduced precision one agree on a dataset.
+ * 
+ * Options: the dataset options of CommandLine (-t, -T, -split-percentage, -s,
+ * -iMin, -iMax, -autoScale), -a (rhoInitA, default 0.8), -c (betaA, default
+ * 1), -r (rhoAB, default 0), -i (epochs, default 1), -storage (FLOAT or
+ * FIXED16, default FLOAT).
+ * 
+ * @author Lucian Sasu
+ *
+ */
+public class FAMRPrecisionCheck {
+
+	public static void main(String[] args) throws Exception {
+		PreparedDataset[] datasets = CommandLine.readDatasets(args);
+
+		String value = weka.core.Utils.getOption('a', args);
+		double rhoInitA = value.length() == 0 ? 0.8 : Double.parseDouble(value);
+		value = weka.core.Utils.getOption('c', args);
+		double betaA = value.length() == 0 ? 1 : Double.parseDouble(value);
+		value = weka.core.Utils.getOption('r', args);
+		double rhoAB = value.length() == 0 ? 0 : Double.parseDouble(value);
+		value = weka.core.Utils.getOption('i', args);
+		int epochs = value.length() == 0 ? 1 : Integer.parseInt(value);
+		value = weka.core.Utils.getOption("storage", args);
+		Storage reduced = value.length() == 0 ? Storage.FLOAT : Storage.valueOf(value.toUpperCase());
+
+		System.out.println(
+				PrecisionComparison.run(datasets[0], datasets[1], rhoInitA, betaA, rhoAB, epochs, reduced));
+	}
+}
@@ -0,0 +1,186 @@
+/**
+ * 
+ */
+package ro.unitbv.famr.weka;
+
+import ro.unitbv.pythia.AsyncTrainingListener;
+import ro.unitbv.pythia.DatasetCache;
+import ro.unitbv.pythia.FAMR;
+import ro.unitbv.pythia.EvictionPolicy;
+import ro.unitbv.pythia.MappedDataset;
+import ro.unitbv.pythia.MemoryCapAction;
+import ro.unitbv.pythia.Metrics;
+import ro.unitbv.pythia.ModelFormat;
+import ro.unitbv.pythia.PatternSource;
+import ro.unitbv.pythia.Scaler;
+import ro.unitbv.pythia.Storage;
+import ro.unitbv.pythia.TrainingListener;
+import ro.unitbv.pythia.TrainingTrace;
+
+/**
+ * Command line runner training a network on a file which is read in chunks,
+ * never as a whole, and saving it in the ModelFormat.
+ * 
+ * Options: -t training file (ARFF or CSV, the class is the last attribute),
+ * -d model file to be written, -a (rhoInitA, default 0.8), -c (betaA, default
+ * 1), -r (rhoAB, default 0), -i (epochs, default 1), -iMin (default 0.1),
+ * -iMax (default 7.9), -autoScale (per-attribute scaling, fitted in an extra
+ * scan of the file), -chunk (patterns read at a time, default 10000),
+ * -storage (default HEAP), -trace (file recording the outcome of every
+ * pattern, read by FAMRTraceSummary), -metrics (prints the training metrics),
+ * -jmx (name under which the metrics are registered with the platform MBean
+ * server while training; implies -metrics), -progress (number of pairs
+ * between two progress lines on the standard error, with the throughput and
+ * the estimated time left), -memoryCap (most bytes of the categories, see
+ * FAMR.getMemory; default no cap), -memoryCapAction (STOP, FREEZE or
+ * LOWER_VIGILANCE, default STOP), -categoryBudget (most categories; a new
+ * one then replaces the one chosen by the eviction policy; default no
+ * budget), -evictionPolicy (LEAST_RECENTLY_WON, SMALLEST_CATEGORY or
+ * LOWEST_RELEVANCE, default LEAST_RECENTLY_WON), -evictionGrace (pairs
+ * learned after its creation during which a category is not evicted,
+ * default FAMR.DEFAULT_EVICTION_GRACE).
+ * 
+ * The training file may also be a dataset cache written by FAMRDatasetCache;
+ * its patterns are already scaled, so -iMin, -iMax and -autoScale are then
+ * taken from the cache.
+ * 
+ * @author Lucian Sasu
+ *
+ */
+public class FAMRStreamTraining {
+
+	public static void main(String[] args) throws Exception {
+		String trainFile = weka.core.Utils.getOption('t', args);
+		String modelFile = weka.core.Utils.getOption('d', args);
+		if (trainFile.length() == 0 || modelFile.length() == 0) {
+			throw new IllegalArgumentException("A training file must be given with -t and a model file with -d");
+		}
+		String value = weka.core.Utils.getOption('a', args);
+		double rhoInitA = value.length() == 0 ? 0.8 : Double.parseDouble(value);
+		value = weka.core.Utils.getOption('c', args);
+		double betaA = value.length() == 0 ? 1 : Double.parseDouble(value);
+		value = weka.core.Utils.getOption('r', args);
+		double rhoAB = value.length() == 0 ? 0 : Double.parseDouble(value);
+		value = weka.core.Utils.getOption("iMin", args);
+		double iMin = value.length() == 0 ? 0.1 : Double.parseDouble(value);
+		value = weka.core.Utils.getOption("iMax", args);
+		double iMax = value.length() == 0 ? 7.9 : Double.parseDouble(value);
+		value = weka.core.Utils.getOption('i', args);
+		int epochs = value.length() == 0 ? 1 : Integer.parseInt(value);
+		value = weka.core.Utils.getOption("chunk", args);
+		int chunkSize = value.length() == 0 ? 10000 : Integer.parseInt(value);
+		value = weka.core.Utils.getOption("storage", args);
+		Storage storage = value.length() == 0 ? Storage.HEAP : Storage.valueOf(value.toUpperCase());
+		boolean autoScale = weka.core.Utils.getFlag("autoScale", args);
+		String traceFile = weka.core.Utils.getOption("trace", args);
+		String jmxName = weka.core.Utils.getOption("jmx", args);
+		boolean printMetrics = weka.core.Utils.getFlag("metrics", args) || jmxName.length() > 0;
+		value = weka.core.Utils.getOption("progress", args);
+		long progressInterval = value.length() == 0 ? 0 : Long.parseLong(value);
+		value = weka.core.Utils.getOption("memoryCap", args);
+		long memoryCap = value.length() == 0 ? 0 : Long.parseLong(value);
+		value = weka.core.Utils.getOption("memoryCapAction", args);
+		MemoryCapAction capAction = value.length() == 0 ? MemoryCapAction.STOP : MemoryCapAction.valueOf(value
+				.toUpperCase());
+		value = weka.core.Utils.getOption("categoryBudget", args);
+		int categoryBudget = value.length() == 0 ? 0 : Integer.parseInt(value);
+		value = weka.core.Utils.getOption("evictionPolicy", args);
+		EvictionPolicy evictionPolicy = value.length() == 0 ? EvictionPolicy.LEAST_RECENTLY_WON : EvictionPolicy
+				.valueOf(value.toUpperCase());
+		value = weka.core.Utils.getOption("evictionGrace", args);
+		int evictionGrace = value.length() == 0 ? FAMR.DEFAULT_EVICTION_GRACE : Integer.parseInt(value);
+
+		PatternSource source;
+		int numClasses;
+		Scaler scaler = null;
+		if (DatasetCache.isCache(trainFile)) {
+			MappedDataset cache = new MappedDataset(trainFile);
+			source = cache;
+			numClasses = cache.getNumClasses();
+			iMin = cache.getIMin();
+			iMax = cache.getIMax();
+			scaler = cache.getScaler();
+		} else {
+			FilePatternSource file = new FilePatternSource(trainFile);
+			source = file;
+			numClasses = file.getStructure().numClasses();
+			if (autoScale) {
+				scaler = Scaler.fit(file, chunkSize);
+			}
+		}
+		try {
+			FAMR famr = new FAMR(rhoInitA, betaA, rhoAB, epochs, iMin, iMax, numClasses, storage);
+			if (scaler != null) {
+				famr.setScaler(scaler);
+			}
+			TrainingTrace trace = traceFile.length() == 0 ? null : new TrainingTrace(traceFile);
+			famr.setTrainingTrace(trace);
+			famr.setMemoryCap(memoryCap, capAction);
+			famr.setCategoryBudget(categoryBudget, evictionPolicy, evictionGrace);
+			Metrics metrics = printMetrics ? new Metrics() : null;
+			famr.setMetrics(metrics);
+			if (jmxName.length() > 0) {
+				metrics.register(jmxName);
+			}
+			AsyncTrainingListener progress = progressInterval == 0 ? null : new AsyncTrainingListener(
+					new ProgressPrinter());
+			famr.setTrainingListener(progress, progressInterval);
+			long start = System.nanoTime();
+			try {
+				famr.train(source, chunkSize);
+			} finally {
+				if (progress != null) {
+					progress.close();
+				}
+				if (trace != null) {
+					trace.close();
+				}
+				if (metrics != null) {
+					metrics.unregister();
+				}
+			}
+			System.out.println("trained on " + famr.getGlobal_n_pairs() + " patterns in "
+					+ (System.nanoTime() - start) / 1000000 + " ms: " + famr.getInputCategoriesNo()
+					+ " input categories");
+			if (metrics != null) {
+				System.out.println(metrics);
+			}
+			System.out.println(famr.getMemory());
+			if (famr.isMemoryCapReached()) {
+				System.out.println("the memory cap was reached: " + capAction);
+			}
+			if (famr.getEvictionCount() > 0) {
+				System.out.println(famr.getEvictionCount() + " input categories evicted: " + evictionPolicy);
+			}
+			ModelFormat.save(famr, modelFile);
+		} finally {
+			source.close();
+		}
+	}
+
+	/**
+	 * Prints the progress of training on the standard error
+	 */
+	static class ProgressPrinter implements TrainingListener {
+
+		public void progress(int epoch, long pairs, long totalPairs, int categories, long rejected,
+				long elapsedNanos, double pairsPerSecond) {
+			System.err.println(line("epoch " + (epoch + 1), pairs, totalPairs, categories, rejected,
+					elapsedNanos, pairsPerSecond));
+		}
+
+		public void epochEnd(int epoch, long pairs, long totalPairs, int categories, long rejected,
+				long elapsedNanos, double pairsPerSecond) {
+			System.err.println(line("end of epoch " + (epoch + 1), pairs, totalPairs, categories, rejected,
+					elapsedNanos, pairsPerSecond));
+		}
+
+		private static String line(String what, long pairs, long totalPairs, int categories, long rejected,
+				long elapsedNanos, double pairsPerSecond) {
+			String eta = totalPairs < 0 || pairsPerSecond <= 0 ? "unknown" : String.format("%.1f s",
+					(totalPairs - pairs) / pairsPerSecond);
+			return String.format("%s: %d pairs, %d categories, %d rejected, %.1f s, %.0f pairs/s, time left %s",
+					what, pairs, categories, rejected, elapsedNanos / 1e9, pairsPerSecond, eta);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/**
+ * 
+ */
+package ro.unitbv.famr.weka;
+
+import ro.unitbv.pythia.ParameterSweep;
+import ro.unitbv.pythia.PreparedDataset;
+import ro.unitbv.pythia.SweepListener;
+import ro.unitbv.pythia.SweepResult;
+
+/**
+ * Command line runner for ParameterSweep. The datasets are loaded and scaled
+ * once; one CSV line is printed as soon as each grid point is done.
+ * 
+ * Options: the dataset options of CommandLine (-t, -T, -split-percentage, -s,
+ * -iMin, -iMax, -autoScale), comma separated lists -a (rhoInitA), -c (betaA),
+ * -r (rhoAB), -i (epochs), -num-slots (threads, default: number of cores),
+ * -prune (accuracy margin; pruning is disabled by default).
+ * 
+ * @author Lucian Sasu
+ *
+ */
+public class FAMRSweep {
+
+	public static void main(String[] args) throws Exception {
+		PreparedDataset[] datasets = CommandLine.readDatasets(args);
+
+		ParameterSweep sweep = new ParameterSweep();
+		String values = weka.core.Utils.getOption('a', args);
+		if (values.length() != 0) {
+			sweep.setRhoInitA(CommandLine.parseDoubles(values));
+		}
+		values = weka.core.Utils.getOption('c', args);
+		if (values.length() != 0) {
+			sweep.setBetaA(CommandLine.parseDoubles(values));
+		}
+		values = weka.core.Utils.getOption('r', args);
+		if (values.length() != 0) {
+			sweep.setRhoAB(CommandLine.parseDoubles(values));
+		}
+		values = weka.core.Utils.getOption('i', args);
+		if (values.length() != 0) {
+			double[] epochs = CommandLine.parseDoubles(values);
+			int[] result = new int[epochs.length];
+			for (int k = 0; k < epochs.length; k++) {
+				result[k] = (int) epochs[k];
+			}
+			sweep.setEpochs(result);
+		}
+		values = weka.core.Utils.getOption("num-slots", args);
+		sweep.setNumThreads(values.length() == 0 ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(values));
+		values = weka.core.Utils.getOption("prune", args);
+		if (values.length() != 0) {
+			sweep.setPruneMargin(Double.parseDouble(values));
+		}
+
+		System.out.println(SweepResult.csvHeader());
+		sweep.run(datasets[0], datasets[1], new SweepListener() {
+			public void resultReady(SweepResult result) {
+				System.out.println(result);
+			}
+		});
+	}
+}
@@ -0,0 +1,27 @@
+/**
+ * 
+ */
+package ro.unitbv.famr.weka;
+
+import ro.unitbv.pythia.TraceSummary;
+
+/**
+ * Command line runner printing the per-epoch summary of training traces
+ * 
+ * Arguments: the trace files, written by FAMRStreamTraining -trace or by a
+ * network given a TrainingTrace.
+ * 
+ * @author Lucian Sasu
+ *
+ */
+public class FAMRTraceSummary {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			throw new IllegalArgumentException("At least a trace file should be given");
+		}
+		for (String path : args) {
+			System.out.println(path + ": " + TraceSummary.read(path));
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * 
+ */
+package ro.unitbv.famr.weka;
+
+import java.io.IOException;
+
+import ro.unitbv.pythia.Pattern;
+import ro.unitbv.pythia.PatternSource;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+
+/**
+ * PatternSource reading an ARFF or CSV file (or any format with an
+ * incremental Weka loader) one instance at a time, so that only the header
+ * of the dataset is kept in memory. The last attribute is the class;
+ * instances with a missing class are skipped.
+ * 
+ * @author Lucian Sasu
+ *
+ */
+public class FilePatternSource implements PatternSource {
+
+	private final String path;
+	private final DataSource source;
+	private final Instances structure;
+	private final InputLayout layout;
+
+	/**
+	 * @param path
+	 *            the data file
+	 * @throws IOException
+	 *             if the file can not be opened or its format can not be read
+	 *             incrementally
+	 */
+	public FilePatternSource(String path) throws IOException {
+		this.path = path;
+		try {
+			source = new DataSource(path);
+			if (!source.isIncremental()) {
+				throw new IOException(path + " can not be read incrementally");
+			}
+			structure = source.getStructure();
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException("Can not open " + path + ": " + e.getMessage(), e);
+		}
+		structure.setClassIndex(structure.numAttributes() - 1);
+		layout = new InputLayout(structure);
+	}
+
+	/**
+	 * @return the header of the dataset, with the class index set
+	 */
+	public Instances getStructure() {
+		return structure;
+	}
+
+	/**
+	 * @return the mapping of the attributes onto the patterns
+	 */
+	public InputLayout getLayout() {
+		return layout;
+	}
+
+	public void rewind() throws IOException {
+		try {
+			source.reset();
+			source.getStructure();
+		} catch (Exception e) {
+			throw new IOException("Can not rewind " + path + ": " + e.getMessage(), e);
+		}
+	}
+
+	public int read(Pattern[] chunk) throws IOException {
+		int count = 0;
+		try {
+			while (count < chunk.length && source.hasMoreElements(structure)) {
+				Instance instance = source.nextElement(structure);
+				if (!instance.classIsMissing()) {
+					chunk[count++] = layout.getPattern(instance);
+				}
+			}
+		} catch (Exception e) {
+			throw new IOException("Reading " + path + " failed: " + e.getMessage(), e);
+		}
+		return count;
+	}
+
+	public void close() throws IOException {
+		try {
+			source.reset();
+		} catch (Exception e) {
+			throw new IOException("Can not close " + path + ": " + e.getMessage(), e);
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/**
+ *
+ */
+package ro.unitbv.famr.weka;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import ro.unitbv.pythia.Pattern;
+import ro.unitbv.pythia.Util;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+/**
+ * Maps the attributes of a dataset onto the input of a Pattern. Numeric
+ * attributes form the numeric input (dense or sparse), in attribute order.
+ * Nominal attributes go to the packed binary block: a binary attribute takes
+ * one bit (its value index), any other nominal attribute is one-hot encoded.
+ * A missing nominal value leaves the bits of its attribute clear. The layout
+ * is computed once from the dataset header, which is kept for checking the
+ * datasets used later with the same network.
+ *
+ * @author Lucian Sasu
+ *
+ */
+public class InputLayout implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int[] numericPosition; // per attribute; -1 for the class and nominal attributes
+	private final int[] nominalAttributes; // indices of the nominal attributes
+	private final int[] bitPosition; // first bit of each nominal attribute
+	private final int numericDimension;
+	private final int binaryDimension;
+	private final Instances header; // empty copy of the training header; null for the layouts saved before it
+
+	/**
+	 * @param header the dataset whose attributes are mapped; its class index must be set
+	 */
+	public InputLayout(Instances header) {
+		int classIndex = header.classIndex();
+		numericPosition = new int[header.numAttributes()];
+		int nominalCount = 0;
+		for (int a = 0; a < header.numAttributes(); a++) {
+			if (a != classIndex && header.attribute(a).isNominal()) {
+				nominalCount++;
+			}
+		}
+		nominalAttributes = new int[nominalCount];
+		bitPosition = new int[nominalCount];
+		int numeric = 0;
+		int bits = 0;
+		int nominal = 0;
+		for (int a = 0; a < header.numAttributes(); a++) {
+			Attribute attribute = header.attribute(a);
+			numericPosition[a] = -1;
+			if (a == classIndex) {
+				continue;
+			}
+			if (attribute.isNominal()) {
+				nominalAttributes[nominal] = a;
+				bitPosition[nominal] = bits;
+				bits += attribute.numValues() == 2 ? 1 : attribute.numValues();
+				nominal++;
+			} else {
+				numericPosition[a] = numeric++;
+			}
+		}
+		numericDimension = numeric;
+		binaryDimension = bits;
+		this.header = new Instances(header, 0);
+	}
+
+	/**
+	 * @return the number of numeric inputs
+	 */
+	public int getNumericDimension() {
+		return numericDimension;
+	}
+
+	/**
+	 * @return the number of bits used for the nominal attributes
+	 */
+	public int getBinaryDimension() {
+		return binaryDimension;
+	}
+
+	/**
+	 * @return the header of the dataset the layout was built for, without
+	 *         instances; null for the layouts saved before it was kept
+	 */
+	public Instances getHeader() {
+		return header;
+	}
+
+	/**
+	 * Checks whether the given dataset has the same header as the one this
+	 * layout was built for: the same attributes, with the same nominal values
+	 * in the same order, and the same class, so that its patterns can be used
+	 * with the same network
+	 * @param data another dataset
+	 * @throws IllegalArgumentException describing the mismatch
+	 */
+	public void checkCompatible(Instances data) {
+		if (header != null) {
+			String message = header.equalHeadersMsg(data);
+			if (message != null) {
+				throw new IllegalArgumentException("The dataset differs from the one the model was trained on: "
+						+ message);
+			}
+			return;
+		}
+		// a layout saved without its header: only the positions can be compared
+		InputLayout other = new InputLayout(data);
+		if (!Arrays.equals(numericPosition, other.numericPosition)
+				|| !Arrays.equals(nominalAttributes, other.nominalAttributes)
+				|| !Arrays.equals(bitPosition, other.bitPosition) || binaryDimension != other.binaryDimension) {
+			throw new IllegalArgumentException("The attributes differ from the ones the model was trained on: "
+					+ numericDimension + " numeric and " + binaryDimension + " binary inputs expected, found "
+					+ other.numericDimension + " and " + other.binaryDimension);
+		}
+	}
+
+	/**
+	 * Builds the pattern for the given instance. Sparse instances produce
+	 * sparse patterns.
+	 * @param instance an instance having the header this layout was built for
+	 * @return the corresponding pattern
+	 */
+	public Pattern getPattern(Instance instance) {
+		Pattern pattern = new Pattern();
+
+		pattern.setClassificationInstance(instance.classAttribute().isNominal());
+		pattern.setClassIndex((int) instance.classValue());
+
+		if (instance instanceof SparseInstance) {
+			setSparseInput(instance, pattern);
+		} else {
+			pattern.setInput(getInput(instance));
+		}
+		if (binaryDimension > 0) {
+			pattern.setBinaryInput(getBits(instance), binaryDimension);
+		}
+		pattern.setWeight(instance.weight());
+
+		return pattern;
+	}
+
+	/**
+	 * @param instance a dense instance
+	 * @return the numeric input
+	 */
+	private double[] getInput(Instance instance) {
+		double[] result = new double[numericDimension];
+
+		for (int a = 0; a < numericPosition.length; a++) {
+			if (numericPosition[a] >= 0) {
+				result[numericPosition[a]] = instance.value(a);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Sets the input of the pattern from the non-zero numeric values of a
+	 * sparse instance, without building the dense vector
+	 * @param instance a sparse instance
+	 * @param pattern the pattern receiving the input
+	 */
+	private void setSparseInput(Instance instance, Pattern pattern) {
+		int count = 0;
+		for (int k = 0; k < instance.numValues(); k++) {
+			if (numericPosition[instance.index(k)] >= 0 && instance.valueSparse(k) != 0) {
+				count++;
+			}
+		}
+		int[] indices = new int[count];
+		double[] values = new double[count];
+		int position = 0;
+		for (int k = 0; k < instance.numValues(); k++) {
+			int index = instance.index(k);
+			if (numericPosition[index] >= 0 && instance.valueSparse(k) != 0) {
+				indices[position] = numericPosition[index];
+				values[position] = instance.valueSparse(k);
+				position++;
+			}
+		}
+		pattern.setSparseInput(indices, values, numericDimension);
+	}
+
+	/**
+	 * @param instance the instance to be encoded
+	 * @return the packed bits of the nominal attributes
+	 */
+	private long[] getBits(Instance instance) {
+		long[] bits = new long[Util.packedLength(binaryDimension)];
+		for (int n = 0; n < nominalAttributes.length; n++) {
+			int a = nominalAttributes[n];
+			if (instance.isMissing(a)) {
+				// (int) NaN is 0, which would set the bit of the first value
+				continue;
+			}
+			int value = (int) instance.value(a);
+			int bit;
+			if (instance.attribute(a).numValues() == 2) {
+				if (value == 0) {
+					continue;
+				}
+				bit = bitPosition[n];
+			} else {
+				bit = bitPosition[n] + value;
+			}
+			bits[bit >>> 6] |= 1L << bit;
+		}
+		return bits;
+	}
+}
@@ -7,6 +7,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import ro.unitbv.famr.weka.log.Logger;
+import ro.unitbv.pythia.LogLevel;
 import ro.unitbv.pythia.Pattern;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -17,39 +18,27 @@ import weka.core.Instances;
  */
 public class Utils {
 	public static List<Pattern> getPatternsFromInstances(Instances instances)
+	{
+		return getPatternsFromInstances(instances, new InputLayout(instances));
+	}
+
+	public static List<Pattern> getPatternsFromInstances(Instances instances, InputLayout layout)
 	{
 		List<Pattern> patterns = new ArrayList<Pattern>(instances.numInstances());
 		
 		for(Instance instance : instances)
 		{
-			Pattern pattern = getPatternFromInstance(instance);
+			Pattern pattern = layout.getPattern(instance);
 			patterns.add(pattern);
-			Logger.log(pattern.toString());
+			if (Logger.isEnabled(LogLevel.DEBUG)) {
+				Logger.log(LogLevel.DEBUG, pattern.toString());
+			}
 		}
 		
 		return patterns;
 	}
 
-	private static double[] getInput(Instance instance) {
-		double[] result = new double[instance.numAttributes() - 1];
-		
-		for(int i=0; i<result.length; i++)
-		{
-			result[i] = instance.value(i);
-		}
-		
-		return result;
-	}
-
 	public static Pattern getPatternFromInstance(Instance instance) {
-		Pattern pattern = new Pattern();
-		
-		pattern.setClassificationInstance(instance.classAttribute().isNominal());
-		pattern.setClassIndex((int)instance.classValue());
-		
-		pattern.setInput(getInput(instance));
-		pattern.setWeight(instance.weight());
-		
-		return pattern;
+		return new InputLayout(instance.dataset()).getPattern(instance);
 	}
 }
@@ -1,11 +1,8 @@
 package ro.unitbv.famr.weka.log;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.Date;
-
 import ro.unitbv.famr.weka.general.Settings;
+import ro.unitbv.pythia.AsyncLogger;
+import ro.unitbv.pythia.LogLevel;
 
 /**
  * 
@@ -13,63 +10,88 @@ import ro.unitbv.famr.weka.general.Settings;
  * Hand-made logger
  * Writes to a text file, if the enableLog field is set to true
  * The default path is given by the field defaultLogPath
- * The actual path is given by the field logPath
- * The logged data: [current datetime] followed by the message passed to the log method 
+ * The actual path is Settings.logPath, read when the first message is logged
+ * The logged data: [current datetime] and the level, followed by the message
+ * The messages are written by the background thread of an AsyncLogger, in
+ * batches; only those at or above the level, INFO by default, are kept
  */
 public class Logger {
-//	private static String logPath;
-//	public static final String defaultLogPath = "d:\\temp\\BA_wekalog.txt";
 	public static final String defaultLogPath = Settings.logPath;
-	private static boolean enableLog = true;
+	private static volatile boolean enableLog = true;
+	private static volatile LogLevel level = LogLevel.INFO;
 
-	private static BufferedWriter out;
+	private static AsyncLogger out;
 
 	/**
-	 * Writes a message to the file whose path is specified by the logPath field
-	 * The data is flushed after each message
+	 * Logs a message at the INFO level to the file whose path is specified by
+	 * Settings.logPath
 	 * @param message the message to be written
 	 */
 	public static void log(String message) {
-		if (enableLog == false) {
-			return;
-		}
-//		if (logPath == null) {
-//			logPath = defaultLogPath;
-//		}
-		try {
-			if (out == null) {
-				open();
-			}
-			out.write("[" + new Date().toString() + "]: " + message + "\n");
-			out.flush();
-		} catch (IOException e) {
-			e.printStackTrace();
+		log(LogLevel.INFO, message);
+	}
+
+	/**
+	 * @param level the level of the message
+	 * @param message the message to be written
+	 */
+	public static void log(LogLevel level, String message) {
+		if (isEnabled(level)) {
+			open().log(level, message);
 		}
 	}
 
-	private static void open() throws IOException {
-		out = new BufferedWriter(new FileWriter(Settings.logPath, true));
+	/**
+	 * @param level the level of a message
+	 * @return whether a message of this level would be logged; callers building
+	 *         expensive messages should check it first
+	 */
+	public static boolean isEnabled(LogLevel level) {
+		return enableLog && level != LogLevel.OFF && level.compareTo(Logger.level) >= 0;
 	}
 
-//	public static void setLogPath(String str) {
-//		logPath = str;
-//	}
+	private static synchronized AsyncLogger open() {
+		if (out == null) {
+			out = new AsyncLogger(Settings.logPath, true);
+			out.setLevel(LogLevel.DEBUG); // the level is checked by isEnabled
+		}
+		return out;
+	}
 
 	public static void setEnabled(boolean enableLog) {
 		Logger.enableLog = enableLog;
 	}
-	
-	public static void close()
+
+	/**
+	 * @param level the lowest level which is logged
+	 */
+	public static void setLevel(LogLevel level) {
+		Logger.level = level;
+	}
+
+	public static LogLevel getLevel() {
+		return level;
+	}
+
+	/**
+	 * Waits until the messages logged so far are written
+	 */
+	public static synchronized void flush() {
+		if (out != null) {
+			out.flush();
+		}
+	}
+
+	/**
+	 * Writes the pending messages and closes the file; the next message opens
+	 * it again
+	 */
+	public static synchronized void close()
 	{
 		if (out != null)
 		{
-			try {
-				out.close();
-				out = null;
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+			out.close();
+			out = null;
 		}
 	}
 }
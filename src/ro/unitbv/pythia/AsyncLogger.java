@@ -0,0 +1,342 @@
+package ro.unitbv.pythia;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Logger which hands the messages to a background thread through a ring
+ * buffer, so that the threads which log never wait for the disk. The writer
+ * thread drains the ring in batches and flushes its output only when the
+ * ring is empty or a flush is requested.
+ *
+ * A message below the level of the logger costs a comparison: it is not
+ * built, formatted or queued. Callers whose message is expensive to build
+ * should check isEnabled first, or pass a format and its arguments, which
+ * are formatted only for enabled levels.
+ *
+ * When the ring is full, DEBUG and INFO messages are dropped and counted;
+ * WARN and ERROR messages wait for room.
+ *
+ * @author Lucian Sasu
+ */
+public class AsyncLogger implements Closeable {
+
+	private static final int DEFAULT_CAPACITY = 8192;
+	private static final int BATCH = 256;
+
+	private final String path;
+	private final boolean timestamps;
+	private final String[] messages;
+	private final long[] times;
+	private final LogLevel[] levels;
+	private final int mask;
+	private volatile LogLevel level = LogLevel.INFO;
+
+	// guarded by this
+	private long head = 0;
+	private long tail = 0;
+	private long flushed = 0;
+	private long dropped = 0;
+	private boolean flushRequested = false;
+	private boolean closed = false;
+	private Thread writer;
+	private Thread shutdownHook;
+
+	/**
+	 * @param path
+	 *            the file the messages are appended to, opened by the first
+	 *            message; null for the standard error
+	 * @param timestamps
+	 *            whether every line starts with the time and the level of the
+	 *            message
+	 */
+	public AsyncLogger(String path, boolean timestamps) {
+		this(path, timestamps, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param path
+	 *            the file the messages are appended to, opened by the first
+	 *            message; null for the standard error
+	 * @param timestamps
+	 *            whether every line starts with the time and the level of the
+	 *            message
+	 * @param capacity
+	 *            the number of messages the ring holds, rounded up to a power
+	 *            of 2
+	 */
+	public AsyncLogger(String path, boolean timestamps, int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("The capacity should be positive");
+		}
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		this.path = path;
+		this.timestamps = timestamps;
+		this.messages = new String[size];
+		this.times = new long[size];
+		this.levels = new LogLevel[size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * @param level
+	 *            the lowest level which is logged; OFF disables the logger
+	 */
+	public void setLevel(LogLevel level) {
+		this.level = level;
+	}
+
+	public LogLevel getLevel() {
+		return level;
+	}
+
+	/**
+	 * @param level
+	 *            the level of a message
+	 * @return whether a message of this level would be logged
+	 */
+	public boolean isEnabled(LogLevel level) {
+		return level != LogLevel.OFF && level.compareTo(this.level) >= 0;
+	}
+
+	/**
+	 * @param level
+	 *            the level of the message
+	 * @param message
+	 *            the message, without a line end
+	 */
+	public void log(LogLevel level, String message) {
+		if (isEnabled(level)) {
+			enqueue(level, message);
+		}
+	}
+
+	/**
+	 * Logs a message built with String.format, only if the level is enabled
+	 *
+	 * @param level
+	 *            the level of the message
+	 * @param format
+	 *            the format of the message
+	 * @param args
+	 *            the arguments of the format
+	 */
+	public void log(LogLevel level, String format, Object... args) {
+		if (isEnabled(level)) {
+			enqueue(level, String.format(format, args));
+		}
+	}
+
+	/**
+	 * @return the number of messages dropped because the ring was full
+	 */
+	public synchronized long getDroppedCount() {
+		return dropped;
+	}
+
+	private synchronized void enqueue(LogLevel level, String message) {
+		if (closed) {
+			dropped++;
+			return;
+		}
+		if (writer == null) {
+			start();
+		}
+		while (tail - head == messages.length) {
+			if (level.compareTo(LogLevel.WARN) < 0) {
+				dropped++;
+				return;
+			}
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				dropped++;
+				return;
+			}
+		}
+		int slot = (int) tail & mask;
+		messages[slot] = message;
+		times[slot] = System.currentTimeMillis();
+		levels[slot] = level;
+		tail++;
+		if (tail - head == 1) {
+			notifyAll();
+		}
+	}
+
+	private void start() {
+		writer = new Thread(new Runnable() {
+			public void run() {
+				drain();
+			}
+		}, "FAMR logger");
+		writer.setDaemon(true);
+		writer.start();
+		shutdownHook = new Thread(new Runnable() {
+			public void run() {
+				close();
+			}
+		});
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+
+	/**
+	 * Waits until the messages logged so far are written and flushed
+	 */
+	public void flush() {
+		synchronized (this) {
+			long target = tail;
+			flushRequested = true;
+			notifyAll();
+			while (flushed < target && writer != null && writer.isAlive()) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the pending messages and stops the writer thread; the messages
+	 * logged afterwards are dropped
+	 */
+	public void close() {
+		Thread thread;
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+			thread = writer;
+		}
+		if (thread == null || thread == Thread.currentThread()) {
+			return;
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException e) {
+			// the JVM is shutting down, and this may be the hook itself
+		}
+	}
+
+	/**
+	 * The loop of the writer thread
+	 */
+	private void drain() {
+		String[] batchMessages = new String[BATCH];
+		long[] batchTimes = new long[BATCH];
+		LogLevel[] batchLevels = new LogLevel[BATCH];
+		Writer out = null;
+		TimeFormat timeFormat = new TimeFormat();
+		while (true) {
+			int count;
+			boolean flush;
+			synchronized (this) {
+				while (head == tail && !closed && !flushRequested) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						closed = true;
+					}
+				}
+				if (head == tail && closed) {
+					break;
+				}
+				count = (int) Math.min(BATCH, tail - head);
+				for (int k = 0; k < count; k++) {
+					int slot = (int) (head + k) & mask;
+					batchMessages[k] = messages[slot];
+					batchTimes[k] = times[slot];
+					batchLevels[k] = levels[slot];
+					messages[slot] = null;
+				}
+				head += count;
+				flush = head == tail || flushRequested;
+				notifyAll();
+			}
+			try {
+				if (out == null && count > 0) {
+					out = open();
+				}
+				for (int k = 0; k < count; k++) {
+					if (timestamps) {
+						out.write("[" + timeFormat.format(batchTimes[k]) + "] " + batchLevels[k] + ": ");
+					}
+					out.write(batchMessages[k]);
+					out.write('\n');
+					batchMessages[k] = null;
+				}
+				if (flush && out != null) {
+					out.flush();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				out = new BufferedWriter(new OutputStreamWriter(System.err));
+			}
+			if (flush) {
+				synchronized (this) {
+					flushed = head;
+					flushRequested = false;
+					notifyAll();
+				}
+			}
+		}
+		try {
+			if (out != null) {
+				out.flush();
+				if (path != null) {
+					out.close();
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		synchronized (this) {
+			flushed = head;
+			notifyAll();
+		}
+	}
+
+	private Writer open() {
+		if (path != null) {
+			try {
+				return new BufferedWriter(new FileWriter(path, true));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return new BufferedWriter(new OutputStreamWriter(System.err));
+	}
+
+	/**
+	 * Formats the time like Date.toString, once per second
+	 */
+	private static final class TimeFormat {
+		private final SimpleDateFormat format = new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy", Locale.US);
+		private long second = Long.MIN_VALUE;
+		private String text;
+
+		String format(long millis) {
+			long current = millis / 1000;
+			if (current != second) {
+				second = current;
+				text = format.format(new Date(millis));
+			}
+			return text;
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package ro.unitbv.pythia;
+
+import java.io.Closeable;
+
+/**
+ * TrainingListener which hands the events to a background thread, so that
+ * a slow listener never holds up training. The events are copied into a
+ * ring of primitive slots, so dispatching allocates nothing. When the
+ * listener falls behind, the new events are dropped and counted instead of
+ * waiting: progress events once half of the ring is pending, which keeps
+ * room for the epoch ends, and epoch ends once the ring is full.
+ *
+ * The wrapped listener is called from a single daemon thread, in the order
+ * of the events. close() delivers the pending events and stops the thread.
+ *
+ * @author Lucian Sasu
+ */
+public class AsyncTrainingListener implements TrainingListener, Closeable {
+
+	private static final int DEFAULT_CAPACITY = 256;
+	private static final int PROGRESS = 0;
+	private static final int EPOCH_END = 1;
+
+	private final TrainingListener listener;
+	private final int mask;
+	private final int[] kinds;
+	private final int[] epochs;
+	private final long[] pairs;
+	private final long[] totals;
+	private final int[] categories;
+	private final long[] rejected;
+	private final long[] elapsed;
+	private final double[] throughputs;
+
+	// guarded by this
+	private long head = 0;
+	private long tail = 0;
+	private long dropped = 0;
+	private boolean closed = false;
+	private Thread dispatcher;
+
+	/**
+	 * @param listener
+	 *            the listener called in the background
+	 */
+	public AsyncTrainingListener(TrainingListener listener) {
+		this(listener, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param listener
+	 *            the listener called in the background
+	 * @param capacity
+	 *            the number of pending events, rounded up to a power of 2
+	 */
+	public AsyncTrainingListener(TrainingListener listener, int capacity) {
+		if (listener == null) {
+			throw new IllegalArgumentException("The listener should not be null");
+		}
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("The capacity should be positive");
+		}
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		this.listener = listener;
+		this.mask = size - 1;
+		this.kinds = new int[size];
+		this.epochs = new int[size];
+		this.pairs = new long[size];
+		this.totals = new long[size];
+		this.categories = new int[size];
+		this.rejected = new long[size];
+		this.elapsed = new long[size];
+		this.throughputs = new double[size];
+	}
+
+	public void progress(int epoch, long pairs, long totalPairs, int categories, long rejected, long elapsedNanos,
+			double pairsPerSecond) {
+		enqueue(PROGRESS, epoch, pairs, totalPairs, categories, rejected, elapsedNanos, pairsPerSecond);
+	}
+
+	public void epochEnd(int epoch, long pairs, long totalPairs, int categories, long rejected, long elapsedNanos,
+			double pairsPerSecond) {
+		enqueue(EPOCH_END, epoch, pairs, totalPairs, categories, rejected, elapsedNanos, pairsPerSecond);
+	}
+
+	/**
+	 * @return the number of events dropped because the listener fell behind
+	 */
+	public synchronized long getDroppedCount() {
+		return dropped;
+	}
+
+	private synchronized void enqueue(int kind, int epoch, long pairs, long totalPairs, int categories,
+			long rejected, long elapsedNanos, double pairsPerSecond) {
+		long limit = kind == PROGRESS ? kinds.length / 2 : kinds.length;
+		if (closed || tail - head >= limit) {
+			dropped++;
+			return;
+		}
+		if (dispatcher == null) {
+			start();
+		}
+		int slot = (int) tail & mask;
+		this.kinds[slot] = kind;
+		this.epochs[slot] = epoch;
+		this.pairs[slot] = pairs;
+		this.totals[slot] = totalPairs;
+		this.categories[slot] = categories;
+		this.rejected[slot] = rejected;
+		this.elapsed[slot] = elapsedNanos;
+		this.throughputs[slot] = pairsPerSecond;
+		tail++;
+		if (tail - head == 1) {
+			notifyAll();
+		}
+	}
+
+	private void start() {
+		dispatcher = new Thread(new Runnable() {
+			public void run() {
+				dispatch();
+			}
+		}, "FAMR training listener");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	/**
+	 * The loop of the dispatcher thread
+	 */
+	private void dispatch() {
+		while (true) {
+			int kind;
+			int epoch;
+			long pairs;
+			long total;
+			int categories;
+			long rejected;
+			long elapsed;
+			double throughput;
+			synchronized (this) {
+				while (head == tail && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						closed = true;
+					}
+				}
+				if (head == tail) {
+					notifyAll();
+					return;
+				}
+				int slot = (int) head & mask;
+				kind = this.kinds[slot];
+				epoch = this.epochs[slot];
+				pairs = this.pairs[slot];
+				total = this.totals[slot];
+				categories = this.categories[slot];
+				rejected = this.rejected[slot];
+				elapsed = this.elapsed[slot];
+				throughput = this.throughputs[slot];
+				head++;
+			}
+			try {
+				if (kind == PROGRESS) {
+					listener.progress(epoch, pairs, total, categories, rejected, elapsed, throughput);
+				} else {
+					listener.epochEnd(epoch, pairs, total, categories, rejected, elapsed, throughput);
+				}
+			} catch (RuntimeException e) {
+				// a failing listener must not stop the delivery of the next
+				// events
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Delivers the pending events and stops the dispatcher thread; the events
+	 * sent afterwards are dropped
+	 */
+	public void close() {
+		Thread thread;
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+			thread = dispatcher;
+		}
+		if (thread == null || thread == Thread.currentThread()) {
+			return;
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
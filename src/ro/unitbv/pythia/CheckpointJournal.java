@@ -0,0 +1,429 @@
+package ro.unitbv.pythia;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.zip.CRC32;
+
+/**
+ * Incremental checkpoints of a FAMR network under training. The first
+ * checkpoint of a network writes a full ModelFormat snapshot; the next ones
+ * only append to a journal the categories created or learned since the
+ * previous checkpoint (their weights, map field row, Q_t, centroid if tracked,
+ * size and recency),
+ * so their cost does not grow with the model. When the journal becomes larger
+ * than compactionRatio times the snapshot, it is compacted into a new
+ * snapshot. recover reads the snapshot and replays the journal on top of it.
+ *
+ * The snapshot is kept at the given path and the journal next to it, with
+ * the ".journal" suffix. Both are replaced by an atomic rename, and every
+ * checkpoint is forced to the disk before checkpoint returns. The journal is
+ * big-endian:
+ *
+ * <pre>
+ * header   JOURNAL_MAGIC, VERSION, global pairs and categories of the snapshot
+ * record   RECORD_MAGIC, global pairs, categories, dimension, binaryWords,
+ *          outputDim, centroid dimension, number of entries, eviction clock,
+ *          the entries, CRC32 of the record
+ * entry    category index, 2*dimension weights, the norm and complement
+ *          norm of the weights, binaryWords bits and as many complement bits,
+ *          outputDim map field values, Q_t, centroid dimension values,
+ *          category size, clock of the last pair won, clock of the creation
+ * </pre>
+ *
+ * The centroid dimension is 0 when the centroids are not tracked. The
+ * records of VERSION 1 journals have no centroid dimension: their entries
+ * always hold dimension centroid values. The entries of VERSION 1 and 2
+ * journals have no norms; they are summed again from the weights. The
+ * journals before VERSION 4 have no recency (see FAMR.setCategoryBudget):
+ * the replayed categories keep the one of the snapshot, or none.
+ *
+ * A record with fewer categories than the previous one, as left by the
+ * evictions of FAMR.setCategoryBudget, drops the last categories before its
+ * entries are applied.
+ *
+ * A record cut short or failing its checksum, as left by a crash during a
+ * checkpoint, ends the replay: the network is recovered as of the previous
+ * checkpoint.
+ *
+ * @author Lucian Sasu
+ */
+public class CheckpointJournal implements Closeable {
+
+	private static final int JOURNAL_MAGIC = 0x464a524e; // "FJRN"
+	private static final int VERSION = 4;
+	private static final int RECORD_MAGIC = 0x52454321; // "REC!"
+	private static final int RECORD_HEADER_SIZE = 40;
+
+	private final String snapshotPath;
+	private final String journalPath;
+	private double compactionRatio = 1.0;
+	private FAMR tracked = null; // the network whose changes are journaled
+	private int baseCategories = 0; // the categories already checkpointed
+	private int basePairs = 0;
+	private long snapshotBytes = 0;
+	private FileChannel channel = null;
+	private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+
+	/**
+	 * @param snapshotPath
+	 *            the path of the snapshot; the journal is kept next to it
+	 */
+	public CheckpointJournal(String snapshotPath) {
+		this.snapshotPath = snapshotPath;
+		this.journalPath = snapshotPath + ".journal";
+	}
+
+	/**
+	 * @param compactionRatio
+	 *            the journal is compacted into a new snapshot when it grows
+	 *            beyond this many times the size of the snapshot
+	 */
+	public void setCompactionRatio(double compactionRatio) {
+		if (!(compactionRatio > 0)) {
+			throw new IllegalArgumentException("The compaction ratio should be positive");
+		}
+		this.compactionRatio = compactionRatio;
+	}
+
+	/**
+	 * @return the size of the journal which triggers a compaction, relative
+	 *         to the size of the snapshot
+	 */
+	public double getCompactionRatio() {
+		return compactionRatio;
+	}
+
+	/**
+	 * Saves the current state of the network: a full snapshot the first
+	 * time, then only the changes since the previous checkpoint. It must be
+	 * called between training pairs, e.g. between two calls of train or
+	 * through FAMR.setCheckpointJournal.
+	 *
+	 * @param famr
+	 *            the network
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	public synchronized void checkpoint(FAMR famr) throws IOException {
+		if (famr != tracked) {
+			compact(famr);
+			return;
+		}
+		BitSet learned = famr.takeLearnedCategories();
+		int n = famr.getInputCategoriesNo();
+		// evictions may have left fewer categories than checkpointed
+		int base = Math.min(baseCategories, n);
+		// the new categories are all written, learned or not
+		learned.clear(base, Math.max(base, learned.length()));
+		int entries = learned.cardinality() + n - base;
+		if (entries == 0 && n == baseCategories && famr.getGlobal_n_pairs() == basePairs) {
+			return;
+		}
+		writeRecord(famr, learned, base, entries);
+		baseCategories = n;
+		basePairs = famr.getGlobal_n_pairs();
+		if (channel.size() > compactionRatio * snapshotBytes) {
+			compact(famr);
+		}
+	}
+
+	/**
+	 * Writes a full snapshot of the network and starts an empty journal
+	 *
+	 * @param famr
+	 *            the network
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	public synchronized void compact(FAMR famr) throws IOException {
+		close();
+		String temporary = snapshotPath + ".tmp";
+		try (FileOutputStream file = new FileOutputStream(temporary)) {
+			BufferedOutputStream stream = new BufferedOutputStream(file);
+			ModelFormat.write(famr, stream);
+			stream.flush();
+			file.getFD().sync();
+		}
+		Files.move(Paths.get(temporary), Paths.get(snapshotPath), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		snapshotBytes = new File(snapshotPath).length();
+
+		temporary = journalPath + ".tmp";
+		try (FileOutputStream file = new FileOutputStream(temporary)) {
+			DataOutputStream stream = new DataOutputStream(file);
+			stream.writeInt(JOURNAL_MAGIC);
+			stream.writeInt(VERSION);
+			stream.writeInt(famr.getGlobal_n_pairs());
+			stream.writeInt(famr.getInputCategoriesNo());
+			stream.flush();
+			file.getFD().sync();
+		}
+		Files.move(Paths.get(temporary), Paths.get(journalPath), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		channel = FileChannel.open(Paths.get(journalPath), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+		tracked = famr;
+		famr.trackLearnedCategories();
+		baseCategories = famr.getInputCategoriesNo();
+		basePairs = famr.getGlobal_n_pairs();
+	}
+
+	/**
+	 * Appends a record with the learned categories before base and with all
+	 * the categories from base on
+	 */
+	private void writeRecord(FAMR famr, BitSet learned, int base, int entries) throws IOException {
+		FuzzyArt art = famr.getArt_a();
+		MapField mapField = famr.getMapField();
+		int n = art.numCategories();
+		int d = art.getInputDimension();
+		int words = art.getBinaryWords();
+		int outputDim = mapField.getColumnsNo();
+		int centroidDimension = art.isCentroidTracking() ? d : 0;
+		double[] weights = new double[2 * d];
+		double[] row = new double[outputDim];
+
+		record.reset();
+		DataOutputStream out = new DataOutputStream(record);
+		out.writeInt(RECORD_MAGIC);
+		out.writeInt(famr.getGlobal_n_pairs());
+		out.writeInt(n);
+		out.writeInt(d);
+		out.writeInt(words);
+		out.writeInt(outputDim);
+		out.writeInt(centroidDimension);
+		out.writeInt(entries);
+		out.writeLong(famr.getClock());
+		for (int j = learned.nextSetBit(0); j >= 0; j = learned.nextSetBit(j + 1)) {
+			writeEntry(out, famr, j, weights, row);
+		}
+		for (int j = base; j < n; j++) {
+			writeEntry(out, famr, j, weights, row);
+		}
+		out.flush();
+
+		CRC32 crc = new CRC32();
+		byte[] bytes = record.toByteArray();
+		crc.update(bytes, 0, bytes.length);
+		ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 4);
+		buffer.put(bytes).putInt((int) crc.getValue());
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		channel.force(false);
+	}
+
+	private static void writeEntry(DataOutputStream out, FAMR famr, int j, double[] weights, double[] row)
+			throws IOException {
+		FuzzyArt art = famr.getArt_a();
+		out.writeInt(j);
+		art.getWeights().read(j, weights);
+		writeDoubles(out, weights);
+		out.writeDouble(art.getNorm(j));
+		out.writeDouble(art.getComplementNorm(j));
+		if (art.getBinaryWords() > 0) {
+			for (long word : art.getBinaryWeight(j)) {
+				out.writeLong(word);
+			}
+			for (long word : art.getBinaryComplementWeight(j)) {
+				out.writeLong(word);
+			}
+		}
+		famr.getMapField().getRows().read(j, row);
+		writeDoubles(out, row);
+		out.writeDouble(famr.getMapField().getRelevance(j));
+		if (art.isCentroidTracking()) {
+			writeDoubles(out, art.getCentroid(j));
+		}
+		out.writeInt(art.getCategorySize(j));
+		out.writeLong(famr.getLastWon(j));
+		out.writeLong(famr.getBornAt(j));
+	}
+
+	private static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+		for (double value : values) {
+			out.writeDouble(value);
+		}
+	}
+
+	/**
+	 * Reads the last snapshot and replays the journal on top of it
+	 *
+	 * @param snapshotPath
+	 *            the path of the snapshot, as given to the constructor
+	 * @param storage
+	 *            where the category weights and the map field are kept
+	 * @return the network as of the last complete checkpoint
+	 * @throws IOException
+	 *             if the snapshot can not be read or the journal is not one
+	 */
+	public static FAMR recover(String snapshotPath, Storage storage) throws IOException {
+		FAMR famr = ModelFormat.load(snapshotPath, storage);
+		File journal = new File(snapshotPath + ".journal");
+		if (!journal.exists()) {
+			return famr;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)))) {
+			int version = in.readInt() == JOURNAL_MAGIC ? in.readInt() : -1;
+			if (version < 1 || version > VERSION) {
+				throw new IOException(journal + " is not a supported FAMR journal");
+			}
+			int pairs = in.readInt();
+			int categories = in.readInt();
+			if (pairs != famr.getGlobal_n_pairs() || categories != famr.getInputCategoriesNo()) {
+				// left from before the last compaction; already in the snapshot
+				return famr;
+			}
+			int records = 0;
+			while (replay(in, famr, version)) {
+				records++;
+			}
+			Logger.println("recovered " + snapshotPath + " with " + records + " journal records: "
+					+ famr.getInputCategoriesNo() + " input categories");
+		}
+		return famr;
+	}
+
+	/**
+	 * Applies the next record of the journal
+	 *
+	 * @return false at the end of the journal or at an incomplete record
+	 */
+	private static boolean replay(DataInputStream in, FAMR famr, int version) throws IOException {
+		int headerSize = version == 1 ? 28 : version < 4 ? 32 : RECORD_HEADER_SIZE;
+		byte[] header = new byte[headerSize];
+		if (!readFully(in, header)) {
+			return false;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(header);
+		int magic = buffer.getInt();
+		int pairs = buffer.getInt();
+		int n = buffer.getInt();
+		int d = buffer.getInt();
+		int words = buffer.getInt();
+		int outputDim = buffer.getInt();
+		int centroidDimension = version == 1 ? d : buffer.getInt();
+		int entries = buffer.getInt();
+		long clock = version < 4 ? -1 : buffer.getLong();
+		int normsSize = version < 3 ? 0 : 16;
+		int recencySize = version < 4 ? 0 : 16;
+		long entrySize = 4 + 16L * d + normsSize + 16L * words + 8L * outputDim + 8 + 8L * centroidDimension + 4
+				+ recencySize;
+		if (magic != RECORD_MAGIC || d < 0 || words < 0 || outputDim != famr.getOutputDim()
+				|| (centroidDimension != 0 && centroidDimension != d) || entries < 0
+				|| entries * entrySize > Integer.MAX_VALUE) {
+			Logger.log(LogLevel.WARN, "the journal ends with a corrupted record; it is ignored");
+			return false;
+		}
+		byte[] payload = new byte[(int) (entries * entrySize)];
+		byte[] checksum = new byte[4];
+		if (!readFully(in, payload) || !readFully(in, checksum)) {
+			Logger.log(LogLevel.WARN, "the journal ends with an incomplete record; it is ignored");
+			return false;
+		}
+		CRC32 crc = new CRC32();
+		crc.update(header, 0, header.length);
+		crc.update(payload, 0, payload.length);
+		if ((int) crc.getValue() != ByteBuffer.wrap(checksum).getInt()) {
+			Logger.log(LogLevel.WARN, "the journal ends with a record which fails its checksum; it is ignored");
+			return false;
+		}
+
+		FuzzyArt art = famr.getArt_a();
+		MapField mapField = famr.getMapField();
+		if (n < art.numCategories()) {
+			// categories were evicted; the ones kept are in the entries
+			art.truncate(n);
+			mapField.truncate(n);
+		}
+		if (centroidDimension == 0 && art.isCentroidTracking()) {
+			// the tracking was turned off after the snapshot
+			art.setCentroidTracking(false);
+		}
+		buffer = ByteBuffer.wrap(payload);
+		double[] weights = new double[2 * d];
+		long[] bits = words == 0 ? null : new long[words];
+		long[] complementBits = words == 0 ? null : new long[words];
+		double[] row = new double[outputDim];
+		double[] centroid = centroidDimension == 0 ? null : new double[centroidDimension];
+		for (int e = 0; e < entries; e++) {
+			int j = buffer.getInt();
+			buffer.asDoubleBuffer().get(weights);
+			buffer.position(buffer.position() + 8 * weights.length);
+			double norm = normsSize == 0 ? Double.NaN : buffer.getDouble();
+			double complementNorm = normsSize == 0 ? Double.NaN : buffer.getDouble();
+			for (int k = 0; k < words; k++) {
+				bits[k] = buffer.getLong();
+			}
+			for (int k = 0; k < words; k++) {
+				complementBits[k] = buffer.getLong();
+			}
+			buffer.asDoubleBuffer().get(row);
+			buffer.position(buffer.position() + 8 * row.length);
+			double q = buffer.getDouble();
+			if (centroid != null) {
+				buffer.asDoubleBuffer().get(centroid);
+				buffer.position(buffer.position() + 8 * centroid.length);
+			}
+			int size = buffer.getInt();
+			art.putCategory(j, weights, bits, complementBits, centroid, size);
+			if (recencySize > 0) {
+				long lastWon = buffer.getLong();
+				long bornAt = buffer.getLong();
+				famr.restoreRecency(j, lastWon, bornAt);
+			}
+			if (normsSize > 0) {
+				art.restoreNorms(j, norm, complementNorm);
+			}
+			mapField.putRow(j, row, q);
+		}
+		if (art.numCategories() != n) {
+			throw new IOException("Corrupted FAMR journal: " + art.numCategories() + " categories instead of " + n);
+		}
+		famr.restore(pairs, famr.getScaler());
+		if (clock >= 0) {
+			famr.restoreClock(clock);
+		}
+		return true;
+	}
+
+	/**
+	 * @return false if the stream ends before the array is filled
+	 */
+	private static boolean readFully(DataInputStream in, byte[] dest) throws IOException {
+		try {
+			in.readFully(dest);
+			return true;
+		} catch (EOFException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Closes the journal; the next checkpoint starts with a full snapshot
+	 */
+	public synchronized void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+		tracked = null;
+	}
+}
@@ -0,0 +1,372 @@
+package ro.unitbv.pythia;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Shrinks a trained FAMR network, so that classification, a linear scan of
+ * the input categories, gets faster. The categories whose mass, the summed
+ * relevance Q_t of the patterns they learned, is below a minimum are dropped
+ * first. Then two categories are merged into one when they predict the same
+ * class and their combined box, the fuzzy and of their weights, still passes
+ * the vigilance test: it is a category the
+ * network could have learned. The merged category has the summed size, the
+ * size-weighted centroid, if the centroids are tracked, and the Q_t-weighted
+ * map field row, which is the row
+ * learning would have built from the representants of both.
+ *
+ * Every round looks for the best partner of each category in parallel, the
+ * one giving the smallest combined box, and then merges the best pairs which
+ * do not share a category; the rounds repeat until no pair can be merged.
+ * The accuracy on a holdout set is measured before and after.
+ *
+ * The network is changed in place. A CheckpointJournal tracking it records
+ * the changes with its next checkpoint.
+ *
+ * @author Lucian Sasu
+ */
+public class Consolidation {
+
+	private final double vigilance;
+	private final double minimumMass;
+	private final int holdoutSize;
+	private int categoriesBefore;
+	private int dropped = 0;
+	private int merged = 0;
+	private int rounds = 0;
+	private double accuracyBefore;
+	private double accuracyAfter;
+	private long nanos;
+
+	private Consolidation(double vigilance, double minimumMass, int holdoutSize) {
+		this.vigilance = vigilance;
+		this.minimumMass = minimumMass;
+		this.holdoutSize = holdoutSize;
+	}
+
+	/**
+	 * Consolidates the network with its baseline vigilance, dropping no
+	 * category
+	 *
+	 * @param famr
+	 *            the trained network, changed in place
+	 * @param holdout
+	 *            the patterns the accuracy is measured on, scaled like the
+	 *            training ones
+	 * @return the outcome of the consolidation
+	 */
+	public static Consolidation run(FAMR famr, List<Pattern> holdout) {
+		return run(famr, holdout, famr.getRhoInitA(), 0, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param famr
+	 *            the trained network, changed in place
+	 * @param holdout
+	 *            the patterns the accuracy is measured on, scaled like the
+	 *            training ones
+	 * @param vigilance
+	 *            the vigilance the combined box of two categories must pass
+	 *            for them to be merged; 1 merges only identical boxes
+	 * @param minimumMass
+	 *            the categories with a smaller Q_t are dropped; 0 to drop
+	 *            none
+	 * @param numThreads
+	 *            the number of threads which look for the pairs to merge
+	 * @return the outcome of the consolidation
+	 */
+	public static Consolidation run(FAMR famr, List<Pattern> holdout, double vigilance, double minimumMass,
+			int numThreads) {
+		if (holdout == null || holdout.isEmpty()) {
+			throw new IllegalArgumentException("The consolidation needs a non-empty holdout set");
+		}
+		if (vigilance < 0 || vigilance > 1) {
+			throw new IllegalArgumentException("The vigilance should be between 0 and 1");
+		}
+		if (minimumMass < 0) {
+			throw new IllegalArgumentException("The minimum mass should not be negative");
+		}
+		Consolidation result = new Consolidation(vigilance, minimumMass, holdout.size());
+		FuzzyArt art = famr.getArt_a();
+		result.categoriesBefore = art.numCategories();
+		result.accuracyBefore = famr.computeAccuracy(holdout);
+
+		long start = System.nanoTime();
+		for (int j = art.numCategories() - 1; j >= 0; j--) {
+			// from the end, so that the category moved into j was kept already
+			if (famr.getMapField().getRelevance(j) < minimumMass) {
+				famr.removeCategory(j);
+				result.dropped++;
+			}
+		}
+		// |I| of complement-coded inputs, with their binary block
+		double inputNorm = art.getInputDimension() + holdout.get(0).getBinaryDimension();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, numThreads));
+		try {
+			int count;
+			while ((count = result.mergeRound(famr, vigilance * inputNorm, executor, Math.max(1, numThreads))) > 0) {
+				result.merged += count;
+				result.rounds++;
+			}
+		} finally {
+			executor.shutdown();
+		}
+		result.nanos = System.nanoTime() - start;
+
+		if (famr.getMetrics() != null) {
+			famr.getMetrics().setCategories(art.numCategories());
+		}
+		result.accuracyAfter = famr.computeAccuracy(holdout);
+		return result;
+	}
+
+	/**
+	 * Merges the best disjoint pairs of categories
+	 *
+	 * @param threshold
+	 *            the smallest norm of a combined box
+	 * @return the number of merged pairs
+	 */
+	private int mergeRound(FAMR famr, final double threshold, ExecutorService executor, int numThreads) {
+		FuzzyArt art = famr.getArt_a();
+		MapField mapField = famr.getMapField();
+		final int n = art.numCategories();
+		if (n < 2) {
+			return 0;
+		}
+		final Category[] categories = new Category[n];
+		for (int j = 0; j < n; j++) {
+			categories[j] = new Category(art, mapField, j);
+		}
+
+		// the best partner after j of every category j, searched in parallel
+		final int[] partners = new int[n];
+		final double[] norms = new double[n];
+		int chunks = Math.max(1, Math.min(numThreads, n / 64));
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(chunks);
+		for (int c = 0; c < chunks; c++) {
+			final int first = c;
+			final int step = chunks;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					// interleaved, since the first categories have the most
+					// partners to scan
+					for (int j = first; j < n; j += step) {
+						findPartner(categories, j, threshold, partners, norms);
+					}
+					return null;
+				}
+			});
+		}
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (Exception e) {
+			throw new RuntimeException("The search of the categories to merge failed", e);
+		}
+
+		List<Integer> candidates = new ArrayList<Integer>();
+		for (int j = 0; j < n; j++) {
+			if (partners[j] >= 0) {
+				candidates.add(j);
+			}
+		}
+		// the tightest combined boxes first; the lowest index among equals
+		Collections.sort(candidates, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				int byNorm = Double.compare(norms[b], norms[a]);
+				return byNorm != 0 ? byNorm : a.compareTo(b);
+			}
+		});
+		boolean[] used = new boolean[n];
+		int count = 0;
+		for (int j : candidates) {
+			int k = partners[j];
+			if (!used[j] && !used[k]) {
+				merge(famr, categories[j], categories[k], j);
+				used[j] = used[k] = true;
+				count++;
+			}
+		}
+		for (int j = n - 1; j >= 0; j--) {
+			// the partners are removed from the end, as the dropped categories
+			if (used[j] && categories[j].absorbed) {
+				famr.removeCategory(j);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the category after j with the same class whose combined box with
+	 * j has the largest norm, at least threshold; -1 if there is none
+	 */
+	private static void findPartner(Category[] categories, int j, double threshold, int[] partners,
+			double[] norms) {
+		Category category = categories[j];
+		int best = -1;
+		double bestNorm = threshold;
+		for (int k = j + 1; k < categories.length; k++) {
+			Category other = categories[k];
+			if (other.label != category.label) {
+				continue;
+			}
+			double norm = category.combinedNorm(other);
+			if (norm > bestNorm || (norm == bestNorm && best == -1)) {
+				best = k;
+				bestNorm = norm;
+			}
+		}
+		partners[j] = best;
+		norms[j] = bestNorm;
+	}
+
+	/**
+	 * Replaces category j with the merge of the two categories and marks the
+	 * second one as absorbed
+	 */
+	private static void merge(FAMR famr, Category category, Category other, int j) {
+		double[] weights = new double[category.weights.length];
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = Math.min(category.weights[i], other.weights[i]);
+		}
+		long[] bits = null;
+		long[] complementBits = null;
+		if (category.bits != null) {
+			bits = new long[category.bits.length];
+			complementBits = new long[bits.length];
+			for (int i = 0; i < bits.length; i++) {
+				bits[i] = category.bits[i] & other.bits[i];
+				complementBits[i] = category.complementBits[i] & other.complementBits[i];
+			}
+		}
+		int size = category.size + other.size;
+		double[] centroid = null;
+		if (category.centroid != null) {
+			centroid = new double[category.centroid.length];
+			for (int i = 0; i < centroid.length; i++) {
+				centroid[i] = (category.size * category.centroid[i] + other.size * other.centroid[i]) / size;
+			}
+		}
+		double q = category.q + other.q;
+		double[] row = new double[category.row.length];
+		for (int k = 0; k < row.length; k++) {
+			row[k] = q > 0 ? (category.q * category.row[k] + other.q * other.row[k]) / q
+					: (category.row[k] + other.row[k]) / 2;
+		}
+		famr.getArt_a().putCategory(j, weights, bits, complementBits, centroid, size);
+		famr.getMapField().putRow(j, row, q);
+		famr.touchCategory(j);
+		other.absorbed = true;
+	}
+
+	/**
+	 * A copy of a category taken at the start of a round, so that the
+	 * parallel search reads no storage
+	 */
+	private static class Category {
+		final double[] weights;
+		final long[] bits;
+		final long[] complementBits;
+		final double[] centroid;
+		final int size;
+		final double[] row;
+		final double q;
+		final int label;
+		boolean absorbed = false;
+
+		Category(FuzzyArt art, MapField mapField, int j) {
+			weights = new double[2 * art.getInputDimension()];
+			art.getWeights().read(j, weights);
+			bits = art.getBinaryWords() == 0 ? null : art.getBinaryWeight(j).clone();
+			complementBits = bits == null ? null : art.getBinaryComplementWeight(j).clone();
+			centroid = art.isCentroidTracking() ? art.getCentroid(j).clone() : null;
+			size = art.getCategorySize(j);
+			row = new double[mapField.getColumnsNo()];
+			mapField.getRows().read(j, row);
+			q = mapField.getRelevance(j);
+			label = mapField.posMax(j);
+		}
+
+		/**
+		 * @return the norm of the fuzzy and of the two weights
+		 */
+		double combinedNorm(Category other) {
+			double sum = 0;
+			for (int i = 0; i < weights.length; i++) {
+				sum += Math.min(weights[i], other.weights[i]);
+			}
+			if (bits != null) {
+				for (int i = 0; i < bits.length; i++) {
+					sum += Long.bitCount(bits[i] & other.bits[i])
+							+ Long.bitCount(complementBits[i] & other.complementBits[i]);
+				}
+			}
+			return sum;
+		}
+	}
+
+	/**
+	 * @return the number of input categories before the consolidation
+	 */
+	public int getCategoriesBefore() {
+		return categoriesBefore;
+	}
+
+	/**
+	 * @return the number of input categories after the consolidation
+	 */
+	public int getCategoriesAfter() {
+		return categoriesBefore - dropped - merged;
+	}
+
+	/**
+	 * @return the number of categories dropped for a mass below the minimum
+	 */
+	public int getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * @return the number of merges, each removing one category
+	 */
+	public int getMerged() {
+		return merged;
+	}
+
+	/**
+	 * @return the holdout accuracy before the consolidation
+	 */
+	public double getAccuracyBefore() {
+		return accuracyBefore;
+	}
+
+	/**
+	 * @return the holdout accuracy after the consolidation
+	 */
+	public double getAccuracyAfter() {
+		return accuracyAfter;
+	}
+
+	/**
+	 * @return the change of the holdout accuracy; negative for a loss
+	 */
+	public double getAccuracyDelta() {
+		return accuracyAfter - accuracyBefore;
+	}
+
+	public String toString() {
+		return "consolidation with vigilance " + vigilance + " and minimum mass " + minimumMass + "\n"
+				+ "input categories: " + categoriesBefore + " -> " + getCategoriesAfter() + " (" + dropped
+				+ " dropped, " + merged + " merged in " + rounds + " rounds, " + nanos / 1000000 + " ms)\n"
+				+ "holdout accuracy (" + holdoutSize + " patterns): " + accuracyBefore + " -> " + accuracyAfter
+				+ String.format(" (%+.4f)", getAccuracyDelta());
+	}
+}
@@ -0,0 +1,338 @@
+package ro.unitbv.pythia;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Packed binary form of a dataset, scaled once and then read by
+ * MappedDataset straight from a memory-mapped file, without parsing or
+ * scaling it again. Every run over the same cache file shares the pages of
+ * the operating system cache.
+ *
+ * All values are big-endian. The file starts with a header of HEADER_SIZE
+ * bytes, followed by one section per column; the offset of every section
+ * follows from the header:
+ *
+ * <pre>
+ * header    magic, version, flags, numClasses, rows, dimension,
+ *           binaryDimension, iMin, iMax
+ * scaler    min and 1/(max-min), dimension doubles each     if FLAG_SCALER
+ * binary    rows of binaryWords longs                        if binaryDimension &gt; 0
+ * weights   rows doubles
+ * features  rows of dimension scaled values, floats if FLAG_FLOAT, else doubles
+ * labels    rows ints (class indices)
+ * </pre>
+ *
+ * The features are stored row after row, as training reads them; sparse
+ * patterns are stored in dense form. The sections of 8-byte values come
+ * first, so every value is aligned when the file is mapped.
+ *
+ * @author Lucian Sasu
+ */
+public final class DatasetCache {
+
+	public static final int MAGIC = 0x46445343; // "FDSC"
+	public static final int VERSION = 1;
+	static final int HEADER_SIZE = 64;
+	static final int FLAG_FLOAT = 1;
+	static final int FLAG_SCALER = 2;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private DatasetCache() {
+	}
+
+	/**
+	 * The fixed-size header of a cache file
+	 */
+	static final class Header {
+		int version;
+		int flags;
+		int numClasses;
+		long rows;
+		int dimension;
+		int binaryDimension;
+		double iMin;
+		double iMax;
+
+		boolean isFloat() {
+			return (flags & FLAG_FLOAT) != 0;
+		}
+
+		boolean hasScaler() {
+			return (flags & FLAG_SCALER) != 0;
+		}
+
+		int binaryWords() {
+			return Util.packedLength(binaryDimension);
+		}
+
+		int featureBytes() {
+			return dimension * (isFloat() ? 4 : 8);
+		}
+
+		long scalerOffset() {
+			return HEADER_SIZE;
+		}
+
+		long binaryOffset() {
+			return scalerOffset() + (hasScaler() ? 16L * dimension : 0);
+		}
+
+		long weightsOffset() {
+			return binaryOffset() + 8L * rows * binaryWords();
+		}
+
+		long featuresOffset() {
+			return weightsOffset() + 8L * rows;
+		}
+
+		long labelsOffset() {
+			return featuresOffset() + rows * featureBytes();
+		}
+
+		long fileSize() {
+			return labelsOffset() + 4L * rows;
+		}
+
+		private void write(ByteBuffer buffer) {
+			buffer.putInt(MAGIC).putInt(version).putInt(flags).putInt(numClasses);
+			buffer.putLong(rows).putInt(dimension).putInt(binaryDimension);
+			buffer.putDouble(iMin).putDouble(iMax);
+			while (buffer.position() < HEADER_SIZE) {
+				buffer.put((byte) 0);
+			}
+		}
+
+		/**
+		 * Reads and validates a header
+		 *
+		 * @param buffer
+		 *            positioned at the start of the file
+		 * @return the header
+		 * @throws IOException
+		 *             if the header is not the one of a supported cache file
+		 */
+		static Header read(ByteBuffer buffer) throws IOException {
+			if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+				throw new IOException("Not a FAMR dataset cache file");
+			}
+			Header header = new Header();
+			header.version = buffer.getInt();
+			if (header.version < 1 || header.version > VERSION) {
+				throw new IOException("Unsupported dataset cache version " + header.version
+						+ "; the newest supported is " + VERSION);
+			}
+			header.flags = buffer.getInt();
+			header.numClasses = buffer.getInt();
+			header.rows = buffer.getLong();
+			header.dimension = buffer.getInt();
+			header.binaryDimension = buffer.getInt();
+			header.iMin = buffer.getDouble();
+			header.iMax = buffer.getDouble();
+			if (header.numClasses <= 0 || header.rows < 0 || header.dimension < 0 || header.binaryDimension < 0) {
+				throw new IOException("Corrupted dataset cache header");
+			}
+			return header;
+		}
+	}
+
+	/**
+	 * @param path
+	 *            any file
+	 * @return true if the file starts like a dataset cache
+	 */
+	public static boolean isCache(String path) {
+		try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+			return file.length() >= HEADER_SIZE && file.readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Scales the patterns of the source and writes them to a cache file. The
+	 * source is scanned twice: once to count the patterns, then to write
+	 * them; only a chunk of patterns is in memory at a time.
+	 *
+	 * @param source
+	 *            the unscaled patterns, all with the same input dimensions
+	 * @param numClasses
+	 *            the number of classes
+	 * @param scaler
+	 *            the per-attribute scaler; null for the iMin/iMax scaling
+	 * @param iMin
+	 *            minimum input value, used when there is no scaler
+	 * @param iMax
+	 *            maximum input value, used when there is no scaler
+	 * @param singlePrecision
+	 *            whether the scaled values are stored as floats
+	 * @param chunkSize
+	 *            the number of patterns read at a time
+	 * @param path
+	 *            the file to be created or overwritten
+	 * @throws IOException
+	 *             if reading the source or writing the file fails
+	 */
+	public static void write(PatternSource source, int numClasses, Scaler scaler, double iMin, double iMax,
+			boolean singlePrecision, int chunkSize, String path) throws IOException {
+		Header header = new Header();
+		header.version = VERSION;
+		header.flags = (singlePrecision ? FLAG_FLOAT : 0) | (scaler != null ? FLAG_SCALER : 0);
+		header.numClasses = numClasses;
+		header.iMin = iMin;
+		header.iMax = iMax;
+		Pattern[] chunk = new Pattern[chunkSize];
+		source.rewind();
+		int count;
+		while ((count = source.read(chunk)) > 0) {
+			if (header.rows == 0) {
+				header.dimension = chunk[0].getInputDimension();
+				header.binaryDimension = chunk[0].getBinaryDimension();
+			}
+			header.rows += count;
+		}
+		if (scaler != null && header.rows > 0 && scaler.getDimension() != header.dimension) {
+			throw new IllegalArgumentException("The scaler has " + scaler.getDimension() + " inputs, the patterns "
+					+ header.dimension);
+		}
+
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			Section start = new Section(channel, 0);
+			header.write(start.buffer);
+			if (scaler != null) {
+				for (double value : scaler.getMin()) {
+					start.putDouble(value);
+				}
+				for (double value : scaler.getInverseRange()) {
+					start.putDouble(value);
+				}
+			}
+			start.flush();
+			Section binary = new Section(channel, header.binaryOffset());
+			Section weights = new Section(channel, header.weightsOffset());
+			Section features = new Section(channel, header.featuresOffset());
+			Section labels = new Section(channel, header.labelsOffset());
+
+			int d = header.dimension;
+			double[] row = new double[d];
+			double[] encoded = new double[2 * d];
+			long written = 0;
+			source.rewind();
+			while ((count = source.read(chunk)) > 0) {
+				written += count;
+				if (written > header.rows) {
+					break;
+				}
+				for (int p = 0; p < count; p++) {
+					Pattern pattern = chunk[p];
+					chunk[p] = null;
+					if (pattern.getInputDimension() != d || pattern.getBinaryDimension() != header.binaryDimension) {
+						throw new IOException("The patterns have different input dimensions");
+					}
+					if (pattern.getClassIndex() < 0 || pattern.getClassIndex() >= numClasses) {
+						throw new IOException("Class index " + pattern.getClassIndex() + " is not below " + numClasses);
+					}
+					scaledInput(pattern, scaler, iMin, iMax, row, encoded);
+					for (int i = 0; i < d; i++) {
+						if (singlePrecision) {
+							features.putFloat((float) row[i]);
+						} else {
+							features.putDouble(row[i]);
+						}
+					}
+					if (header.binaryDimension > 0) {
+						for (long word : pattern.getBinaryInput()) {
+							binary.putLong(word);
+						}
+					}
+					weights.putDouble(pattern.getWeight());
+					labels.putInt(pattern.getClassIndex());
+				}
+			}
+			if (written != header.rows) {
+				throw new IOException("The source gave " + written + " patterns instead of " + header.rows
+						+ " in the second scan");
+			}
+			binary.flush();
+			weights.flush();
+			features.flush();
+			labels.flush();
+		}
+	}
+
+	/**
+	 * Computes the dense scaled input of a pattern
+	 */
+	private static void scaledInput(Pattern pattern, Scaler scaler, double iMin, double iMax, double[] row,
+			double[] encoded) {
+		if (scaler != null) {
+			scaler.encode(pattern, encoded);
+			System.arraycopy(encoded, 0, row, 0, row.length);
+			return;
+		}
+		pattern.scaleInput(iMin, iMax);
+		if (pattern.isSparse()) {
+			java.util.Arrays.fill(row, 0.0);
+			int[] indices = pattern.getSparseIndices();
+			double[] values = pattern.getScaledSparseValues();
+			for (int k = 0; k < indices.length; k++) {
+				row[indices[k]] = values[k];
+			}
+		} else {
+			System.arraycopy(pattern.getScaledInput(), 0, row, 0, row.length);
+		}
+	}
+
+	/**
+	 * Buffered writer of one section, at increasing file positions
+	 */
+	private static final class Section {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		private long position;
+
+		Section(FileChannel channel, long position) {
+			this.channel = channel;
+			this.position = position;
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				flush();
+			}
+		}
+
+		void putInt(int value) throws IOException {
+			ensure(4);
+			buffer.putInt(value);
+		}
+
+		void putLong(long value) throws IOException {
+			ensure(8);
+			buffer.putLong(value);
+		}
+
+		void putFloat(float value) throws IOException {
+			ensure(4);
+			buffer.putFloat(value);
+		}
+
+		void putDouble(double value) throws IOException {
+			ensure(8);
+			buffer.putDouble(value);
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+			buffer.clear();
+		}
+	}
+}
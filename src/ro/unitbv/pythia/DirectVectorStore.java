@@ -0,0 +1,249 @@
+package ro.unitbv.pythia;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * VectorStore keeping the vectors outside of the Java heap, in direct
+ * ByteBuffers of about BLOCK_BYTES each, so that very large models do not
+ * put long-lived arrays in the heap traversed by the garbage collector.
+ *
+ * The native memory is freed by release(); a store which is not released
+ * is freed only when the garbage collector reclaims its buffers. The memory
+ * currently allocated by all the direct stores is given by allocatedBytes().
+ *
+ * @author Lucian Sasu
+ */
+public class DirectVectorStore implements VectorStore {
+
+	private static final long serialVersionUID = 1L;
+	private static final int BLOCK_BYTES = 1 << 20;
+	private static final AtomicLong allocated = new AtomicLong();
+	private static final Method invokeCleaner; // Java 9 and later
+	private static final Object unsafe;
+
+	static {
+		Method method = null;
+		Object instance = null;
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			method = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			instance = field.get(null);
+		} catch (Exception e) {
+			method = null; // Java 8: the cleaner of the buffer is called instead
+		}
+		invokeCleaner = method;
+		unsafe = instance;
+	}
+
+	private final int length;
+	private final int rowsPerBlock;
+	private int size = 0;
+	private transient ByteBuffer[] buffers = new ByteBuffer[0];
+	private transient DoubleBuffer[] blocks = new DoubleBuffer[0];
+	private transient int numBlocks = 0; // the arrays above grow geometrically
+	private transient long bytes = 0;
+
+	/**
+	 * @param length the length of every vector
+	 */
+	public DirectVectorStore(int length) {
+		this.length = length;
+		this.rowsPerBlock = (int) Math.max(1, BLOCK_BYTES / Math.max(8, 8L * length));
+	}
+
+	/**
+	 * @return the number of bytes allocated by all the direct stores which
+	 *         are not released yet
+	 */
+	public static long allocatedBytes() {
+		return allocated.get();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public void add(double[] vector) {
+		if (vector.length != length) {
+			throw new RuntimeException("In add: size mismatch, " + vector.length + " instead of " + length);
+		}
+		int block = size / rowsPerBlock;
+		if (block == numBlocks) {
+			allocateBlock();
+		}
+		DoubleBuffer target = blocks[block];
+		int base = (size % rowsPerBlock) * length;
+		for (int i = 0; i < length; i++) {
+			target.put(base + i, vector[i]);
+		}
+		size++;
+	}
+
+	private void allocateBlock() {
+		long capacity = 8L * rowsPerBlock * length;
+		if (capacity > Integer.MAX_VALUE) {
+			throw new RuntimeException("In allocateBlock: a vector of length " + length
+					+ " does not fit in a direct buffer");
+		}
+		ByteBuffer buffer = ByteBuffer.allocateDirect((int) capacity).order(ByteOrder.nativeOrder());
+		if (numBlocks == buffers.length) {
+			// when a block holds a single vector, there is one block per vector
+			int grown = Math.max(4, 2 * numBlocks);
+			buffers = Arrays.copyOf(buffers, grown);
+			blocks = Arrays.copyOf(blocks, grown);
+		}
+		buffers[numBlocks] = buffer;
+		blocks[numBlocks] = buffer.asDoubleBuffer();
+		numBlocks++;
+		bytes += buffer.capacity();
+		allocated.addAndGet(buffer.capacity());
+	}
+
+	public void truncate(int size) {
+		if (size < 0 || size > this.size) {
+			throw new RuntimeException("In truncate: can not keep " + size + " of " + this.size + " vectors");
+		}
+		this.size = size;
+	}
+
+	public void move(int from, int to) {
+		DoubleBuffer source = blocks[from / rowsPerBlock];
+		DoubleBuffer target = blocks[to / rowsPerBlock];
+		int sourceBase = (from % rowsPerBlock) * length;
+		int targetBase = (to % rowsPerBlock) * length;
+		for (int i = 0; i < length; i++) {
+			target.put(targetBase + i, source.get(sourceBase + i));
+		}
+	}
+
+	public double get(int row, int i) {
+		return blocks[row / rowsPerBlock].get((row % rowsPerBlock) * length + i);
+	}
+
+	public void set(int row, int i, double value) {
+		blocks[row / rowsPerBlock].put((row % rowsPerBlock) * length + i, value);
+	}
+
+	public void read(int row, double[] dest) {
+		DoubleBuffer block = blocks[row / rowsPerBlock];
+		int base = (row % rowsPerBlock) * length;
+		for (int i = 0; i < length; i++) {
+			dest[i] = block.get(base + i);
+		}
+	}
+
+	public double minSum(int row, double[] input) {
+		DoubleBuffer block = blocks[row / rowsPerBlock];
+		int base = (row % rowsPerBlock) * length;
+		double sum = 0.0;
+		for (int i = 0; i < length; i++) {
+			sum += Math.min(input[i], block.get(base + i));
+		}
+		return sum;
+	}
+
+	public double sum(int row, int from, int to) {
+		DoubleBuffer block = blocks[row / rowsPerBlock];
+		int base = (row % rowsPerBlock) * length;
+		double sum = 0.0;
+		for (int i = from; i < to; i++) {
+			sum += block.get(base + i);
+		}
+		return sum;
+	}
+
+	public void learn(int row, double[] input, double beta) {
+		DoubleBuffer block = blocks[row / rowsPerBlock];
+		int base = (row % rowsPerBlock) * length;
+		for (int i = 0; i < length; i++) {
+			double weight = block.get(base + i);
+			block.put(base + i, beta * Math.min(input[i], weight) + (1 - beta) * weight);
+		}
+	}
+
+	public DirectVectorStore copy() {
+		DirectVectorStore result = new DirectVectorStore(length);
+		double[] row = new double[length];
+		for (int j = 0; j < size; j++) {
+			read(j, row);
+			result.add(row);
+		}
+		return result;
+	}
+
+	public long nativeBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Frees the direct buffers right away, where the JVM allows it
+	 */
+	public void release() {
+		for (int b = 0; b < numBlocks; b++) {
+			free(buffers[b]);
+		}
+		allocated.addAndGet(-bytes);
+		bytes = 0;
+		size = 0;
+		buffers = new ByteBuffer[0];
+		blocks = new DoubleBuffer[0];
+		numBlocks = 0;
+	}
+
+	private static void free(ByteBuffer buffer) {
+		try {
+			if (invokeCleaner != null) {
+				invokeCleaner.invoke(unsafe, buffer);
+			} else {
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+		} catch (Exception e) {
+			// left to the garbage collector
+		}
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		double[] row = new double[length];
+		for (int j = 0; j < size; j++) {
+			read(j, row);
+			for (double value : row) {
+				out.writeDouble(value);
+			}
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		int rows = size;
+		size = 0;
+		buffers = new ByteBuffer[0];
+		blocks = new DoubleBuffer[0];
+		numBlocks = 0;
+		double[] row = new double[length];
+		for (int j = 0; j < rows; j++) {
+			for (int i = 0; i < length; i++) {
+				row[i] = in.readDouble();
+			}
+			add(row);
+		}
+	}
+}
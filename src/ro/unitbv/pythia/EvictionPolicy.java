@@ -0,0 +1,23 @@
+package ro.unitbv.pythia;
+
+/**
+ * Which input category FAMR.train removes when a new one is needed and the
+ * category budget is used up. Ties go to the lowest index.
+ *
+ * A new category starts with the smallest size and relevance and has just
+ * won, so SMALLEST_CATEGORY and LOWEST_RELEVANCE would pick the category
+ * created for the previous new pattern, again and again, and the network
+ * would stop adapting. The categories in their grace period, the pairs
+ * learned after their creation (see FAMR.setCategoryBudget), are therefore
+ * not candidates under any policy, unless all the categories are.
+ *
+ * @author Lucian Sasu
+ */
+public enum EvictionPolicy {
+	/** the category which won a training pair the longest time ago */
+	LEAST_RECENTLY_WON,
+	/** the category with the fewest representants */
+	SMALLEST_CATEGORY,
+	/** the category with the lowest accumulated relevance Q_t */
+	LOWEST_RELEVANCE
+}
@@ -1,8 +1,17 @@
 package ro.unitbv.pythia;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Title:        Modified Fuzzy Artmap
@@ -18,10 +27,15 @@ import java.util.List;
  * essential modification, compared to Carpenter's et al. model is in class
  * Mapfield, where the values w_ab have a completely different meaning and
  * formula.
+ *
+ * Java serialization of a network goes through the compact ModelFormat
+ * instead of the default serialization of the object graph.
  */
 public class FAMR implements Serializable {
 
-	private static final long serialVersionUID = 2L;
+	private static final long serialVersionUID = 3L;
+	/** the default number of learned pairs during which a new category is not evicted */
+	public static final int DEFAULT_EVICTION_GRACE = 100;
 	private FuzzyArt art_a = null;
 	private FuzzyVector art_b_classification = null;
 	private MapField mapField = null;
@@ -33,6 +47,33 @@ public class FAMR implements Serializable {
 	private double iMin;
 	private double iMax;
 	private int outputDim;
+	// per-attribute scaling; when set, it replaces iMin/iMax
+	private Scaler scaler = null;
+	// reused by the fused scale-and-encode path
+	private transient double[] encodeBuffer = null;
+	// categories learned since the last checkpoint; null when not tracked
+	private transient BitSet learnedCategories = null;
+	private transient CheckpointJournal journal = null;
+	private transient long checkpointInterval = 0; // nanoseconds
+	private transient long nextCheckpoint = 0;
+	private transient TrainingTrace trace = null;
+	private transient Metrics metrics = null;
+	private transient TrainingListener listener = null;
+	private transient long listenerInterval = 0;
+	private transient long listenerStart = 0;
+	private transient long listenerPairs = 0;
+	private transient long listenerTotal = -1;
+	private transient long nextProgress = 0;
+	private transient long memoryCap = 0;
+	private transient MemoryCapAction capAction = MemoryCapAction.STOP;
+	private transient boolean capReached = false;
+	private transient int categoryBudget = 0;
+	private transient EvictionPolicy evictionPolicy = EvictionPolicy.LEAST_RECENTLY_WON;
+	private transient int evictionGrace = DEFAULT_EVICTION_GRACE;
+	private transient long[] lastWon = new long[0]; // the clock of the last pair won, per category
+	private transient long[] bornAt = new long[0]; // the clock of the creation, per category; 0 if not seen
+	private transient long clock = 0;
+	private transient long evictions = 0;
 
 	/**
 	 * 
@@ -59,6 +100,30 @@ public class FAMR implements Serializable {
 			double iMax, //max input, for scaling in [0, 1]
 			int outputDim //how many classes; the classes must be 0..outputDim-1
 			) {
+		this(rho_init_a, beta_a, rho_ab, epochs, iMin, iMax, outputDim, Storage.HEAP);
+	}
+
+	/**
+	 * 
+	 * @param rho_init_a
+	 *            baseline vigilance parameter
+	 * @param beta_a
+	 *            used for category learning
+	 * @param rho_ab
+	 *            mapfield threshold
+	 * @param epochs
+	 *            how many iterations over the training set
+	 * @param iMin
+	 *            minimum input value
+	 * @param iMax
+	 *            maximum output value
+	 * @param outputDim
+	 *            maximum number of classes
+	 * @param storage
+	 *            where the category weights and the mapfield rows are kept
+	 */
+	public FAMR(double rho_init_a, double beta_a, double rho_ab, int epochs, double iMin, double iMax, int outputDim,
+			Storage storage) {
 
 		this.rho_init_a = rho_init_a;
 		this.beta_a = beta_a;
@@ -68,9 +133,11 @@ public class FAMR implements Serializable {
 		this.iMax = iMax;
 		this.outputDim = outputDim;
 
-		art_a = new FuzzyArt(this.rho_init_a, this.beta_a);
+		art_a = new FuzzyArt(this.rho_init_a, this.beta_a, storage);
+		// classification never reads the centroids
+		art_a.setCentroidTracking(false);
 		art_b_classification = new FuzzyVector(this.outputDim);
-		mapField = new MapField(this.rho_ab, this.outputDim);
+		mapField = new MapField(this.rho_ab, this.outputDim, storage);
 	}
 
 	/**
@@ -80,11 +147,15 @@ public class FAMR implements Serializable {
 	 *            the training dataset
 	 */
 	public void train(List<Pattern> patterns) {
-		int n_pairs = 0;
-		int n_rejected_pairs = 0;
-		
 		Logger.println("Start training the classifier");
 		
+		if (scaler != null) {
+			// the patterns are scaled and encoded on the fly, in presentInput
+			Logger.println("per-attribute scaling of " + scaler.getDimension() + " inputs");
+			trainEpochs(patterns, null);
+			return;
+		}
+
 		Logger.println("this.iMin= " + this.iMin + "; this.iMax= " + this.iMax);
 		
 		for (Pattern pattern : patterns) {
@@ -93,72 +164,352 @@ public class FAMR implements Serializable {
 		
 		Logger.saveToFile("train", patterns);
 
+		trainEpochs(patterns, null);
+	}
+
+	/**
+	 * Performs FAMR training on an already scaled dataset, presenting the
+	 * patterns in the given order. The dataset is only read, so it can be
+	 * shared by several networks trained at the same time.
+	 * 
+	 * @param dataset
+	 *            the training dataset, scaled with this network's iMin and
+	 *            iMax
+	 * @param order
+	 *            a permutation of the pattern indices; null for the dataset
+	 *            order
+	 */
+	public void train(PreparedDataset dataset, int[] order) {
+		if (dataset.getScaler() != this.scaler) {
+			throw new IllegalArgumentException("The dataset was scaled with a different per-attribute scaler");
+		}
+		if (this.scaler == null && (dataset.getIMin() != this.iMin || dataset.getIMax() != this.iMax)) {
+			throw new IllegalArgumentException("The dataset was scaled with (" + dataset.getIMin() + ", "
+					+ dataset.getIMax() + "), the network expects (" + this.iMin + ", " + this.iMax + ")");
+		}
+		if (order != null && order.length != dataset.size()) {
+			throw new IllegalArgumentException("The order should have " + dataset.size() + " indices");
+		}
+		Logger.println("Start training the classifier");
+
+		trainEpochs(dataset.getPatterns(), order);
+	}
+
+	/**
+	 * Runs the training epochs over scaled patterns
+	 * 
+	 * @param patterns
+	 *            the scaled training patterns
+	 * @param order
+	 *            the presentation order; null for the list order
+	 */
+	private void trainEpochs(List<Pattern> patterns, int[] order) {
+		int n_pairs = 0;
+		int n_rejected_pairs = 0;
+		if (listener != null) {
+			startListening((long) epochs * patterns.size());
+		}
+
 		for (int i = 0; i < epochs; i++) {
-			for (Pattern pattern : patterns) {
-				double scaledInput[] = pattern.getScaledInput();
-				Util.checkScaled(scaledInput, "At train, the input part of the given patetrn is not between 0 and 1.");
+			if (trace != null) {
+				trace.startEpoch(i);
+			}
+			for (int p = 0; p < patterns.size(); p++) {
+				int index = order == null ? p : order[p];
+				Pattern pattern = patterns.get(index);
 				int classLabel = pattern.getClassIndex();
 				double q_t = pattern.getWeight();
 
-				if (!trainPair(scaledInput, classLabel, q_t)) {
+				if (!trainPair(pattern, classLabel, q_t, index)) {
 					n_rejected_pairs++;
 				}
 				if (i == 0) {
 					n_pairs++;
 					global_n_pairs++;
 				}
+				if (journal != null && System.nanoTime() - nextCheckpoint >= 0) {
+					checkpoint();
+				}
+				if (listener != null && ++listenerPairs == nextProgress) {
+					notifyProgress(i, n_rejected_pairs);
+				}
+				if (capReached && capAction == MemoryCapAction.STOP) {
+					break;
+				}
+			}
+			if (listener != null) {
+				notifyEpochEnd(i, n_rejected_pairs);
+			}
+			if (capReached && capAction == MemoryCapAction.STOP) {
+				break;
 			}
 		}
+		logTrainingEnd(n_pairs, n_rejected_pairs);
+	}
+
+	/**
+	 * Performs FAMR training on patterns read from a source, e.g. a file, in
+	 * chunks of at most chunkSize patterns. The source is scanned again for
+	 * every epoch, and the next chunk is read and scaled in the background
+	 * while the current one is learned, so at most two chunks are in memory
+	 * whatever the size of the data. The patterns are scaled by the scaler of
+	 * the network, if any, or else by iMin and iMax.
+	 * 
+	 * @param source
+	 *            the training patterns, unscaled
+	 * @param chunkSize
+	 *            the number of patterns read at a time
+	 * @throws IOException
+	 *             if reading the source fails
+	 */
+	public void train(PatternSource source, int chunkSize) throws IOException {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("The chunk size should be positive");
+		}
+		Logger.println("Start training the classifier, reading chunks of " + chunkSize + " patterns");
+		Pattern[][] chunks = { new Pattern[chunkSize], new Pattern[chunkSize] };
+		ExecutorService reader = Executors.newSingleThreadExecutor();
+		int n_pairs = 0;
+		int n_rejected_pairs = 0;
+		if (listener != null) {
+			startListening(-1);
+		}
+		try {
+			for (int i = 0; i < epochs; i++) {
+				source.rewind();
+				if (trace != null) {
+					trace.startEpoch(i);
+				}
+				int current = 0;
+				long position = 0; // of the next pattern in the source
+				Future<Integer> pending = reader.submit(readChunk(source, chunks[current]));
+				int count;
+				while ((count = pending.get()) > 0) {
+					pending = reader.submit(readChunk(source, chunks[1 - current]));
+					Pattern[] chunk = chunks[current];
+					for (int p = 0; p < count; p++) {
+						Pattern pattern = chunk[p];
+						chunk[p] = null;
+						if (!trainPair(pattern, pattern.getClassIndex(), pattern.getWeight(), position++)) {
+							n_rejected_pairs++;
+						}
+						if (i == 0) {
+							n_pairs++;
+							global_n_pairs++;
+						}
+						if (journal != null && System.nanoTime() - nextCheckpoint >= 0) {
+							checkpoint();
+						}
+						if (listener != null && ++listenerPairs == nextProgress) {
+							notifyProgress(i, n_rejected_pairs);
+						}
+						if (capReached && capAction == MemoryCapAction.STOP) {
+							break;
+						}
+					}
+					current = 1 - current;
+					if (capReached && capAction == MemoryCapAction.STOP) {
+						pending.cancel(true);
+						break;
+					}
+				}
+				if (listener != null) {
+					// the size of the source is known after its first scan
+					listenerTotal = (long) epochs * n_pairs;
+					notifyEpochEnd(i, n_rejected_pairs);
+				}
+				if (capReached && capAction == MemoryCapAction.STOP) {
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading the training patterns", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new RuntimeException("Reading the training patterns failed", e.getCause());
+		} finally {
+			reader.shutdownNow();
+		}
+		logTrainingEnd(n_pairs, n_rejected_pairs);
+	}
+
+	/**
+	 * @return a task reading the next chunk of the source and scaling it
+	 */
+	private Callable<Integer> readChunk(final PatternSource source, final Pattern[] chunk) {
+		return new Callable<Integer>() {
+			public Integer call() throws IOException {
+				int count = source.read(chunk);
+				if (scaler == null) {
+					for (int p = 0; p < count; p++) {
+						chunk[p].scaleInput(iMin, iMax);
+					}
+				}
+				return count;
+			}
+		};
+	}
+
+	private void logTrainingEnd(int n_pairs, int n_rejected_pairs) {
+		if (!Logger.isEnabled(LogLevel.INFO)) {
+			return;
+		}
 		Logger.println("End of " + epochs + " epochs of trainig. " + "We have obtained " + art_a.numCategories()
 				+ " input categories and " + art_b_classification.length + " output categories\n" + "using " + n_pairs
 				+ " training pairs\n" + "Number of rejected pairs is " + n_rejected_pairs + "\n"
 				+ "Historical number of processed pairs: " + global_n_pairs + "\n");
 	}
 
+	/**
+	 * Passes the scaled input of the pattern to art_a, in dense or sparse form,
+	 * followed by its binary block, if any. Patterns which are not scaled yet
+	 * go through the fused scale-and-encode path of the scaler.
+	 * 
+	 * @param pattern
+	 *            a pattern whose input is scaled, or any pattern when the
+	 *            network has a scaler
+	 */
+	private void presentInput(Pattern pattern) {
+		if (!pattern.isInputScaled()) {
+			if (scaler == null) {
+				throw new RuntimeException("In presentInput: the pattern is not scaled");
+			}
+			encodeInput(pattern);
+		} else if (pattern.isSparse()) {
+			art_a.newSparseInput(pattern.getInputDimension(), pattern.getSparseIndices(),
+					pattern.getScaledSparseValues());
+		} else {
+			art_a.newInput(pattern.getScaledInput());
+		}
+		if (pattern.hasBinaryInput()) {
+			art_a.newBinaryInput(pattern.getBinaryInput(), pattern.getBinaryDimension());
+		}
+	}
+
+	/**
+	 * Scales the raw input of the pattern with the scaler, straight into the
+	 * buffer read by art_a
+	 * 
+	 * @param pattern
+	 *            a pattern which is not scaled
+	 */
+	private void encodeInput(Pattern pattern) {
+		if (pattern.isSparse() && scaler.isZeroPreserving()) {
+			int nonZeros = pattern.getSparseIndices().length;
+			if (encodeBuffer == null || encodeBuffer.length < nonZeros) {
+				encodeBuffer = new double[Math.max(nonZeros, 16)];
+			}
+			scaler.encodeSparse(pattern, encodeBuffer);
+			art_a.newSparseInput(pattern.getInputDimension(), pattern.getSparseIndices(), encodeBuffer);
+		} else {
+			int length = 2 * scaler.getDimension();
+			if (encodeBuffer == null || encodeBuffer.length != length) {
+				encodeBuffer = new double[length];
+			}
+			scaler.encode(pattern, encodeBuffer);
+			art_a.newNormalizedInput(encodeBuffer);
+		}
+	}
+
 	/**
 	 * Return true if training pair (input[], K), with relevance factor q_t was
 	 * learned (correctly or not).
 	 * 
-	 * @param scaledInput
-	 *            the input to be used for training
+	 * Learning happens only when the pair is accepted, so a rejected pair
+	 * leaves art_a and mapField unchanged, except for the categories created
+	 * while searching; they are removed instead of restoring a snapshot of
+	 * the whole network.
+	 * 
+	 * @param pattern
+	 *            the pattern whose scaled input is used for training
 	 * @param K
 	 *            the label associated with the current input
 	 * @param q_t
 	 *            the current relevance
+	 * @param index
+	 *            the index of the pattern in the training set, for the trace
 	 * @return true if the current pattern could be learned, false otherwise
 	 */
-	private boolean trainPair(double[] scaledInput, int K, double q_t) {
-
-		MapField old_mapField = mapField.clone(); // save MapField
-		FuzzyArt old_art_a = art_a.clone(); // save art_a
-		art_a.newInput(scaledInput);
+	private boolean trainPair(Pattern pattern, int K, double q_t, long index) {
 
-		// the output is one-hot encoded
-		FuzzyVector art_b = new FuzzyVector(outputDim);
-		art_b.initValue(0);
-		art_b.setValueAtPos(K, 1);
+		int old_categories = art_a.numCategories();
+		presentInput(pattern);
 
+		// the output is one-hot encoded at K; mapField.accept(J, K) tests it
+		// without building the vector
 		art_a.restoreRho();
+		boolean relaxed = capReached && capAction == MemoryCapAction.LOWER_VIGILANCE;
+		if (relaxed) {
+			art_a.setRhoToZero();
+		}
+		int resets = 0;
 		while (true) {
-			int J = art_a.findCategory();
-			if (J == -1)
+			int J = metrics == null ? art_a.findCategory() : timedFindCategory();
+			boolean created = J == -1;
+			if (created && categoryBudget > 0 && art_a.numCategories() >= categoryBudget) {
+				evict();
+				// a rejection below keeps the eviction and drops the new
+				// category only
+				old_categories = art_a.numCategories();
+			}
+			if (created && memoryCap > 0 && !fitsCategory()) {
+				if (!relaxed && capAction == MemoryCapAction.LOWER_VIGILANCE) {
+					// search again among the existing categories only
+					relaxed = true;
+					presentInput(pattern);
+					art_a.setRhoToZero();
+					continue;
+				}
+				if (metrics != null) {
+					metrics.pair(resets, false, false, old_categories);
+				}
+				if (trace != null) {
+					record(index, -1, resets, TrainingTrace.REJECTED);
+				}
+				return false;
+			}
+			if (created)
 			// no suitable category found in art_a; create a new category
 			{
 				art_a.createNewCategory();
 				mapField.addWeight_a();
 				J = art_a.numCategories() - 1;
 			}
-			if (mapField.accept(art_b, J)) {
+			if (metrics == null ? mapField.accept(J, K) : timedAccept(J, K)) {
 				// learn current pair
+				long start = metrics == null ? 0 : System.nanoTime();
 				art_a.learn(J);
 				mapField.learn(J, K, q_t);
+				if (metrics != null) {
+					metrics.learning(System.nanoTime() - start);
+					metrics.pair(resets, created, true, art_a.numCategories());
+				}
+				if (learnedCategories != null) {
+					learnedCategories.set(J);
+				}
+				if (categoryBudget > 0) {
+					won(J, created);
+				}
+				if (trace != null) {
+					record(index, J, resets, created ? TrainingTrace.CREATED : 0);
+				}
 				return true;
 			} else {
 				art_a.increaseRho(J);
+				resets++;
 				if (art_a.getRho() > 1) {
 					// reject current pair and restore art_a and mapField
-					art_a = old_art_a;
-					mapField = old_mapField;
+					art_a.truncate(old_categories);
+					mapField.truncate(old_categories);
+					if (metrics != null) {
+						metrics.pair(resets, false, false, old_categories);
+					}
+					if (trace != null) {
+						record(index, -1, resets, TrainingTrace.REJECTED);
+					}
 					return false;
 				} else {
 					continue; // reiterate current input vector
@@ -182,9 +533,25 @@ public class FAMR implements Serializable {
 	 * @return the estimated label
 	 */
 	public int classifySingleInstance(Pattern toBeClassified) {
+		if (metrics == null) {
+			return classify(toBeClassified);
+		}
+		long start = System.nanoTime();
+		int label = classify(toBeClassified);
+		metrics.classification(System.nanoTime() - start);
+		return label;
+	}
+
+	private int classify(Pattern toBeClassified) {
 		this.art_a.setRhoToZero();
-		toBeClassified.scaleInput(this.iMin, this.iMax);
-		Logger.debug_print("test", toBeClassified);
+		if (scaler == null) {
+			toBeClassified.scaleInput(this.iMin, this.iMax);
+			Logger.debug_print("test", toBeClassified);
+		}
+		if (!toBeClassified.isInputScaled() || toBeClassified.isSparse() || toBeClassified.hasBinaryInput()) {
+			presentInput(toBeClassified);
+			return classifyPresentedInput();
+		}
 		Util.checkScaled(toBeClassified.getScaledInput(), "At classification: the input part of the pattern is not scaled in [0, 1].");
 		return classifyInputVector(toBeClassified.getScaledInput());
 	}
@@ -213,12 +580,25 @@ public class FAMR implements Serializable {
 	 */
 	private int classifyInputVector(double[] scaledInput) {
 		art_a.newInput(scaledInput);
+		return classifyPresentedInput();
+	}
+
+	/**
+	 * Return the index of the class assigned to the input last presented to
+	 * art_a
+	 * 
+	 * @return the inferred label
+	 */
+	private int classifyPresentedInput() {
 		int J = art_a.findCategory();
 		if (J == -1) {
-			System.err.println("In classifyInputVector: will return -1");
+			if (metrics != null) {
+				metrics.unmatched();
+			}
+			Logger.log(LogLevel.WARN, "In classifyPresentedInput: no category matches the input, will return -1");
 			return -1;
 		} else {
-			return mapField.getw_ab(J).posMax();
+			return mapField.posMax(J);
 		}
 	}
 
@@ -235,9 +615,52 @@ public class FAMR implements Serializable {
 	private double[] getProbVector(double scaledInput[]) {
 		Util.checkScaled(scaledInput, "In getProbVector: the scaledInput vector is not between 0 and 1.");
 		art_a.newInput(scaledInput);
+		return getProbVectorOfPresentedInput();
+	}
+
+	/**
+	 * Return the conditional probabilities P( output class | pattern ) for all
+	 * output classes.
+	 * 
+	 * @param toBeClassified
+	 *            the pattern to be classified
+	 * @return a vector of conditional probabilities
+	 */
+	public double[] getProbabilities(Pattern toBeClassified) {
+		if (metrics == null) {
+			return probabilities(toBeClassified);
+		}
+		long start = System.nanoTime();
+		double[] result = probabilities(toBeClassified);
+		metrics.classification(System.nanoTime() - start);
+		return result;
+	}
+
+	private double[] probabilities(Pattern toBeClassified) {
+		this.art_a.setRhoToZero();
+		if (scaler == null) {
+			toBeClassified.scaleInput(this.iMin, this.iMax);
+		}
+		if (!toBeClassified.isInputScaled() || toBeClassified.isSparse() || toBeClassified.hasBinaryInput()) {
+			presentInput(toBeClassified);
+			return getProbVectorOfPresentedInput();
+		}
+		return getProbVector(toBeClassified.getScaledInput());
+	}
+
+	/**
+	 * Return the conditional probabilities P( output class | input ) for the
+	 * input last presented to art_a
+	 * 
+	 * @return a vector of conditional probabilities
+	 */
+	private double[] getProbVectorOfPresentedInput() {
 		int J = art_a.findCategory();
 		double result[] = new double[this.outputDim];
 		if (J == -1) {
+			if (metrics != null) {
+				metrics.unmatched();
+			}
 			Arrays.fill(result, 1.0 / this.outputDim);
 		} else {
 			System.arraycopy(mapField.getw_ab(J).v, 0, result, 0, this.outputDim);
@@ -270,6 +693,648 @@ public class FAMR implements Serializable {
 		return this.epochs;
 	}
 
+	/**
+	 * Sets a per-attribute scaler, which is then used instead of iMin and iMax
+	 * for training and classification
+	 * 
+	 * @param scaler
+	 *            the fitted scaler; null for the iMin/iMax scaling
+	 */
+	public void setScaler(Scaler scaler) {
+		this.scaler = scaler;
+	}
+
+	/**
+	 * @return the per-attribute scaler; null if iMin and iMax are used
+	 */
+	public Scaler getScaler() {
+		return scaler;
+	}
+
+	/**
+	 * Sets the number of epochs used by the next calls of train, e.g. when an
+	 * existing network continues training on new data
+	 * 
+	 * @param epochs
+	 *            how many iterations over the training set
+	 */
+	public void setEpochs(int epochs) {
+		this.epochs = epochs;
+	}
+
+	/**
+	 * Checks whether this network can continue training with the given
+	 * parameters, i.e. whether they are the ones it was created with
+	 * 
+	 * @param rho_init_a
+	 *            baseline vigilance parameter
+	 * @param beta_a
+	 *            used for category learning
+	 * @param rho_ab
+	 *            mapfield threshold
+	 * @param iMin
+	 *            minimum input value
+	 * @param iMax
+	 *            maximum output value
+	 * @param outputDim
+	 *            number of classes
+	 * @throws IllegalArgumentException
+	 *             describing the first mismatch
+	 */
+	public void checkCompatible(double rho_init_a, double beta_a, double rho_ab, double iMin, double iMax,
+			int outputDim) {
+		checkSame("rho_init_a", this.rho_init_a, rho_init_a);
+		checkSame("beta_a", this.beta_a, beta_a);
+		checkSame("rho_ab", this.rho_ab, rho_ab);
+		checkSame("iMin", this.iMin, iMin);
+		checkSame("iMax", this.iMax, iMax);
+		checkSame("outputDim", this.outputDim, outputDim);
+	}
+
+	private static void checkSame(String name, double expected, double actual) {
+		if (expected != actual) {
+			throw new IllegalArgumentException(
+					"The network was trained with " + name + "= " + expected + ", but " + actual + " was given");
+		}
+	}
+
+	/**
+	 * @return the baseline vigilance parameter
+	 */
+	public double getRhoInitA() {
+		return rho_init_a;
+	}
+
+	/**
+	 * @return the learning rate of art_a
+	 */
+	public double getBetaA() {
+		return beta_a;
+	}
+
+	/**
+	 * @return the mapfield threshold
+	 */
+	public double getRhoAB() {
+		return rho_ab;
+	}
+
+	/**
+	 * @return the minimum input value
+	 */
+	public double getIMin() {
+		return iMin;
+	}
+
+	/**
+	 * @return the maximum input value
+	 */
+	public double getIMax() {
+		return iMax;
+	}
+
+	/**
+	 * @return the number of classes
+	 */
+	public int getOutputDim() {
+		return outputDim;
+	}
+
+	/**
+	 * @param tieBreak
+	 *            which input category wins among the ones with the same
+	 *            largest choice value
+	 */
+	public void setTieBreak(TieBreak tieBreak) {
+		art_a.setTieBreak(tieBreak);
+	}
+
+	/**
+	 * @return which input category wins among the ones with the same largest
+	 *         choice value
+	 */
+	public TieBreak getTieBreak() {
+		return art_a.getTieBreak();
+	}
+
+	/**
+	 * @return where the category weights and the mapfield rows are kept
+	 */
+	public Storage getStorage() {
+		return art_a.getStorage();
+	}
+
+	/**
+	 * @return the number of bytes held outside of the Java heap by the
+	 *         category weights and the mapfield rows
+	 */
+	public long getNativeMemory() {
+		return art_a.getNativeMemory() + mapField.getNativeMemory();
+	}
+
+	/**
+	 * Frees the memory of the categories, right away for the DIRECT storage.
+	 * The network must not be used afterwards.
+	 */
+	public void release() {
+		art_a.release();
+		mapField.release();
+	}
+
+	/**
+	 * Sets the state which is not held by art_a and mapField, for a network
+	 * read by ModelFormat
+	 * 
+	 * @param global_n_pairs
+	 *            the historical number of processed pairs
+	 * @param scaler
+	 *            the per-attribute scaler; null for the iMin/iMax scaling
+	 */
+	void restore(int global_n_pairs, Scaler scaler) {
+		this.global_n_pairs = global_n_pairs;
+		this.scaler = scaler;
+	}
+
+	/**
+	 * Makes train write a checkpoint to the journal whenever the given
+	 * interval has passed since the previous one, in the middle of an epoch
+	 * if needed
+	 * 
+	 * @param journal
+	 *            the journal; null to stop the periodic checkpoints
+	 * @param intervalMillis
+	 *            the time between two checkpoints, in milliseconds
+	 */
+	public void setCheckpointJournal(CheckpointJournal journal, long intervalMillis) {
+		this.journal = journal;
+		this.checkpointInterval = intervalMillis * 1000000L;
+		this.nextCheckpoint = System.nanoTime() + checkpointInterval;
+	}
+
+	private void checkpoint() {
+		try {
+			journal.checkpoint(this);
+		} catch (IOException e) {
+			throw new RuntimeException("In checkpoint: " + e.getMessage(), e);
+		}
+		nextCheckpoint = System.nanoTime() + checkpointInterval;
+	}
+
+	/**
+	 * Makes train record the outcome of every pattern in a trace
+	 * 
+	 * @param trace
+	 *            the trace; null to stop recording. It is not closed by the
+	 *            network.
+	 */
+	public void setTrainingTrace(TrainingTrace trace) {
+		this.trace = trace;
+	}
+
+	public TrainingTrace getTrainingTrace() {
+		return trace;
+	}
+
+	/**
+	 * Makes the network record its training and classification metrics
+	 * 
+	 * @param metrics
+	 *            the metrics; null to stop recording
+	 */
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+		if (metrics != null && art_a != null) {
+			metrics.setCategories(art_a.numCategories());
+		}
+	}
+
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Makes train report its progress
+	 * 
+	 * @param listener
+	 *            called every interval pairs and at the end of every epoch,
+	 *            from the training thread; wrap it in an
+	 *            AsyncTrainingListener so that it can not slow training down.
+	 *            null to stop reporting.
+	 * @param interval
+	 *            the number of pairs between two progress calls; 0 for the
+	 *            epoch ends only
+	 */
+	public void setTrainingListener(TrainingListener listener, long interval) {
+		if (interval < 0) {
+			throw new IllegalArgumentException("The progress interval should not be negative");
+		}
+		this.listener = listener;
+		this.listenerInterval = interval;
+	}
+
+	public TrainingListener getTrainingListener() {
+		return listener;
+	}
+
+	/**
+	 * Turns the tracking of the centroids of the input categories on or off;
+	 * it is off by default, since classification does not use them. It must
+	 * be turned on before training, e.g. to read the centroids through
+	 * getArt_a().giveCentroid.
+	 * 
+	 * @param trackCentroids
+	 *            whether training maintains the centroids
+	 */
+	public void setCentroidTracking(boolean trackCentroids) {
+		art_a.setCentroidTracking(trackCentroids);
+	}
+
+	public boolean isCentroidTracking() {
+		return art_a.isCentroidTracking();
+	}
+
+	/**
+	 * @return the memory held by the categories
+	 */
+	public ModelMemory getMemory() {
+		return new ModelMemory(art_a, mapField);
+	}
+
+	/**
+	 * Bounds the memory of the categories, as counted by getMemory, during
+	 * training
+	 * 
+	 * @param bytes
+	 *            the most bytes the categories may hold; 0 for no cap
+	 * @param action
+	 *            what training does when one more category would not fit
+	 */
+	public void setMemoryCap(long bytes, MemoryCapAction action) {
+		if (bytes < 0) {
+			throw new IllegalArgumentException("The memory cap should not be negative");
+		}
+		if (action == null) {
+			throw new IllegalArgumentException("The memory cap action should not be null");
+		}
+		this.memoryCap = bytes;
+		this.capAction = action;
+		this.capReached = false;
+	}
+
+	public long getMemoryCap() {
+		return memoryCap;
+	}
+
+	public MemoryCapAction getMemoryCapAction() {
+		return capAction;
+	}
+
+	/**
+	 * @return whether training reached the memory cap since it was set
+	 */
+	public boolean isMemoryCapReached() {
+		return capReached;
+	}
+
+	/**
+	 * @return whether one more category fits in the memory cap; the first
+	 *         time it does not, the cap is marked as reached
+	 */
+	private boolean fitsCategory() {
+		ModelMemory memory = getMemory();
+		if (memory.getTotalBytes() + memory.getBytesPerCategory() <= memoryCap) {
+			return true;
+		}
+		if (!capReached) {
+			capReached = true;
+			Logger.log(LogLevel.WARN, "The memory cap of " + memoryCap + " bytes is reached with "
+					+ memory.getCategories() + " categories; " + capAction);
+		}
+		return false;
+	}
+
+	/**
+	 * Bounds the number of categories during training, with the default
+	 * grace period of DEFAULT_EVICTION_GRACE learned pairs
+	 * 
+	 * @param max
+	 *            the most categories; 0 for no budget
+	 * @param policy
+	 *            which category is removed
+	 */
+	public void setCategoryBudget(int max, EvictionPolicy policy) {
+		setCategoryBudget(max, policy, DEFAULT_EVICTION_GRACE);
+	}
+
+	/**
+	 * Bounds the number of categories during training: once there are max
+	 * categories, the creation of a new one first removes the category
+	 * chosen by the policy, so that the memory and the search time of the
+	 * network stay constant on an unbounded stream. A category created fewer
+	 * than grace learned pairs ago had no time yet to grow in size or
+	 * relevance, so it is not removed; if all the categories are that young,
+	 * the one created first is. The recency of the categories is saved with
+	 * the network by ModelFormat and CheckpointJournal; the budget itself is
+	 * not, and has to be set again after loading.
+	 * 
+	 * @param max
+	 *            the most categories; 0 for no budget
+	 * @param policy
+	 *            which category is removed
+	 * @param grace
+	 *            the number of pairs learned by the network during which a
+	 *            new category is kept; 0 for none
+	 */
+	public void setCategoryBudget(int max, EvictionPolicy policy, int grace) {
+		if (max < 0) {
+			throw new IllegalArgumentException("The category budget should not be negative");
+		}
+		if (policy == null) {
+			throw new IllegalArgumentException("The eviction policy should not be null");
+		}
+		if (grace < 0) {
+			throw new IllegalArgumentException("The eviction grace period should not be negative");
+		}
+		this.categoryBudget = max;
+		this.evictionPolicy = policy;
+		this.evictionGrace = grace;
+	}
+
+	public int getCategoryBudget() {
+		return categoryBudget;
+	}
+
+	public EvictionPolicy getEvictionPolicy() {
+		return evictionPolicy;
+	}
+
+	public int getEvictionGrace() {
+		return evictionGrace;
+	}
+
+	/**
+	 * @return the number of categories removed to keep within the budget
+	 *         since the network was built or loaded
+	 */
+	public long getEvictionCount() {
+		return evictions;
+	}
+
+	/**
+	 * Marks category J as the winner of the current pair
+	 * 
+	 * @param created
+	 *            whether J was created for the pair
+	 */
+	private void won(int J, boolean created) {
+		if (J >= lastWon.length) {
+			lastWon = Arrays.copyOf(lastWon, Math.max(2 * lastWon.length, J + 1));
+			bornAt = Arrays.copyOf(bornAt, lastWon.length);
+		}
+		lastWon[J] = ++clock;
+		if (created) {
+			bornAt[J] = clock;
+		}
+	}
+
+	/**
+	 * @return the number of pairs learned under a category budget; 0 if no
+	 *         recency was recorded
+	 */
+	long getClock() {
+		return clock;
+	}
+
+	/**
+	 * @param j
+	 *            the category index
+	 * @return the clock of the last pair won by category j; 0 if not seen
+	 */
+	long getLastWon(int j) {
+		return j < lastWon.length ? lastWon[j] : 0;
+	}
+
+	/**
+	 * @param j
+	 *            the category index
+	 * @return the clock of the creation of category j; 0 if not seen
+	 */
+	long getBornAt(int j) {
+		return j < bornAt.length ? bornAt[j] : 0;
+	}
+
+	/**
+	 * Sets the recency of category j, as saved by ModelFormat or
+	 * CheckpointJournal
+	 * 
+	 * @param j
+	 *            the category index
+	 * @param lastWon
+	 *            the clock of the last pair won by the category
+	 * @param bornAt
+	 *            the clock of its creation
+	 */
+	void restoreRecency(int j, long lastWon, long bornAt) {
+		if (j >= this.lastWon.length) {
+			this.lastWon = Arrays.copyOf(this.lastWon, Math.max(2 * this.lastWon.length, j + 1));
+			this.bornAt = Arrays.copyOf(this.bornAt, this.lastWon.length);
+		}
+		this.lastWon[j] = lastWon;
+		this.bornAt[j] = bornAt;
+	}
+
+	/**
+	 * @param clock
+	 *            the number of pairs learned under a category budget, as saved
+	 *            by ModelFormat or CheckpointJournal
+	 */
+	void restoreClock(long clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * Removes the category chosen by the eviction policy; the last category
+	 * takes its index
+	 */
+	private void evict() {
+		removeCategory(selectVictim());
+		evictions++;
+	}
+
+	/**
+	 * Removes input category j and its map field row in constant time; the
+	 * last category takes its index
+	 */
+	void removeCategory(int j) {
+		int last = art_a.numCategories() - 1;
+		art_a.removeCategory(j);
+		mapField.removeRow(j);
+		if (last < lastWon.length) {
+			lastWon[j] = lastWon[last];
+			lastWon[last] = 0;
+			bornAt[j] = bornAt[last];
+			bornAt[last] = 0;
+		} else if (j < lastWon.length) {
+			lastWon[j] = 0;
+			bornAt[j] = 0;
+		}
+		if (j < last) {
+			// the index now holds the former last category
+			touchCategory(j);
+		}
+	}
+
+	/**
+	 * Records that input category j was changed outside of trainPair, so
+	 * that the next checkpoint writes it
+	 */
+	void touchCategory(int j) {
+		if (learnedCategories != null) {
+			learnedCategories.set(j);
+		}
+	}
+
+	/**
+	 * @return the category to be removed under the eviction policy, among
+	 *         the ones past their grace period, the lowest index among
+	 *         equals; if all the categories are in their grace period, the
+	 *         one created first
+	 */
+	private int selectVictim() {
+		int n = art_a.numCategories();
+		int victim = -1;
+		double lowest = Double.POSITIVE_INFINITY;
+		int firstBorn = 0;
+		for (int j = 0; j < n; j++) {
+			if (j < bornAt.length && bornAt[j] > 0 && clock - bornAt[j] < evictionGrace) {
+				// otherwise the newest category, the smallest and least
+				// relevant, would be replaced again and again
+				if (bornAt[j] < bornAt[firstBorn]) {
+					firstBorn = j;
+				}
+				continue;
+			}
+			double key;
+			switch (evictionPolicy) {
+			case SMALLEST_CATEGORY:
+				key = art_a.getCategorySize(j);
+				break;
+			case LOWEST_RELEVANCE:
+				key = mapField.getRelevance(j);
+				break;
+			default:
+				key = j < lastWon.length ? lastWon[j] : 0;
+			}
+			if (key < lowest) {
+				lowest = key;
+				victim = j;
+			}
+		}
+		return victim >= 0 ? victim : firstBorn;
+	}
+
+	private void startListening(long totalPairs) {
+		listenerStart = System.nanoTime();
+		listenerPairs = 0;
+		listenerTotal = totalPairs;
+		nextProgress = listenerInterval == 0 ? -1 : listenerInterval;
+	}
+
+	private void notifyProgress(int epoch, long rejected) {
+		nextProgress += listenerInterval;
+		long elapsed = System.nanoTime() - listenerStart;
+		listener.progress(epoch, listenerPairs, listenerTotal, art_a.numCategories(), rejected, elapsed,
+				throughput(elapsed));
+	}
+
+	private void notifyEpochEnd(int epoch, long rejected) {
+		long elapsed = System.nanoTime() - listenerStart;
+		listener.epochEnd(epoch, listenerPairs, listenerTotal, art_a.numCategories(), rejected, elapsed,
+				throughput(elapsed));
+	}
+
+	private double throughput(long elapsedNanos) {
+		return elapsedNanos <= 0 ? 0 : listenerPairs * 1e9 / elapsedNanos;
+	}
+
+	/**
+	 * findCategory, timing the activation and the vigilance test apart
+	 */
+	private int timedFindCategory() {
+		long start = System.nanoTime();
+		art_a.computeT();
+		long activated = System.nanoTime();
+		int J = art_a.selectCategory();
+		long end = System.nanoTime();
+		metrics.activation(activated - start);
+		metrics.vigilance(end - activated);
+		return J;
+	}
+
+	/**
+	 * mapField.accept, timed as part of the vigilance test
+	 */
+	private boolean timedAccept(int J, int K) {
+		long start = System.nanoTime();
+		boolean accepted = mapField.accept(J, K);
+		metrics.vigilance(System.nanoTime() - start);
+		return accepted;
+	}
+
+	private void record(long index, int J, int resets, int flags) {
+		try {
+			trace.record(index, J, resets, flags, art_a.getRho());
+		} catch (IOException e) {
+			throw new RuntimeException("In record: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Starts recording which categories are learned, for CheckpointJournal
+	 */
+	void trackLearnedCategories() {
+		learnedCategories = new BitSet();
+	}
+
+	/**
+	 * @return the categories learned since the previous call, or since
+	 *         trackLearnedCategories; null if they are not tracked
+	 */
+	BitSet takeLearnedCategories() {
+		BitSet result = learnedCategories;
+		if (result != null) {
+			learnedCategories = new BitSet();
+		}
+		return result;
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		ModelFormat.write(this, out);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException {
+		FAMR stored = ModelFormat.read(in);
+		this.art_a = stored.art_a;
+		this.art_b_classification = stored.art_b_classification;
+		this.mapField = stored.mapField;
+		this.global_n_pairs = stored.global_n_pairs;
+		this.rho_init_a = stored.rho_init_a;
+		this.beta_a = stored.beta_a;
+		this.rho_ab = stored.rho_ab;
+		this.epochs = stored.epochs;
+		this.iMin = stored.iMin;
+		this.iMax = stored.iMax;
+		this.outputDim = stored.outputDim;
+		this.scaler = stored.scaler;
+		// the transient defaults are not set by deserialization
+		this.capAction = stored.capAction;
+		this.evictionPolicy = stored.evictionPolicy;
+		this.evictionGrace = stored.evictionGrace;
+		this.lastWon = stored.lastWon;
+		this.bornAt = stored.bornAt;
+		this.clock = stored.clock;
+	}
+
 	/**
 	 * @return Returns the global_n_pairs.
 	 */
@@ -301,6 +1366,40 @@ public class FAMR implements Serializable {
 		return (double) correctlyClassified / patterns.size();
 	}
 
+	/**
+	 * Computes the accuracy for the patterns of a source, read in chunks of at
+	 * most chunkSize patterns
+	 * 
+	 * @param source
+	 *            the test patterns, scaled like the training ones
+	 * @param chunkSize
+	 *            the number of patterns read at a time
+	 * @return percentage of correctly classified patterns
+	 * @throws IOException
+	 *             if reading the source fails
+	 */
+	public double computeAccuracy(PatternSource source, int chunkSize) throws IOException {
+		Pattern[] chunk = new Pattern[chunkSize];
+		long total = 0;
+		long correctlyClassified = 0;
+		source.rewind();
+		int count;
+		while ((count = source.read(chunk)) > 0) {
+			for (int p = 0; p < count; p++) {
+				Pattern pattern = chunk[p];
+				chunk[p] = null;
+				if (scaler == null) {
+					pattern.scaleInput(iMin, iMax);
+				}
+				if (correctlyClassifiesPattern(pattern)) {
+					++correctlyClassified;
+				}
+			}
+			total += count;
+		}
+		return (double) correctlyClassified / total;
+	}
+
 	/**
 	 * Return the number of input categories
 	 * 
@@ -0,0 +1,204 @@
+package ro.unitbv.pythia;
+
+import java.util.Arrays;
+
+/**
+ * VectorStore keeping values of [0, 1] in 16-bit unsigned fixed point, one
+ * after another in a char array on the Java heap: a value v is stored as
+ * round(v * ONE). A category takes a quarter of the memory of the double
+ * storage, so four times as many categories fit in the same cache.
+ *
+ * Besides the double kernels of VectorStore, which quantize their input on
+ * every call, the store has integer kernels working on an input quantized
+ * once (see quantize); their sums are exact, in units of 1/ONE.
+ *
+ * @author Lucian Sasu
+ */
+public class FixedPointVectorStore implements VectorStore {
+
+	private static final long serialVersionUID = 1L;
+	/** the fixed point representation of 1.0 */
+	public static final int ONE = 0xffff;
+
+	private final int length;
+	private int size = 0;
+	private char[] values = new char[0];
+
+	/**
+	 * @param length the length of every vector
+	 */
+	public FixedPointVectorStore(int length) {
+		this.length = length;
+	}
+
+	/**
+	 * @param value a value between 0 and 1
+	 * @return its fixed point representation
+	 */
+	public static char quantize(double value) {
+		if (!(value >= 0 && value <= 1)) {
+			throw new RuntimeException("In quantize: " + value + " is not between 0 and 1");
+		}
+		return (char) Math.round(value * ONE);
+	}
+
+	/**
+	 * Quantizes a whole vector
+	 * @param values values between 0 and 1
+	 * @param dest receives the fixed point values; at least as long as values
+	 * @return the sum of the fixed point values
+	 */
+	public static long quantize(double[] values, char[] dest) {
+		long sum = 0;
+		for (int i = 0; i < values.length; i++) {
+			dest[i] = quantize(values[i]);
+			sum += dest[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * @param beta a learning rate between 0 and 1
+	 * @return its fixed point representation, as used by the integer learn
+	 */
+	public static int quantizeRate(double beta) {
+		return quantize(beta);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public void add(double[] vector) {
+		if (vector.length != length) {
+			throw new RuntimeException("In add: size mismatch, " + vector.length + " instead of " + length);
+		}
+		if ((size + 1) * length > values.length) {
+			values = Arrays.copyOf(values, Math.max(4, 2 * size) * length);
+		}
+		int base = size * length;
+		for (int i = 0; i < length; i++) {
+			values[base + i] = quantize(vector[i]);
+		}
+		size++;
+	}
+
+	public void truncate(int size) {
+		if (size < 0 || size > this.size) {
+			throw new RuntimeException("In truncate: can not keep " + size + " of " + this.size + " vectors");
+		}
+		this.size = size;
+	}
+
+	public void move(int from, int to) {
+		System.arraycopy(values, from * length, values, to * length, length);
+	}
+
+	public double get(int row, int i) {
+		return values[row * length + i] / (double) ONE;
+	}
+
+	public void set(int row, int i, double value) {
+		values[row * length + i] = quantize(value);
+	}
+
+	public void read(int row, double[] dest) {
+		int base = row * length;
+		for (int i = 0; i < length; i++) {
+			dest[i] = values[base + i] / (double) ONE;
+		}
+	}
+
+	public double minSum(int row, double[] input) {
+		int base = row * length;
+		long sum = 0;
+		for (int i = 0; i < length; i++) {
+			sum += Math.min(quantize(input[i]), values[base + i]);
+		}
+		return sum / (double) ONE;
+	}
+
+	/**
+	 * Integer form of minSum
+	 * @param row the vector index
+	 * @param input the quantized complement-coded input
+	 * @return the sum of the element-wise minimum, in units of 1/ONE
+	 */
+	public long minSum(int row, char[] input) {
+		int base = row * length;
+		long sum = 0;
+		for (int i = 0; i < length; i++) {
+			sum += Math.min(input[i], values[base + i]);
+		}
+		return sum;
+	}
+
+	public double sum(int row, int from, int to) {
+		return quantizedSum(row, from, to) / (double) ONE;
+	}
+
+	/**
+	 * @param row the vector index
+	 * @param from the first position, inclusive
+	 * @param to the last position, exclusive
+	 * @return the sum of the values between from and to, in units of 1/ONE
+	 */
+	public long quantizedSum(int row, int from, int to) {
+		int base = row * length;
+		long sum = 0;
+		for (int i = from; i < to; i++) {
+			sum += values[base + i];
+		}
+		return sum;
+	}
+
+	public void learn(int row, double[] input, double beta) {
+		char[] quantized = new char[length];
+		for (int i = 0; i < length; i++) {
+			quantized[i] = quantize(input[i]);
+		}
+		learn(row, quantized, quantizeRate(beta));
+	}
+
+	/**
+	 * Integer form of learn, rounding to the nearest fixed point value
+	 * @param row the vector index
+	 * @param input the quantized complement-coded input
+	 * @param beta the quantized learning rate, see quantizeRate
+	 */
+	public void learn(int row, char[] input, int beta) {
+		int base = row * length;
+		if (beta == ONE) {
+			// fast learning: w = min(input, w)
+			for (int i = 0; i < length; i++) {
+				values[base + i] = (char) Math.min(input[i], values[base + i]);
+			}
+			return;
+		}
+		for (int i = 0; i < length; i++) {
+			long weight = values[base + i];
+			long min = Math.min(input[i], weight);
+			values[base + i] = (char) ((beta * min + (ONE - beta) * weight + ONE / 2) / ONE);
+		}
+	}
+
+	public FixedPointVectorStore copy() {
+		FixedPointVectorStore result = new FixedPointVectorStore(length);
+		result.size = size;
+		result.values = Arrays.copyOf(values, size * length);
+		return result;
+	}
+
+	public long nativeBytes() {
+		return 0;
+	}
+
+	public void release() {
+		size = 0;
+		values = new char[0];
+	}
+}
@@ -0,0 +1,119 @@
+package ro.unitbv.pythia;
+
+import java.util.Arrays;
+
+/**
+ * VectorStore keeping the vectors in single precision, one after another in
+ * a float array on the Java heap. It halves the memory of the categories and
+ * the bandwidth of the choice function; the values are rounded to float when
+ * stored, and the inputs are rounded to float inside the kernels, so that the
+ * comparisons are made at the same precision. Sums are accumulated in double.
+ *
+ * @author Lucian Sasu
+ */
+public class FloatVectorStore implements VectorStore {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int length;
+	private int size = 0;
+	private float[] values = new float[0];
+
+	/**
+	 * @param length the length of every vector
+	 */
+	public FloatVectorStore(int length) {
+		this.length = length;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public void add(double[] vector) {
+		if (vector.length != length) {
+			throw new RuntimeException("In add: size mismatch, " + vector.length + " instead of " + length);
+		}
+		if ((size + 1) * length > values.length) {
+			values = Arrays.copyOf(values, Math.max(4, 2 * size) * length);
+		}
+		int base = size * length;
+		for (int i = 0; i < length; i++) {
+			values[base + i] = (float) vector[i];
+		}
+		size++;
+	}
+
+	public void truncate(int size) {
+		if (size < 0 || size > this.size) {
+			throw new RuntimeException("In truncate: can not keep " + size + " of " + this.size + " vectors");
+		}
+		this.size = size;
+	}
+
+	public void move(int from, int to) {
+		System.arraycopy(values, from * length, values, to * length, length);
+	}
+
+	public double get(int row, int i) {
+		return values[row * length + i];
+	}
+
+	public void set(int row, int i, double value) {
+		values[row * length + i] = (float) value;
+	}
+
+	public void read(int row, double[] dest) {
+		int base = row * length;
+		for (int i = 0; i < length; i++) {
+			dest[i] = values[base + i];
+		}
+	}
+
+	public double minSum(int row, double[] input) {
+		int base = row * length;
+		double sum = 0.0;
+		for (int i = 0; i < length; i++) {
+			sum += Math.min((float) input[i], values[base + i]);
+		}
+		return sum;
+	}
+
+	public double sum(int row, int from, int to) {
+		int base = row * length;
+		double sum = 0.0;
+		for (int i = from; i < to; i++) {
+			sum += values[base + i];
+		}
+		return sum;
+	}
+
+	public void learn(int row, double[] input, double beta) {
+		int base = row * length;
+		float b = (float) beta;
+		for (int i = 0; i < length; i++) {
+			float weight = values[base + i];
+			values[base + i] = b * Math.min((float) input[i], weight) + (1 - b) * weight;
+		}
+	}
+
+	public FloatVectorStore copy() {
+		FloatVectorStore result = new FloatVectorStore(length);
+		result.size = size;
+		result.values = Arrays.copyOf(values, size * length);
+		return result;
+	}
+
+	public long nativeBytes() {
+		return 0;
+	}
+
+	public void release() {
+		size = 0;
+		values = new float[0];
+	}
+}
@@ -1,7 +1,8 @@
 package ro.unitbv.pythia;
 
 import java.io.Serializable;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -16,26 +17,89 @@ import java.util.List;
 /**
  * This is a standard implementation of the Fuzzy ART model, as introduced by
  * Gail Carpenter et al.
+ *
+ * Inputs can be presented either densely (newInput) or sparsely
+ * (newSparseInput). For sparse inputs the complement-coded vector is never
+ * built: the choice and vigilance sums only visit the non-zero coordinates and
+ * use the per-category sum of the complement half of the weights for all the
+ * other ones. With fast learning (beta = 1) the first half of a weight learned
+ * from sparse inputs is non-zero only on the positions of those inputs, so
+ * learning visits these positions and the ones of the input, and updates the
+ * norms with the differences.
+ *
+ * An input may also carry a block of binary (0/1) values, packed in a long[]
+ * bitset (newBinaryInput). With fast learning (beta = 1) the matching weights
+ * stay binary, so they are packed as well and the fuzzy and reduces to a
+ * bitwise and followed by a population count.
+ *
+ * The category weights are kept in a VectorStore, on the Java heap or in
+ * direct buffers, depending on the Storage given to the constructor. With the
+ * FIXED16 storage the input is quantized once, and the choice and vigilance
+ * sums are integer sums in units of 1/FixedPointVectorStore.ONE; sparse inputs
+ * are then expanded to dense ones, which the integer kernels need.
+ *
+ * When several categories have the same largest choice value, the winner is
+ * chosen by the TieBreak of the network (by default the oldest category).
+ *
+ * The centroid of every category, the mean of the inputs it learned, is
+ * tracked by default, for clustering and regression; classification never
+ * reads it, so FAMR turns the tracking off (setCentroidTracking).
  */
 public class FuzzyArt implements Serializable, Cloneable {
 	/**
-	 * 
+	 *
 	 */
-	private static final long serialVersionUID = 2L;
+	private static final long serialVersionUID = 7L;
 
 	private final double rho_init;
 	// choice parameter: a small positive value
-	private static final double ALPHA = 0.0001;
+	static final double ALPHA = 0.0001;
 	private static final double DELTA = 0.0001; // a small positive value
+	// ALPHA in units of 1/FixedPointVectorStore.ONE
+	static final double FIXED_ALPHA = ALPHA * FixedPointVectorStore.ONE;
 	private final double beta;
-	private List<FuzzyVector> w = new LinkedList<FuzzyVector>();
-	private FuzzyVector normalizedInput = null;
-	private FuzzyVector unNormalizedInput = null;
+	private final Storage storage;
+	// complement-coded weights, one per category; created with the first category
+	private VectorStore w = null;
+	private double[] norms = new double[0]; // |w[j]|, per category
+	private double[] complementNorms = new double[0]; // sum of the complement half of w[j]
+	// complement-coded form of the current dense input: the first half is the
+	// scaled input itself
+	private double[] normalizedInput = null;
+	private double[] inputBuffer = null; // owned buffer, reused by newInput
+	private double inputNorm = 0;
+	// quantized form of normalizedInput and its norm; used with Storage.FIXED16
+	private char[] quantizedInput = null;
+	private long quantizedInputNorm = 0;
+	// sparse form of the current input; used when sparseInput is true
+	private boolean sparseInput = false;
+	private int inputDimension = 0;
+	private int[] sparseIndices = null;
+	private double[] sparseValues = null;
+	// binary block of the current input; binaryDimension is 0 when missing
+	private int binaryDimension = 0;
+	private long[] binaryInput = null;
+	private long[] binaryComplement = null;
+	// packed binary weights: the bits of the input and of its complement
+	private List<long[]> binaryWeights = new ArrayList<long[]>();
+	private List<long[]> binaryComplementWeights = new ArrayList<long[]>();
 	private double rho = 0;
-	private List<Double> T = new LinkedList<Double>();
-	private List<Boolean> eligible = new LinkedList<Boolean>();
-	private List<FuzzyVector> centroids = new LinkedList<FuzzyVector>();
-	private List<Integer> category_size = new LinkedList<Integer>(); // number of representants per category
+	private double[] T = new double[0];
+	private double[] matchNorms = new double[0]; // |I and w[j]|, computed along with T
+	private boolean[] eligible = new boolean[0];
+	// Storage.FIXED16: |w[j]| and |I and w[j]|, in units of 1/FixedPointVectorStore.ONE
+	private long[] quantizedNorms = new long[0];
+	private long[] quantizedMatches = new long[0];
+	private TieBreak tieBreak = TieBreak.LOWEST_INDEX;
+	private boolean trackCentroids = true;
+	private List<FuzzyVector> centroids = new ArrayList<FuzzyVector>(); // empty when not tracked
+	// number of representants per category; an int array, so that learning boxes nothing
+	private int[] category_size = new int[0];
+	// fast learning from sparse inputs: the positions of the non-zero values of
+	// the first half of w[j], in increasing order, in the first supportSizes[j]
+	// slots; null while they are not known
+	private int[][] supports = new int[0][];
+	private int[] supportSizes = new int[0];
 
 	/**
 	 * @param rho_init
@@ -44,8 +108,21 @@ public class FuzzyArt implements Serializable, Cloneable {
 	 *            used during learning
 	 */
 	public FuzzyArt(double rho_init, double beta) {
+		this(rho_init, beta, Storage.HEAP);
+	}
+
+	/**
+	 * @param rho_init
+	 *            the baseline rho value
+	 * @param beta
+	 *            used during learning
+	 * @param storage
+	 *            where the category weights are kept
+	 */
+	public FuzzyArt(double rho_init, double beta, Storage storage) {
 		this.rho = this.rho_init = rho_init;
 		this.beta = beta;
+		this.storage = storage;
 	}
 
 	/**
@@ -55,20 +132,174 @@ public class FuzzyArt implements Serializable, Cloneable {
 	 */
 	void newInput(double[] scaledInput) {
 		Util.checkScaled(scaledInput, "In newInput: the scaledInput vector is not between 0 and 1.");
-		unNormalizedInput = new FuzzyVector(scaledInput);
-		normalizedInput = unNormalizedInput.normalize();
-		for (int i = 0; i < w.size(); i++) {
-			eligible.set(i, true);
+		int dimension = scaledInput.length;
+		if (inputBuffer == null || inputBuffer.length != 2 * dimension) {
+			inputBuffer = new double[2 * dimension];
+		}
+		// complement coding (Carpenter 1992)
+		for (int i = 0; i < dimension; i++) {
+			inputBuffer[i] = scaledInput[i];
+			inputBuffer[dimension + i] = 1 - scaledInput[i];
+		}
+		newNormalizedInput(inputBuffer);
+	}
+
+	/**
+	 * Take a new input which is already scaled and complement-coded, e.g. by
+	 * a fused scaling kernel. The array is used in place, so it must not be
+	 * changed while the current input is processed.
+	 * @param complementCoded the scaled input followed by its complement
+	 */
+	void newNormalizedInput(double[] complementCoded) {
+		sparseInput = false;
+		sparseIndices = null;
+		sparseValues = null;
+		inputDimension = complementCoded.length / 2;
+		normalizedInput = complementCoded;
+		double norm = 0.0;
+		for (int i = 0; i < complementCoded.length; i++) {
+			norm += complementCoded[i];
+		}
+		inputNorm = norm;
+		if (storage == Storage.FIXED16) {
+			if (quantizedInput == null || quantizedInput.length != complementCoded.length) {
+				quantizedInput = new char[complementCoded.length];
+			}
+			quantizedInputNorm = FixedPointVectorStore.quantize(complementCoded, quantizedInput);
+		}
+		binaryDimension = 0;
+		Arrays.fill(eligible, 0, numCategories(), true);
+	}
+
+	/**
+	 * Take a new sparse input of the network. The coordinates which are not
+	 * listed in indices are 0. No complement-coded vector is built.
+	 * @param dimension the full dimension of the (unnormalized) input
+	 * @param indices the positions of the non-zero values, in increasing order
+	 * @param scaledValues the scaled values found at the given positions; it may
+	 * be longer than indices, the extra values are ignored
+	 */
+	void newSparseInput(int dimension, int[] indices, double[] scaledValues) {
+		Util.checkScaled(scaledValues, "In newSparseInput: the scaledValues vector is not between 0 and 1.");
+		if (storage == Storage.FIXED16) {
+			// the integer kernels work on the dense complement-coded input
+			if (inputBuffer == null || inputBuffer.length != 2 * dimension) {
+				inputBuffer = new double[2 * dimension];
+			}
+			Arrays.fill(inputBuffer, 0, dimension, 0.0);
+			Arrays.fill(inputBuffer, dimension, 2 * dimension, 1.0);
+			for (int k = 0; k < indices.length; k++) {
+				inputBuffer[indices[k]] = scaledValues[k];
+				inputBuffer[dimension + indices[k]] = 1 - scaledValues[k];
+			}
+			newNormalizedInput(inputBuffer);
+			return;
+		}
+		sparseInput = true;
+		inputDimension = dimension;
+		sparseIndices = indices;
+		sparseValues = scaledValues;
+		normalizedInput = null;
+		// complement coding: sum(x) + sum(1 - x) is the input dimension
+		inputNorm = dimension;
+		binaryDimension = 0;
+		Arrays.fill(eligible, 0, numCategories(), true);
+	}
+
+	/**
+	 * Adds a block of binary values to the input given by the last call of
+	 * newInput or newSparseInput. Requires fast learning (beta = 1), so that
+	 * the weights of the binary block stay binary.
+	 * @param bits the binary values, packed 64 per long, lowest bit first
+	 * @param dimension the number of binary values
+	 */
+	void newBinaryInput(long[] bits, int dimension) {
+		if (beta != 1) {
+			throw new RuntimeException("In newBinaryInput: the bit-packed kernel requires fast learning (beta = 1)");
+		}
+		if (bits.length != Util.packedLength(dimension)) {
+			throw new RuntimeException("In newBinaryInput: " + bits.length + " words can not hold " + dimension + " bits");
+		}
+		if (numCategories() > 0 && binaryWeights.get(0).length != bits.length) {
+			throw new RuntimeException("In newBinaryInput: size mismatch with the learned categories");
+		}
+		binaryDimension = dimension;
+		binaryInput = bits;
+		if (binaryComplement == null || binaryComplement.length != bits.length) {
+			binaryComplement = new long[bits.length];
+		}
+		for (int k = 0; k < bits.length; k++) {
+			binaryComplement[k] = ~bits[k] & Util.lastWordMask(k, dimension);
 		}
+		inputNorm += dimension;
+		quantizedInputNorm += (long) dimension * FixedPointVectorStore.ONE;
+	}
+
+	/**
+	 * Computes |I and w[j]| for the current input
+	 * @param j the category index
+	 * @return the L1 norm of the fuzzy and of the current input and w[j]
+	 */
+	private double matchNorm(int j) {
+		double sum = binaryDimension == 0 ? 0.0 : binaryMatchNorm(j);
+		if (!sparseInput) {
+			return sum + w.minSum(j, normalizedInput);
+		}
+		// the zero coordinates contribute min(0, w) + min(1, w^c) = w^c
+		sum += complementNorms[j];
+		for (int k = 0; k < sparseIndices.length; k++) {
+			int i = sparseIndices[k];
+			double x = sparseValues[k];
+			double complement = w.get(j, inputDimension + i);
+			sum += Math.min(x, w.get(j, i)) + Math.min(1 - x, complement) - complement;
+		}
+		return sum;
+	}
+
+	/**
+	 * Integer form of matchNorm, for Storage.FIXED16
+	 * @param j the category index
+	 * @return |I and w[j]|, in units of 1/FixedPointVectorStore.ONE
+	 */
+	private long quantizedMatchNorm(int j) {
+		long sum = ((FixedPointVectorStore) w).minSum(j, quantizedInput);
+		if (binaryDimension > 0) {
+			sum += (long) binaryMatchNorm(j) * FixedPointVectorStore.ONE;
+		}
+		return sum;
+	}
+
+	/**
+	 * Computes |I and w[j]| restricted to the binary block: for 0/1 values the
+	 * fuzzy and is the bitwise and, and the L1 norm is the number of set bits
+	 * @param j the category index
+	 * @return the L1 norm of the fuzzy and over the binary block
+	 */
+	private int binaryMatchNorm(int j) {
+		long[] weight = binaryWeights.get(j);
+		long[] complement = binaryComplementWeights.get(j);
+		int sum = 0;
+		for (int k = 0; k < weight.length; k++) {
+			sum += Long.bitCount(binaryInput[k] & weight[k]) + Long.bitCount(binaryComplement[k] & complement[k]);
+		}
+		return sum;
 	}
 
 	/**
 	 * Computes activation function T called by findCategory.
 	 */
-	private void computeT() {
-		for (int j = 0; j < w.size(); j++) {
-			double valueT = (normalizedInput.and(w.get(j))).norm() / (ALPHA + w.get(j).norm());
-			T.set(j, valueT);
+	void computeT() {
+		int n = numCategories();
+		if (storage == Storage.FIXED16) {
+			for (int j = 0; j < n; j++) {
+				quantizedMatches[j] = quantizedMatchNorm(j);
+				T[j] = quantizedMatches[j] / (FIXED_ALPHA + quantizedNorms[j]);
+			}
+			return;
+		}
+		for (int j = 0; j < n; j++) {
+			matchNorms[j] = matchNorm(j);
+			T[j] = matchNorms[j] / (ALPHA + norms[j]);
 		}
 	}
 
@@ -79,13 +310,26 @@ public class FuzzyArt implements Serializable, Cloneable {
 	 */
 	public int findCategory() {
 		computeT();
+		return selectCategory();
+	}
+
+	/**
+	 * The search of findCategory, over the activations of the last computeT
+	 * 
+	 * @return the index of winning category; -1 if no winner is found
+	 */
+	int selectCategory() {
+		int n = numCategories();
+		boolean fixed = storage == Storage.FIXED16;
+		// integer vigilance test: |I and w| >= ceil(rho * |I|)
+		long threshold = fixed ? (long) Math.ceil(rho * quantizedInputNorm) : 0;
 		while (true) {
 			int J = -1;
 			double TMax = -1;
-			for (int j = 0; j < w.size(); j++) {
-				if (eligible.get(j) && T.get(j) > TMax) {
+			for (int j = 0; j < n; j++) {
+				if (eligible[j] && (T[j] > TMax || (T[j] == TMax && winsTie(j, J)))) {
 					J = j;
-					TMax = T.get(j);
+					TMax = T[j];
 				}
 			}
 
@@ -93,37 +337,91 @@ public class FuzzyArt implements Serializable, Cloneable {
 				return J; // no category could be matched
 			}
 
-			FuzzyVector x_a = normalizedInput.and(w.get(J));
-			if (x_a.norm() >= rho * normalizedInput.norm()) {
+			if (fixed ? quantizedMatches[J] >= threshold : matchNorms[J] >= rho * inputNorm) {
 				return J;
 			} else {
-				eligible.set(J, false); // this category is inhibited fro the
+				eligible[J] = false; // this category is inhibited fro the
 										// current pattern
 			}
 		}
 	}
 
+	/**
+	 * @param j a category with the same choice value as J
+	 * @param J the current winner, found before j
+	 * @return true if j wins the tie
+	 */
+	private boolean winsTie(int j, int J) {
+		switch (tieBreak) {
+		case HIGHEST_INDEX:
+			return true;
+		case LARGEST_CATEGORY:
+			return category_size[j] > category_size[J];
+		default:
+			return false;
+		}
+	}
+
 	/**
 	 * Add a new category to the network
 	 */
 	public void createNewCategory() {
-		// copy the old values of w into the larger array auxW
-		w.add(normalizedInput.clone());
-		T.add(-1.0);// extend T by one element
-		eligible.add(true);// extend eligible by one element
+		int n = numCategories();
+		ensureCapacity(n);
+		double[] category = sparseInput ? densifyNormalized() : normalizedInput;
+		if (Util.min(category) < 0 || Util.max(category) > 1) {
+			throw new RuntimeException("In createNewCategory: the input is not between 0 and 1.");
+		}
+		if (w == null) {
+			w = storage.create(category.length);
+		}
+		w.add(category);
+		if (binaryDimension > 0) {
+			binaryWeights.add(binaryInput.clone());
+			binaryComplementWeights.add(binaryComplement.clone());
+		}
+		updateNorms(n);
+		supports[n] = null;
+		if (sparseInput && beta == 1 && storage != Storage.FIXED16) {
+			findSupport(n);
+		}
+		T[n] = -1.0;
+		eligible[n] = true;
 
 		/**
-		 * Initialize centroid of new category. Copy the old values of centroids
-		 * into the larger array auxW.
+		 * Initialize centroid of new category.
 		 */
 		// a new centroid value is added
-		centroids.add(unNormalizedInput.clone());
+		if (trackCentroids) {
+			centroids.add(sparseInput ? densifyUnNormalized()
+					: new FuzzyVector(Arrays.copyOf(normalizedInput, inputDimension)));
+		}
 
 		/**
 		 * Initialize category_size (number of representants). The new category
 		 * will have size 1 when created.
 		 */
-		category_size.add(1);
+		category_size[n] = 1;
+	}
+
+	/**
+	 * Grows the per-category arrays, if needed, so that category n fits
+	 * @param n the index of the category to be added
+	 */
+	private void ensureCapacity(int n) {
+		if (n == T.length) {
+			int capacity = Math.max(4, 2 * n);
+			norms = Arrays.copyOf(norms, capacity);
+			complementNorms = Arrays.copyOf(complementNorms, capacity);
+			T = Arrays.copyOf(T, capacity);
+			matchNorms = Arrays.copyOf(matchNorms, capacity);
+			eligible = Arrays.copyOf(eligible, capacity);
+			quantizedNorms = Arrays.copyOf(quantizedNorms, capacity);
+			quantizedMatches = Arrays.copyOf(quantizedMatches, capacity);
+			category_size = Arrays.copyOf(category_size, capacity);
+			supports = Arrays.copyOf(supports, capacity);
+			supportSizes = Arrays.copyOf(supportSizes, capacity);
+		}
 	}
 
 	/**
@@ -131,17 +429,224 @@ public class FuzzyArt implements Serializable, Cloneable {
 	 * @param J the index of input category for which learning occurs
 	 */
 	public void learn(int J) {
-		FuzzyVector term1 = (normalizedInput.and(w.get(J))).times(beta);
-		FuzzyVector term2 = w.get(J).times(1 - beta);
-		w.set(J, term1.sum(term2));
+		// the norms of a sparse learn are updated along with the weights
+		boolean sparseLearn = sparseInput && beta == 1 && supports[J] != null;
+		int binaryBits = sparseLearn && !binaryWeights.isEmpty() ? binaryNorm(J) : 0;
+		if (storage == Storage.FIXED16) {
+			((FixedPointVectorStore) w).learn(J, quantizedInput, FixedPointVectorStore.quantizeRate(beta));
+		} else if (!sparseInput) {
+			w.learn(J, normalizedInput, beta);
+			supports[J] = null;
+		} else if (sparseLearn) {
+			learnSparse(J);
+		} else {
+			// zero coordinates: min(0, w) = 0 and min(1, w^c) = w^c
+			int k = 0;
+			for (int i = 0; i < inputDimension; i++) {
+				double weight = w.get(J, i);
+				if (k < sparseIndices.length && sparseIndices[k] == i) {
+					double x = sparseValues[k++];
+					double complement = w.get(J, inputDimension + i);
+					w.set(J, i, beta * Math.min(x, weight) + (1 - beta) * weight);
+					w.set(J, inputDimension + i, beta * Math.min(1 - x, complement) + (1 - beta) * complement);
+				} else {
+					w.set(J, i, (1 - beta) * weight);
+				}
+			}
+		}
+		if (binaryDimension > 0) {
+			// beta = 1: w = I and w
+			long[] binaryWeight = binaryWeights.get(J);
+			long[] binaryComplementWeight = binaryComplementWeights.get(J);
+			for (int k = 0; k < binaryWeight.length; k++) {
+				binaryWeight[k] &= binaryInput[k];
+				binaryComplementWeight[k] &= binaryComplement[k];
+			}
+		}
+		if (!sparseLearn) {
+			updateNorms(J);
+			if (sparseInput && beta == 1 && storage != Storage.FIXED16) {
+				findSupport(J);
+			}
+		} else if (!binaryWeights.isEmpty()) {
+			norms[J] += binaryNorm(J) - binaryBits;
+		}
+
+		category_size[J]++; // increment number of representants
+		if (trackCentroids) {
+			learnCentroid(J);
+		}
+	}
+
+	/**
+	 * Fast learning of the current sparse input by category J, whose support
+	 * is known. Outside the input and the support both halves stay as they
+	 * are: min(0, 0) = 0 and min(1, w^c) = w^c. The coordinates of the support
+	 * missing from the input drop to 0, the ones of the input only change
+	 * their complement; the norms are updated with the differences, so the
+	 * cost is proportional to the non-zero values rather than to the
+	 * dimension.
+	 * @param J the index of input category for which learning occurs
+	 */
+	private void learnSparse(int J) {
+		int[] support = supports[J];
+		int count = supportSizes[J];
+		int kept = 0;
+		int k = 0;
+		double first = 0;
+		double second = 0;
+		for (int s = 0; s < count; s++) {
+			int i = support[s];
+			for (; k < sparseIndices.length && sparseIndices[k] < i; k++) {
+				second += learnComplement(J, sparseIndices[k], sparseValues[k]);
+			}
+			double weight = w.get(J, i);
+			double learned = 0;
+			if (k < sparseIndices.length && sparseIndices[k] == i) {
+				learned = Math.min(sparseValues[k], weight);
+				second += learnComplement(J, i, sparseValues[k]);
+				k++;
+			}
+			w.set(J, i, learned);
+			// the stored value, which a FLOAT storage rounds
+			learned = w.get(J, i);
+			first += learned - weight;
+			if (learned != 0) {
+				support[kept++] = i;
+			}
+		}
+		for (; k < sparseIndices.length; k++) {
+			second += learnComplement(J, sparseIndices[k], sparseValues[k]);
+		}
+		supportSizes[J] = kept;
+		norms[J] += first + second;
+		complementNorms[J] += second;
+	}
+
+	/**
+	 * Fast learning of the complement of the input value x at position i
+	 * @return the change of the complement weight
+	 */
+	private double learnComplement(int J, int i, double x) {
+		double complement = w.get(J, inputDimension + i);
+		double learned = Math.min(1 - x, complement);
+		w.set(J, inputDimension + i, learned);
+		return w.get(J, inputDimension + i) - complement;
+	}
 
-		category_size.set(J, category_size.get(J) + 1); // increment number of
-														// representants
+	/**
+	 * Finds the support of category J after it was created or learned from
+	 * the current sparse input with fast learning: the first half of w[J] is
+	 * then 0 outside the positions of the input
+	 * @param J the category index
+	 */
+	private void findSupport(int J) {
+		int count = 0;
+		for (int k = 0; k < sparseIndices.length; k++) {
+			count += w.get(J, sparseIndices[k]) != 0 ? 1 : 0;
+		}
+		int[] support = new int[count];
+		count = 0;
+		for (int k = 0; k < sparseIndices.length; k++) {
+			if (w.get(J, sparseIndices[k]) != 0) {
+				support[count++] = sparseIndices[k];
+			}
+		}
+		supports[J] = support;
+		supportSizes[J] = count;
+	}
 
+	/**
+	 * Moves the centroid of category J towards the current input
+	 * @param J the index of input category for which learning occurs
+	 */
+	private void learnCentroid(int J) {
 		// update centroid of node J using Kohonen's learning rule
 		// and an the idea of Lim and Harrison
-		FuzzyVector term = (unNormalizedInput.diff(centroids.get(J))).times(1. / category_size.get(J));
-		centroids.set(J, term.sum(centroids.get(J)));
+		double[] centroid = centroids.get(J).v;
+		double rate = 1. / category_size[J];
+		if (!sparseInput) {
+			// the first half of normalizedInput is the scaled input
+			double[] input = normalizedInput;
+			for (int i = 0; i < centroid.length; i++) {
+				centroid[i] += (input[i] - centroid[i]) * rate;
+			}
+		} else {
+			for (int i = 0; i < centroid.length; i++) {
+				centroid[i] -= centroid[i] * rate;
+			}
+			for (int k = 0; k < sparseIndices.length; k++) {
+				centroid[sparseIndices[k]] += sparseValues[k] * rate;
+			}
+		}
+	}
+
+	/**
+	 * Recomputes the cached norm and complement norm of w[j]
+	 * @param j the category index
+	 */
+	private void updateNorms(int j) {
+		int half = w.length() / 2;
+		double first = w.sum(j, 0, half);
+		double second = w.sum(j, half, 2 * half);
+		norms[j] = first + second;
+		complementNorms[j] = second;
+		if (!binaryWeights.isEmpty()) {
+			norms[j] += binaryNorm(j);
+		}
+		if (storage == Storage.FIXED16) {
+			updateQuantizedNorm(j);
+		}
+	}
+
+	/**
+	 * Recomputes the cached |w[j]| of the FIXED16 storage
+	 * @param j the category index
+	 */
+	private void updateQuantizedNorm(int j) {
+		long norm = ((FixedPointVectorStore) w).quantizedSum(j, 0, w.length());
+		if (!binaryWeights.isEmpty()) {
+			norm += (long) binaryNorm(j) * FixedPointVectorStore.ONE;
+		}
+		quantizedNorms[j] = norm;
+	}
+
+	/**
+	 * @param j the category index
+	 * @return the number of set bits of the packed weights of category j
+	 */
+	private int binaryNorm(int j) {
+		long[] binaryWeight = binaryWeights.get(j);
+		long[] binaryComplementWeight = binaryComplementWeights.get(j);
+		int bits = 0;
+		for (int k = 0; k < binaryWeight.length; k++) {
+			bits += Long.bitCount(binaryWeight[k]) + Long.bitCount(binaryComplementWeight[k]);
+		}
+		return bits;
+	}
+
+	/**
+	 * @return the complement-coded form of the current sparse input
+	 */
+	private double[] densifyNormalized() {
+		double[] result = new double[2 * inputDimension];
+		Arrays.fill(result, inputDimension, 2 * inputDimension, 1.0);
+		for (int k = 0; k < sparseIndices.length; k++) {
+			result[sparseIndices[k]] = sparseValues[k];
+			result[inputDimension + sparseIndices[k]] = 1 - sparseValues[k];
+		}
+		return result;
+	}
+
+	/**
+	 * @return the dense form of the current sparse input
+	 */
+	private FuzzyVector densifyUnNormalized() {
+		FuzzyVector result = new FuzzyVector(inputDimension);
+		for (int k = 0; k < sparseIndices.length; k++) {
+			result.v[sparseIndices[k]] = sparseValues[k];
+		}
+		return result;
 	}
 
 	/**
@@ -149,7 +654,11 @@ public class FuzzyArt implements Serializable, Cloneable {
 	 * @param J the index of winning category
 	 */
 	public void increaseRho(int J) {
-		rho = (normalizedInput.and(w.get(J))).norm() / normalizedInput.norm() + DELTA;
+		if (storage == Storage.FIXED16) {
+			rho = (double) quantizedMatchNorm(J) / quantizedInputNorm + DELTA;
+		} else {
+			rho = matchNorm(J) / inputNorm + DELTA;
+		}
 	}
 
 	/**
@@ -169,7 +678,7 @@ public class FuzzyArt implements Serializable, Cloneable {
 
 	/**
 	 * Returns the list of how many training patterns were associated with each input category
-	 * @return The list of how many training patterns were associated with each input category
+	 * @return The list of how many training patterns were associated with each input category, as a copy
 	 */
 	public List<Integer> giveNumberInCategories() {
 		/**
@@ -177,7 +686,19 @@ public class FuzzyArt implements Serializable, Cloneable {
 		 * function is 100% accurate only when FuzzyArt is used as a clustering
 		 * procedure (not in FuzzyArtMap)
 		 */
-		return category_size;
+		List<Integer> result = new ArrayList<Integer>(numCategories());
+		for (int j = 0; j < numCategories(); j++) {
+			result.add(category_size[j]);
+		}
+		return result;
+	}
+
+	/**
+	 * @param j the category index
+	 * @return the number of training patterns associated with category j
+	 */
+	int getCategorySize(int j) {
+		return category_size[j];
 	}
 
 	/**
@@ -191,6 +712,9 @@ public class FuzzyArt implements Serializable, Cloneable {
 		 * function is 100% accurate only when FuzzyArt is used as a clustering
 		 * procedure (not in FuzzyArtMap)
 		 */
+		if (!trackCentroids) {
+			throw new RuntimeException("In giveCentroid: the centroids are not tracked");
+		}
 		return centroids.get(j).getValue();
 	}
 
@@ -199,23 +723,355 @@ public class FuzzyArt implements Serializable, Cloneable {
 	 * @return number of categories
 	 */
 	public int numCategories() {
-		return w.size();
+		return w == null ? 0 : w.size();
+	}
+
+	/**
+	 * Removes the categories created after the first n ones, e.g. the ones
+	 * created for a training pair which was finally rejected
+	 * @param n the number of categories to be kept
+	 */
+	public void truncate(int n) {
+		if (n == numCategories()) {
+			return;
+		}
+		w.truncate(n);
+		if (!binaryWeights.isEmpty()) {
+			binaryWeights.subList(n, binaryWeights.size()).clear();
+			binaryComplementWeights.subList(n, binaryComplementWeights.size()).clear();
+		}
+		if (trackCentroids) {
+			centroids.subList(n, centroids.size()).clear();
+		}
+	}
+
+	/**
+	 * Removes category j in constant time: the last category takes its
+	 * index, so the indices of the other categories do not change
+	 * @param j the index of the removed category
+	 */
+	void removeCategory(int j) {
+		int last = numCategories() - 1;
+		if (j < 0 || j > last) {
+			throw new RuntimeException("In removeCategory: no category " + j + " among " + (last + 1));
+		}
+		if (j != last) {
+			w.move(last, j);
+			norms[j] = norms[last];
+			complementNorms[j] = complementNorms[last];
+			T[j] = T[last];
+			matchNorms[j] = matchNorms[last];
+			eligible[j] = eligible[last];
+			quantizedNorms[j] = quantizedNorms[last];
+			quantizedMatches[j] = quantizedMatches[last];
+			category_size[j] = category_size[last];
+			supports[j] = supports[last];
+			supportSizes[j] = supportSizes[last];
+			if (trackCentroids) {
+				centroids.set(j, centroids.get(last));
+			}
+			if (!binaryWeights.isEmpty()) {
+				binaryWeights.set(j, binaryWeights.get(last));
+				binaryComplementWeights.set(j, binaryComplementWeights.get(last));
+			}
+		}
+		truncate(last);
+	}
+
+	/**
+	 * Turns the tracking of the category centroids on or off. Turning it off
+	 * drops the centroids; it can only be turned on again before the first
+	 * category, since the centroids of the learned categories are lost.
+	 * @param trackCentroids whether learn maintains the centroids
+	 */
+	public void setCentroidTracking(boolean trackCentroids) {
+		if (trackCentroids && !this.trackCentroids && numCategories() > 0) {
+			throw new RuntimeException("In setCentroidTracking: the categories were learned without centroids");
+		}
+		this.trackCentroids = trackCentroids;
+		if (!trackCentroids) {
+			centroids.clear();
+		}
+	}
+
+	/**
+	 * @return whether learn maintains the category centroids
+	 */
+	public boolean isCentroidTracking() {
+		return trackCentroids;
+	}
+
+	/**
+	 * @return where the category weights are kept
+	 */
+	public Storage getStorage() {
+		return storage;
+	}
+
+	/**
+	 * @param tieBreak
+	 *            which category wins among the ones with the same largest
+	 *            choice value
+	 */
+	public void setTieBreak(TieBreak tieBreak) {
+		this.tieBreak = tieBreak;
+	}
+
+	/**
+	 * @return which category wins among the ones with the same largest choice
+	 *         value
+	 */
+	public TieBreak getTieBreak() {
+		return tieBreak;
+	}
+
+	/**
+	 * @return the number of bytes of the category weights held outside of the
+	 *         Java heap
+	 */
+	public long getNativeMemory() {
+		return w == null ? 0 : w.nativeBytes();
+	}
+
+	/**
+	 * Frees the category weights; the network must not be used afterwards
+	 */
+	public void release() {
+		if (w != null) {
+			w.release();
+		}
+	}
+
+	/**
+	 * @return the dimension of the (unnormalized) input the categories were
+	 *         learned from; 0 if there is no category yet
+	 */
+	int getInputDimension() {
+		return w == null ? 0 : w.length() / 2;
+	}
+
+	/**
+	 * @return the number of longs of a packed binary weight; 0 if the inputs
+	 *         have no binary block
+	 */
+	int getBinaryWords() {
+		return binaryWeights.isEmpty() ? 0 : binaryWeights.get(0).length;
+	}
+
+	/**
+	 * @return the dimension of the categories, or before the first one, of
+	 *         the current input
+	 */
+	int getCategoryDimension() {
+		return w == null ? inputDimension : getInputDimension();
+	}
+
+	/**
+	 * @return the number of longs of a packed binary weight, or before the
+	 *         first category, of the binary block of the current input
+	 */
+	int getCategoryBinaryWords() {
+		return binaryWeights.isEmpty() && w == null ? Util.packedLength(binaryDimension) : getBinaryWords();
+	}
+
+	/**
+	 * The weights of all the categories, without a copy; used by ModelFormat
+	 * @return the complement-coded weight vectors; null if there is no category
+	 */
+	VectorStore getWeights() {
+		return w;
+	}
+
+	/**
+	 * @param j the category index
+	 * @return the packed weights of the binary block, without a copy
+	 */
+	long[] getBinaryWeight(int j) {
+		return binaryWeights.get(j);
+	}
+
+	/**
+	 * @param j the category index
+	 * @return the packed weights of the complement of the binary block,
+	 *         without a copy
+	 */
+	long[] getBinaryComplementWeight(int j) {
+		return binaryComplementWeights.get(j);
+	}
+
+	/**
+	 * @param j the category index
+	 * @return the cached |w[j]|
+	 */
+	double getNorm(int j) {
+		return norms[j];
+	}
+
+	/**
+	 * @param j the category index
+	 * @return the cached sum of the complement half of w[j]
+	 */
+	double getComplementNorm(int j) {
+		return complementNorms[j];
+	}
+
+	/**
+	 * @param j the category index
+	 * @return the centroid of category j, without a copy
+	 */
+	double[] getCentroid(int j) {
+		if (!trackCentroids) {
+			throw new RuntimeException("In getCentroid: the centroids are not tracked");
+		}
+		return centroids.get(j).v;
+	}
+
+	/**
+	 * Replaces the categories with the ones read by ModelFormat. The arrays
+	 * and lists are used as they are, without copies.
+	 * @param weights the complement-coded weights, kept with the storage of
+	 * this network
+	 * @param norms |w[j]|, exactly one per category
+	 * @param complementNorms the sums of the complement halves, one per category
+	 * @param binaryWeights the packed binary weights; empty if there is no binary block
+	 * @param binaryComplementWeights the packed complement binary weights
+	 * @param centroids the centroids, one per category; null if they are not
+	 * tracked
+	 * @param sizes the number of representants of each category
+	 */
+	void restoreCategories(VectorStore weights, double[] norms, double[] complementNorms,
+			List<long[]> binaryWeights, List<long[]> binaryComplementWeights, List<FuzzyVector> centroids,
+			int[] sizes) {
+		int n = weights.size();
+		if (norms.length != n || complementNorms.length != n || (centroids != null && centroids.size() != n)
+				|| sizes.length != n
+				|| (!binaryWeights.isEmpty() && (binaryWeights.size() != n || binaryComplementWeights.size() != n))) {
+			throw new RuntimeException("In restoreCategories: size mismatch");
+		}
+		this.w = n == 0 ? null : weights;
+		this.norms = norms;
+		this.complementNorms = complementNorms;
+		this.binaryWeights = binaryWeights;
+		this.binaryComplementWeights = binaryComplementWeights;
+		this.trackCentroids = centroids != null;
+		this.centroids = centroids != null ? centroids : new ArrayList<FuzzyVector>();
+		this.category_size = sizes;
+		// the scratch arrays grow with the next createNewCategory
+		this.T = new double[n];
+		this.matchNorms = new double[n];
+		this.eligible = new boolean[n];
+		this.quantizedNorms = new long[n];
+		this.quantizedMatches = new long[n];
+		this.supports = new int[n][];
+		this.supportSizes = new int[n];
+		if (storage == Storage.FIXED16) {
+			for (int j = 0; j < n; j++) {
+				updateQuantizedNorm(j);
+			}
+		}
+		this.rho = rho_init;
+	}
+
+	/**
+	 * Replaces category j, or appends it when j is numCategories(), with the
+	 * state replayed by CheckpointJournal; the norms are recomputed
+	 * @param j the category index
+	 * @param weights the complement-coded weights
+	 * @param bits the packed binary weights; null if there is no binary block
+	 * @param complementBits the packed complement binary weights
+	 * @param centroid the centroid; ignored if the centroids are not tracked
+	 * @param size the number of representants
+	 */
+	void putCategory(int j, double[] weights, long[] bits, long[] complementBits, double[] centroid, int size) {
+		int n = numCategories();
+		if (j > n) {
+			throw new RuntimeException("In putCategory: category " + j + " follows the last one, " + (n - 1));
+		}
+		if (j == n) {
+			ensureCapacity(n);
+			if (w == null) {
+				w = storage.create(weights.length);
+			}
+			w.add(weights);
+			if (bits != null) {
+				binaryWeights.add(bits.clone());
+				binaryComplementWeights.add(complementBits.clone());
+			}
+			if (trackCentroids) {
+				centroids.add(new FuzzyVector(centroid.clone()));
+			}
+			category_size[n] = size;
+			T[n] = -1.0;
+			eligible[n] = true;
+		} else {
+			for (int i = 0; i < weights.length; i++) {
+				w.set(j, i, weights[i]);
+			}
+			if (bits != null) {
+				System.arraycopy(bits, 0, binaryWeights.get(j), 0, bits.length);
+				System.arraycopy(complementBits, 0, binaryComplementWeights.get(j), 0, complementBits.length);
+			}
+			if (trackCentroids) {
+				System.arraycopy(centroid, 0, centroids.get(j).v, 0, centroid.length);
+			}
+			category_size[j] = size;
+		}
+		supports[j] = null;
+		updateNorms(j);
+	}
+
+	/**
+	 * Replaces the cached norms of category j with the ones of the network
+	 * journaled by CheckpointJournal, which learning from sparse inputs
+	 * updates without summing the weights again
+	 * @param j the category index
+	 * @param norm |w[j]|
+	 * @param complementNorm the sum of the complement half of w[j]
+	 */
+	void restoreNorms(int j, double norm, double complementNorm) {
+		norms[j] = norm;
+		complementNorms[j] = complementNorm;
 	}
 
 	/**
 	 * clones the current object
 	 */
 	public FuzzyArt clone() {
-		FuzzyArt result = new FuzzyArt(this.rho_init, this.beta);
-		result.w = Util.copyListOfFuzzyVector(this.w);
+		FuzzyArt result = new FuzzyArt(this.rho_init, this.beta, this.storage);
+		result.w = this.w == null ? null : this.w.copy();
+		result.norms = Arrays.copyOf(this.norms, this.norms.length);
+		result.complementNorms = Arrays.copyOf(this.complementNorms, this.complementNorms.length);
 		result.normalizedInput = this.normalizedInput == null ? null : this.normalizedInput.clone();
-		result.unNormalizedInput = this.unNormalizedInput == null ? null : this.unNormalizedInput.clone();
+		result.inputNorm = this.inputNorm;
+		result.quantizedInput = this.quantizedInput == null ? null : this.quantizedInput.clone();
+		result.quantizedInputNorm = this.quantizedInputNorm;
+		result.sparseInput = this.sparseInput;
+		result.inputDimension = this.inputDimension;
+		result.sparseIndices = this.sparseIndices;
+		result.sparseValues = this.sparseValues;
+		result.binaryDimension = this.binaryDimension;
+		result.binaryInput = this.binaryInput;
+		result.binaryComplement = this.binaryComplement == null ? null : this.binaryComplement.clone();
+		result.binaryWeights = Util.copyListOfLongArrays(this.binaryWeights);
+		result.binaryComplementWeights = Util.copyListOfLongArrays(this.binaryComplementWeights);
 		result.rho = this.rho;
-		result.T = Util.copyList(this.T);
-		result.eligible = Util.copyList(this.eligible);
+		result.T = Arrays.copyOf(this.T, this.T.length);
+		result.matchNorms = Arrays.copyOf(this.matchNorms, this.matchNorms.length);
+		result.eligible = Arrays.copyOf(this.eligible, this.eligible.length);
+		result.quantizedNorms = Arrays.copyOf(this.quantizedNorms, this.quantizedNorms.length);
+		result.quantizedMatches = Arrays.copyOf(this.quantizedMatches, this.quantizedMatches.length);
+		result.tieBreak = this.tieBreak;
+		result.trackCentroids = this.trackCentroids;
 		result.centroids = Util.copyListOfFuzzyVector(this.centroids);
-		result.category_size = Util.copyList(this.category_size); // number of representants per category
-		
+		result.category_size = Arrays.copyOf(this.category_size, this.category_size.length);
+		result.supports = Arrays.copyOf(this.supports, this.supports.length);
+		for (int j = 0; j < result.supports.length; j++) {
+			if (result.supports[j] != null) {
+				result.supports[j] = result.supports[j].clone();
+			}
+		}
+		result.supportSizes = Arrays.copyOf(this.supportSizes, this.supportSizes.length);
+
 		return result;
 	}
 
@@ -229,4 +1085,4 @@ public class FuzzyArt implements Serializable, Cloneable {
 	/**
 	 * TODO: create clusters for training patterns contained in a list
 	*/
-}
\ No newline at end of file
+}
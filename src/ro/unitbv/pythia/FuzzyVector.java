@@ -285,7 +285,7 @@ public class FuzzyVector implements Serializable, Cloneable
     public double[] getValue()
     {
         double vector[] = new double[ length ];
-        System.arraycopy( v, 0, this.v, 0, length );
+        System.arraycopy( v, 0, vector, 0, length );
         return vector;
     }
 
@@ -0,0 +1,109 @@
+package ro.unitbv.pythia;
+
+import java.util.Arrays;
+
+/**
+ * VectorStore keeping all the vectors one after another in a single double
+ * array on the Java heap, grown by doubling
+ *
+ * @author Lucian Sasu
+ */
+public class HeapVectorStore implements VectorStore {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int length;
+	private int size = 0;
+	private double[] values = new double[0];
+
+	/**
+	 * @param length the length of every vector
+	 */
+	public HeapVectorStore(int length) {
+		this.length = length;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public void add(double[] vector) {
+		if (vector.length != length) {
+			throw new RuntimeException("In add: size mismatch, " + vector.length + " instead of " + length);
+		}
+		if ((size + 1) * length > values.length) {
+			values = Arrays.copyOf(values, Math.max(4, 2 * size) * length);
+		}
+		System.arraycopy(vector, 0, values, size * length, length);
+		size++;
+	}
+
+	public void truncate(int size) {
+		if (size < 0 || size > this.size) {
+			throw new RuntimeException("In truncate: can not keep " + size + " of " + this.size + " vectors");
+		}
+		this.size = size;
+	}
+
+	public void move(int from, int to) {
+		System.arraycopy(values, from * length, values, to * length, length);
+	}
+
+	public double get(int row, int i) {
+		return values[row * length + i];
+	}
+
+	public void set(int row, int i, double value) {
+		values[row * length + i] = value;
+	}
+
+	public void read(int row, double[] dest) {
+		System.arraycopy(values, row * length, dest, 0, length);
+	}
+
+	public double minSum(int row, double[] input) {
+		int base = row * length;
+		double sum = 0.0;
+		for (int i = 0; i < length; i++) {
+			sum += Math.min(input[i], values[base + i]);
+		}
+		return sum;
+	}
+
+	public double sum(int row, int from, int to) {
+		int base = row * length;
+		double sum = 0.0;
+		for (int i = from; i < to; i++) {
+			sum += values[base + i];
+		}
+		return sum;
+	}
+
+	public void learn(int row, double[] input, double beta) {
+		int base = row * length;
+		for (int i = 0; i < length; i++) {
+			double weight = values[base + i];
+			values[base + i] = beta * Math.min(input[i], weight) + (1 - beta) * weight;
+		}
+	}
+
+	public HeapVectorStore copy() {
+		HeapVectorStore result = new HeapVectorStore(length);
+		result.size = size;
+		result.values = Arrays.copyOf(values, size * length);
+		return result;
+	}
+
+	public long nativeBytes() {
+		return 0;
+	}
+
+	public void release() {
+		size = 0;
+		values = new double[0];
+	}
+}
@@ -0,0 +1,177 @@
+package ro.unitbv.pythia;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-bucket histogram of non-negative values, safe to record into from
+ * any thread and to read while it is being recorded. Recording costs a
+ * bucket index computation and two atomic increments, so it can stay on in
+ * production.
+ *
+ * A linear histogram has one bucket per value below its number of buckets,
+ * the last bucket holding all the larger values; an exponential one, for
+ * durations, splits every power of 2 in SUB_BUCKETS buckets, so a quantile
+ * is reported within 25% of its value.
+ *
+ * @author Lucian Sasu
+ */
+public class Histogram {
+
+	private static final int SUB_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int EXPONENTIAL_BUCKETS = SUB_BUCKETS * (64 - SUB_BITS);
+
+	private final AtomicLongArray buckets;
+	private final boolean exponential;
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	private Histogram(int buckets, boolean exponential) {
+		this.buckets = new AtomicLongArray(buckets);
+		this.exponential = exponential;
+	}
+
+	/**
+	 * @param buckets
+	 *            the number of buckets; the values from buckets - 1 up share
+	 *            the last one
+	 * @return a histogram with one bucket per small value
+	 */
+	public static Histogram linear(int buckets) {
+		if (buckets <= 0) {
+			throw new IllegalArgumentException("The number of buckets should be positive");
+		}
+		return new Histogram(buckets, false);
+	}
+
+	/**
+	 * @return a histogram with SUB_BUCKETS buckets per power of 2
+	 */
+	public static Histogram exponential() {
+		return new Histogram(EXPONENTIAL_BUCKETS, true);
+	}
+
+	/**
+	 * @param value
+	 *            a non-negative value
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		int bucket = exponential ? exponentialBucket(value) : (int) Math.min(value, buckets.length() - 1);
+		buckets.incrementAndGet(bucket);
+		count.increment();
+		sum.add(value);
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+		}
+	}
+
+	/**
+	 * @param value
+	 *            a non-negative value
+	 * @return the values below SUB_BUCKETS have a bucket each; above, the
+	 *         power of 2 and the SUB_BITS bits which follow the leading one
+	 */
+	private static int exponentialBucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return SUB_BUCKETS * (shift + 1) + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * @return the number of recorded values
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return the sum of the recorded values
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/**
+	 * @return the mean of the recorded values; 0 if there is none
+	 */
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * @return the largest recorded value
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @param quantile
+	 *            in [0, 1], e.g. 0.99
+	 * @return the upper bound of the bucket holding the quantile, at most the
+	 *         largest recorded value; 0 if there is no value
+	 */
+	public long getQuantile(double quantile) {
+		long[] counts = getBuckets();
+		long total = 0;
+		for (long c : counts) {
+			total += c;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(quantile * total);
+		long seen = 0;
+		for (int b = 0; b < counts.length; b++) {
+			seen += counts[b];
+			if (seen >= rank && counts[b] > 0) {
+				return Math.min(upperBound(b), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	private long upperBound(int bucket) {
+		if (!exponential) {
+			return bucket == buckets.length() - 1 ? Long.MAX_VALUE : bucket;
+		}
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long next = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS + 1) << shift;
+		return next < 0 ? Long.MAX_VALUE : next - 1;
+	}
+
+	/**
+	 * @return a copy of the bucket counts
+	 */
+	public long[] getBuckets() {
+		long[] result = new long[buckets.length()];
+		for (int b = 0; b < result.length; b++) {
+			result[b] = buckets.get(b);
+		}
+		return result;
+	}
+
+	/**
+	 * Clears the histogram; values recorded at the same time may be lost
+	 */
+	public void reset() {
+		for (int b = 0; b < buckets.length(); b++) {
+			buckets.set(b, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+}
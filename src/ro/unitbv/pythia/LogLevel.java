@@ -0,0 +1,20 @@
+package ro.unitbv.pythia;
+
+/**
+ * Severity of a log message; a logger keeps the messages at or above its
+ * own level
+ *
+ * @author Lucian Sasu
+ */
+public enum LogLevel {
+	/** per-pattern details, e.g. every scaled input */
+	DEBUG,
+	/** progress of training and evaluation */
+	INFO,
+	/** recoverable problems */
+	WARN,
+	/** failures */
+	ERROR,
+	/** nothing is logged */
+	OFF
+}
@@ -7,46 +7,114 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.List;
 
 /**
+ * Logging of the pythia classes, on the standard error, through an
+ * AsyncLogger. Nothing is logged when Settings.debugMode is false; otherwise
+ * the messages at or above the level of the logger, INFO by default, are
+ * written. The per-pattern dumps of debug_print and saveToFile are DEBUG
+ * messages, so they cost only a check unless setLevel(LogLevel.DEBUG) is
+ * called.
+ * 
  * @author ro1v0393
  *
  */
 public class Logger {
 
-	public static void debug_print(String filename, Pattern pattern) {
-		if (Settings.debugMode == false)
-		{
-			return;
+	private static final AsyncLogger logger = new AsyncLogger(null, false);
+
+	/**
+	 * @param level
+	 *            the lowest level which is logged
+	 */
+	public static void setLevel(LogLevel level) {
+		logger.setLevel(level);
+	}
+
+	public static LogLevel getLevel() {
+		return logger.getLevel();
+	}
+
+	/**
+	 * @param level
+	 *            the level of a message
+	 * @return whether a message of this level would be logged
+	 */
+	public static boolean isEnabled(LogLevel level) {
+		return Settings.debugMode && logger.isEnabled(level);
+	}
+
+	/**
+	 * Logs a scaled pattern at the DEBUG level
+	 * 
+	 * @param name
+	 *            the name of the dataset the pattern comes from
+	 * @param pattern
+	 *            the pattern
+	 */
+	public static void debug_print(String name, Pattern pattern) {
+		if (isEnabled(LogLevel.DEBUG)) {
+			logger.log(LogLevel.DEBUG, name + ": " + pattern.toString_scaled());
 		}
-		String path = getUserHomePath();
-		String fullPath = path + filename + ".debug.txt";
-		try(FileWriter fw = new FileWriter(fullPath, true);
-			    BufferedWriter bw = new BufferedWriter(fw);
-			    PrintWriter out = new PrintWriter(bw))
-			{
-			    out.println(pattern.toString_scaled());
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
 	}
-	
+
 	/**
-	 * Prints a message on stderr, if the debug mode is enabled
+	 * Prints a message on stderr at the INFO level, if the debug mode is
+	 * enabled
+	 * 
 	 * @param message
 	 */
 	public static void println(String message) {
-		if (Settings.debugMode)
-		{
-			System.err.println(message);
+		log(LogLevel.INFO, message);
+	}
+
+	/**
+	 * @param level
+	 *            the level of the message
+	 * @param message
+	 *            the message
+	 */
+	public static void log(LogLevel level, String message) {
+		if (Settings.debugMode) {
+			logger.log(level, message);
+		}
+	}
+
+	/**
+	 * Logs a message built with String.format, only if the level is enabled
+	 * 
+	 * @param level
+	 *            the level of the message
+	 * @param format
+	 *            the format of the message
+	 * @param args
+	 *            the arguments of the format
+	 */
+	public static void log(LogLevel level, String format, Object... args) {
+		if (Settings.debugMode) {
+			logger.log(level, format, args);
 		}
 	}
-	
+
+	/**
+	 * Waits until the messages logged so far are written
+	 */
+	public static void flush() {
+		logger.flush();
+	}
+
+	/**
+	 * Writes the scaled patterns to a file in the home directory, at the
+	 * DEBUG level
+	 * 
+	 * @param filename
+	 *            the name of the file, without the .debug.txt extension
+	 * @param patterns
+	 *            the patterns
+	 */
 	public static void saveToFile(String filename, List<Pattern> patterns) {
-		if (Settings.debugMode == false)
-		{
+		if (!isEnabled(LogLevel.DEBUG)) {
 			return;
 		}
 		String path = getUserHomePath();
@@ -68,6 +136,4 @@ public class Logger {
 	private static String getUserHomePath() {
 		return System.getProperty("user.home") + File.separator;
 	}
-
-	
 }
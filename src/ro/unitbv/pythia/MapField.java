@@ -18,15 +18,19 @@ import java.util.Arrays;
 * Computers and Artificial intelligence, 9, 1990, 159-167.
 * This is essentialy where this model is different than the original
 * Carpenter et al. Fuzzy Artmap paradigm.
+*
+* The rows of w_ab are kept in a VectorStore, on the Java heap or in direct
+* buffers, depending on the Storage given to the constructor.
 */
 public class MapField implements Serializable
 {
-	private static final long serialVersionUID = 2L;
+	private static final long serialVersionUID = 3L;
 	
 	private int na = 0;
 	private int nb = 0;
     private final double rho_ab; // initialized by constructor
-	private FuzzyVector w_ab[] = null;
+    private final Storage storage;
+	private VectorStore w_ab = null; // one row of nb values per input category
 	private FuzzyVector x_ab = null;
     private double Q_t[] = null;
     private final double q_0 = 0.0;
@@ -37,10 +41,23 @@ public class MapField implements Serializable
      * @param nb number of output classes
      */
     public MapField( double rho_ab, int nb )
+	{
+		this( rho_ab, nb, Storage.HEAP );
+	}
+
+    /**
+     * Instantiates MapField for classification
+     * @param rho_ab mapfield vigilance value
+     * @param nb number of output classes
+     * @param storage where the rows of w_ab are kept
+     */
+    public MapField( double rho_ab, int nb, Storage storage )
 	{
 		// used for classification, when art_b is a FuzzyVector object
         this.rho_ab = rho_ab;
         this.nb = nb;
+        this.storage = storage;
+        this.w_ab = storage.forMapField().create( nb );
 	}
 
     /**
@@ -51,6 +68,8 @@ public class MapField implements Serializable
 	{
 		// used for regression, when art_b is a FuzzyArt object
         this.rho_ab = rho_ab;
+        this.storage = Storage.HEAP;
+        this.w_ab = storage.create( nb );
 	}
 
     /**
@@ -60,7 +79,14 @@ public class MapField implements Serializable
      */
     private void computeActivation( FuzzyVector y_b, int J )
 	{
-		x_ab = y_b.and( w_ab[J] );
+		if ( x_ab == null || x_ab.length != nb )
+		{
+			x_ab = new FuzzyVector( nb );
+		}
+		for ( int k=0; k < nb; k++ )
+		{
+			x_ab.v[k] = Math.min( y_b.v[k], w_ab.get( J, k ) );
+		}
 	}
 
     /**
@@ -83,6 +109,19 @@ public class MapField implements Serializable
         return x_ab.norm() * nb >= rho_ab * y_b.norm();
 	}
 
+    /**
+     * Vigilance test for a one-hot output vector, in the simple form given
+     * above: for y_b one-hot at K, |x_ab| is w_ab[J,K] and |y_b| is 1, so the
+     * result is the one of accept(y_b, J), without building y_b
+     * @param J the index of the winner input category
+     * @param K the index of the output class
+     * @return true if the current pattern is accepted (in accordance with mapfield) or not
+     */
+    public boolean accept( int J, int K )
+	{
+        return w_ab.get( J, K ) * nb >= rho_ab;
+	}
+
     /**
      * Learn conditional probabilities w_ab[J]
      * @param J the index of the winning input category
@@ -93,12 +132,12 @@ public class MapField implements Serializable
 	{
 		Q_t[J] += q_t;
         double A_t = q_t / Q_t[J];
-        FuzzyVector delta_t = new FuzzyVector( nb );
-        delta_t.initValue( 0 );
-        delta_t.setValueAtPos( K, 1 );
-        FuzzyVector aux = delta_t.diff( w_ab[J] );
-        aux = aux.times( A_t );
-        w_ab[J] = w_ab[J].sum( aux );
+        // w_ab[J] += A_t * (delta_t - w_ab[J]), delta_t being 1 at K and 0 elsewhere
+        for ( int k=0; k < nb; k++ )
+        {
+            double w = w_ab.get( J, k );
+            w_ab.set( J, k, w + A_t * ( ( k == K ? 1 : 0 ) - w ) );
+        }
 	}
 
 	/**
@@ -107,15 +146,14 @@ public class MapField implements Serializable
     public void addWeight_a()
 	{
 		na++;
-        FuzzyVector aux[] = new FuzzyVector[na];
-		Util.safeArrayCopy( w_ab, 0, aux, 0, na-1 );
-		aux[na-1] = new FuzzyVector( nb );
-        aux[na-1].initValue( 1./nb );
-		w_ab = aux;
-        double auxQ_t[] = new double[na];
-        Util.safeArrayCopy( Q_t, 0, auxQ_t, 0, na-1 );
-        auxQ_t[na-1] = q_0;
-        Q_t = auxQ_t;
+        double row[] = new double[w_ab.length()];
+        Arrays.fill( row, 1./nb );
+		w_ab.add( row );
+        if ( Q_t == null || Q_t.length < na )
+        {
+            Q_t = Q_t == null ? new double[4] : Arrays.copyOf( Q_t, Math.max( 4, 2 * Q_t.length ) );
+        }
+        Q_t[na-1] = q_0;
 	}
 
      /**
@@ -128,17 +166,20 @@ public class MapField implements Serializable
         {
             return; // when first node is added, do nothing
         }
+        VectorStore aux = storage.forMapField().create( nb );
+        double row[] = new double[nb];
         for ( int j=0; j < na; j++ )
         {
-            FuzzyVector aux = new FuzzyVector(nb);
             double val = q_0 / (nb * Q_t[j]);
             for ( int k=0; k < nb-1; k++ )
             {
-                aux.setValueAtPos( k, w_ab[j].getValueAtPos( k ) - val/(nb-1) );
+                row[k] = w_ab.get( j, k ) - val/(nb-1);
             }
-            aux.setValueAtPos( nb-1, val );
-            w_ab[j] = aux;
+            row[nb-1] = val;
+            aux.add( row );
         }
+        w_ab.release();
+        w_ab = aux;
 	}
 
     /**
@@ -148,7 +189,31 @@ public class MapField implements Serializable
      */
 	public FuzzyVector getw_ab( int J )
 	{
-		return w_ab[J].clone();
+		FuzzyVector result = new FuzzyVector( nb );
+		w_ab.read( J, result.v );
+		return result;
+	}
+
+    /**
+     * Same as getw_ab( J ).posMax(), without the copy of the row
+     * @param J the index of the input category
+     * @return the output class with the largest conditional probability,
+     * the first one on ties
+     */
+	public int posMax( int J )
+	{
+		int index = -1;
+		double max = Double.NEGATIVE_INFINITY;
+		for ( int k=0; k < nb; k++ )
+		{
+			double value = w_ab.get( J, k );
+			if ( max < value )
+			{
+				max = value;
+				index = k;
+			}
+		}
+		return index;
 	}
 
     /**
@@ -156,12 +221,12 @@ public class MapField implements Serializable
 	*/
 	public MapField clone()
 	{
-	    MapField result = new MapField(this.rho_ab, this.nb);
+	    MapField result = new MapField(this.rho_ab, this.nb, this.storage);
 	    
 	    result.na = this.na;
 	    result.Q_t = this.Q_t == null ? null : Arrays.copyOf(this.Q_t, this.Q_t.length);
-	    result.w_ab = new FuzzyVector[this.na];
-	    Util.safeArrayCopy( this.w_ab, 0, result.w_ab, 0, this.na );//TODO: make deep copy 
+	    result.w_ab.release();
+	    result.w_ab = this.w_ab.copy(); 
 	    result.x_ab = this.x_ab == null ? null : this.x_ab.clone();
 	    
 	    return result;
@@ -175,16 +240,134 @@ public class MapField implements Serializable
       StringBuffer result = new StringBuffer();
       for( int i=0; i<na; i++)
       {
-        result.append( w_ab[i].toString() + "\n" );
+        result.append( getw_ab( i ).toString() + "\n" );
       }
       return result.toString();
     }
     
+    /**
+     * The rows of w_ab, without a copy; used by ModelFormat
+     * @return the conditional probabilities, one row per input category
+     */
+    VectorStore getRows()
+    {
+        return w_ab;
+    }
+
+    /**
+     * @param J the index of the input category
+     * @return the accumulated relevance Q_t of category J
+     */
+    double getRelevance( int J )
+    {
+        return Q_t[J];
+    }
+
+    /**
+     * Replaces the rows of w_ab and Q_t with the ones read by ModelFormat
+     * @param w_ab the conditional probabilities, one row per input category,
+     * kept with the storage of this mapfield
+     * @param Q_t the accumulated relevance of each input category
+     */
+    void restore( VectorStore w_ab, double Q_t[] )
+    {
+        if ( w_ab.size() != Q_t.length || w_ab.length() != nb )
+        {
+            throw new RuntimeException("In restore: size mismatch between w_ab and Q_t");
+        }
+        this.w_ab.release();
+        this.na = w_ab.size();
+        this.w_ab = w_ab;
+        this.Q_t = Q_t;
+    }
+
+    /**
+     * Replaces row J, or appends it when J is the number of rows, with the
+     * state replayed by CheckpointJournal
+     * @param J the index of the input category
+     * @param row the conditional probabilities of the category
+     * @param q the accumulated relevance Q_t of the category
+     */
+    void putRow( int J, double row[], double q )
+    {
+        if ( J > na )
+        {
+            throw new RuntimeException("In putRow: row " + J + " follows the last one, " + (na - 1));
+        }
+        if ( J == na )
+        {
+            addWeight_a();
+        }
+        for ( int k=0; k < nb; k++ )
+        {
+            w_ab.set( J, k, row[k] );
+        }
+        Q_t[J] = q;
+    }
+
+    /**
+     * Removes the row of input category J in constant time: the row of the
+     * last input category takes its index, as in FuzzyArt.removeCategory
+     * @param J the index of the removed input category
+     */
+    void removeRow( int J )
+    {
+        int last = na - 1;
+        if ( J != last )
+        {
+            w_ab.move( last, J );
+            Q_t[J] = Q_t[last];
+        }
+        truncate( last );
+    }
+
+    /**
+     * Removes the rows added after the first na ones
+     * @param na the number of input categories to be kept
+     */
+    public void truncate( int na )
+    {
+        w_ab.truncate( na );
+        this.na = na;
+    }
+
+    /**
+     * @return where the rows of w_ab are kept, before Storage.forMapField
+     */
+    public Storage getStorage()
+    {
+        return storage;
+    }
+
+    /**
+     * @return the number of bytes of w_ab held outside of the Java heap
+     */
+    public long getNativeMemory()
+    {
+        return w_ab.nativeBytes();
+    }
+
+    /**
+     * Frees the rows of w_ab; the mapfield must not be used afterwards
+     */
+    public void release()
+    {
+        w_ab.release();
+    }
+
+    /**
+     * @return number of output categories
+     */
+    public int getColumnsNo()
+    {
+        return nb;
+    }
+
     /**
      * @return number of lines in w_ab
      */
     public int getLinesNo()
     {
-    	return w_ab.length;
+    	return w_ab.size();
     }
 }
\ No newline at end of file
@@ -0,0 +1,189 @@
+package ro.unitbv.pythia;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * PatternSource reading a DatasetCache file through memory mapping. The
+ * patterns come out already scaled, so a network trained from them should
+ * use the scaling of the cache: setScaler(getScaler()) when there is a
+ * scaler, otherwise the input bounds getIMin() and getIMax().
+ *
+ * A MappedDataset serves one scan at a time; scans running at the same time
+ * should each open the file, which costs no extra memory since the mapped
+ * pages are shared.
+ *
+ * @author Lucian Sasu
+ */
+public class MappedDataset implements PatternSource {
+
+	private final RandomAccessFile file;
+	private final DatasetCache.Header header;
+	private final Scaler scaler;
+	private final MappedRows binary;
+	private final MappedRows weights;
+	private final MappedRows features;
+	private final MappedRows labels;
+	private long position = 0;
+
+	/**
+	 * Maps a cache file written by DatasetCache.write
+	 *
+	 * @param path
+	 *            the cache file
+	 * @throws IOException
+	 *             if the file can not be read or is not a valid cache
+	 */
+	public MappedDataset(String path) throws IOException {
+		file = new RandomAccessFile(path, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer start = ByteBuffer.allocate(DatasetCache.HEADER_SIZE);
+			while (start.hasRemaining() && channel.read(start, start.position()) > 0) {
+			}
+			start.flip();
+			header = DatasetCache.Header.read(start);
+			if (channel.size() < header.fileSize()) {
+				throw new IOException("Truncated dataset cache: " + channel.size() + " bytes instead of "
+						+ header.fileSize());
+			}
+			if (header.hasScaler()) {
+				int d = header.dimension;
+				ByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, header.scalerOffset(), 16L * d);
+				double[] min = new double[d];
+				double[] invRange = new double[d];
+				for (int i = 0; i < d; i++) {
+					min[i] = section.getDouble();
+				}
+				for (int i = 0; i < d; i++) {
+					invRange[i] = section.getDouble();
+				}
+				scaler = Scaler.fromInverseRange(min, invRange);
+			} else {
+				scaler = null;
+			}
+			binary = new MappedRows(channel, header.binaryOffset(), header.rows, 8 * header.binaryWords());
+			weights = new MappedRows(channel, header.weightsOffset(), header.rows, 8);
+			features = new MappedRows(channel, header.featuresOffset(), header.rows, header.featureBytes());
+			labels = new MappedRows(channel, header.labelsOffset(), header.rows, 4);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the number of patterns
+	 */
+	public long size() {
+		return header.rows;
+	}
+
+	/**
+	 * @return the dimension of the real-valued input
+	 */
+	public int getDimension() {
+		return header.dimension;
+	}
+
+	/**
+	 * @return the dimension of the binary input; 0 if there is none
+	 */
+	public int getBinaryDimension() {
+		return header.binaryDimension;
+	}
+
+	/**
+	 * @return the number of classes
+	 */
+	public int getNumClasses() {
+		return header.numClasses;
+	}
+
+	/**
+	 * @return the scaler applied to the patterns; null if they were scaled
+	 *         with iMin and iMax
+	 */
+	public Scaler getScaler() {
+		return scaler;
+	}
+
+	/**
+	 * @return the minimum input value used for scaling
+	 */
+	public double getIMin() {
+		return header.iMin;
+	}
+
+	/**
+	 * @return the maximum input value used for scaling
+	 */
+	public double getIMax() {
+		return header.iMax;
+	}
+
+	/**
+	 * @return whether the scaled values are stored as floats
+	 */
+	public boolean isSinglePrecision() {
+		return header.isFloat();
+	}
+
+	public void rewind() {
+		position = 0;
+	}
+
+	public int read(Pattern[] chunk) {
+		int count = 0;
+		while (count < chunk.length && position < header.rows) {
+			chunk[count++] = get(position++);
+		}
+		return count;
+	}
+
+	/**
+	 * @param row
+	 *            the pattern index
+	 * @return a new pattern holding the scaled input of the given row
+	 */
+	public Pattern get(long row) {
+		if (row < 0 || row >= header.rows) {
+			throw new IndexOutOfBoundsException("Pattern " + row + " of " + header.rows);
+		}
+		int d = header.dimension;
+		double[] scaled = new double[d];
+		if (d > 0) {
+			ByteBuffer chunk = features.chunk(row);
+			int offset = features.offset(row);
+			if (header.isFloat()) {
+				for (int i = 0; i < d; i++) {
+					scaled[i] = chunk.getFloat(offset + 4 * i);
+				}
+			} else {
+				for (int i = 0; i < d; i++) {
+					scaled[i] = chunk.getDouble(offset + 8 * i);
+				}
+			}
+		}
+		Pattern pattern = new Pattern();
+		pattern.setScaledInput(scaled);
+		if (header.binaryDimension > 0) {
+			long[] bits = new long[header.binaryWords()];
+			ByteBuffer chunk = binary.chunk(row);
+			int offset = binary.offset(row);
+			for (int w = 0; w < bits.length; w++) {
+				bits[w] = chunk.getLong(offset + 8 * w);
+			}
+			pattern.setBinaryInput(bits, header.binaryDimension);
+		}
+		pattern.setWeight(weights.chunk(row).getDouble(weights.offset(row)));
+		pattern.setClassIndex(labels.chunk(row).getInt(labels.offset(row)));
+		return pattern;
+	}
+
+	public void close() throws IOException {
+		file.close();
+	}
+}
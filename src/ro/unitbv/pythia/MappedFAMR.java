@@ -0,0 +1,345 @@
+package ro.unitbv.pythia;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Read-only FAMR classifier working directly on a memory-mapped model file
+ * written by ModelFormat. Opening the model only reads the header (and the
+ * scaler, if any), so the startup time does not depend on the number of
+ * categories; the weights and the map field are paged in by the operating
+ * system when first used, and the pages are shared by all the processes
+ * which map the same file.
+ *
+ * Classification gives the same results as FAMR.classifySingleInstance and
+ * FAMR.getProbabilities on the saved network, whatever its storage: the
+ * weights are scored at the width they were saved with, and the models of
+ * the FIXED16 storage with the integer kernel of FuzzyArt. The instance keeps no state
+ * between calls, so it can be used by several threads at the same time.
+ * Weka instances are turned into patterns with the InputLayout of the
+ * training header, as FAMR_Classification does.
+ *
+ * @author Lucian Sasu
+ */
+public class MappedFAMR implements Closeable {
+
+	private final RandomAccessFile file;
+	private final ModelFormat.Header header;
+	private final Scaler scaler;
+	private final MappedRows weights;
+	private final MappedRows norms;
+	private final MappedRows complementNorms;
+	private final MappedRows binaryWeights;
+	private final MappedRows binaryComplementWeights;
+	private final MappedRows mapField;
+	private final MappedRows sizes;
+	private final TieBreak tieBreak;
+	private final int weightBytes;
+	private final int mapFieldBytes;
+
+	/**
+	 * @param path
+	 *            the model file
+	 * @throws IOException
+	 *             if the file can not be mapped or is not a supported model
+	 */
+	public MappedFAMR(String path) throws IOException {
+		file = new RandomAccessFile(path, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			header = ModelFormat.Header.read(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					Math.min(channel.size(), ModelFormat.HEADER_SIZE)));
+			if (channel.size() != header.fileSize()) {
+				throw new IOException(path + " has " + channel.size() + " bytes, the header describes "
+						+ header.fileSize());
+			}
+			int n = header.numCategories;
+			int d = header.dimension;
+			if (header.hasScaler()) {
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, header.scalerOffset(), 16L * d);
+				double[] min = new double[d];
+				double[] invRange = new double[d];
+				buffer.asDoubleBuffer().get(min);
+				buffer.position(8 * d);
+				buffer.asDoubleBuffer().get(invRange);
+				scaler = Scaler.fromInverseRange(min, invRange);
+			} else {
+				scaler = null;
+			}
+			weightBytes = header.weightBytes();
+			mapFieldBytes = header.mapFieldBytes();
+			weights = new MappedRows(channel, header.weightsOffset(), n, 2 * d * weightBytes);
+			norms = new MappedRows(channel, header.normsOffset(), n, 8);
+			complementNorms = new MappedRows(channel, header.normsOffset() + 8L * n, n, 8);
+			long binaryBytes = 8L * n * header.binaryWords;
+			binaryWeights = new MappedRows(channel, header.binaryOffset(), n, 8 * header.binaryWords);
+			binaryComplementWeights = new MappedRows(channel, header.binaryOffset() + binaryBytes, n,
+					8 * header.binaryWords);
+			mapField = new MappedRows(channel, header.mapFieldOffset(), n, header.outputDim * mapFieldBytes);
+			sizes = new MappedRows(channel, header.sizesOffset(), n, 4);
+			tieBreak = TieBreak.values()[header.tieBreak];
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the number of input categories
+	 */
+	public int getInputCategoriesNo() {
+		return header.numCategories;
+	}
+
+	/**
+	 * @return the number of classes
+	 */
+	public int getOutputDim() {
+		return header.outputDim;
+	}
+
+	/**
+	 * Classifies the pattern, as FAMR.classifySingleInstance does
+	 *
+	 * @param pattern
+	 *            the pattern to be classified; it is scaled in place when the
+	 *            model uses iMin/iMax
+	 * @return the estimated label; -1 if the model has no category
+	 */
+	public int classify(Pattern pattern) {
+		int J = findCategory(pattern);
+		if (J == -1) {
+			return -1;
+		}
+		ByteBuffer chunk = mapField.chunk(J);
+		int base = mapField.offset(J);
+		int index = -1;
+		double max = Double.NEGATIVE_INFINITY;
+		for (int k = 0; k < header.outputDim; k++) {
+			double value = value(chunk, base, k, mapFieldBytes);
+			if (max < value) {
+				max = value;
+				index = k;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Return the conditional probabilities P( output class | pattern ) for all
+	 * output classes, as FAMR.getProbabilities does
+	 *
+	 * @param pattern
+	 *            the pattern to be classified
+	 * @return a vector of conditional probabilities
+	 */
+	public double[] getProbabilities(Pattern pattern) {
+		int J = findCategory(pattern);
+		double[] result = new double[header.outputDim];
+		if (J == -1) {
+			Arrays.fill(result, 1.0 / header.outputDim);
+		} else {
+			ByteBuffer chunk = mapField.chunk(J);
+			int base = mapField.offset(J);
+			for (int k = 0; k < result.length; k++) {
+				result[k] = value(chunk, base, k, mapFieldBytes);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Finds the category with the largest choice value T, as FuzzyArt does
+	 * with rho = 0 (classification), so that every category passes the
+	 * vigilance test; ties are broken by the TieBreak of the model
+	 *
+	 * @param pattern
+	 *            the pattern to be classified
+	 * @return the index of the winning category; -1 if there is none
+	 */
+	private int findCategory(Pattern pattern) {
+		int d = header.dimension;
+		double[] dense = null; // complement-coded input
+		int[] indices = null;
+		double[] values = null;
+		if (!pattern.isInputScaled() && scaler == null) {
+			pattern.scaleInput(header.iMin, header.iMax);
+		}
+		if (pattern.getInputDimension() != d) {
+			throw new RuntimeException("The model expects " + d + " numeric inputs, the pattern has "
+					+ pattern.getInputDimension());
+		}
+		if (!pattern.isInputScaled()) {
+			if (pattern.isSparse() && scaler.isZeroPreserving()) {
+				indices = pattern.getSparseIndices();
+				values = new double[indices.length];
+				scaler.encodeSparse(pattern, values);
+			} else {
+				dense = new double[2 * d];
+				scaler.encode(pattern, dense);
+			}
+		} else if (pattern.isSparse()) {
+			indices = pattern.getSparseIndices();
+			values = pattern.getScaledSparseValues();
+		} else {
+			double[] scaled = pattern.getScaledInput();
+			dense = new double[2 * d];
+			for (int i = 0; i < d; i++) {
+				dense[i] = scaled[i];
+				dense[d + i] = 1 - scaled[i];
+			}
+		}
+		char[] quantized = null;
+		if (weightBytes == 2) {
+			// FIXED16: the integer kernel works on the dense quantized input
+			if (dense == null) {
+				dense = new double[2 * d];
+				Arrays.fill(dense, d, 2 * d, 1.0);
+				for (int k = 0; k < indices.length; k++) {
+					dense[indices[k]] = values[k];
+					dense[d + indices[k]] = 1 - values[k];
+				}
+			}
+			quantized = new char[2 * d];
+			FixedPointVectorStore.quantize(dense, quantized);
+		}
+		long[] bits = null;
+		long[] complementBits = null;
+		if (pattern.hasBinaryInput()) {
+			bits = pattern.getBinaryInput();
+			if (bits.length != header.binaryWords) {
+				throw new RuntimeException("In findCategory: size mismatch with the binary block of the model");
+			}
+			complementBits = new long[bits.length];
+			for (int k = 0; k < bits.length; k++) {
+				complementBits[k] = ~bits[k] & Util.lastWordMask(k, pattern.getBinaryDimension());
+			}
+		}
+
+		int J = -1;
+		double TMax = -1;
+		for (int j = 0; j < header.numCategories; j++) {
+			ByteBuffer chunk = weights.chunk(j);
+			int base = weights.offset(j);
+			double norm = norms.chunk(j).getDouble(norms.offset(j));
+			double T;
+			if (quantized != null) {
+				long match = d > 0 ? minSum(chunk, base, quantized) : 0;
+				if (bits != null) {
+					match += (long) binaryMatchNorm(j, bits, complementBits) * FixedPointVectorStore.ONE;
+				}
+				// the saved norm is a sum of multiples of 1/ONE, exact once rounded
+				T = match / (FuzzyArt.FIXED_ALPHA + Math.round(norm * FixedPointVectorStore.ONE));
+			} else {
+				double match = bits == null ? 0.0 : binaryMatchNorm(j, bits, complementBits);
+				if (d > 0) {
+					if (dense != null) {
+						match += minSum(chunk, base, dense);
+					} else {
+						// the zero coordinates contribute the complement weight
+						match += complementNorms.chunk(j).getDouble(complementNorms.offset(j));
+						for (int k = 0; k < indices.length; k++) {
+							int i = indices[k];
+							double x = values[k];
+							double weight = value(chunk, base, i, weightBytes);
+							double complement = value(chunk, base, d + i, weightBytes);
+							match += Math.min(x, weight) + Math.min(1 - x, complement) - complement;
+						}
+					}
+				}
+				T = match / (FuzzyArt.ALPHA + norm);
+			}
+			if (T > TMax || (T == TMax && winsTie(j, J))) {
+				J = j;
+				TMax = T;
+			}
+		}
+		return J;
+	}
+
+	/**
+	 * The sum of min(input[i], w[i]) of the row at base, as the VectorStore
+	 * of the saved storage computes it: in single precision for FLOAT
+	 */
+	private double minSum(ByteBuffer chunk, int base, double[] input) {
+		double sum = 0.0;
+		if (weightBytes == 4) {
+			for (int i = 0; i < input.length; i++) {
+				sum += Math.min((float) input[i], chunk.getFloat(base + 4 * i));
+			}
+		} else {
+			for (int i = 0; i < input.length; i++) {
+				sum += Math.min(input[i], chunk.getDouble(base + 8 * i));
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * The integer sum of min(input[i], w[i]) of a FIXED16 row at base
+	 */
+	private static long minSum(ByteBuffer chunk, int base, char[] input) {
+		long sum = 0;
+		for (int i = 0; i < input.length; i++) {
+			sum += Math.min(input[i], chunk.getChar(base + 2 * i));
+		}
+		return sum;
+	}
+
+	/**
+	 * @return the value i of the row at base, stored with the given width as
+	 *         ModelFormat writes it
+	 */
+	private static double value(ByteBuffer chunk, int base, int i, int width) {
+		switch (width) {
+		case 2:
+			return chunk.getChar(base + 2 * i) / (double) FixedPointVectorStore.ONE;
+		case 4:
+			return chunk.getFloat(base + 4 * i);
+		default:
+			return chunk.getDouble(base + 8 * i);
+		}
+	}
+
+	/**
+	 * @return true if category j wins the tie with the current winner J
+	 */
+	private boolean winsTie(int j, int J) {
+		switch (tieBreak) {
+		case HIGHEST_INDEX:
+			return true;
+		case LARGEST_CATEGORY:
+			return sizes.chunk(j).getInt(sizes.offset(j)) > sizes.chunk(J).getInt(sizes.offset(J));
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Computes |I and w[j]| over the binary block by population counts
+	 */
+	private int binaryMatchNorm(int j, long[] bits, long[] complementBits) {
+		ByteBuffer weight = binaryWeights.chunk(j);
+		int weightBase = binaryWeights.offset(j);
+		ByteBuffer complement = binaryComplementWeights.chunk(j);
+		int complementBase = binaryComplementWeights.offset(j);
+		int sum = 0;
+		for (int k = 0; k < bits.length; k++) {
+			sum += Long.bitCount(bits[k] & weight.getLong(weightBase + 8 * k))
+					+ Long.bitCount(complementBits[k] & complement.getLong(complementBase + 8 * k));
+		}
+		return sum;
+	}
+
+	/**
+	 * Closes the file. The mapped regions stay valid until they are garbage
+	 * collected, so the model must not be used after close.
+	 */
+	public void close() throws IOException {
+		file.close();
+	}
+}
@@ -0,0 +1,49 @@
+package ro.unitbv.pythia;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file section made of equally sized rows, mapped read-only in chunks of
+ * whole rows so that sections larger than 2 GB can be mapped as well
+ *
+ * @author Lucian Sasu
+ */
+final class MappedRows {
+	private final ByteBuffer[] chunks;
+	private final int rowsPerChunk;
+	private final int rowBytes;
+
+	MappedRows(FileChannel channel, long offset, long rows, int rowBytes) throws IOException {
+		this.rowBytes = rowBytes;
+		if (rows == 0 || rowBytes == 0) {
+			rowsPerChunk = 1;
+			chunks = new ByteBuffer[0];
+			return;
+		}
+		rowsPerChunk = Math.max(1, Integer.MAX_VALUE / rowBytes);
+		chunks = new ByteBuffer[(int) ((rows + rowsPerChunk - 1) / rowsPerChunk)];
+		for (int c = 0; c < chunks.length; c++) {
+			long first = (long) c * rowsPerChunk;
+			long count = Math.min(rowsPerChunk, rows - first);
+			chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, offset + first * rowBytes, count * rowBytes);
+		}
+	}
+
+	/**
+	 * @param row the row index
+	 * @return the mapped chunk holding the row
+	 */
+	ByteBuffer chunk(long row) {
+		return chunks[(int) (row / rowsPerChunk)];
+	}
+
+	/**
+	 * @param row the row index
+	 * @return the position of the row in its chunk
+	 */
+	int offset(long row) {
+		return (int) (row % rowsPerChunk) * rowBytes;
+	}
+}
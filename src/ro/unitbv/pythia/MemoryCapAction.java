@@ -0,0 +1,23 @@
+package ro.unitbv.pythia;
+
+/**
+ * What FAMR.train does once the model reaches its memory cap, i.e. when one
+ * more category would not fit in it
+ *
+ * @author Lucian Sasu
+ */
+public enum MemoryCapAction {
+	/** training stops; the pair which needed the new category is rejected */
+	STOP,
+	/**
+	 * no category is created any more: the pairs which need one are rejected,
+	 * the others are still learned
+	 */
+	FREEZE,
+	/**
+	 * the baseline vigilance drops to 0, so that every pair is learned by
+	 * the best existing category of its class; match tracking still applies,
+	 * and the pairs which would still need a new category are rejected
+	 */
+	LOWER_VIGILANCE
+}
@@ -0,0 +1,247 @@
+package ro.unitbv.pythia;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and histograms of a network, recorded while it trains and
+ * classifies when it is given to FAMR.setMetrics: pairs processed and
+ * rejected, categories created, match tracking resets per pair, the time
+ * spent in the activation (choice function), vigilance and learning steps,
+ * and the latency of classification along with the number of inputs no
+ * category matched.
+ *
+ * The counters are LongAdders and the histograms have fixed buckets, so
+ * recording costs a few nanoseconds plus the System.nanoTime calls of the
+ * timings, and the values can be read from any thread while the network
+ * runs. register() exposes them through JMX.
+ *
+ * @author Lucian Sasu
+ */
+public class Metrics implements MetricsMXBean {
+
+	/** the JMX domain of the registered metrics */
+	public static final String DOMAIN = "ro.unitbv.pythia";
+
+	private final LongAdder pairs = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder created = new LongAdder();
+	private final LongAdder activationNanos = new LongAdder();
+	private final LongAdder vigilanceNanos = new LongAdder();
+	private final LongAdder learningNanos = new LongAdder();
+	private final LongAdder unmatched = new LongAdder();
+	private final Histogram resets = Histogram.linear(32);
+	private final Histogram latency = Histogram.exponential();
+	private volatile int categories = 0;
+	private ObjectName name = null;
+
+	/**
+	 * Records the outcome of a training pair
+	 *
+	 * @param resets
+	 *            the number of match tracking resets
+	 * @param created
+	 *            whether the pair created a category
+	 * @param accepted
+	 *            false if the pair was rejected
+	 * @param categories
+	 *            the number of categories after the pair
+	 */
+	void pair(int resets, boolean created, boolean accepted, int categories) {
+		pairs.increment();
+		if (!accepted) {
+			rejected.increment();
+		}
+		if (created) {
+			this.created.increment();
+		}
+		this.resets.record(resets);
+		this.categories = categories;
+	}
+
+	void activation(long nanos) {
+		activationNanos.add(nanos);
+	}
+
+	void vigilance(long nanos) {
+		vigilanceNanos.add(nanos);
+	}
+
+	void learning(long nanos) {
+		learningNanos.add(nanos);
+	}
+
+	/**
+	 * Records the duration of a classification
+	 *
+	 * @param nanos
+	 *            its duration
+	 */
+	void classification(long nanos) {
+		latency.record(nanos);
+	}
+
+	/**
+	 * Counts an input no category matched
+	 */
+	void unmatched() {
+		unmatched.increment();
+	}
+
+	/**
+	 * @param categories
+	 *            the current number of categories, e.g. of a loaded model
+	 */
+	void setCategories(int categories) {
+		this.categories = categories;
+	}
+
+	public long getPairsProcessed() {
+		return pairs.sum();
+	}
+
+	public long getPairsRejected() {
+		return rejected.sum();
+	}
+
+	public long getCategoriesCreated() {
+		return created.sum();
+	}
+
+	public int getCategories() {
+		return categories;
+	}
+
+	/**
+	 * @return the histogram of the match tracking resets per training pair
+	 */
+	public Histogram getMatchTrackingResets() {
+		return resets;
+	}
+
+	public double getMeanMatchTrackingResets() {
+		return resets.getMean();
+	}
+
+	public long getMaxMatchTrackingResets() {
+		return resets.getMax();
+	}
+
+	public long getMatchTrackingResetsP99() {
+		return resets.getQuantile(0.99);
+	}
+
+	public double getActivationMillis() {
+		return activationNanos.sum() / 1e6;
+	}
+
+	public double getVigilanceMillis() {
+		return vigilanceNanos.sum() / 1e6;
+	}
+
+	public double getLearningMillis() {
+		return learningNanos.sum() / 1e6;
+	}
+
+	/**
+	 * @return the histogram of the classification latencies, in nanoseconds
+	 */
+	public Histogram getClassificationLatency() {
+		return latency;
+	}
+
+	public long getClassifications() {
+		return latency.getCount();
+	}
+
+	public long getUnmatchedInputs() {
+		return unmatched.sum();
+	}
+
+	public double getMeanClassificationMicros() {
+		return latency.getMean() / 1e3;
+	}
+
+	public double getClassificationMicrosP50() {
+		return latency.getQuantile(0.5) / 1e3;
+	}
+
+	public double getClassificationMicrosP99() {
+		return latency.getQuantile(0.99) / 1e3;
+	}
+
+	public double getMaxClassificationMicros() {
+		return latency.getMax() / 1e3;
+	}
+
+	/**
+	 * Clears the counters and histograms; the number of categories is kept
+	 */
+	public void reset() {
+		pairs.reset();
+		rejected.reset();
+		created.reset();
+		activationNanos.reset();
+		vigilanceNanos.reset();
+		learningNanos.reset();
+		unmatched.reset();
+		resets.reset();
+		latency.reset();
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server, as
+	 * ro.unitbv.pythia:type=FAMR,name=<i>name</i>
+	 *
+	 * @param name
+	 *            the name of the network
+	 * @return the object name
+	 */
+	public synchronized ObjectName register(String name) {
+		if (this.name != null) {
+			throw new IllegalStateException("The metrics are already registered as " + this.name);
+		}
+		try {
+			ObjectName objectName = new ObjectName(DOMAIN + ":type=FAMR,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+			this.name = objectName;
+			return objectName;
+		} catch (JMException e) {
+			throw new RuntimeException("In register: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Removes the metrics from the platform MBean server, if registered
+	 */
+	public synchronized void unregister() {
+		if (name == null) {
+			return;
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			throw new RuntimeException("In unregister: " + e.getMessage(), e);
+		}
+		name = null;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d pairs (%d rejected), %d categories created, %d in all; match tracking resets "
+				+ "per pair: mean %.3f, p99 %d, max %d; activation %.1f ms, vigilance %.1f ms, learning %.1f ms; "
+				+ "%d classifications (%d unmatched): mean %.2f us, p50 %.2f us, p99 %.2f us, max %.2f us",
+				getPairsProcessed(), getPairsRejected(), getCategoriesCreated(), getCategories(),
+				getMeanMatchTrackingResets(), getMatchTrackingResetsP99(), getMaxMatchTrackingResets(),
+				getActivationMillis(), getVigilanceMillis(), getLearningMillis(), getClassifications(),
+				getUnmatchedInputs(), getMeanClassificationMicros(), getClassificationMicrosP50(),
+				getClassificationMicrosP99(), getMaxClassificationMicros());
+	}
+}
@@ -0,0 +1,45 @@
+package ro.unitbv.pythia;
+
+/**
+ * The management interface of Metrics, as seen by JMX clients such as
+ * jconsole. The durations are in milliseconds, the latencies in
+ * microseconds.
+ *
+ * @author Lucian Sasu
+ */
+public interface MetricsMXBean {
+
+	long getPairsProcessed();
+
+	long getPairsRejected();
+
+	long getCategoriesCreated();
+
+	int getCategories();
+
+	double getMeanMatchTrackingResets();
+
+	long getMaxMatchTrackingResets();
+
+	long getMatchTrackingResetsP99();
+
+	double getActivationMillis();
+
+	double getVigilanceMillis();
+
+	double getLearningMillis();
+
+	long getClassifications();
+
+	long getUnmatchedInputs();
+
+	double getMeanClassificationMicros();
+
+	double getClassificationMicrosP50();
+
+	double getClassificationMicrosP99();
+
+	double getMaxClassificationMicros();
+
+	void reset();
+}
@@ -0,0 +1,682 @@
+package ro.unitbv.pythia;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary format of a trained FAMR network, used instead of the Java
+ * serialization of its object graph. Only the learned state is stored; the
+ * scratch arrays of FuzzyArt and MapField are rebuilt empty.
+ *
+ * All values are big-endian. The file starts with a header of HEADER_SIZE
+ * bytes, followed by sections whose sizes follow from the header, so the
+ * offset of every section is known without reading the previous ones:
+ *
+ * <pre>
+ * header     magic, version, flags, parameters, dimensions, tie break and
+ *            storage (see Header)
+ * scaler     min and 1/(max-min), dimension doubles each      if FLAG_SCALER
+ * weights    numCategories rows of 2*dimension weight values
+ * norms      numCategories doubles, then numCategories complement norms
+ * binary     numCategories rows of binaryWords longs, then as many rows
+ *            of complement bits                                if binaryWords &gt; 0
+ * map field  numCategories rows of outputDim map field values, then
+ *            numCategories Q_t doubles
+ * centroids  numCategories rows of dimension doubles          if FLAG_CENTROIDS
+ * recency    the eviction clock, then numCategories longs of the clock of
+ *            the last pair won, then numCategories of the creation clock
+ *                                                              if FLAG_RECENCY
+ * sizes      numCategories ints (category_size)
+ * end        END_MARKER
+ * </pre>
+ *
+ * The weights are kept at the width of the storage of the network: doubles,
+ * floats for FLOAT and 16-bit fixed point chars for FIXED16; the map field
+ * values at the width of Storage.forMapField. Both sections are padded with
+ * zeros to a multiple of 8 bytes, so every double and long is aligned when
+ * the file is mapped in memory. The files of VERSION 1 hold doubles only and
+ * no storage, which reads as HEAP.
+ *
+ * The recency is the state of the eviction policies of
+ * FAMR.setCategoryBudget; it is saved once a network has learned under a
+ * budget, so that evictions after reading the network pick the same
+ * categories as without the save.
+ *
+ * @author Lucian Sasu
+ */
+public final class ModelFormat {
+
+	public static final int MAGIC = 0x46414d52; // "FAMR"
+	public static final int VERSION = 2;
+	public static final int HEADER_SIZE = 128;
+	static final int FLAG_SCALER = 1;
+	static final int FLAG_CENTROIDS = 2;
+	static final int FLAG_RECENCY = 4;
+	private static final int END_MARKER = 0x454e4421; // "END!"
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private ModelFormat() {
+	}
+
+	/**
+	 * The fixed-size header of a model file
+	 */
+	public static final class Header {
+		int version;
+		int flags;
+		double rhoInitA;
+		double betaA;
+		double rhoAB;
+		double iMin;
+		double iMax;
+		int epochs;
+		int outputDim;
+		int globalPairs;
+		int numCategories;
+		int dimension;
+		int binaryWords;
+		int tieBreak; // TieBreak ordinal; 0 (LOWEST_INDEX) in the older files
+		int storage; // Storage ordinal; 0 (HEAP) in the version 1 files
+
+		/**
+		 * @return the number of input categories of the stored network
+		 */
+		public int getNumCategories() {
+			return numCategories;
+		}
+
+		/**
+		 * @return the dimension of the (unnormalized) numeric input
+		 */
+		public int getDimension() {
+			return dimension;
+		}
+
+		/**
+		 * @return the number of classes
+		 */
+		public int getOutputDim() {
+			return outputDim;
+		}
+
+		/**
+		 * @return where the network kept its categories when it was written
+		 */
+		public Storage getStorage() {
+			return Storage.values()[storage];
+		}
+
+		/**
+		 * @return the bytes of a stored weight
+		 */
+		int weightBytes() {
+			return version < 2 ? 8 : getStorage().bytesPerValue();
+		}
+
+		/**
+		 * @return the bytes of a stored map field value
+		 */
+		int mapFieldBytes() {
+			return version < 2 ? 8 : getStorage().forMapField().bytesPerValue();
+		}
+
+		boolean hasScaler() {
+			return (flags & FLAG_SCALER) != 0;
+		}
+
+		boolean hasCentroids() {
+			return (flags & FLAG_CENTROIDS) != 0;
+		}
+
+		boolean hasRecency() {
+			return (flags & FLAG_RECENCY) != 0;
+		}
+
+		long scalerOffset() {
+			return HEADER_SIZE;
+		}
+
+		long weightsOffset() {
+			return scalerOffset() + (hasScaler() ? 16L * dimension : 0);
+		}
+
+		long normsOffset() {
+			return weightsOffset() + aligned(2L * numCategories * dimension * weightBytes());
+		}
+
+		long binaryOffset() {
+			return normsOffset() + 16L * numCategories;
+		}
+
+		long mapFieldOffset() {
+			return binaryOffset() + 16L * numCategories * binaryWords;
+		}
+
+		long relevanceOffset() {
+			return mapFieldOffset() + aligned((long) numCategories * outputDim * mapFieldBytes());
+		}
+
+		long centroidsOffset() {
+			return relevanceOffset() + 8L * numCategories;
+		}
+
+		long recencyOffset() {
+			return centroidsOffset() + (hasCentroids() ? 8L * numCategories * dimension : 0);
+		}
+
+		long sizesOffset() {
+			return recencyOffset() + (hasRecency() ? 8 + 16L * numCategories : 0);
+		}
+
+		/**
+		 * @return the total size of the model file, in bytes
+		 */
+		public long fileSize() {
+			return sizesOffset() + 4L * numCategories + 4;
+		}
+
+		private void write(ByteBuffer buffer) {
+			buffer.putInt(MAGIC).putInt(version).putInt(flags);
+			buffer.putDouble(rhoInitA).putDouble(betaA).putDouble(rhoAB).putDouble(iMin).putDouble(iMax);
+			buffer.putInt(epochs).putInt(outputDim).putInt(globalPairs);
+			buffer.putInt(numCategories).putInt(dimension).putInt(binaryWords).putInt(tieBreak).putInt(storage);
+			while (buffer.position() < HEADER_SIZE) {
+				buffer.put((byte) 0);
+			}
+		}
+
+		/**
+		 * Reads and validates a header
+		 *
+		 * @param buffer
+		 *            positioned at the start of the model
+		 * @return the header; the buffer is positioned after it
+		 * @throws IOException
+		 *             if the header is not the one of a supported model
+		 */
+		static Header read(ByteBuffer buffer) throws IOException {
+			int start = buffer.position();
+			if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+				throw new IOException("Not a FAMR model file");
+			}
+			Header header = new Header();
+			header.version = buffer.getInt();
+			if (header.version < 1 || header.version > VERSION) {
+				throw new IOException("Unsupported FAMR model version " + header.version + "; the newest supported is "
+						+ VERSION);
+			}
+			header.flags = buffer.getInt();
+			header.rhoInitA = buffer.getDouble();
+			header.betaA = buffer.getDouble();
+			header.rhoAB = buffer.getDouble();
+			header.iMin = buffer.getDouble();
+			header.iMax = buffer.getDouble();
+			header.epochs = buffer.getInt();
+			header.outputDim = buffer.getInt();
+			header.globalPairs = buffer.getInt();
+			header.numCategories = buffer.getInt();
+			header.dimension = buffer.getInt();
+			header.binaryWords = buffer.getInt();
+			header.tieBreak = buffer.getInt();
+			header.storage = buffer.getInt();
+			if ((header.flags & ~(FLAG_SCALER | FLAG_CENTROIDS | FLAG_RECENCY)) != 0 || header.outputDim <= 0
+					|| header.numCategories < 0 || header.dimension < 0 || header.binaryWords < 0
+					|| header.tieBreak < 0 || header.tieBreak >= TieBreak.values().length || header.storage < 0
+					|| header.storage >= Storage.values().length) {
+				throw new IOException("Corrupted FAMR model header");
+			}
+			buffer.position(start + HEADER_SIZE);
+			return header;
+		}
+	}
+
+	/**
+	 * @return bytes rounded up to a multiple of 8
+	 */
+	static long aligned(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+
+	/**
+	 * Writes the network to the stream. The stream is flushed, not closed.
+	 *
+	 * @param famr
+	 *            the network
+	 * @param stream
+	 *            the destination
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	public static void write(FAMR famr, OutputStream stream) throws IOException {
+		FuzzyArt art = famr.getArt_a();
+		MapField mapField = famr.getMapField();
+		Header header = new Header();
+		header.version = VERSION;
+		header.flags = (famr.getScaler() != null ? FLAG_SCALER : 0)
+				| (art.isCentroidTracking() ? FLAG_CENTROIDS : 0) | (famr.getClock() > 0 ? FLAG_RECENCY : 0);
+		header.rhoInitA = famr.getRhoInitA();
+		header.betaA = famr.getBetaA();
+		header.rhoAB = famr.getRhoAB();
+		header.iMin = famr.getIMin();
+		header.iMax = famr.getIMax();
+		header.epochs = famr.getEpochs();
+		header.outputDim = famr.getOutputDim();
+		header.globalPairs = famr.getGlobal_n_pairs();
+		header.numCategories = art.numCategories();
+		header.dimension = art.getInputDimension();
+		header.binaryWords = art.getBinaryWords();
+		header.tieBreak = art.getTieBreak().ordinal();
+		header.storage = famr.getStorage().ordinal();
+		if (famr.getScaler() != null) {
+			if (header.numCategories > 0 && famr.getScaler().getDimension() != header.dimension) {
+				throw new IOException("The scaler and the categories have different dimensions");
+			}
+			header.dimension = famr.getScaler().getDimension();
+		}
+
+		Writer out = new Writer(stream);
+		header.write(out.buffer);
+		if (header.hasScaler()) {
+			out.putDoubles(famr.getScaler().getMin());
+			out.putDoubles(famr.getScaler().getInverseRange());
+		}
+		int n = header.numCategories;
+		double[] row = new double[2 * header.dimension];
+		for (int j = 0; j < n; j++) {
+			art.getWeights().read(j, row);
+			out.putValues(row, header.weightBytes());
+		}
+		out.align();
+		for (int j = 0; j < n; j++) {
+			out.putDouble(art.getNorm(j));
+		}
+		for (int j = 0; j < n; j++) {
+			out.putDouble(art.getComplementNorm(j));
+		}
+		if (header.binaryWords > 0) {
+			for (int j = 0; j < n; j++) {
+				out.putLongs(art.getBinaryWeight(j));
+			}
+			for (int j = 0; j < n; j++) {
+				out.putLongs(art.getBinaryComplementWeight(j));
+			}
+		}
+		row = new double[header.outputDim];
+		for (int j = 0; j < n; j++) {
+			mapField.getRows().read(j, row);
+			out.putValues(row, header.mapFieldBytes());
+		}
+		out.align();
+		for (int j = 0; j < n; j++) {
+			out.putDouble(mapField.getRelevance(j));
+		}
+		if (header.hasCentroids()) {
+			for (int j = 0; j < n; j++) {
+				out.putDoubles(art.getCentroid(j));
+			}
+		}
+		if (header.hasRecency()) {
+			out.putLong(famr.getClock());
+			for (int j = 0; j < n; j++) {
+				out.putLong(famr.getLastWon(j));
+			}
+			for (int j = 0; j < n; j++) {
+				out.putLong(famr.getBornAt(j));
+			}
+		}
+		for (int j = 0; j < n; j++) {
+			out.putInt(art.getCategorySize(j));
+		}
+		out.putInt(END_MARKER);
+		out.flush();
+	}
+
+	/**
+	 * Reads a network written by write. Exactly the bytes of the model are
+	 * consumed from the stream, which is not closed. The sections are read
+	 * row by row, so a file stream should be buffered.
+	 *
+	 * @param stream
+	 *            the source
+	 * @return the network, with its categories kept in the storage it was
+	 *         written with
+	 * @throws IOException
+	 *             if reading fails or the data is not a supported model
+	 */
+	public static FAMR read(InputStream stream) throws IOException {
+		return read(stream, null);
+	}
+
+	/**
+	 * Reads a network written by write, keeping its categories in the given
+	 * storage
+	 *
+	 * @param stream
+	 *            the source
+	 * @param storage
+	 *            where the category weights and the map field are kept; null
+	 *            for the storage the network was written with
+	 * @return the network
+	 * @throws IOException
+	 *             if reading fails or the data is not a supported model
+	 */
+	public static FAMR read(InputStream stream, Storage storage) throws IOException {
+		Reader in = new Reader(stream);
+		in.fill(HEADER_SIZE);
+		Header header = Header.read(in.buffer);
+		if (storage == null) {
+			storage = header.getStorage();
+		}
+		int n = header.numCategories;
+		int d = header.dimension;
+
+		FAMR famr = new FAMR(header.rhoInitA, header.betaA, header.rhoAB, header.epochs, header.iMin, header.iMax,
+				header.outputDim, storage);
+		Scaler scaler = null;
+		if (header.hasScaler()) {
+			scaler = Scaler.fromInverseRange(in.getDoubles(new double[d]), in.getDoubles(new double[d]));
+		}
+		VectorStore weights = storage.create(2 * d);
+		double[] row = new double[2 * d];
+		for (int j = 0; j < n; j++) {
+			weights.add(in.getValues(row, header.weightBytes()));
+		}
+		in.align();
+		double[] norms = in.getDoubles(new double[n]);
+		double[] complementNorms = in.getDoubles(new double[n]);
+		List<long[]> binaryWeights = new ArrayList<long[]>();
+		List<long[]> binaryComplementWeights = new ArrayList<long[]>();
+		if (header.binaryWords > 0) {
+			for (int j = 0; j < n; j++) {
+				binaryWeights.add(in.getLongs(new long[header.binaryWords]));
+			}
+			for (int j = 0; j < n; j++) {
+				binaryComplementWeights.add(in.getLongs(new long[header.binaryWords]));
+			}
+		}
+		VectorStore w_ab = storage.forMapField().create(header.outputDim);
+		row = new double[header.outputDim];
+		for (int j = 0; j < n; j++) {
+			w_ab.add(in.getValues(row, header.mapFieldBytes()));
+		}
+		in.align();
+		double[] Q_t = in.getDoubles(new double[n]);
+		List<FuzzyVector> centroids = null;
+		if (header.hasCentroids()) {
+			centroids = new ArrayList<FuzzyVector>(n);
+			for (int j = 0; j < n; j++) {
+				FuzzyVector centroid = new FuzzyVector(d);
+				in.getDoubles(centroid.v);
+				centroids.add(centroid);
+			}
+		}
+		long clock = 0;
+		long[] lastWon = null;
+		long[] bornAt = null;
+		if (header.hasRecency()) {
+			clock = in.getLongs(new long[1])[0];
+			lastWon = in.getLongs(new long[n]);
+			bornAt = in.getLongs(new long[n]);
+		}
+		int[] sizes = in.getInts(new int[n]);
+		if (in.getInt() != END_MARKER) {
+			throw new IOException("Corrupted FAMR model: end marker not found");
+		}
+
+		famr.getArt_a().restoreCategories(weights, norms, complementNorms, binaryWeights, binaryComplementWeights,
+				centroids, sizes);
+		famr.getArt_a().setTieBreak(TieBreak.values()[header.tieBreak]);
+		famr.getMapField().restore(w_ab, Q_t);
+		famr.restore(header.globalPairs, scaler);
+		if (header.hasRecency()) {
+			famr.restoreClock(clock);
+			for (int j = 0; j < n; j++) {
+				famr.restoreRecency(j, lastWon[j], bornAt[j]);
+			}
+		}
+		return famr;
+	}
+
+	/**
+	 * Writes the network to a file
+	 *
+	 * @param famr
+	 *            the network
+	 * @param path
+	 *            the file to be created or overwritten
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	public static void save(FAMR famr, String path) throws IOException {
+		try (OutputStream stream = new FileOutputStream(path)) {
+			write(famr, stream);
+		}
+	}
+
+	/**
+	 * Reads a network from a file written by save
+	 *
+	 * @param path
+	 *            the model file
+	 * @return the network, with its categories kept in the storage it was
+	 *         saved with
+	 * @throws IOException
+	 *             if reading fails or the file is not a supported model
+	 */
+	public static FAMR load(String path) throws IOException {
+		return load(path, null);
+	}
+
+	/**
+	 * Reads a network from a file written by save, keeping its categories in
+	 * the given storage
+	 *
+	 * @param path
+	 *            the model file
+	 * @param storage
+	 *            where the category weights and the map field are kept; null
+	 *            for the storage the network was saved with
+	 * @return the network
+	 * @throws IOException
+	 *             if reading fails or the file is not a supported model
+	 */
+	public static FAMR load(String path, Storage storage) throws IOException {
+		try (InputStream stream = new BufferedInputStream(new FileInputStream(path), BUFFER_SIZE)) {
+			return read(stream, storage);
+		}
+	}
+
+	/**
+	 * Buffered big-endian writer with bulk puts of primitive arrays
+	 */
+	private static final class Writer {
+		private final OutputStream stream;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		private long flushed = 0; // the bytes written before the buffer
+
+		Writer(OutputStream stream) {
+			this.stream = stream;
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				stream.write(buffer.array(), 0, buffer.position());
+				flushed += buffer.position();
+				buffer.clear();
+			}
+		}
+
+		void putInt(int value) throws IOException {
+			ensure(4);
+			buffer.putInt(value);
+		}
+
+		void putLong(long value) throws IOException {
+			ensure(8);
+			buffer.putLong(value);
+		}
+
+		void putDouble(double value) throws IOException {
+			ensure(8);
+			buffer.putDouble(value);
+		}
+
+		void putDoubles(double[] values) throws IOException {
+			int offset = 0;
+			while (offset < values.length) {
+				ensure(8);
+				int count = Math.min(values.length - offset, buffer.remaining() / 8);
+				buffer.asDoubleBuffer().put(values, offset, count);
+				buffer.position(buffer.position() + 8 * count);
+				offset += count;
+			}
+		}
+
+		/**
+		 * Puts values of [0, 1] at the given width: doubles, floats or 16-bit
+		 * fixed point
+		 */
+		void putValues(double[] values, int width) throws IOException {
+			if (width == 8) {
+				putDoubles(values);
+				return;
+			}
+			for (double value : values) {
+				ensure(width);
+				if (width == 4) {
+					buffer.putFloat((float) value);
+				} else {
+					buffer.putChar(FixedPointVectorStore.quantize(value));
+				}
+			}
+		}
+
+		/**
+		 * Pads with zeros to a multiple of 8 bytes
+		 */
+		void align() throws IOException {
+			while ((flushed + buffer.position()) % 8 != 0) {
+				ensure(1);
+				buffer.put((byte) 0);
+			}
+		}
+
+		void putLongs(long[] values) throws IOException {
+			int offset = 0;
+			while (offset < values.length) {
+				ensure(8);
+				int count = Math.min(values.length - offset, buffer.remaining() / 8);
+				buffer.asLongBuffer().put(values, offset, count);
+				buffer.position(buffer.position() + 8 * count);
+				offset += count;
+			}
+		}
+
+		void flush() throws IOException {
+			stream.write(buffer.array(), 0, buffer.position());
+			flushed += buffer.position();
+			buffer.clear();
+			stream.flush();
+		}
+	}
+
+	/**
+	 * Big-endian reader with bulk gets of primitive arrays. It never reads
+	 * ahead of the requested values, so the stream can hold other data after
+	 * the model (e.g. inside an ObjectInputStream).
+	 */
+	private static final class Reader {
+		private final DataInputStream stream;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		private long consumed = 0; // the bytes read from the stream
+
+		Reader(InputStream stream) {
+			this.stream = new DataInputStream(stream);
+		}
+
+		/**
+		 * Reads exactly bytes bytes into the buffer, from its start
+		 */
+		void fill(int bytes) throws IOException {
+			buffer.clear();
+			stream.readFully(buffer.array(), 0, bytes);
+			buffer.limit(bytes);
+			consumed += bytes;
+		}
+
+		/**
+		 * Skips the padding up to a multiple of 8 bytes
+		 */
+		void align() throws IOException {
+			int padding = (int) (aligned(consumed) - consumed);
+			if (padding > 0) {
+				fill(padding);
+			}
+		}
+
+		int getInt() throws IOException {
+			fill(4);
+			return buffer.getInt();
+		}
+
+		double[] getDoubles(double[] values) throws IOException {
+			int offset = 0;
+			while (offset < values.length) {
+				int count = Math.min(values.length - offset, BUFFER_SIZE / 8);
+				fill(8 * count);
+				buffer.asDoubleBuffer().get(values, offset, count);
+				offset += count;
+			}
+			return values;
+		}
+
+		/**
+		 * Gets values put by Writer.putValues with the same width
+		 */
+		double[] getValues(double[] values, int width) throws IOException {
+			if (width == 8) {
+				return getDoubles(values);
+			}
+			int offset = 0;
+			while (offset < values.length) {
+				int count = Math.min(values.length - offset, BUFFER_SIZE / width);
+				fill(width * count);
+				for (int i = offset; i < offset + count; i++) {
+					values[i] = width == 4 ? buffer.getFloat() : buffer.getChar() / (double) FixedPointVectorStore.ONE;
+				}
+				offset += count;
+			}
+			return values;
+		}
+
+		int[] getInts(int[] values) throws IOException {
+			int offset = 0;
+			while (offset < values.length) {
+				int count = Math.min(values.length - offset, BUFFER_SIZE / 4);
+				fill(4 * count);
+				buffer.asIntBuffer().get(values, offset, count);
+				offset += count;
+			}
+			return values;
+		}
+
+		long[] getLongs(long[] values) throws IOException {
+			int offset = 0;
+			while (offset < values.length) {
+				int count = Math.min(values.length - offset, BUFFER_SIZE / 8);
+				fill(8 * count);
+				buffer.asLongBuffer().get(values, offset, count);
+				offset += count;
+			}
+			return values;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package ro.unitbv.pythia;
+
+/**
+ * The memory held by the categories of a FAMR network, per category and in
+ * all, as returned by FAMR.getMemory. Every category costs the same:
+ *
+ * <pre>
+ * weights    the complement-coded weights, 2 * d values of the storage,
+ *            and the two packed words of a binary block, if any
+ * centroid   the d doubles of the centroid, in their own FuzzyVector; 0
+ *            if the centroids are not tracked
+ * mapField   the row of w_ab, one value per class
+ * relevance  the accumulated relevance Q_t of the category
+ * index      the per-category search state: the cached norms, the choice
+ *            values, the eligibility flag and the number of representants
+ * </pre>
+ *
+ * The values are exact for the arrays; the Java objects and array headers
+ * are counted as on a 64-bit JVM with compressed references (12-byte
+ * object headers, 16-byte array headers, 4-byte references, 8-byte
+ * alignment). The backing arrays grow by doubling, so the memory actually
+ * allocated may exceed the total by the unused capacity of the last growth.
+ * The weights of the DIRECT storage are held outside of the Java heap and
+ * are counted too.
+ *
+ * @author Lucian Sasu
+ */
+public class ModelMemory {
+
+	static final int OBJECT_HEADER = 12;
+	static final int ARRAY_HEADER = 16;
+	static final int REFERENCE = 4;
+	/** norms, complementNorms, T, matchNorms, quantizedNorms, quantizedMatches, eligible, category_size */
+	static final int INDEX_BYTES = 6 * 8 + 1 + 4;
+
+	private final int categories;
+	private final long weightBytes;
+	private final long centroidBytes;
+	private final long mapFieldBytes;
+	private final long relevanceBytes;
+	private final long indexBytes;
+
+	ModelMemory(FuzzyArt art_a, MapField mapField) {
+		int d = art_a.getCategoryDimension();
+		int words = art_a.getCategoryBinaryWords();
+		this.categories = art_a.numCategories();
+		long binary = words == 0 ? 0 : 2 * (align(ARRAY_HEADER + 8L * words) + REFERENCE);
+		this.weightBytes = 2L * d * art_a.getStorage().bytesPerValue() + binary;
+		this.centroidBytes = !art_a.isCentroidTracking() ? 0
+				: align(OBJECT_HEADER + 4 + REFERENCE) + align(ARRAY_HEADER + 8L * d) + REFERENCE;
+		this.mapFieldBytes = (long) mapField.getColumnsNo() * mapField.getStorage().forMapField().bytesPerValue();
+		this.relevanceBytes = 8;
+		this.indexBytes = INDEX_BYTES;
+	}
+
+	private static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+
+	/**
+	 * @return the number of categories
+	 */
+	public int getCategories() {
+		return categories;
+	}
+
+	/**
+	 * @return the bytes of the weights of one category
+	 */
+	public long getWeightBytes() {
+		return weightBytes;
+	}
+
+	/**
+	 * @return the bytes of the centroid of one category
+	 */
+	public long getCentroidBytes() {
+		return centroidBytes;
+	}
+
+	/**
+	 * @return the bytes of the mapfield row of one category
+	 */
+	public long getMapFieldBytes() {
+		return mapFieldBytes;
+	}
+
+	/**
+	 * @return the bytes of the relevance Q_t of one category
+	 */
+	public long getRelevanceBytes() {
+		return relevanceBytes;
+	}
+
+	/**
+	 * @return the bytes of the search state of one category
+	 */
+	public long getIndexBytes() {
+		return indexBytes;
+	}
+
+	/**
+	 * @return the bytes of one category
+	 */
+	public long getBytesPerCategory() {
+		return weightBytes + centroidBytes + mapFieldBytes + relevanceBytes + indexBytes;
+	}
+
+	/**
+	 * @return the bytes of all the categories
+	 */
+	public long getTotalBytes() {
+		return categories * getBytesPerCategory();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d categories of %d bytes (weights %d, centroid %d, mapfield row %d, Q_t %d, "
+				+ "index %d): %d bytes", categories, getBytesPerCategory(), weightBytes, centroidBytes,
+				mapFieldBytes, relevanceBytes, indexBytes, getTotalBytes());
+	}
+}
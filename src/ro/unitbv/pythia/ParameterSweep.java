@@ -0,0 +1,189 @@
+package ro.unitbv.pythia;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Grid search over rho_init_a, beta_a, rho_ab and the number of epochs. The
+ * training and evaluation sets are prepared (converted and scaled) once by the
+ * caller and shared by all the grid points, which are trained concurrently on
+ * a bounded thread pool.
+ * 
+ * When pruning is enabled, a grid point with several epochs is evaluated after
+ * each epoch and stopped if a finished grid point already dominates it: more
+ * epochs never remove categories, so only the accuracy could still improve,
+ * and the point is dropped when it lags by more than the pruning margin.
+ * 
+ * @author Lucian Sasu
+ */
+public class ParameterSweep {
+
+	private double[] rhoInitA = { 0.8 };
+	private double[] betaA = { 1 };
+	private double[] rhoAB = { 0.0 };
+	private int[] epochs = { 1 };
+	private int numThreads = 1;
+	private double pruneMargin = -1;
+
+	private final List<SweepResult> finished = new ArrayList<SweepResult>();
+
+	/**
+	 * Trains and evaluates every grid point
+	 * 
+	 * @param training
+	 *            the training set
+	 * @param evaluation
+	 *            the set used for computing the accuracy; scaled in the same
+	 *            way as training
+	 * @param listener
+	 *            receives each result as soon as it is ready; may be null
+	 * @return all the results, in grid order
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the grid points
+	 * @throws ExecutionException
+	 *             if training or evaluating a grid point failed
+	 */
+	public List<SweepResult> run(final PreparedDataset training, final PreparedDataset evaluation,
+			final SweepListener listener) throws InterruptedException, ExecutionException {
+		if (!training.hasSameScaling(evaluation)) {
+			throw new IllegalArgumentException("The training and evaluation sets are scaled differently");
+		}
+		synchronized (finished) {
+			finished.clear();
+		}
+		List<Callable<SweepResult>> tasks = new ArrayList<Callable<SweepResult>>();
+		for (final double rho : rhoInitA) {
+			for (final double beta : betaA) {
+				for (final double rho_ab : rhoAB) {
+					for (final int epochCount : epochs) {
+						tasks.add(new Callable<SweepResult>() {
+							public SweepResult call() {
+								SweepResult result = runPoint(training, evaluation, rho, beta, rho_ab, epochCount);
+								synchronized (finished) {
+									finished.add(result);
+									if (listener != null) {
+										listener.resultReady(result);
+									}
+								}
+								return result;
+							}
+						});
+					}
+				}
+			}
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, numThreads));
+		try {
+			List<SweepResult> results = new ArrayList<SweepResult>(tasks.size());
+			for (Future<SweepResult> future : executor.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+			return results;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Trains one grid point, epoch by epoch
+	 */
+	private SweepResult runPoint(PreparedDataset training, PreparedDataset evaluation, double rho, double beta,
+			double rho_ab, int epochCount) {
+		FAMR famr = new FAMR(rho, beta, rho_ab, 1, training.getIMin(), training.getIMax(), training.getNumClasses());
+		famr.setScaler(training.getScaler());
+		long trainingTime = 0;
+		double accuracy = Double.NaN;
+		int epoch = 0;
+		boolean pruned = false;
+		while (epoch < epochCount) {
+			long start = System.nanoTime();
+			famr.train(training, null);
+			trainingTime += System.nanoTime() - start;
+			epoch++;
+			if (epoch < epochCount && pruneMargin >= 0) {
+				accuracy = famr.computeAccuracy(evaluation.getPatterns());
+				if (isDominated(accuracy, famr.getInputCategoriesNo())) {
+					pruned = true;
+					break;
+				}
+			} else {
+				accuracy = Double.NaN;
+			}
+		}
+		if (Double.isNaN(accuracy)) {
+			accuracy = famr.computeAccuracy(evaluation.getPatterns());
+		}
+		return new SweepResult(rho, beta, rho_ab, epoch, accuracy, famr.getInputCategoriesNo(),
+				trainingTime / 1000000, pruned);
+	}
+
+	/**
+	 * @return true if a finished grid point has no more categories and an
+	 *         accuracy better by more than the pruning margin
+	 */
+	private boolean isDominated(double accuracy, int categories) {
+		synchronized (finished) {
+			for (SweepResult result : finished) {
+				if (result.getCategories() <= categories && result.getAccuracy() > accuracy + pruneMargin) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param values
+	 *            the rho_init_a values of the grid
+	 */
+	public void setRhoInitA(double[] values) {
+		this.rhoInitA = values;
+	}
+
+	/**
+	 * @param values
+	 *            the beta_a values of the grid
+	 */
+	public void setBetaA(double[] values) {
+		this.betaA = values;
+	}
+
+	/**
+	 * @param values
+	 *            the rho_ab values of the grid
+	 */
+	public void setRhoAB(double[] values) {
+		this.rhoAB = values;
+	}
+
+	/**
+	 * @param values
+	 *            the numbers of epochs of the grid
+	 */
+	public void setEpochs(int[] values) {
+		this.epochs = values;
+	}
+
+	/**
+	 * @param numThreads
+	 *            the number of grid points trained at the same time
+	 */
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * @param pruneMargin
+	 *            the accuracy margin used for pruning dominated grid points; a
+	 *            negative value disables pruning
+	 */
+	public void setPruneMargin(double pruneMargin) {
+		this.pruneMargin = pruneMargin;
+	}
+}
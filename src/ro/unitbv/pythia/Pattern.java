@@ -9,6 +9,14 @@ public class Pattern implements Cloneable, Serializable {
 	private double[] input;// original value
 	private double[] scaledInput;// scaled input: each value is in interval [0,
 									// 1]
+	// sparse form of the input: only the non-zero values are stored
+	private int[] sparseIndices = null;
+	private double[] sparseValues = null;
+	private double[] scaledSparseValues = null;
+	private int sparseDimension = 0;
+	// binary values (e.g. from nominal attributes), packed 64 per long
+	private long[] binaryInput = null;
+	private int binaryDimension = 0;
 	private int classIndex = -1;// for classification
 	private double originalContinuousOutput = Double.NaN;// for regression
 	private double scaledContinuousOutput = Double.NaN;// for regression
@@ -92,6 +100,135 @@ public class Pattern implements Cloneable, Serializable {
 		this.input = input;
 	}
 
+	/**
+	 * @return the original (unscaled) dense input; null for sparse patterns
+	 */
+	public double[] getInput() {
+		return input;
+	}
+
+	/**
+	 * Sets the scaled dense input computed elsewhere, e.g. by a Scaler
+	 * 
+	 * @param scaledInput
+	 *            the input scaled into [0, 1]
+	 */
+	void setScaledInput(double[] scaledInput) {
+		this.scaledInput = scaledInput;
+		setInputIsScaled(true);
+	}
+
+	/**
+	 * Sets a sparse input; the positions which are not given in indices hold
+	 * the value 0
+	 * 
+	 * @param indices
+	 *            the positions of the non-zero values, in increasing order
+	 * @param values
+	 *            the values found at the given positions
+	 * @param dimension
+	 *            the full input dimension
+	 */
+	public void setSparseInput(int[] indices, double[] values, int dimension) {
+		if (indices.length != values.length) {
+			throw new IllegalArgumentException("The number of indices and values should be equal");
+		}
+		this.input = null;
+		this.sparseIndices = indices;
+		this.sparseValues = values;
+		this.sparseDimension = dimension;
+	}
+
+	/**
+	 * @return true if the input is held in sparse form
+	 */
+	public boolean isSparse() {
+		return sparseIndices != null;
+	}
+
+	/**
+	 * @return the positions of the non-zero input values (sparse patterns only)
+	 */
+	public int[] getSparseIndices() {
+		return sparseIndices;
+	}
+
+	/**
+	 * @return the original non-zero input values (sparse patterns only)
+	 */
+	public double[] getSparseValues() {
+		return sparseValues;
+	}
+
+	/**
+	 * Sets the scaled non-zero values computed elsewhere, e.g. by a Scaler
+	 * 
+	 * @param scaledValues
+	 *            the non-zero values scaled into [0, 1]
+	 */
+	void setScaledSparseValues(double[] scaledValues) {
+		this.scaledSparseValues = scaledValues;
+		setInputIsScaled(true);
+	}
+
+	/**
+	 * @return the scaled non-zero input values (sparse patterns only)
+	 */
+	public double[] getScaledSparseValues() {
+		return scaledSparseValues;
+	}
+
+	/**
+	 * Sets the block of binary values, which is kept apart from the (scaled)
+	 * numeric input
+	 * 
+	 * @param bits
+	 *            the binary values, packed 64 per long, lowest bit first
+	 * @param dimension
+	 *            the number of binary values
+	 */
+	public void setBinaryInput(long[] bits, int dimension) {
+		if (bits.length != Util.packedLength(dimension)) {
+			throw new IllegalArgumentException(bits.length + " words can not hold " + dimension + " bits");
+		}
+		this.binaryInput = bits;
+		this.binaryDimension = dimension;
+	}
+
+	/**
+	 * @return true if the pattern has a block of binary values
+	 */
+	public boolean hasBinaryInput() {
+		return binaryDimension > 0;
+	}
+
+	/**
+	 * @return the packed binary values
+	 */
+	public long[] getBinaryInput() {
+		return binaryInput;
+	}
+
+	/**
+	 * @return the number of binary values
+	 */
+	public int getBinaryDimension() {
+		return binaryDimension;
+	}
+
+	/**
+	 * Converts a sparse input to the dense form
+	 */
+	void densify() {
+		input = new double[sparseDimension];
+		for (int k = 0; k < sparseIndices.length; k++) {
+			input[sparseIndices[k]] = sparseValues[k];
+		}
+		sparseIndices = null;
+		sparseValues = null;
+		sparseDimension = 0;
+	}
+
 	/**
 	 * @return the classIndex
 	 */
@@ -138,7 +275,9 @@ public class Pattern implements Cloneable, Serializable {
 	}
 
 	/**
-	 * Scales the contents to [0, 1]
+	 * Scales the contents to [0, 1]. A sparse input stays sparse only if
+	 * inputMin is 0, because otherwise its zero values are not mapped to 0;
+	 * in that case it is converted to the dense form first.
 	 * 
 	 * @param inputMin
 	 *            the minimum input value: input[i] >= inputMin, for all i
@@ -153,6 +292,14 @@ public class Pattern implements Cloneable, Serializable {
 			throw new RuntimeException("In scaleInput: inputMin should be less than inputMax, they are (" + inputMin
 					+ ", " + inputMax + ")");
 		}
+		if (isSparse()) {
+			if (inputMin != 0.0) {
+				densify();
+			} else {
+				scaleSparseInput(inputMax);
+				return;
+			}
+		}
 		if (Util.min(this.input) < inputMin) {
 			throw new RuntimeException("In scaleInput: inputMin is larger than min of passed vector");
 		}
@@ -167,6 +314,26 @@ public class Pattern implements Cloneable, Serializable {
 		setInputIsScaled(true);
 	}
 
+	/**
+	 * Scales the non-zero values of a sparse input into [0, 1], for inputMin = 0
+	 * 
+	 * @param inputMax
+	 *            the maximum input value
+	 */
+	private void scaleSparseInput(double inputMax) {
+		scaledSparseValues = new double[sparseValues.length];
+		for (int k = 0; k < sparseValues.length; k++) {
+			if (sparseValues[k] < 0) {
+				throw new RuntimeException("In scaleInput: inputMin is larger than min of passed vector");
+			}
+			if (sparseValues[k] > inputMax) {
+				throw new RuntimeException("In scaleInput: inputMax is larger than max of passed vector");
+			}
+			scaledSparseValues[k] = sparseValues[k] / inputMax;
+		}
+		setInputIsScaled(true);
+	}
+
 	/**
 	 * Scales the output
 	 * 
@@ -205,8 +372,12 @@ public class Pattern implements Cloneable, Serializable {
 	 * @return the input size
 	 */
 	public int getInputDimension() {
+		if (isSparse()) {
+			return sparseDimension;
+		}
 		if (input == null) {
-			return 0;
+			// e.g. a pattern read already scaled from a DatasetCache file
+			return scaledInput == null ? 0 : scaledInput.length;
 		}
 		return input.length;
 	}
@@ -242,6 +413,15 @@ public class Pattern implements Cloneable, Serializable {
 		pattern.scaledInput = this.scaledInput == null ? null
 				: Arrays.copyOf(this.scaledInput, this.scaledInput.length);
 		pattern.weight = this.weight;
+		pattern.sparseIndices = this.sparseIndices == null ? null
+				: Arrays.copyOf(this.sparseIndices, this.sparseIndices.length);
+		pattern.sparseValues = this.sparseValues == null ? null
+				: Arrays.copyOf(this.sparseValues, this.sparseValues.length);
+		pattern.scaledSparseValues = this.scaledSparseValues == null ? null
+				: Arrays.copyOf(this.scaledSparseValues, this.scaledSparseValues.length);
+		pattern.sparseDimension = this.sparseDimension;
+		pattern.binaryInput = this.binaryInput == null ? null : Arrays.copyOf(this.binaryInput, this.binaryInput.length);
+		pattern.binaryDimension = this.binaryDimension;
 
 		return pattern;
 	}
@@ -250,7 +430,11 @@ public class Pattern implements Cloneable, Serializable {
 	 * produces string representation of this pattern
 	 */
 	public String toString_unscaled() {
-		StringBuilder stringBuilder = new StringBuilder(Util.toString(input, ","));
+		StringBuilder stringBuilder = new StringBuilder(
+				isSparse() ? Util.toString(sparseIndices, sparseValues, ",") : Util.toString(input, ","));
+		if (hasBinaryInput()) {
+			stringBuilder.append(Util.toString(binaryInput, binaryDimension, ","));
+		}
 		if (isClassificationInstance) {
 			stringBuilder.append(getClassIndex());
 		} else {
@@ -268,7 +452,11 @@ public class Pattern implements Cloneable, Serializable {
 		{
 			throw new RuntimeException("The current pattern is not scaled");
 		}
-		StringBuilder stringBuilder = new StringBuilder(Util.toString(scaledInput, ","));
+		StringBuilder stringBuilder = new StringBuilder(
+				isSparse() ? Util.toString(sparseIndices, scaledSparseValues, ",") : Util.toString(scaledInput, ","));
+		if (hasBinaryInput()) {
+			stringBuilder.append(Util.toString(binaryInput, binaryDimension, ","));
+		}
 		if (isClassificationInstance) {
 			stringBuilder.append(getClassIndex());
 		} else {
@@ -0,0 +1,28 @@
+package ro.unitbv.pythia;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A sequence of training patterns which is read in chunks, e.g. from a file,
+ * instead of being held in memory, and which can be scanned again from the
+ * start for every training epoch
+ *
+ * @author Lucian Sasu
+ */
+public interface PatternSource extends Closeable {
+
+	/**
+	 * Starts a new scan, from the first pattern
+	 * @throws IOException if the source can not be reopened
+	 */
+	void rewind() throws IOException;
+
+	/**
+	 * Reads the next patterns of the current scan
+	 * @param chunk receives the patterns, from position 0
+	 * @return the number of patterns read; 0 at the end of the scan
+	 * @throws IOException if reading fails
+	 */
+	int read(Pattern[] chunk) throws IOException;
+}
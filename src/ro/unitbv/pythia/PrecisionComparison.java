@@ -0,0 +1,145 @@
+package ro.unitbv.pythia;
+
+import java.util.List;
+
+/**
+ * Trains the same network in double precision (Storage.HEAP) and with a
+ * reduced precision storage (FLOAT or FIXED16) on the same data and compares
+ * their predictions on a test set, to validate the reduced precision for a
+ * given dataset.
+ *
+ * @author Lucian Sasu
+ */
+public class PrecisionComparison {
+
+	private final Storage reduced;
+	private final int testSize;
+	private int agreements = 0;
+	private final int[] correct = new int[2];
+	private final int[] categories = new int[2];
+	private final long[] classificationNanos = new long[2];
+
+	private PrecisionComparison(Storage reduced, int testSize) {
+		this.reduced = reduced;
+		this.testSize = testSize;
+	}
+
+	/**
+	 * Compares the double precision with the single precision (FLOAT)
+	 * 
+	 * @param training
+	 *            the training set
+	 * @param test
+	 *            the test set, scaled in the same way as the training set
+	 * @param rhoInitA
+	 *            baseline vigilance parameter
+	 * @param betaA
+	 *            used for category learning
+	 * @param rhoAB
+	 *            mapfield threshold
+	 * @param epochs
+	 *            how many iterations over the training set
+	 * @return the comparison of the two networks
+	 */
+	public static PrecisionComparison run(PreparedDataset training, PreparedDataset test, double rhoInitA,
+			double betaA, double rhoAB, int epochs) {
+		return run(training, test, rhoInitA, betaA, rhoAB, epochs, Storage.FLOAT);
+	}
+
+	/**
+	 * @param training
+	 *            the training set
+	 * @param test
+	 *            the test set, scaled in the same way as the training set
+	 * @param rhoInitA
+	 *            baseline vigilance parameter
+	 * @param betaA
+	 *            used for category learning
+	 * @param rhoAB
+	 *            mapfield threshold
+	 * @param epochs
+	 *            how many iterations over the training set
+	 * @param reduced
+	 *            the storage compared with Storage.HEAP
+	 * @return the comparison of the two networks
+	 */
+	public static PrecisionComparison run(PreparedDataset training, PreparedDataset test, double rhoInitA,
+			double betaA, double rhoAB, int epochs, Storage reduced) {
+		if (!training.hasSameScaling(test)) {
+			throw new IllegalArgumentException("The training and the test set are scaled differently");
+		}
+		Storage[] modes = { Storage.HEAP, reduced };
+		List<Pattern> patterns = test.getPatterns();
+		int[][] labels = new int[modes.length][patterns.size()];
+		PrecisionComparison result = new PrecisionComparison(reduced, patterns.size());
+		for (int m = 0; m < modes.length; m++) {
+			FAMR famr = new FAMR(rhoInitA, betaA, rhoAB, epochs, training.getIMin(), training.getIMax(),
+					training.getNumClasses(), modes[m]);
+			famr.setScaler(training.getScaler());
+			famr.train(training, null);
+			result.categories[m] = famr.getInputCategoriesNo();
+			long start = System.nanoTime();
+			for (int p = 0; p < patterns.size(); p++) {
+				labels[m][p] = famr.classifySingleInstance(patterns.get(p));
+			}
+			result.classificationNanos[m] = System.nanoTime() - start;
+			for (int p = 0; p < patterns.size(); p++) {
+				if (labels[m][p] == patterns.get(p).getClassIndex()) {
+					result.correct[m]++;
+				}
+			}
+		}
+		for (int p = 0; p < patterns.size(); p++) {
+			if (labels[0][p] == labels[1][p]) {
+				result.agreements++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the fraction of test patterns which get the same label with both
+	 *         storages
+	 */
+	public double getAgreement() {
+		return testSize == 0 ? 1.0 : (double) agreements / testSize;
+	}
+
+	/**
+	 * @return the number of test patterns which get different labels
+	 */
+	public int getDisagreements() {
+		return testSize - agreements;
+	}
+
+	/**
+	 * @return the test accuracy in double precision
+	 */
+	public double getDoubleAccuracy() {
+		return testSize == 0 ? 0.0 : (double) correct[0] / testSize;
+	}
+
+	/**
+	 * @return the test accuracy with the reduced precision storage
+	 */
+	public double getReducedAccuracy() {
+		return testSize == 0 ? 0.0 : (double) correct[1] / testSize;
+	}
+
+	/**
+	 * @return the number of input categories in double precision and with the
+	 *         reduced precision storage
+	 */
+	public int[] getCategories() {
+		return categories.clone();
+	}
+
+	public String toString() {
+		String name = reduced.toString();
+		return "test patterns: " + testSize + "\n" + "agreement: " + agreements + " (" + 100 * getAgreement()
+				+ "%), " + getDisagreements() + " different labels\n" + "accuracy: HEAP " + getDoubleAccuracy()
+				+ ", " + name + " " + getReducedAccuracy() + "\n" + "input categories: HEAP " + categories[0] + ", "
+				+ name + " " + categories[1] + "\n" + "classification time (ms): HEAP " + classificationNanos[0] / 1e6
+				+ ", " + name + " " + classificationNanos[1] / 1e6;
+	}
+}
@@ -0,0 +1,144 @@
+package ro.unitbv.pythia;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A training dataset whose patterns are scaled once, up front. After
+ * construction the patterns are only read, so one instance can be shared by
+ * several FAMR networks trained concurrently, e.g. on different presentation
+ * orders.
+ * 
+ * @author Lucian Sasu
+ */
+public class PreparedDataset {
+
+	private final List<Pattern> patterns;
+	private final double iMin;
+	private final double iMax;
+	private final int numClasses;
+	private final Scaler scaler;
+
+	/**
+	 * Scales the given patterns into [0, 1]
+	 * 
+	 * @param patterns
+	 *            the training patterns; they are scaled in place
+	 * @param iMin
+	 *            minimum input value
+	 * @param iMax
+	 *            maximum input value
+	 * @param numClasses
+	 *            the number of classes; the labels must be 0..numClasses-1
+	 */
+	public PreparedDataset(List<Pattern> patterns, double iMin, double iMax, int numClasses) {
+		for (Pattern pattern : patterns) {
+			pattern.scaleInput(iMin, iMax);
+		}
+		this.patterns = Collections.unmodifiableList(new ArrayList<Pattern>(patterns));
+		this.iMin = iMin;
+		this.iMax = iMax;
+		this.numClasses = numClasses;
+		this.scaler = null;
+	}
+
+	/**
+	 * Scales the given patterns with a per-attribute scaler
+	 * 
+	 * @param patterns
+	 *            the training patterns; they are scaled in place
+	 * @param scaler
+	 *            the fitted scaler; the networks trained on this dataset must
+	 *            use the same one
+	 * @param numClasses
+	 *            the number of classes; the labels must be 0..numClasses-1
+	 */
+	public PreparedDataset(List<Pattern> patterns, Scaler scaler, int numClasses) {
+		for (Pattern pattern : patterns) {
+			scaler.scale(pattern);
+		}
+		this.patterns = Collections.unmodifiableList(new ArrayList<Pattern>(patterns));
+		this.iMin = Double.NaN;
+		this.iMax = Double.NaN;
+		this.numClasses = numClasses;
+		this.scaler = scaler;
+	}
+
+	/**
+	 * @return the scaled patterns, as a read-only list
+	 */
+	public List<Pattern> getPatterns() {
+		return patterns;
+	}
+
+	/**
+	 * @return the number of patterns
+	 */
+	public int size() {
+		return patterns.size();
+	}
+
+	/**
+	 * @return the per-attribute scaler; null if iMin and iMax were used
+	 */
+	public Scaler getScaler() {
+		return scaler;
+	}
+
+	/**
+	 * @param other
+	 *            another dataset
+	 * @return true if both datasets are scaled in the same way
+	 */
+	public boolean hasSameScaling(PreparedDataset other) {
+		if (scaler != null || other.scaler != null) {
+			return scaler == other.scaler;
+		}
+		return iMin == other.iMin && iMax == other.iMax;
+	}
+
+	/**
+	 * @return the iMin value used for scaling (NaN for a per-attribute scaler)
+	 */
+	public double getIMin() {
+		return iMin;
+	}
+
+	/**
+	 * @return the iMax value used for scaling (NaN for a per-attribute scaler)
+	 */
+	public double getIMax() {
+		return iMax;
+	}
+
+	/**
+	 * @return the number of classes
+	 */
+	public int getNumClasses() {
+		return numClasses;
+	}
+
+	/**
+	 * Creates a random presentation order of the patterns
+	 * 
+	 * @param seed
+	 *            the seed of the random generator
+	 * @return a permutation of 0..size()-1
+	 */
+	public int[] permutation(long seed) {
+		int[] order = new int[patterns.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Random random = new Random(seed);
+		for (int i = order.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int aux = order[i];
+			order[i] = order[j];
+			order[j] = aux;
+		}
+		return order;
+	}
+}
@@ -0,0 +1,356 @@
+package ro.unitbv.pythia;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Per-attribute min-max scaling of the numeric input into [0, 1], fitted on
+ * the training patterns in a single pass. Unlike the global iMin/iMax scaling,
+ * values outside the fitted range (seen only at classification time) are
+ * clamped instead of rejected.
+ *
+ * The encode methods fuse scaling with complement coding: the raw input of a
+ * pattern is written, scaled and complement-coded, straight into the buffer
+ * consumed by FuzzyArt, without intermediate arrays or validation scans.
+ *
+ * @author Lucian Sasu
+ */
+public class Scaler implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final double[] min;
+	private final double[] invRange; // 0 for constant attributes
+	private final boolean zeroPreserving; // true if every min is 0
+
+	/**
+	 * @param min
+	 *            the minimum of each attribute
+	 * @param max
+	 *            the maximum of each attribute
+	 */
+	public Scaler(double[] min, double[] max) {
+		if (min.length != max.length) {
+			throw new IllegalArgumentException("Size mismatch between min and max");
+		}
+		this.min = min.clone();
+		this.invRange = new double[min.length];
+		boolean zeros = true;
+		for (int i = 0; i < min.length; i++) {
+			if (max[i] < min[i]) {
+				throw new IllegalArgumentException("max is less than min for attribute " + i);
+			}
+			invRange[i] = max[i] > min[i] ? 1.0 / (max[i] - min[i]) : 0.0;
+			zeros &= min[i] == 0.0;
+		}
+		this.zeroPreserving = zeros;
+	}
+
+	/**
+	 * Rebuilds a scaler from its stored form
+	 */
+	private Scaler(double[] min, double[] invRange, boolean zeroPreserving) {
+		this.min = min;
+		this.invRange = invRange;
+		this.zeroPreserving = zeroPreserving;
+	}
+
+	/**
+	 * Rebuilds a scaler read by ModelFormat; the arrays are used without
+	 * copies
+	 *
+	 * @param min
+	 *            the minimum of each attribute
+	 * @param invRange
+	 *            1 / (max - min) of each attribute, 0 for constant ones
+	 * @return the scaler
+	 */
+	static Scaler fromInverseRange(double[] min, double[] invRange) {
+		boolean zeros = true;
+		for (int i = 0; i < min.length; i++) {
+			zeros &= min[i] == 0.0;
+		}
+		return new Scaler(min, invRange, zeros);
+	}
+
+	/**
+	 * @return the minimum of each attribute, not a copy
+	 */
+	double[] getMin() {
+		return min;
+	}
+
+	/**
+	 * @return 1 / (max - min) of each attribute, not a copy
+	 */
+	double[] getInverseRange() {
+		return invRange;
+	}
+
+	/**
+	 * Computes the per-attribute min and max of the numeric input, in one pass
+	 * over the patterns. The patterns are split in chunks which are scanned in
+	 * parallel and then merged.
+	 *
+	 * @param patterns
+	 *            the training patterns, dense or sparse, all with the same
+	 *            input dimension
+	 * @param numThreads
+	 *            the number of chunks scanned at the same time
+	 * @return the fitted scaler
+	 */
+	public static Scaler fit(final List<Pattern> patterns, int numThreads) {
+		if (patterns.isEmpty()) {
+			throw new IllegalArgumentException("Can not fit a scaler on an empty training set");
+		}
+		final int dimension = patterns.get(0).getInputDimension();
+		int chunks = Math.max(1, Math.min(numThreads, patterns.size() / 1024));
+		if (chunks == 1) {
+			return new Statistics(dimension).add(patterns, 0, patterns.size()).toScaler();
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(chunks);
+		try {
+			List<Callable<Statistics>> tasks = new ArrayList<Callable<Statistics>>(chunks);
+			for (int c = 0; c < chunks; c++) {
+				final int from = (int) ((long) patterns.size() * c / chunks);
+				final int to = (int) ((long) patterns.size() * (c + 1) / chunks);
+				tasks.add(new Callable<Statistics>() {
+					public Statistics call() {
+						return new Statistics(dimension).add(patterns, from, to);
+					}
+				});
+			}
+			Statistics total = new Statistics(dimension);
+			for (Future<Statistics> future : executor.invokeAll(tasks)) {
+				total.merge(future.get());
+			}
+			return total.toScaler();
+		} catch (Exception e) {
+			throw new RuntimeException("Fitting the scaler failed", e);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Computes the per-attribute min and max of the numeric input in one scan
+	 * of the source, holding a single chunk of patterns in memory
+	 *
+	 * @param source
+	 *            the training patterns; the source is rewound first
+	 * @param chunkSize
+	 *            the number of patterns read at a time
+	 * @return the fitted scaler
+	 * @throws IOException
+	 *             if reading the source fails
+	 */
+	public static Scaler fit(PatternSource source, int chunkSize) throws IOException {
+		source.rewind();
+		Pattern[] chunk = new Pattern[chunkSize];
+		Statistics statistics = null;
+		int count;
+		while ((count = source.read(chunk)) > 0) {
+			if (statistics == null) {
+				statistics = new Statistics(chunk[0].getInputDimension());
+			}
+			statistics.add(Arrays.asList(chunk), 0, count);
+			Arrays.fill(chunk, 0, count, null);
+		}
+		if (statistics == null) {
+			throw new IllegalArgumentException("Can not fit a scaler on an empty training set");
+		}
+		return statistics.toScaler();
+	}
+
+	/**
+	 * @return the number of attributes
+	 */
+	public int getDimension() {
+		return min.length;
+	}
+
+	/**
+	 * @return true if every attribute has min 0, so that sparse inputs stay
+	 *         sparse after scaling
+	 */
+	public boolean isZeroPreserving() {
+		return zeroPreserving;
+	}
+
+	/**
+	 * Scales one value of attribute i, clamping it into [0, 1]
+	 */
+	private double scale(int i, double value) {
+		double scaled = (value - min[i]) * invRange[i];
+		return scaled < 0 ? 0 : (scaled > 1 ? 1 : scaled);
+	}
+
+	/**
+	 * Scales the raw input of the pattern and writes it, complement-coded,
+	 * into dest: dest[i] = x[i], dest[dimension + i] = 1 - x[i]
+	 *
+	 * @param pattern
+	 *            a dense or sparse pattern
+	 * @param dest
+	 *            an array of length 2 * getDimension()
+	 */
+	public void encode(Pattern pattern, double[] dest) {
+		int dimension = min.length;
+		if (pattern.getInputDimension() != dimension || dest.length != 2 * dimension) {
+			throw new RuntimeException("In encode: size mismatch");
+		}
+		if (pattern.isSparse()) {
+			for (int i = 0; i < dimension; i++) {
+				double scaled = scale(i, 0.0);
+				dest[i] = scaled;
+				dest[dimension + i] = 1 - scaled;
+			}
+			int[] indices = pattern.getSparseIndices();
+			double[] values = pattern.getSparseValues();
+			for (int k = 0; k < indices.length; k++) {
+				double scaled = scale(indices[k], values[k]);
+				dest[indices[k]] = scaled;
+				dest[dimension + indices[k]] = 1 - scaled;
+			}
+		} else {
+			double[] input = pattern.getInput();
+			for (int i = 0; i < dimension; i++) {
+				double scaled = scale(i, input[i]);
+				dest[i] = scaled;
+				dest[dimension + i] = 1 - scaled;
+			}
+		}
+	}
+
+	/**
+	 * Scales the non-zero values of a sparse pattern; valid only for a
+	 * zero-preserving scaler
+	 *
+	 * @param pattern
+	 *            a sparse pattern
+	 * @param dest
+	 *            receives the scaled values; at least as long as the number
+	 *            of non-zero values
+	 */
+	public void encodeSparse(Pattern pattern, double[] dest) {
+		if (!zeroPreserving) {
+			throw new RuntimeException("In encodeSparse: the scaler does not map 0 to 0");
+		}
+		int[] indices = pattern.getSparseIndices();
+		double[] values = pattern.getSparseValues();
+		for (int k = 0; k < indices.length; k++) {
+			dest[k] = scale(indices[k], values[k]);
+		}
+	}
+
+	/**
+	 * Sets the scaled input of the pattern, for the cases where the scaled
+	 * pattern is kept (e.g. a dataset shared by several networks). A sparse
+	 * pattern is converted to the dense form if the scaler does not map 0 to 0.
+	 *
+	 * @param pattern
+	 *            the pattern to be scaled
+	 */
+	public void scale(Pattern pattern) {
+		if (pattern.isInputScaled()) {
+			return;
+		}
+		if (pattern.isSparse() && !zeroPreserving) {
+			pattern.densify();
+		}
+		if (pattern.isSparse()) {
+			double[] scaled = new double[pattern.getSparseIndices().length];
+			encodeSparse(pattern, scaled);
+			pattern.setScaledSparseValues(scaled);
+		} else {
+			double[] input = pattern.getInput();
+			double[] scaled = new double[input.length];
+			for (int i = 0; i < input.length; i++) {
+				scaled[i] = scale(i, input[i]);
+			}
+			pattern.setScaledInput(scaled);
+		}
+	}
+
+	/**
+	 * Partial min/max statistics over a chunk of patterns
+	 */
+	private static class Statistics {
+		private final double[] min;
+		private final double[] max;
+		private final int[] explicitCount; // how many sparse patterns list each attribute
+		private int sparsePatterns = 0;
+
+		Statistics(int dimension) {
+			min = new double[dimension];
+			max = new double[dimension];
+			explicitCount = new int[dimension];
+			Arrays.fill(min, Double.POSITIVE_INFINITY);
+			Arrays.fill(max, Double.NEGATIVE_INFINITY);
+		}
+
+		Statistics add(List<Pattern> patterns, int from, int to) {
+			for (int p = from; p < to; p++) {
+				Pattern pattern = patterns.get(p);
+				if (pattern.getInputDimension() != min.length) {
+					throw new RuntimeException("Pattern " + p + " has " + pattern.getInputDimension()
+							+ " inputs instead of " + min.length);
+				}
+				if (pattern.isSparse()) {
+					sparsePatterns++;
+					int[] indices = pattern.getSparseIndices();
+					double[] values = pattern.getSparseValues();
+					for (int k = 0; k < indices.length; k++) {
+						update(indices[k], values[k]);
+						explicitCount[indices[k]]++;
+					}
+				} else {
+					double[] input = pattern.getInput();
+					for (int i = 0; i < input.length; i++) {
+						update(i, input[i]);
+					}
+				}
+			}
+			return this;
+		}
+
+		private void update(int i, double value) {
+			if (value < min[i]) {
+				min[i] = value;
+			}
+			if (value > max[i]) {
+				max[i] = value;
+			}
+		}
+
+		void merge(Statistics other) {
+			for (int i = 0; i < min.length; i++) {
+				min[i] = Math.min(min[i], other.min[i]);
+				max[i] = Math.max(max[i], other.max[i]);
+				explicitCount[i] += other.explicitCount[i];
+			}
+			sparsePatterns += other.sparsePatterns;
+		}
+
+		Scaler toScaler() {
+			for (int i = 0; i < min.length; i++) {
+				// the sparse patterns which do not list attribute i hold a 0
+				if (explicitCount[i] < sparsePatterns) {
+					update(i, 0.0);
+				}
+				if (min[i] > max[i]) {
+					min[i] = max[i] = 0.0;
+				}
+			}
+			return new Scaler(min, max);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package ro.unitbv.pythia;
+
+/**
+ * Where the category weights and the MapField rows are kept
+ *
+ * @author Lucian Sasu
+ */
+public enum Storage {
+	/** double arrays on the Java heap */
+	HEAP,
+	/** direct buffers, outside of the Java heap */
+	DIRECT,
+	/** float arrays on the Java heap: half the memory, single precision */
+	FLOAT,
+	/**
+	 * 16-bit fixed point on the Java heap: a quarter of the memory, integer
+	 * choice and vigilance kernels; the mapfield rows are kept as FLOAT
+	 */
+	FIXED16;
+
+	/**
+	 * @param length the length of every vector
+	 * @return an empty store of this kind
+	 */
+	public VectorStore create(int length) {
+		switch (this) {
+		case DIRECT:
+			return new DirectVectorStore(length);
+		case FLOAT:
+			return new FloatVectorStore(length);
+		case FIXED16:
+			return new FixedPointVectorStore(length);
+		default:
+			return new HeapVectorStore(length);
+		}
+	}
+
+	/**
+	 * @return the number of bytes of one stored value
+	 */
+	public int bytesPerValue() {
+		switch (this) {
+		case FLOAT:
+			return 4;
+		case FIXED16:
+			return 2;
+		default:
+			return 8;
+		}
+	}
+
+	/**
+	 * The mapfield rows are conditional probabilities updated by small
+	 * increments, which 16-bit fixed point can not follow
+	 * @return the storage used for the mapfield rows
+	 */
+	public Storage forMapField() {
+		return this == FIXED16 ? FLOAT : this;
+	}
+}
@@ -0,0 +1,18 @@
+package ro.unitbv.pythia;
+
+/**
+ * Receives the results of a ParameterSweep as soon as each grid point is
+ * done. Calls are serialized, but they come from the worker threads.
+ * 
+ * @author Lucian Sasu
+ */
+public interface SweepListener {
+
+	/**
+	 * Called once per grid point
+	 * 
+	 * @param result
+	 *            the outcome of the grid point
+	 */
+	void resultReady(SweepResult result);
+}
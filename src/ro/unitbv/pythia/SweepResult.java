@@ -0,0 +1,131 @@
+package ro.unitbv.pythia;
+
+/**
+ * The outcome of training and evaluating one grid point of a ParameterSweep
+ * 
+ * @author Lucian Sasu
+ */
+public class SweepResult {
+
+	private final double rho_init_a;
+	private final double beta_a;
+	private final double rho_ab;
+	private final int epochs;
+	private final double accuracy;
+	private final int categories;
+	private final long trainingTimeMillis;
+	private final boolean pruned;
+
+	/**
+	 * @param rho_init_a
+	 *            baseline vigilance parameter
+	 * @param beta_a
+	 *            used for category learning
+	 * @param rho_ab
+	 *            mapfield threshold
+	 * @param epochs
+	 *            the number of epochs actually run
+	 * @param accuracy
+	 *            the accuracy on the evaluation set
+	 * @param categories
+	 *            the number of input categories
+	 * @param trainingTimeMillis
+	 *            the training time, in milliseconds
+	 * @param pruned
+	 *            true if training was stopped before the requested number of
+	 *            epochs
+	 */
+	public SweepResult(double rho_init_a, double beta_a, double rho_ab, int epochs, double accuracy, int categories,
+			long trainingTimeMillis, boolean pruned) {
+		this.rho_init_a = rho_init_a;
+		this.beta_a = beta_a;
+		this.rho_ab = rho_ab;
+		this.epochs = epochs;
+		this.accuracy = accuracy;
+		this.categories = categories;
+		this.trainingTimeMillis = trainingTimeMillis;
+		this.pruned = pruned;
+	}
+
+	/**
+	 * @return the baseline vigilance parameter
+	 */
+	public double getRhoInitA() {
+		return rho_init_a;
+	}
+
+	/**
+	 * @return the learning parameter of art_a
+	 */
+	public double getBetaA() {
+		return beta_a;
+	}
+
+	/**
+	 * @return the mapfield threshold
+	 */
+	public double getRhoAB() {
+		return rho_ab;
+	}
+
+	/**
+	 * @return the number of epochs actually run
+	 */
+	public int getEpochs() {
+		return epochs;
+	}
+
+	/**
+	 * @return the accuracy on the evaluation set
+	 */
+	public double getAccuracy() {
+		return accuracy;
+	}
+
+	/**
+	 * @return the number of input categories
+	 */
+	public int getCategories() {
+		return categories;
+	}
+
+	/**
+	 * @return the training time, in milliseconds
+	 */
+	public long getTrainingTimeMillis() {
+		return trainingTimeMillis;
+	}
+
+	/**
+	 * @return true if training was stopped early, as a dominated point
+	 */
+	public boolean isPruned() {
+		return pruned;
+	}
+
+	/**
+	 * @param other
+	 *            another result
+	 * @return true if other is at least as accurate with no more categories,
+	 *         and strictly better in one of them
+	 */
+	public boolean isDominatedBy(SweepResult other) {
+		return other.accuracy >= accuracy && other.categories <= categories
+				&& (other.accuracy > accuracy || other.categories < categories);
+	}
+
+	/**
+	 * @return the header matching toString()
+	 */
+	public static String csvHeader() {
+		return "rhoInitA,betaA,rhoAB,epochs,accuracy,categories,trainingTimeMillis,pruned";
+	}
+
+	/**
+	 * CSV representation of this result
+	 */
+	public String toString() {
+		return rho_init_a + "," + beta_a + "," + rho_ab + "," + epochs + "," + accuracy + "," + categories + ","
+				+ trainingTimeMillis + "," + pruned;
+	}
+}
@@ -0,0 +1,17 @@
+package ro.unitbv.pythia;
+
+/**
+ * Which category wins when several ones have the same largest choice value.
+ * Ties are rare with double weights, but frequent with the FIXED16 storage,
+ * whose choice values come from integer sums.
+ *
+ * @author Lucian Sasu
+ */
+public enum TieBreak {
+	/** the oldest category, as the original Fuzzy ART search */
+	LOWEST_INDEX,
+	/** the most recently created category */
+	HIGHEST_INDEX,
+	/** the category with the most representants; the oldest one among equals */
+	LARGEST_CATEGORY
+}
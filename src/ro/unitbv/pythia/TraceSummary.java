@@ -0,0 +1,185 @@
+package ro.unitbv.pythia;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Summary of a TrainingTrace file, per epoch: the number of patterns, of
+ * created categories and of rejected patterns, and the statistics of the
+ * match tracking resets and of the final vigilance
+ *
+ * @author Lucian Sasu
+ */
+public class TraceSummary {
+
+	/**
+	 * The counters of one epoch
+	 */
+	public static class Epoch {
+		private final int epoch;
+		private long patterns = 0;
+		private long created = 0;
+		private long rejected = 0;
+		private long resets = 0;
+		private int maxResets = 0;
+		private double rhoSum = 0;
+		private int maxCategory = -1;
+
+		Epoch(int epoch) {
+			this.epoch = epoch;
+		}
+
+		public int getEpoch() {
+			return epoch;
+		}
+
+		public long getPatterns() {
+			return patterns;
+		}
+
+		public long getCreated() {
+			return created;
+		}
+
+		public long getRejected() {
+			return rejected;
+		}
+
+		public long getResets() {
+			return resets;
+		}
+
+		public int getMaxResets() {
+			return maxResets;
+		}
+
+		/**
+		 * @return the mean vigilance at the end of the search, over the
+		 *         learned patterns
+		 */
+		public double getMeanRho() {
+			long learned = patterns - rejected;
+			return learned == 0 ? 0 : rhoSum / learned;
+		}
+
+		/**
+		 * @return the number of categories reached by the end of the epoch
+		 */
+		public int getCategories() {
+			return maxCategory + 1;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("epoch %d: %d patterns, %d categories created (%d in all), %d rejected, "
+					+ "%d resets (%.3f per pattern, at most %d), mean final rho %.4f", epoch, patterns, created,
+					getCategories(), rejected, resets, patterns == 0 ? 0.0 : (double) resets / patterns, maxResets,
+					getMeanRho());
+		}
+	}
+
+	private final List<Epoch> epochs = new ArrayList<Epoch>();
+	private long records = 0;
+	private boolean truncated = false;
+
+	private TraceSummary() {
+	}
+
+	/**
+	 * Reads a trace file in one pass
+	 *
+	 * @param path
+	 *            a file written by TrainingTrace
+	 * @return the summary
+	 * @throws IOException
+	 *             if the file can not be read or is not a trace
+	 */
+	public static TraceSummary read(String path) throws IOException {
+		TraceSummary summary = new TraceSummary();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 16))) {
+			if (in.readInt() != TrainingTrace.MAGIC) {
+				throw new IOException("Not a FAMR training trace");
+			}
+			int version = in.readInt();
+			if (version < 1 || version > TrainingTrace.VERSION) {
+				throw new IOException("Unsupported training trace version " + version);
+			}
+			int recordSize = in.readInt();
+			in.readInt();
+			if (recordSize < TrainingTrace.RECORD_SIZE) {
+				throw new IOException("Corrupted training trace header");
+			}
+			byte[] record = new byte[recordSize];
+			ByteBuffer fields = ByteBuffer.wrap(record);
+			Epoch current = null;
+			while (true) {
+				int length = 0;
+				int count;
+				while (length < recordSize && (count = in.read(record, length, recordSize - length)) > 0) {
+					length += count;
+				}
+				if (length < recordSize) {
+					summary.truncated = length > 0;
+					break;
+				}
+				fields.clear();
+				fields.getLong();
+				int epoch = fields.getInt();
+				int J = fields.getInt();
+				int resets = fields.getInt();
+				int flags = fields.getInt();
+				double rho = fields.getDouble();
+				if (current == null || current.epoch != epoch) {
+					current = new Epoch(epoch);
+					summary.epochs.add(current);
+				}
+				current.patterns++;
+				current.resets += resets;
+				current.maxResets = Math.max(current.maxResets, resets);
+				if ((flags & TrainingTrace.REJECTED) != 0) {
+					current.rejected++;
+				} else {
+					current.rhoSum += rho;
+					current.maxCategory = Math.max(current.maxCategory, J);
+				}
+				if ((flags & TrainingTrace.CREATED) != 0) {
+					current.created++;
+				}
+				summary.records++;
+			}
+		}
+		return summary;
+	}
+
+	/**
+	 * @return the epochs, in the order of the trace
+	 */
+	public List<Epoch> getEpochs() {
+		return epochs;
+	}
+
+	/**
+	 * @return the number of records
+	 */
+	public long getRecords() {
+		return records;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		result.append(records).append(" records\n");
+		for (Epoch epoch : epochs) {
+			result.append(epoch).append('\n');
+		}
+		if (truncated) {
+			result.append("the trace ends with an incomplete record\n");
+		}
+		return result.toString();
+	}
+}
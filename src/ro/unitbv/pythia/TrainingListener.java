@@ -0,0 +1,44 @@
+package ro.unitbv.pythia;
+
+/**
+ * Receives the progress of FAMR.train, every given number of pairs and at
+ * the end of every epoch. The calls come from the training thread and hold
+ * it up while they run, unless the listener is wrapped in an
+ * AsyncTrainingListener.
+ *
+ * The statistics count from the start of the current call to train: pairs
+ * is the number of pairs presented so far over all the epochs, and
+ * totalPairs the number the call will present, or -1 while it is not known
+ * (a PatternSource, during its first epoch).
+ *
+ * @author Lucian Sasu
+ */
+public interface TrainingListener {
+
+	/**
+	 * Called every interval pairs
+	 *
+	 * @param epoch
+	 *            the current epoch, from 0
+	 * @param pairs
+	 *            the pairs presented so far
+	 * @param totalPairs
+	 *            the pairs to be presented in all; -1 if not known yet
+	 * @param categories
+	 *            the current number of categories
+	 * @param rejected
+	 *            the pairs rejected so far
+	 * @param elapsedNanos
+	 *            the time since training started
+	 * @param pairsPerSecond
+	 *            the mean throughput since training started
+	 */
+	void progress(int epoch, long pairs, long totalPairs, int categories, long rejected, long elapsedNanos,
+			double pairsPerSecond);
+
+	/**
+	 * Called at the end of every epoch, with the same statistics as progress
+	 */
+	void epochEnd(int epoch, long pairs, long totalPairs, int categories, long rejected, long elapsedNanos,
+			double pairsPerSecond);
+}
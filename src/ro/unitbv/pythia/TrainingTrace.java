@@ -0,0 +1,140 @@
+package ro.unitbv.pythia;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary trace of a training run, one fixed-size record for every pattern
+ * presented to FAMR.trainPair. The records go through a preallocated buffer
+ * which is written to the file when it is full, so recording costs a few
+ * stores per pattern. TraceSummary reads the file back.
+ *
+ * The file is big-endian: a header of HEADER_SIZE bytes (magic, version,
+ * record size) followed by records of RECORD_SIZE bytes:
+ *
+ * <pre>
+ * long   the index of the pattern in the training set, whatever the
+ *        presentation order; its position in the source for a PatternSource
+ * int    the epoch
+ * int    the winning category J; -1 if the pattern was rejected
+ * int    the number of match tracking resets
+ * int    flags: CREATED if J is a new category, REJECTED
+ * double the vigilance at the end of the search
+ * </pre>
+ *
+ * @author Lucian Sasu
+ */
+public class TrainingTrace implements Closeable {
+
+	public static final int MAGIC = 0x46545243; // "FTRC"
+	public static final int VERSION = 1;
+	public static final int CREATED = 1;
+	public static final int REJECTED = 2;
+	static final int HEADER_SIZE = 16;
+	static final int RECORD_SIZE = 32;
+	private static final int DEFAULT_RECORDS = 4096;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private int epoch = 0;
+	private long records = 0;
+
+	/**
+	 * Creates or overwrites a trace file
+	 *
+	 * @param path
+	 *            the trace file
+	 * @throws IOException
+	 *             if the file can not be created
+	 */
+	public TrainingTrace(String path) throws IOException {
+		this(path, DEFAULT_RECORDS);
+	}
+
+	/**
+	 * Creates or overwrites a trace file
+	 *
+	 * @param path
+	 *            the trace file
+	 * @param bufferedRecords
+	 *            the number of records kept in memory between two writes
+	 * @throws IOException
+	 *             if the file can not be created
+	 */
+	public TrainingTrace(String path, int bufferedRecords) throws IOException {
+		if (bufferedRecords <= 0) {
+			throw new IllegalArgumentException("The number of buffered records should be positive");
+		}
+		buffer = ByteBuffer.allocateDirect(bufferedRecords * RECORD_SIZE);
+		channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(0);
+	}
+
+	/**
+	 * Starts a new epoch
+	 *
+	 * @param epoch
+	 *            the epoch
+	 */
+	void startEpoch(int epoch) {
+		this.epoch = epoch;
+	}
+
+	/**
+	 * Records the outcome of the next pattern of the epoch
+	 *
+	 * @param index
+	 *            the index of the pattern in the training set
+	 * @param J
+	 *            the winning category; -1 if the pattern was rejected
+	 * @param resets
+	 *            the number of match tracking resets
+	 * @param flags
+	 *            CREATED and/or REJECTED
+	 * @param rho
+	 *            the vigilance at the end of the search
+	 * @throws IOException
+	 *             if the buffer can not be written to the file
+	 */
+	void record(long index, int J, int resets, int flags, double rho) throws IOException {
+		if (buffer.remaining() < RECORD_SIZE) {
+			write();
+		}
+		buffer.putLong(index).putInt(epoch).putInt(J).putInt(resets).putInt(flags).putDouble(rho);
+		records++;
+	}
+
+	/**
+	 * @return the number of records so far
+	 */
+	public long getRecords() {
+		return records;
+	}
+
+	private void write() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Writes the buffered records and closes the file
+	 */
+	public void close() throws IOException {
+		if (!channel.isOpen()) {
+			return;
+		}
+		try {
+			write();
+		} finally {
+			channel.close();
+		}
+	}
+}
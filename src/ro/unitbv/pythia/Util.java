@@ -26,6 +26,29 @@ public class Util {
 		return result.toString();
 	}
 	
+	/**
+	 * creates a string containing the index:value pairs of a sparse vector
+	 */
+	public static String toString(int[] indices, double[] values, String separator) {
+		StringBuffer result = new StringBuffer();
+		for (int k = 0; k < indices.length; k++) {
+			result.append(indices[k] + ":" + values[k] + separator);
+		}
+		return result.toString();
+	}
+	
+	/**
+	 * creates a string containing the first bits of a packed bitset as 0/1
+	 * values separated by separator
+	 */
+	public static String toString(long[] bits, int length, String separator) {
+		StringBuffer result = new StringBuffer();
+		for (int i = 0; i < length; i++) {
+			result.append(((bits[i >>> 6] >>> i) & 1L) + separator);
+		}
+		return result.toString();
+	}
+	
 	/**
 	 * This method makes a "deep clone" of any Java object it is given.
 	 */
@@ -62,6 +85,46 @@ public class Util {
 		return result;
 	}
 	
+	/**
+	 * Performs a deep copy of the given source
+	 * @param source the source list to be cloned
+	 * @return a deep clone of the source list
+	 */
+	 public static List<long[]> copyListOfLongArrays(List<long[]> source) {
+		if (source == null)
+		{
+			return null;
+		}
+		List<long[]> result = new ArrayList<long[]>(source.size());
+		for(long[] item : source)
+		{
+			result.add(item.clone());
+		}
+		return result;
+	}
+
+	/**
+	 * Computes how many longs are needed for packing a number of bits
+	 * @param bits the number of bits
+	 * @return the number of 64 bit words
+	 */
+	 public static int packedLength(int bits)
+	 {
+		 return (bits + 63) >>> 6;
+	 }
+
+	/**
+	 * Returns the mask of the valid bits in a word of a packed bitset
+	 * @param word the index of the word
+	 * @param bits the number of bits held by the bitset
+	 * @return all ones, except for the unused high bits of the last word
+	 */
+	 public static long lastWordMask(int word, int bits)
+	 {
+		 int used = bits - (word << 6);
+		 return used >= 64 ? -1L : (1L << used) - 1;
+	 }
+
 	/**
 	 * Performs a safe caopy of an array
 	 * @param src source object
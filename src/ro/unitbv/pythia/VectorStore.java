@@ -0,0 +1,105 @@
+package ro.unitbv.pythia;
+
+import java.io.Serializable;
+
+/**
+ * Storage for a growing list of equally long vectors, such as the category
+ * weights of FuzzyArt or the rows of the MapField. Besides element access it
+ * offers the kernels used on every input, so that each backend can run them
+ * over its own memory layout.
+ *
+ * @author Lucian Sasu
+ */
+public interface VectorStore extends Serializable {
+
+	/**
+	 * @return the number of vectors
+	 */
+	int size();
+
+	/**
+	 * @return the length of every vector
+	 */
+	int length();
+
+	/**
+	 * Appends a copy of the given vector
+	 * @param values the vector, of length length()
+	 */
+	void add(double[] values);
+
+	/**
+	 * Removes the vectors from position size onwards
+	 * @param size the number of vectors to be kept
+	 */
+	void truncate(int size);
+
+	/**
+	 * @param row the vector index
+	 * @param i the position in the vector
+	 * @return the value found at position i of vector row
+	 */
+	double get(int row, int i);
+
+	/**
+	 * @param row the vector index
+	 * @param i the position in the vector
+	 * @param value the value to be set
+	 */
+	void set(int row, int i, double value);
+
+	/**
+	 * Copies a vector into dest
+	 * @param row the vector index
+	 * @param dest receives the values; of length length()
+	 */
+	void read(int row, double[] dest);
+
+	/**
+	 * Computes the L1 norm of the fuzzy and of input and vector row, i.e. the
+	 * sum of min(input[i], w[i]); input must not be shorter than length()
+	 * @param row the vector index
+	 * @param input the complement-coded input
+	 * @return the sum of the element-wise minimum
+	 */
+	double minSum(int row, double[] input);
+
+	/**
+	 * @param row the vector index
+	 * @param from the first position, inclusive
+	 * @param to the last position, exclusive
+	 * @return the sum of the values between from and to
+	 */
+	double sum(int row, int from, int to);
+
+	/**
+	 * Fuzzy ART learning: w = beta * min(input, w) + (1 - beta) * w
+	 * @param row the vector index
+	 * @param input the complement-coded input
+	 * @param beta the learning rate
+	 */
+	void learn(int row, double[] input, double beta);
+
+	/**
+	 * Copies a vector over another one, e.g. the last vector over a removed
+	 * one before truncating the store
+	 * @param from the index of the copied vector
+	 * @param to the index of the overwritten vector
+	 */
+	void move(int from, int to);
+
+	/**
+	 * @return a deep copy of this store, with the same backend
+	 */
+	VectorStore copy();
+
+	/**
+	 * @return the number of bytes held outside of the Java heap
+	 */
+	long nativeBytes();
+
+	/**
+	 * Frees the memory of the store; it must not be used afterwards
+	 */
+	void release();
+}
@@ -0,0 +1,114 @@
+package ro.unitbv.pythia;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the bytes allocated per operation on the training and scoring hot
+ * paths against declared budgets. The bytes are counted by the JVM for the
+ * current thread, so the check is exact and does not depend on the garbage
+ * collector.
+ *
+ * Training is measured in the steady state, on a network which has already
+ * seen the data, so that no category is created; creating a category grows
+ * the stores, which is not counted against the budget. Both FAMR.trainPair
+ * and FAMR.classifySingleInstance should then allocate nothing at all.
+ *
+ * Run by the allocation_check target of build_bench.xml; the same paths are
+ * measured by AllocationBenchmark under the JMH gc profiler.
+ *
+ * @author Lucian Sasu
+ */
+public class AllocationBudgetTest extends TestCase {
+
+	/** bytes per training pair, in the steady state */
+	static final long TRAIN_BUDGET = 0;
+	/** bytes per classified pattern */
+	static final long CLASSIFY_BUDGET = 0;
+
+	private static final int PATTERNS = 5000;
+	private static final int WARMUP_ROUNDS = 20;
+	private static final int ROUNDS = 10;
+
+	private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	protected void setUp() {
+		Settings.debugMode = false;
+		assertTrue("This JVM does not count the allocated bytes per thread",
+				threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+	}
+
+	public void testDenseWithinBudget() {
+		for (Storage storage : Storage.values()) {
+			check(storage, false);
+		}
+	}
+
+	public void testSparseWithinBudget() {
+		check(Storage.HEAP, true);
+	}
+
+	private static void check(Storage storage, boolean sparse) {
+		final PreparedDataset training = new PreparedDataset(patterns(TestPatterns.create(PATTERNS, false, 1), sparse),
+				0, 1, TestPatterns.NUM_CLASSES);
+		final List<Pattern> test = new PreparedDataset(patterns(TestPatterns.create(PATTERNS, false, 2), sparse), 0, 1,
+				TestPatterns.NUM_CLASSES).getPatterns();
+		final FAMR famr = new FAMR(0.8, 1, 0, 1, 0, 1, TestPatterns.NUM_CLASSES, storage);
+		famr.train(training, null);
+
+		String name = storage + (sparse ? " sparse" : "");
+		try {
+			long train = bytesPerOperation(new Runnable() {
+				public void run() {
+					famr.train(training, null);
+				}
+			}, PATTERNS);
+			assertTrue(name + " trainPair allocates " + train + " bytes/op, budget " + TRAIN_BUDGET,
+					train <= TRAIN_BUDGET);
+			long classify = bytesPerOperation(new Runnable() {
+				public void run() {
+					for (Pattern pattern : test) {
+						famr.classifySingleInstance(pattern);
+					}
+				}
+			}, PATTERNS);
+			assertTrue(name + " classifySingleInstance allocates " + classify + " bytes/op, budget "
+					+ CLASSIFY_BUDGET, classify <= CLASSIFY_BUDGET);
+		} finally {
+			famr.release();
+		}
+	}
+
+	private static List<Pattern> patterns(List<Pattern> dense, boolean sparse) {
+		return sparse ? TestPatterns.sparse(dense) : dense;
+	}
+
+	/**
+	 * Runs the operation until it is compiled, then returns the smallest
+	 * allocation seen over a few rounds, so that one-off allocations of the
+	 * JVM itself do not count
+	 *
+	 * @param round
+	 *            a round of operations
+	 * @param operations
+	 *            the number of operations of a round
+	 * @return the bytes allocated per operation
+	 */
+	private static long bytesPerOperation(Runnable round, int operations) {
+		long thread = Thread.currentThread().getId();
+		for (int r = 0; r < WARMUP_ROUNDS; r++) {
+			round.run();
+		}
+		long best = Long.MAX_VALUE;
+		for (int r = 0; r < ROUNDS; r++) {
+			long before = threads.getThreadAllocatedBytes(thread);
+			round.run();
+			best = Math.min(best, threads.getThreadAllocatedBytes(thread) - before);
+		}
+		return best / operations;
+	}
+}
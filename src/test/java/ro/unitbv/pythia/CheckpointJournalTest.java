@@ -0,0 +1,209 @@
+package ro.unitbv.pythia;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the recovery of a network from its snapshot and checkpoint journal
+ *
+ * @author Lucian Sasu
+ */
+public class CheckpointJournalTest extends TestCase {
+
+	private static final int CHECKPOINTS = 5;
+	private static final int CHUNK = 400;
+
+	private File directory;
+	private String path;
+
+	protected void setUp() throws IOException {
+		Settings.debugMode = false;
+		directory = Files.createTempDirectory("journal").toFile();
+		path = new File(directory, "model.famr").getPath();
+	}
+
+	protected void tearDown() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private static byte[] write(FAMR famr) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		ModelFormat.write(famr, buffer);
+		return buffer.toByteArray();
+	}
+
+	private static FAMR network(Storage storage) {
+		return new FAMR(0.8, 1, 0, 1, 0, 1, TestPatterns.NUM_CLASSES, storage);
+	}
+
+	/**
+	 * Trains the network on CHECKPOINTS chunks, with a checkpoint after each
+	 *
+	 * @return the model as of the next to last checkpoint
+	 */
+	private byte[] trainWithCheckpoints(FAMR famr, double compactionRatio) throws IOException {
+		return trainWithCheckpoints(famr, compactionRatio, false);
+	}
+
+	/**
+	 * @param sparse
+	 *            whether the network learns sparse patterns
+	 */
+	private byte[] trainWithCheckpoints(FAMR famr, double compactionRatio, boolean sparse) throws IOException {
+		CheckpointJournal journal = new CheckpointJournal(path);
+		journal.setCompactionRatio(compactionRatio);
+		byte[] previous = null;
+		try {
+			for (int c = 0; c < CHECKPOINTS; c++) {
+				List<Pattern> chunk = TestPatterns.create(CHUNK, false, 10 + c);
+				famr.train(sparse ? TestPatterns.sparse(chunk) : chunk);
+				journal.checkpoint(famr);
+				if (c == CHECKPOINTS - 2) {
+					previous = write(famr);
+				}
+			}
+		} finally {
+			journal.close();
+		}
+		return previous;
+	}
+
+	public void testRecoverEqualsLiveNetwork() throws IOException {
+		for (Storage storage : new Storage[] { Storage.HEAP, Storage.DIRECT }) {
+			for (double compactionRatio : new double[] { 100, 0.5 }) {
+				FAMR famr = network(storage);
+				trainWithCheckpoints(famr, compactionRatio);
+				String name = storage + " compaction ratio " + compactionRatio;
+				assertTrue(name, Arrays.equals(write(famr), write(CheckpointJournal.recover(path, storage))));
+				tearDown();
+				setUp();
+			}
+		}
+	}
+
+	public void testJournalIsReplayed() throws IOException {
+		FAMR famr = network(Storage.HEAP);
+		trainWithCheckpoints(famr, 100);
+		assertTrue("the checkpoints were not journaled", new File(path + ".journal").length() > 16);
+		assertFalse(Arrays.equals(write(famr), Files.readAllBytes(new File(path).toPath())));
+		assertTrue(Arrays.equals(write(famr), write(CheckpointJournal.recover(path, Storage.HEAP))));
+	}
+
+	public void testSparseJournalIsReplayed() throws IOException {
+		FAMR famr = network(Storage.HEAP);
+		trainWithCheckpoints(famr, 100, true);
+		assertTrue(Arrays.equals(write(famr), write(CheckpointJournal.recover(path, Storage.HEAP))));
+	}
+
+	public void testTruncatedLastRecordRecoversPreviousCheckpoint() throws IOException {
+		FAMR famr = network(Storage.HEAP);
+		byte[] previous = trainWithCheckpoints(famr, 100);
+		assertFalse(Arrays.equals(previous, write(famr)));
+		File journal = new File(path + ".journal");
+		try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+			file.setLength(file.length() - 5);
+		}
+		assertTrue(Arrays.equals(previous, write(CheckpointJournal.recover(path, Storage.HEAP))));
+	}
+
+	public void testCorruptedChecksumRecoversPreviousCheckpoint() throws IOException {
+		FAMR famr = network(Storage.HEAP);
+		byte[] previous = trainWithCheckpoints(famr, 100);
+		assertFalse(Arrays.equals(previous, write(famr)));
+		File journal = new File(path + ".journal");
+		try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+			// a byte of the last entry, just before the checksum
+			file.seek(file.length() - 5);
+			int value = file.read();
+			file.seek(file.length() - 5);
+			file.write(value ^ 0x5a);
+		}
+		assertTrue(Arrays.equals(previous, write(CheckpointJournal.recover(path, Storage.HEAP))));
+	}
+
+	public void testVersion1JournalIsReplayed() throws IOException {
+		FAMR famr = network(Storage.HEAP);
+		// the networks of version 1 journals always tracked their centroids
+		famr.setCentroidTracking(true);
+		trainWithCheckpoints(famr, 100);
+		toVersion1(new File(path + ".journal"));
+		FAMR recovered = CheckpointJournal.recover(path, Storage.HEAP);
+		assertTrue(recovered.getArt_a().isCentroidTracking());
+		assertTrue(Arrays.equals(write(famr), write(recovered)));
+	}
+
+	public void testEvictionBetweenCheckpoints() throws IOException {
+		for (EvictionPolicy policy : EvictionPolicy.values()) {
+			FAMR famr = network(Storage.HEAP);
+			famr.setCategoryBudget(20, policy);
+			trainWithCheckpoints(famr, 100);
+			assertTrue(policy + " evicted nothing", famr.getEvictionCount() > 0);
+			FAMR recovered = CheckpointJournal.recover(path, Storage.HEAP);
+			assertTrue(policy.toString(), Arrays.equals(write(famr), write(recovered)));
+			// the recency is recovered too, so the next evictions agree
+			recovered.setCategoryBudget(20, policy);
+			famr.train(TestPatterns.create(CHUNK, false, 20));
+			recovered.train(TestPatterns.create(CHUNK, false, 20));
+			assertTrue(policy + " after recovery", Arrays.equals(write(famr), write(recovered)));
+			tearDown();
+			setUp();
+		}
+	}
+
+	/**
+	 * Rewrites a journal of a network tracking its centroids in the format of
+	 * version 1, whose record headers have no centroid dimension and no clock,
+	 * and whose entries have no norms and no recency
+	 */
+	private static void toVersion1(File journal) throws IOException {
+		ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(journal.toPath()));
+		ByteBuffer out = ByteBuffer.allocate(in.capacity());
+		// magic, version, global pairs and categories of the snapshot
+		out.putInt(in.getInt(0)).putInt(1).putInt(in.getInt(8)).putInt(in.getInt(12));
+		in.position(16);
+		while (in.hasRemaining()) {
+			int start = out.position();
+			int[] header = new int[8];
+			for (int k = 0; k < header.length; k++) {
+				header[k] = in.getInt();
+			}
+			in.getLong(); // the eviction clock of the version 4 record
+			int d = header[3];
+			int words = header[4];
+			int outputDim = header[5];
+			assertEquals("the centroids are not tracked", d, header[6]);
+			int entries = header[7];
+			for (int k = 0; k < header.length; k++) {
+				if (k != 6) {
+					out.putInt(header[k]);
+				}
+			}
+			byte[] weights = new byte[4 + 16 * d];
+			byte[] rest = new byte[16 * words + 8 * outputDim + 8 + 8 * d + 4];
+			for (int e = 0; e < entries; e++) {
+				in.get(weights);
+				in.position(in.position() + 16); // the norms of the version 4 entry
+				in.get(rest);
+				in.position(in.position() + 16); // its recency
+				out.put(weights).put(rest);
+			}
+			in.getInt(); // the checksum of the version 4 record
+			CRC32 crc = new CRC32();
+			crc.update(out.array(), start, out.position() - start);
+			out.putInt((int) crc.getValue());
+		}
+		Files.write(journal.toPath(), Arrays.copyOf(out.array(), out.position()));
+	}
+}
@@ -0,0 +1,78 @@
+package ro.unitbv.pythia;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the learning of sparse inputs against the one of the same inputs
+ * given in dense form
+ *
+ * @author Lucian Sasu
+ */
+public class FuzzyArtTest extends TestCase {
+
+	private static final double TOLERANCE = 1e-9;
+	// the dense and sparse learning round to float in different places
+	private static final double FLOAT_TOLERANCE = 1e-6;
+
+	/**
+	 * @param sparse
+	 *            whether the patterns are given in sparse form
+	 * @return a network trained on patterns without the values below a half
+	 */
+	private static FAMR train(Storage storage, double beta, boolean sparse) {
+		Settings.debugMode = false;
+		List<Pattern> patterns = TestPatterns.sparse(TestPatterns.create(500, false, 1));
+		if (!sparse) {
+			List<Pattern> dense = new ArrayList<Pattern>(patterns.size());
+			for (Pattern pattern : patterns) {
+				double[] input = new double[TestPatterns.DIMENSION];
+				double[] values = pattern.getSparseValues();
+				int[] indices = pattern.getSparseIndices();
+				for (int k = 0; k < indices.length; k++) {
+					input[indices[k]] = values[k];
+				}
+				Pattern copy = new Pattern();
+				copy.setClassificationInstance(true);
+				copy.setInput(input);
+				copy.setClassIndex(pattern.getClassIndex());
+				dense.add(copy);
+			}
+			patterns = dense;
+		}
+		FAMR famr = new FAMR(0.8, beta, 0, 1, 0, 1, TestPatterns.NUM_CLASSES, storage);
+		famr.setCentroidTracking(false);
+		famr.train(patterns);
+		return famr;
+	}
+
+	private static void check(Storage storage, double beta) {
+		String name = storage + " beta " + beta;
+		double tolerance = storage == Storage.FLOAT ? FLOAT_TOLERANCE : TOLERANCE;
+		FuzzyArt sparse = train(storage, beta, true).getArt_a();
+		FuzzyArt dense = train(storage, beta, false).getArt_a();
+		assertEquals(name, dense.numCategories(), sparse.numCategories());
+		int length = 2 * TestPatterns.DIMENSION;
+		double[] sparseWeights = new double[length];
+		double[] denseWeights = new double[length];
+		for (int j = 0; j < dense.numCategories(); j++) {
+			sparse.getWeights().read(j, sparseWeights);
+			dense.getWeights().read(j, denseWeights);
+			for (int i = 0; i < length; i++) {
+				assertEquals(name, denseWeights[i], sparseWeights[i], tolerance);
+			}
+			assertEquals(name, dense.getNorm(j), sparse.getNorm(j), tolerance);
+			assertEquals(name, dense.getComplementNorm(j), sparse.getComplementNorm(j), tolerance);
+			assertEquals(name, dense.getCategorySize(j), sparse.getCategorySize(j));
+		}
+	}
+
+	public void testSparseLearningMatchesDense() {
+		for (Storage storage : new Storage[] { Storage.HEAP, Storage.DIRECT, Storage.FLOAT }) {
+			check(storage, 1);
+			check(storage, 0.5);
+		}
+	}
+}
@@ -0,0 +1,269 @@
+package ro.unitbv.pythia;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import weka.core.SerializationHelper;
+
+/**
+ * Tests the compact model format and the memory-mapped scoring of its files
+ *
+ * @author Lucian Sasu
+ */
+public class ModelFormatTest extends TestCase {
+
+	private static byte[] write(FAMR famr) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		ModelFormat.write(famr, buffer);
+		return buffer.toByteArray();
+	}
+
+	private static File temporaryFile(byte[] bytes) throws IOException {
+		File file = File.createTempFile("famr", ".famr");
+		file.deleteOnExit();
+		java.nio.file.Files.write(file.toPath(), bytes);
+		return file;
+	}
+
+	/**
+	 * Writing the network read back gives the same bytes, and both networks
+	 * classify alike
+	 */
+	private static void checkIdentity(Storage storage, boolean scaler, boolean binary, boolean centroids)
+			throws IOException {
+		String name = storage + (scaler ? " scaler" : "") + (binary ? " binary" : "")
+				+ (centroids ? " centroids" : "");
+		FAMR famr = TestPatterns.train(storage, scaler, binary, centroids);
+		byte[] bytes = write(famr);
+		FAMR read = ModelFormat.read(new ByteArrayInputStream(bytes), storage);
+
+		assertEquals(name, storage, read.getStorage());
+		assertEquals(name, famr.getInputCategoriesNo(), read.getInputCategoriesNo());
+		assertEquals(name, centroids, read.getArt_a().isCentroidTracking());
+		assertEquals(name, scaler, read.getScaler() != null);
+		assertTrue(name, Arrays.equals(bytes, write(read)));
+
+		List<Pattern> first = TestPatterns.create(200, binary, 2);
+		List<Pattern> second = TestPatterns.create(200, binary, 2);
+		for (int i = 0; i < first.size(); i++) {
+			assertEquals(name, famr.classifySingleInstance(first.get(i)), read.classifySingleInstance(second.get(i)));
+		}
+	}
+
+	public void testIdentityForEveryStorage() throws IOException {
+		for (Storage storage : Storage.values()) {
+			checkIdentity(storage, false, false, false);
+		}
+	}
+
+	public void testIdentityWithScalerBinaryBlockAndCentroids() throws IOException {
+		for (Storage storage : Storage.values()) {
+			checkIdentity(storage, true, false, false);
+			checkIdentity(storage, false, true, false);
+			checkIdentity(storage, false, false, true);
+			checkIdentity(storage, true, true, true);
+		}
+	}
+
+	public void testFileHoldsExactlyTheModel() throws IOException {
+		FAMR famr = TestPatterns.train(Storage.HEAP, true, true, true);
+		File file = File.createTempFile("famr", ".famr");
+		file.deleteOnExit();
+		ModelFormat.save(famr, file.getPath());
+		assertTrue(Arrays.equals(write(famr), java.nio.file.Files.readAllBytes(file.toPath())));
+		assertTrue(Arrays.equals(write(famr), write(ModelFormat.load(file.getPath()))));
+	}
+
+	public void testValuesKeepTheWidthOfTheStorage() throws IOException {
+		for (Storage storage : Storage.values()) {
+			byte[] bytes = write(TestPatterns.train(storage, false, true, false));
+			ModelFormat.Header header = ModelFormat.Header.read(ByteBuffer.wrap(bytes));
+			assertEquals(storage, header.getStorage());
+			assertEquals(storage.toString(), storage.bytesPerValue(), header.weightBytes());
+			assertEquals(storage.toString(), storage.forMapField().bytesPerValue(), header.mapFieldBytes());
+			assertEquals(storage.toString(), header.fileSize(), bytes.length);
+		}
+	}
+
+	public void testReadsVersion1() throws IOException {
+		// a version 1 file holds doubles, as the HEAP storage does
+		byte[] bytes = write(TestPatterns.train(Storage.HEAP, true, true, true));
+		byte[] version1 = bytes.clone();
+		ByteBuffer.wrap(version1).putInt(4, 1);
+		assertTrue(Arrays.equals(bytes, write(ModelFormat.read(new ByteArrayInputStream(version1)))));
+	}
+
+	public void testStorageSurvivesSerialization() throws Exception {
+		for (Storage storage : Storage.values()) {
+			FAMR famr = TestPatterns.train(storage, true, false, false);
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			SerializationHelper.write(buffer, famr);
+			FAMR read = (FAMR) SerializationHelper.read(new ByteArrayInputStream(buffer.toByteArray()));
+			assertEquals(storage, read.getStorage());
+			assertTrue(storage.toString(), Arrays.equals(write(famr), write(read)));
+			assertEquals(storage, ModelFormat.load(temporaryFile(write(famr)).getPath()).getStorage());
+		}
+	}
+
+	public void testDirectModelStaysOffTheHeap() throws Exception {
+		FAMR famr = TestPatterns.train(Storage.DIRECT, false, false, false);
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		SerializationHelper.write(buffer, famr);
+		FAMR read = (FAMR) SerializationHelper.read(new ByteArrayInputStream(buffer.toByteArray()));
+		try {
+			assertEquals(famr.getNativeMemory(), read.getNativeMemory());
+			assertTrue(read.getNativeMemory() > 0);
+		} finally {
+			famr.release();
+			read.release();
+		}
+	}
+
+	public void testRecencySurvivesReading() throws IOException {
+		for (EvictionPolicy policy : EvictionPolicy.values()) {
+			Settings.debugMode = false;
+			FAMR famr = new FAMR(0.8, 1, 0, 1, 0, 1, TestPatterns.NUM_CLASSES);
+			famr.setCategoryBudget(20, policy);
+			famr.train(TestPatterns.create(500, false, 1));
+			byte[] bytes = write(famr);
+			FAMR read = ModelFormat.read(new ByteArrayInputStream(bytes));
+			assertTrue(policy.toString(), Arrays.equals(bytes, write(read)));
+			assertEquals(policy.toString(), famr.getClock(), read.getClock());
+			for (int j = 0; j < famr.getInputCategoriesNo(); j++) {
+				assertEquals(policy.toString(), famr.getLastWon(j), read.getLastWon(j));
+				assertEquals(policy.toString(), famr.getBornAt(j), read.getBornAt(j));
+			}
+			// the next evictions pick the same categories
+			read.setCategoryBudget(20, policy);
+			famr.train(TestPatterns.create(500, false, 2));
+			read.train(TestPatterns.create(500, false, 2));
+			assertTrue(policy + " after reading", Arrays.equals(write(famr), write(read)));
+		}
+	}
+
+	public void testRejectsBadMagic() throws IOException {
+		byte[] bytes = write(TestPatterns.train(Storage.HEAP, false, false, false));
+		ByteBuffer.wrap(bytes).putInt(0, 0x12345678);
+		try {
+			ModelFormat.read(new ByteArrayInputStream(bytes));
+			fail("a bad magic number was accepted");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testRejectsNewerVersion() throws IOException {
+		byte[] bytes = write(TestPatterns.train(Storage.HEAP, false, false, false));
+		ByteBuffer.wrap(bytes).putInt(4, ModelFormat.VERSION + 1);
+		try {
+			ModelFormat.read(new ByteArrayInputStream(bytes));
+			fail("an unsupported version was accepted");
+		} catch (IOException e) {
+			// expected
+		}
+		File file = temporaryFile(bytes);
+		try {
+			new MappedFAMR(file.getPath()).close();
+			fail("an unsupported version was mapped");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testRejectsTruncatedFile() throws IOException {
+		byte[] bytes = write(TestPatterns.train(Storage.HEAP, true, true, false));
+		for (int length : new int[] { 0, ModelFormat.HEADER_SIZE - 1, ModelFormat.HEADER_SIZE, bytes.length / 2,
+				bytes.length - 1 }) {
+			byte[] truncated = Arrays.copyOf(bytes, length);
+			try {
+				ModelFormat.read(new ByteArrayInputStream(truncated));
+				fail("a model truncated to " + length + " bytes was accepted");
+			} catch (IOException e) {
+				// expected
+			}
+			File file = temporaryFile(truncated);
+			try {
+				new MappedFAMR(file.getPath()).close();
+				fail("a model truncated to " + length + " bytes was mapped");
+			} catch (IOException e) {
+				// expected
+			}
+		}
+	}
+
+	public void testMappedScoringMatchesHeap() throws IOException {
+		for (Storage storage : Storage.values()) {
+			for (boolean scaler : new boolean[] { false, true }) {
+				for (boolean binary : new boolean[] { false, true }) {
+					checkMappedScoring(storage, scaler, binary);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Two categories of a FIXED16 network tie in the integer choice sums for
+	 * an input between them, which the lower index wins; scored in double
+	 * precision, the unquantized input leans towards the other one
+	 */
+	public void testMappedFixedPointUsesTheIntegerKernel() throws IOException {
+		Settings.debugMode = false;
+		double unit = 1.0 / FixedPointVectorStore.ONE;
+		FAMR famr = new FAMR(0.99, 1, 0, 1, 0, 1, 2, Storage.FIXED16);
+		famr.train(new ArrayList<Pattern>(Arrays.asList(pattern(1000 * unit, 0), pattern(3000 * unit, 1))));
+		assertEquals(2, famr.getInputCategoriesNo());
+		MappedFAMR mapped = new MappedFAMR(temporaryFile(write(famr)).getPath());
+		try {
+			assertEquals(0, famr.classifySingleInstance(pattern(2000.3 * unit, 1)));
+			assertEquals(0, mapped.classify(pattern(2000.3 * unit, 1)));
+		} finally {
+			mapped.close();
+		}
+	}
+
+	private static Pattern pattern(double x, int label) {
+		Pattern pattern = new Pattern();
+		pattern.setClassificationInstance(true);
+		pattern.setClassIndex(label);
+		pattern.setInput(new double[] { x });
+		return pattern;
+	}
+
+	private static void checkMappedScoring(Storage storage, boolean scaler, boolean binary) throws IOException {
+		String name = storage + (scaler ? " scaler" : "") + (binary ? " binary" : "");
+		FAMR famr = TestPatterns.train(storage, scaler, binary, binary);
+		File file = temporaryFile(write(famr));
+		MappedFAMR mapped = new MappedFAMR(file.getPath());
+		try {
+			assertEquals(name, famr.getInputCategoriesNo(), mapped.getInputCategoriesNo());
+			List<Pattern> first = TestPatterns.create(300, binary, 3);
+			List<Pattern> second = TestPatterns.create(300, binary, 3);
+			List<Pattern> third = TestPatterns.create(300, binary, 3);
+			List<Pattern> fourth = TestPatterns.create(300, binary, 3);
+			for (int i = 0; i < first.size(); i++) {
+				assertEquals(name, famr.classifySingleInstance(first.get(i)), mapped.classify(second.get(i)));
+				assertTrue(name, Arrays.equals(famr.getProbabilities(third.get(i)),
+						mapped.getProbabilities(fourth.get(i))));
+			}
+			if (!binary) {
+				// sparse patterns take the sparse kernels, or are made dense for FIXED16
+				List<Pattern> sparse = TestPatterns.sparse(TestPatterns.create(300, false, 4));
+				List<Pattern> sparseCopy = TestPatterns.sparse(TestPatterns.create(300, false, 4));
+				for (int i = 0; i < sparse.size(); i++) {
+					assertTrue(name + " sparse", Arrays.equals(famr.getProbabilities(sparse.get(i)),
+							mapped.getProbabilities(sparseCopy.get(i))));
+				}
+			}
+		} finally {
+			mapped.close();
+			famr.release();
+		}
+	}
+}
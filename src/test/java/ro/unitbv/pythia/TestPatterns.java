@@ -0,0 +1,109 @@
+package ro.unitbv.pythia;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic classification patterns for the tests: the numeric inputs are
+ * drawn in [0, 1] around one center per class, the optional binary block
+ * holds random bits with the class in its first bits.
+ *
+ * @author Lucian Sasu
+ */
+final class TestPatterns {
+
+	static final int DIMENSION = 4;
+	static final int NUM_CLASSES = 3;
+	static final int BINARY_DIMENSION = 10;
+
+	private TestPatterns() {
+	}
+
+	/**
+	 * @param count
+	 *            the number of patterns
+	 * @param binary
+	 *            whether the patterns have a binary block
+	 * @param seed
+	 *            the same seed gives equal patterns
+	 * @return new, unscaled patterns
+	 */
+	static List<Pattern> create(int count, boolean binary, long seed) {
+		Random random = new Random(seed);
+		List<Pattern> patterns = new ArrayList<Pattern>(count);
+		for (int i = 0; i < count; i++) {
+			int label = random.nextInt(NUM_CLASSES);
+			double[] input = new double[DIMENSION];
+			for (int k = 0; k < DIMENSION; k++) {
+				double center = (label + 0.5) / NUM_CLASSES;
+				input[k] = Math.min(1, Math.max(0, center + 0.2 * random.nextGaussian()));
+			}
+			Pattern pattern = new Pattern();
+			pattern.setClassificationInstance(true);
+			pattern.setClassIndex(label);
+			pattern.setInput(input);
+			if (binary) {
+				long bits = random.nextLong() & ((1L << BINARY_DIMENSION) - 1);
+				bits = (bits & ~((1L << NUM_CLASSES) - 1)) | (1L << label);
+				pattern.setBinaryInput(new long[] { bits }, BINARY_DIMENSION);
+			}
+			patterns.add(pattern);
+		}
+		return patterns;
+	}
+
+	/**
+	 * @param dense
+	 *            unscaled dense patterns
+	 * @return sparse copies of the patterns, without the values below a half
+	 */
+	static List<Pattern> sparse(List<Pattern> dense) {
+		List<Pattern> result = new ArrayList<Pattern>(dense.size());
+		for (Pattern pattern : dense) {
+			double[] input = pattern.getInput();
+			int count = 0;
+			for (double value : input) {
+				count += value >= 0.5 ? 1 : 0;
+			}
+			int[] indices = new int[count];
+			double[] values = new double[count];
+			count = 0;
+			for (int i = 0; i < input.length; i++) {
+				if (input[i] >= 0.5) {
+					indices[count] = i;
+					values[count++] = input[i];
+				}
+			}
+			Pattern copy = new Pattern();
+			copy.setClassificationInstance(true);
+			copy.setSparseInput(indices, values, input.length);
+			copy.setClassIndex(pattern.getClassIndex());
+			result.add(copy);
+		}
+		return result;
+	}
+
+	/**
+	 * @param storage
+	 *            where the categories are kept
+	 * @param scaler
+	 *            whether a per-attribute scaler is fitted on the patterns
+	 * @param binary
+	 *            whether the patterns have a binary block
+	 * @param centroids
+	 *            whether the centroids are tracked
+	 * @return a network trained on 500 patterns
+	 */
+	static FAMR train(Storage storage, boolean scaler, boolean binary, boolean centroids) {
+		Settings.debugMode = false;
+		List<Pattern> patterns = create(500, binary, 1);
+		FAMR famr = new FAMR(0.8, 1, 0, 1, 0, 1, NUM_CLASSES, storage);
+		famr.setCentroidTracking(centroids);
+		if (scaler) {
+			famr.setScaler(Scaler.fit(patterns, 1));
+		}
+		famr.train(patterns);
+		return famr;
+	}
+}
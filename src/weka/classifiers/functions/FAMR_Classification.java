@@ -26,6 +26,7 @@ import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
 import weka.core.RevisionUtils;
+import weka.core.SerializationHelper;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformationHandler;
 import weka.core.Utils;
@@ -33,16 +34,25 @@ import weka.core.Capabilities.Capability;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Vector;
 
+import ro.unitbv.famr.weka.InputLayout;
 import ro.unitbv.famr.weka.general.Settings;
 import ro.unitbv.famr.weka.log.Logger;
 import ro.unitbv.pythia.FAMR;
+import ro.unitbv.pythia.EvictionPolicy;
+import ro.unitbv.pythia.MemoryCapAction;
+import ro.unitbv.pythia.ModelFormat;
 import ro.unitbv.pythia.Pattern;
+import ro.unitbv.pythia.Scaler;
+import ro.unitbv.pythia.Storage;
+import ro.unitbv.pythia.TieBreak;
 
 /**
  * <!-- globalinfo-start --> Implements a Bayesian ARTMAP.<br/>
@@ -100,6 +110,62 @@ import ro.unitbv.pythia.Pattern;
  *  (default 1)
  * </pre>
  * 
+ * <pre>
+ * -autoScale &lt;boolean&gt;
+ *  fit a per-attribute min-max scaling on the training data, instead
+ *  of using iMin and iMax (default false)
+ * </pre>
+ * 
+ * <pre>
+ * -storage &lt;HEAP|DIRECT|FLOAT|FIXED16&gt;
+ *  where the category weights are kept during training: on the Java
+ *  heap, in direct buffers outside of it, on the heap in single
+ *  precision, or on the heap in 16-bit fixed point (default HEAP)
+ * </pre>
+ * 
+ * <pre>
+ * -tieBreak &lt;LOWEST_INDEX|HIGHEST_INDEX|LARGEST_CATEGORY&gt;
+ *  which input category wins among the ones with the same largest
+ *  choice value (default LOWEST_INDEX)
+ * </pre>
+ * 
+ * <pre>
+ * -resume &lt;String&gt;
+ *  path of a saved FAMR_Classification model which continues training
+ *  on the new data (default none)
+ * </pre>
+ * 
+ * <pre>
+ * -memoryCap &lt;long&gt;
+ *  the most bytes the input categories may hold during training, as
+ *  counted by FAMR.getMemory; 0 for no cap (default 0)
+ * </pre>
+ * 
+ * <pre>
+ * -memoryCapAction &lt;STOP|FREEZE|LOWER_VIGILANCE&gt;
+ *  what training does once the memory cap is reached: stop, create no
+ *  more categories, or drop the baseline vigilance to 0 (default STOP)
+ * </pre>
+ * 
+ * <pre>
+ * -categoryBudget &lt;int&gt;
+ *  the most input categories during training; a new category then
+ *  replaces the one chosen by the eviction policy; 0 for no budget
+ *  (default 0)
+ * </pre>
+ * 
+ * <pre>
+ * -evictionPolicy &lt;LEAST_RECENTLY_WON|SMALLEST_CATEGORY|LOWEST_RELEVANCE&gt;
+ *  which input category is removed at the category budget
+ *  (default LEAST_RECENTLY_WON)
+ * </pre>
+ * 
+ * <pre>
+ * -evictionGrace &lt;int&gt;
+ *  the number of pairs learned after its creation during which a
+ *  category is not removed at the category budget (default 100)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Lucian Sasu (lmsasu at yahoo.com)
@@ -112,12 +178,22 @@ public class FAMR_Classification extends AbstractClassifier implements
 	static final long serialVersionUID = 2L;
 
 	protected FAMR famr;
+	protected InputLayout inputLayout;
 	protected double iMin = 0.1;//min input value
 	protected double iMax = 7.9;//max input value
 	protected double rhoInitA = 0.8;
 	protected double betaA = 1;
 	protected double rhoAB = 0.0;
 	protected int epochs = 1;
+	protected String resumeModelPath = "";
+	protected boolean autoScale = false;
+	protected Storage storage = Storage.HEAP;
+	protected TieBreak tieBreak = TieBreak.LOWEST_INDEX;
+	protected long memoryCap = 0;
+	protected MemoryCapAction memoryCapAction = MemoryCapAction.STOP;
+	protected int categoryBudget = 0;
+	protected EvictionPolicy evictionPolicy = EvictionPolicy.LEAST_RECENTLY_WON;
+	protected int evictionGrace = FAMR.DEFAULT_EVICTION_GRACE;
 	
 	protected static final String defaultLogPath = Settings.logPath; 
 	protected String logPath = defaultLogPath;
@@ -136,7 +212,9 @@ public class FAMR_Classification extends AbstractClassifier implements
 	 *         explorer/experimenter gui
 	 */
 	public String globalInfo() {
-		return "Implements a FAMR network for classification. For constant relevance factor (defaulted to 1 in this implementation), FAMR is equivalent to PROBART";
+		return "Implements a FAMR network for classification. For constant relevance factor (defaulted to 1 in this implementation), FAMR is equivalent to PROBART. "
+				+ "Sparse instances are kept in sparse form when iMin is 0. "
+				+ "Nominal attributes are encoded as packed bits and require betaA = 1 (fast learning).";
 	}
 
 	/**
@@ -194,6 +272,33 @@ public class FAMR_Classification extends AbstractClassifier implements
 		newVector.addElement(new Option("\ti.\n" + "\t(default " + epochs + ")",
 				"i", 1, "-i <int>"));
 		
+		newVector.addElement(new Option("\tautoScale: per-attribute scaling fitted on the training data.\n" + "\t(default " + autoScale + ")",
+				"autoScale", 1, "-autoScale <boolean>"));
+		
+		newVector.addElement(new Option("\tstorage: HEAP, DIRECT (off-heap), FLOAT (single precision) or FIXED16 (16-bit fixed point) category weights.\n" + "\t(default " + storage + ")",
+				"storage", 1, "-storage <HEAP|DIRECT|FLOAT|FIXED16>"));
+		
+		newVector.addElement(new Option("\ttieBreak: winner among the categories with the same choice value.\n" + "\t(default " + tieBreak + ")",
+				"tieBreak", 1, "-tieBreak <LOWEST_INDEX|HIGHEST_INDEX|LARGEST_CATEGORY>"));
+		
+		newVector.addElement(new Option("\tresume: saved model which continues training.\n" + "\t(default none)",
+				"resume", 1, "-resume <string>"));
+		
+		newVector.addElement(new Option("\tmemoryCap: most bytes of the input categories, 0 for no cap.\n" + "\t(default " + memoryCap + ")",
+				"memoryCap", 1, "-memoryCap <long>"));
+		
+		newVector.addElement(new Option("\tmemoryCapAction: what training does at the memory cap.\n" + "\t(default " + memoryCapAction + ")",
+				"memoryCapAction", 1, "-memoryCapAction <STOP|FREEZE|LOWER_VIGILANCE>"));
+		
+		newVector.addElement(new Option("\tcategoryBudget: most input categories, 0 for no budget.\n" + "\t(default " + categoryBudget + ")",
+				"categoryBudget", 1, "-categoryBudget <int>"));
+		
+		newVector.addElement(new Option("\tevictionPolicy: which input category is removed at the budget.\n" + "\t(default " + evictionPolicy + ")",
+				"evictionPolicy", 1, "-evictionPolicy <LEAST_RECENTLY_WON|SMALLEST_CATEGORY|LOWEST_RELEVANCE>"));
+		
+		newVector.addElement(new Option("\tevictionGrace: learned pairs during which a new input category is not removed.\n" + "\t(default " + evictionGrace + ")",
+				"evictionGrace", 1, "-evictionGrace <int>"));
+		
 		return newVector.elements();
 	}
 
@@ -242,6 +347,60 @@ public class FAMR_Classification extends AbstractClassifier implements
 	 *  (default 1)
 	 * </pre>
 	 * 
+	 *  <pre>
+	 * -autoScale &lt;boolean&gt;
+	 *  whether a per-attribute scaling is fitted on the training data
+	 *  (default false)
+	 * </pre>
+	 * 
+	 *  <pre>
+	 * -storage &lt;HEAP|DIRECT|FLOAT|FIXED16&gt;
+	 *  where the category weights are kept during training
+	 *  (default HEAP)
+	 * </pre>
+	 * 
+	 *  <pre>
+	 * -tieBreak &lt;LOWEST_INDEX|HIGHEST_INDEX|LARGEST_CATEGORY&gt;
+	 *  which input category wins among the ones with the same largest
+	 *  choice value (default LOWEST_INDEX)
+	 * </pre>
+	 * 
+	 *  <pre>
+	 * -resume &lt;String&gt;
+	 *  path of a saved model which continues training on the new data
+	 *  (default none)
+	 * </pre>
+	 * 
+	 *  <pre>
+	 * -memoryCap &lt;long&gt;
+	 *  the most bytes the input categories may hold during training;
+	 *  0 for no cap (default 0)
+	 * </pre>
+	 * 
+	 *  <pre>
+	 * -memoryCapAction &lt;STOP|FREEZE|LOWER_VIGILANCE&gt;
+	 *  what training does once the memory cap is reached
+	 *  (default STOP)
+	 * </pre>
+	 * 
+	 *  <pre>
+	 * -categoryBudget &lt;int&gt;
+	 *  the most input categories during training; 0 for no budget
+	 *  (default 0)
+	 * </pre>
+	 * 
+	 *  <pre>
+	 * -evictionPolicy &lt;LEAST_RECENTLY_WON|SMALLEST_CATEGORY|LOWEST_RELEVANCE&gt;
+	 *  which input category is removed at the category budget
+	 *  (default LEAST_RECENTLY_WON)
+	 * </pre>
+	 * 
+	 *  <pre>
+	 * -evictionGrace &lt;int&gt;
+	 *  the number of pairs learned after its creation during which a
+	 *  category is not removed (default 100)
+	 * </pre>
+	 * 
 	 * <!-- options-end -->
 	 * 
 	 * @param options
@@ -310,6 +469,56 @@ public class FAMR_Classification extends AbstractClassifier implements
 			int iters = (new Integer(iterationsStr)).intValue();
 			setIterations(iters);
 		}
+		
+		String strAutoScale = Utils.getOption("autoScale", options);
+		if (strAutoScale.length() != 0)
+		{
+			setAutoScale(Boolean.valueOf(strAutoScale));
+		}
+		
+		String strStorage = Utils.getOption("storage", options);
+		if (strStorage.length() != 0)
+		{
+			setStorage(Storage.valueOf(strStorage.toUpperCase()));
+		}
+		
+		String strTieBreak = Utils.getOption("tieBreak", options);
+		if (strTieBreak.length() != 0)
+		{
+			setTieBreak(TieBreak.valueOf(strTieBreak.toUpperCase()));
+		}
+		
+		setResumeModelPath(Utils.getOption("resume", options));
+		
+		String strMemoryCap = Utils.getOption("memoryCap", options);
+		if (strMemoryCap.length() != 0)
+		{
+			setMemoryCap(Long.parseLong(strMemoryCap));
+		}
+		
+		String strMemoryCapAction = Utils.getOption("memoryCapAction", options);
+		if (strMemoryCapAction.length() != 0)
+		{
+			setMemoryCapAction(MemoryCapAction.valueOf(strMemoryCapAction.toUpperCase()));
+		}
+		
+		String strCategoryBudget = Utils.getOption("categoryBudget", options);
+		if (strCategoryBudget.length() != 0)
+		{
+			setCategoryBudget(Integer.parseInt(strCategoryBudget));
+		}
+		
+		String strEvictionPolicy = Utils.getOption("evictionPolicy", options);
+		if (strEvictionPolicy.length() != 0)
+		{
+			setEvictionPolicy(EvictionPolicy.valueOf(strEvictionPolicy.toUpperCase()));
+		}
+		
+		String strEvictionGrace = Utils.getOption("evictionGrace", options);
+		if (strEvictionGrace.length() != 0)
+		{
+			setEvictionGrace(Integer.parseInt(strEvictionGrace));
+		}
 	}
 
 	/**
@@ -350,6 +559,35 @@ public class FAMR_Classification extends AbstractClassifier implements
 		
 		result.add("-i");
 		result.add("" + getIterations());
+		
+		result.add("-autoScale");
+		result.add("" + getAutoScale());
+		
+		result.add("-storage");
+		result.add("" + getStorage());
+		
+		result.add("-tieBreak");
+		result.add("" + getTieBreak());
+		
+		if (getResumeModelPath().length() != 0) {
+			result.add("-resume");
+			result.add(getResumeModelPath());
+		}
+		
+		result.add("-memoryCap");
+		result.add("" + getMemoryCap());
+		
+		result.add("-memoryCapAction");
+		result.add("" + getMemoryCapAction());
+		
+		result.add("-categoryBudget");
+		result.add("" + getCategoryBudget());
+		
+		result.add("-evictionPolicy");
+		result.add("" + getEvictionPolicy());
+		
+		result.add("-evictionGrace");
+		result.add("" + getEvictionGrace());
 
 		result.addAll(Arrays.asList(super.getOptions())); // super class' options
 		return result.toArray(new String[result.size()]);
@@ -366,6 +604,9 @@ public class FAMR_Classification extends AbstractClassifier implements
 
 		// attributes
 		result.enable(Capability.NUMERIC_ATTRIBUTES);
+		result.enable(Capability.NOMINAL_ATTRIBUTES);
+		result.enable(Capability.BINARY_ATTRIBUTES);
+		result.enable(Capability.UNARY_ATTRIBUTES);
 
 		// class
 //		result.enable(Capability.NUMERIC_CLASS);
@@ -396,9 +637,32 @@ public class FAMR_Classification extends AbstractClassifier implements
 		
 //		String fileName = createFile(insts);
 		
-		famr = new FAMR(this.getRhoInitA(), this.getBetaA(), this.getRhoAB(), this.getIterations(), this.getIMin(), this.getIMax(), trainingSet.numClasses());
+		if (getResumeModelPath().length() != 0)
+		{
+			// warm start: continue training the saved network on the new data only
+			resume(getResumeModelPath(), trainingSet);
+		}
+		else
+		{
+			inputLayout = new InputLayout(trainingSet);
+			if (inputLayout.getBinaryDimension() > 0 && this.getBetaA() != 1)
+			{
+				throw new Exception("Nominal attributes are supported only for fast learning (betaA = 1)");
+			}
+			
+			famr = new FAMR(this.getRhoInitA(), this.getBetaA(), this.getRhoAB(), this.getIterations(), this.getIMin(), this.getIMax(), trainingSet.numClasses(), this.getStorage());
+		}
+		famr.setTieBreak(this.getTieBreak());
+		famr.setMemoryCap(this.getMemoryCap(), this.getMemoryCapAction());
+		famr.setCategoryBudget(this.getCategoryBudget(), this.getEvictionPolicy(), this.getEvictionGrace());
+		
+		List<Pattern> patterns = ro.unitbv.famr.weka.Utils.getPatternsFromInstances(trainingSet, inputLayout);
 		
-		List<Pattern> patterns = ro.unitbv.famr.weka.Utils.getPatternsFromInstances(trainingSet);
+		if (getAutoScale() && famr.getScaler() == null)
+		{
+			// single pass over the data; the scaler is kept in the model
+			famr.setScaler(Scaler.fit(patterns, Runtime.getRuntime().availableProcessors()));
+		}
 		
 		famr.train(patterns);
 		
@@ -412,6 +676,75 @@ public class FAMR_Classification extends AbstractClassifier implements
 		
 		Logger.log("after training: ");
 		Logger.log("input categories= " + famr.getInputCategoriesNo());
+		Logger.log("historical number of processed pairs= " + famr.getGlobal_n_pairs());
+		Logger.log("native memory (bytes)= " + famr.getNativeMemory());
+		Logger.log("memory of the input categories: " + famr.getMemory());
+		if (famr.isMemoryCapReached())
+		{
+			Logger.log("the memory cap of " + getMemoryCap() + " bytes was reached: " + getMemoryCapAction());
+		}
+		if (famr.getEvictionCount() > 0)
+		{
+			Logger.log("input categories evicted at the budget of " + getCategoryBudget() + ": " + famr.getEvictionCount());
+		}
+	}
+
+	/**
+	 * Loads a saved model for continuing its training. The model must have
+	 * been trained with the current parameters, on data with the same
+	 * header: the same attributes, nominal values in the same order, and
+	 * class.
+	 * 
+	 * @param path
+	 *            the path of the saved FAMR_Classification model
+	 * @param trainingSet
+	 *            the new training data
+	 * @throws Exception
+	 *             if the model can not be read or is not compatible
+	 */
+	protected void resume(String path, Instances trainingSet) throws Exception {
+		Object model = SerializationHelper.read(path);
+		if (!(model instanceof FAMR_Classification) || ((FAMR_Classification) model).famr == null)
+		{
+			throw new Exception(path + " does not hold a trained FAMR_Classification model");
+		}
+		FAMR_Classification previous = (FAMR_Classification) model;
+		previous.inputLayout.checkCompatible(trainingSet);
+		if ((previous.famr.getScaler() != null) != this.getAutoScale())
+		{
+			throw new Exception("The saved model was trained with autoScale= " + (previous.famr.getScaler() != null));
+		}
+		previous.famr.checkCompatible(this.getRhoInitA(), this.getBetaA(), this.getRhoAB(), this.getIMin(), this.getIMax(), trainingSet.numClasses());
+		previous.famr.setEpochs(this.getIterations());
+		
+		inputLayout = previous.inputLayout;
+		famr = previous.famr;
+		if (famr.getStorage() != this.getStorage())
+		{
+			// saved models keep their storage; move the categories to the one asked for
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			ModelFormat.write(famr, buffer);
+			famr = ModelFormat.read(new ByteArrayInputStream(buffer.toByteArray()), this.getStorage());
+		}
+		Logger.log("resuming from " + path + " with " + famr.getInputCategoriesNo() + " input categories");
+	}
+
+	/**
+	 * Saves the trained network in the compact ModelFormat, e.g. for scoring
+	 * it through a memory-mapped MappedFAMR
+	 * 
+	 * @param path
+	 *            the file to be created or overwritten
+	 * @throws Exception
+	 *             if the classifier is not trained or the file can not be
+	 *             written
+	 */
+	public void exportModel(String path) throws Exception {
+		if (famr == null)
+		{
+			throw new Exception("The classifier is not trained yet");
+		}
+		ModelFormat.save(famr, path);
 	}
 
 	/**
@@ -448,7 +781,7 @@ public class FAMR_Classification extends AbstractClassifier implements
 //			int estimatedClass = famr.estimateOutestimateOutputClassputClass(patternsPair.getInputPattern());
 //			return estimatedClass;
 //			throw new RuntimeException("not yet implemented");
-			Pattern pattern = ro.unitbv.famr.weka.Utils.getPatternFromInstance(instance);
+			Pattern pattern = inputLayout.getPattern(instance);
 			int estimatedClass= famr.classifySingleInstance(pattern);
 			return estimatedClass;
 		}
@@ -784,6 +1117,271 @@ public class FAMR_Classification extends AbstractClassifier implements
 		return epochs;
 	}
 
+	/**
+	 * Returns the tip text for this property
+	 * 
+	 * @return tip text for this property suitable for displaying in the
+	 *         explorer/experimenter gui
+	 */
+	public String autoScaleTipText() {
+		return "Whether a per-attribute min-max scaling is fitted on the training data; iMin and iMax are then ignored.";
+	}
+
+	/**
+	 * Set the value of autoScale.
+	 * 
+	 * @param autoScale
+	 *            Value to assign to autoScale.
+	 */
+	public void setAutoScale(boolean autoScale) {
+		this.autoScale = autoScale;
+	}
+	
+	/**
+	 * Get the value of autoScale.
+	 * 
+	 * @return Value of autoScale.
+	 */
+	public boolean getAutoScale() {
+		return autoScale;
+	}
+
+	/**
+	 * Returns the tip text for this property
+	 * 
+	 * @return tip text for this property suitable for displaying in the
+	 *         explorer/experimenter gui
+	 */
+	public String storageTipText() {
+		return "Where the category weights and the mapfield rows are kept: HEAP, DIRECT buffers outside of the Java heap, for very large models, FLOAT, on the heap in single precision, or FIXED16, on the heap in 16-bit fixed point with integer choice and vigilance sums.";
+	}
+
+	/**
+	 * Set the value of storage.
+	 * 
+	 * @param storage
+	 *            Value to assign to storage.
+	 */
+	public void setStorage(Storage storage) {
+		this.storage = storage;
+	}
+	
+	/**
+	 * Get the value of storage.
+	 * 
+	 * @return Value of storage.
+	 */
+	public Storage getStorage() {
+		return storage;
+	}
+
+	/**
+	 * Returns the tip text for this property
+	 * 
+	 * @return tip text for this property suitable for displaying in the
+	 *         explorer/experimenter gui
+	 */
+	public String tieBreakTipText() {
+		return "Which input category wins among the ones with the same largest choice value: the oldest, the newest, or the one with the most representants. Ties are frequent with the FIXED16 storage.";
+	}
+
+	/**
+	 * Set the value of tieBreak.
+	 * 
+	 * @param tieBreak
+	 *            Value to assign to tieBreak.
+	 */
+	public void setTieBreak(TieBreak tieBreak) {
+		this.tieBreak = tieBreak;
+	}
+	
+	/**
+	 * Get the value of tieBreak.
+	 * 
+	 * @return Value of tieBreak.
+	 */
+	public TieBreak getTieBreak() {
+		return tieBreak;
+	}
+
+	/**
+	 * Returns the tip text for this property
+	 * 
+	 * @return tip text for this property suitable for displaying in the
+	 *         explorer/experimenter gui
+	 */
+	public String resumeModelPathTipText() {
+		return "Path of a saved FAMR_Classification model which continues training on the new data; empty for training from scratch.";
+	}
+
+	/**
+	 * Set the value of resumeModelPath.
+	 * 
+	 * @param path
+	 *            Value to assign to resumeModelPath; empty for training from
+	 *            scratch
+	 */
+	public void setResumeModelPath(String path) {
+		this.resumeModelPath = path;
+	}
+	
+	/**
+	 * Get the value of resumeModelPath.
+	 * 
+	 * @return Value of resumeModelPath.
+	 */
+	public String getResumeModelPath() {
+		return resumeModelPath;
+	}
+
+	/**
+	 * Returns the tip text for this property
+	 * 
+	 * @return tip text for this property suitable for displaying in the
+	 *         explorer/experimenter gui
+	 */
+	public String memoryCapTipText() {
+		return "The most bytes the input categories may hold during training, as counted by FAMR.getMemory; 0 for no cap.";
+	}
+
+	/**
+	 * Set the value of memoryCap.
+	 * 
+	 * @param memoryCap
+	 *            Value to assign to memoryCap; 0 for no cap
+	 */
+	public void setMemoryCap(long memoryCap) {
+		this.memoryCap = memoryCap;
+	}
+	
+	/**
+	 * Get the value of memoryCap.
+	 * 
+	 * @return Value of memoryCap.
+	 */
+	public long getMemoryCap() {
+		return memoryCap;
+	}
+
+	/**
+	 * Returns the tip text for this property
+	 * 
+	 * @return tip text for this property suitable for displaying in the
+	 *         explorer/experimenter gui
+	 */
+	public String memoryCapActionTipText() {
+		return "What training does once one more input category would exceed the memory cap: stop, reject the patterns which need a new category, or drop the baseline vigilance to 0 so that the existing categories learn them.";
+	}
+
+	/**
+	 * Set the value of memoryCapAction.
+	 * 
+	 * @param memoryCapAction
+	 *            Value to assign to memoryCapAction.
+	 */
+	public void setMemoryCapAction(MemoryCapAction memoryCapAction) {
+		this.memoryCapAction = memoryCapAction;
+	}
+	
+	/**
+	 * Get the value of memoryCapAction.
+	 * 
+	 * @return Value of memoryCapAction; STOP for the models saved before it
+	 *         existed
+	 */
+	public MemoryCapAction getMemoryCapAction() {
+		return memoryCapAction == null ? MemoryCapAction.STOP : memoryCapAction;
+	}
+
+	/**
+	 * Returns the tip text for this property
+	 * 
+	 * @return tip text for this property suitable for displaying in the
+	 *         explorer/experimenter gui
+	 */
+	public String categoryBudgetTipText() {
+		return "The most input categories during training; once it is reached, a new category replaces the one chosen by the eviction policy. 0 for no budget.";
+	}
+
+	/**
+	 * Set the value of categoryBudget.
+	 * 
+	 * @param categoryBudget
+	 *            Value to assign to categoryBudget; 0 for no budget
+	 */
+	public void setCategoryBudget(int categoryBudget) {
+		this.categoryBudget = categoryBudget;
+	}
+	
+	/**
+	 * Get the value of categoryBudget.
+	 * 
+	 * @return Value of categoryBudget.
+	 */
+	public int getCategoryBudget() {
+		return categoryBudget;
+	}
+
+	/**
+	 * Returns the tip text for this property
+	 * 
+	 * @return tip text for this property suitable for displaying in the
+	 *         explorer/experimenter gui
+	 */
+	public String evictionPolicyTipText() {
+		return "Which input category is removed at the category budget: the one which won a pattern the longest time ago, the one with the fewest representants, or the one with the lowest accumulated relevance.";
+	}
+
+	/**
+	 * Set the value of evictionPolicy.
+	 * 
+	 * @param evictionPolicy
+	 *            Value to assign to evictionPolicy.
+	 */
+	public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+		this.evictionPolicy = evictionPolicy;
+	}
+	
+	/**
+	 * Get the value of evictionPolicy.
+	 * 
+	 * @return Value of evictionPolicy; LEAST_RECENTLY_WON for the models
+	 *         saved before it existed
+	 */
+	public EvictionPolicy getEvictionPolicy() {
+		return evictionPolicy == null ? EvictionPolicy.LEAST_RECENTLY_WON : evictionPolicy;
+	}
+	
+	/**
+	 * Returns the tip text for this property
+	 * 
+	 * @return tip text for this property suitable for displaying in the
+	 *         explorer/experimenter gui
+	 */
+	public String evictionGraceTipText() {
+		return "The number of pairs learned after its creation during which an input category is not removed at the category budget, so that it can grow in size and relevance.";
+	}
+
+	/**
+	 * Set the value of evictionGrace.
+	 * 
+	 * @param evictionGrace
+	 *            Value to assign to evictionGrace; 0 for no grace period
+	 */
+	public void setEvictionGrace(int evictionGrace) {
+		this.evictionGrace = evictionGrace;
+	}
+	
+	/**
+	 * Get the value of evictionGrace.
+	 * 
+	 * @return Value of evictionGrace; 0 for the models saved before it
+	 *         existed
+	 */
+	public int getEvictionGrace() {
+		return evictionGrace;
+	}
+
 	/**
 	 * Returns the revision string.
 	 * 
@@ -0,0 +1,659 @@
+/*
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    FAMR_Voting.java
+ *    Copyright (C) 2011 Lucian Sasu & Razvan Andonie
+ *
+ */
+package weka.classifiers.functions;
+
+import weka.core.BatchPredictor;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.Randomizable;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import ro.unitbv.famr.weka.InputLayout;
+import ro.unitbv.famr.weka.log.Logger;
+import ro.unitbv.pythia.FAMR;
+import ro.unitbv.pythia.Pattern;
+import ro.unitbv.pythia.PreparedDataset;
+import ro.unitbv.pythia.Scaler;
+
+/**
+ * <!-- globalinfo-start --> Implements a voting ensemble of FAMR networks.<br/>
+ * <br/>
+ * <!-- globalinfo-end -->
+ *
+ * <!-- options-start --> Valid options are, besides the ones of
+ * FAMR_Classification but -resume; -memoryCap and -categoryBudget apply to
+ * each network:
+ *
+ * <pre>
+ * -I &lt;int&gt;
+ *  number of networks in the ensemble
+ *  (default 10)
+ * </pre>
+ *
+ * <pre>
+ * -S &lt;int&gt;
+ *  random seed used for the presentation orders
+ *  (default 1)
+ * </pre>
+ *
+ * <pre>
+ * -num-slots &lt;int&gt;
+ *  number of threads used for training and scoring; 0 = number of cores
+ *  (default 0)
+ * </pre>
+ *
+ * <pre>
+ * -P
+ *  average the class probabilities instead of counting votes
+ * </pre>
+ *
+ * <!-- options-end -->
+ *
+ * @author Lucian Sasu (lmsasu at yahoo.com)
+ * @version $Revision: 1 $
+ */
+public class FAMR_Voting extends FAMR_Classification implements Randomizable, BatchPredictor {
+
+	/** for serialization */
+	static final long serialVersionUID = 1L;
+
+	protected FAMR[] members;
+	protected int numMembers = 10;
+	protected int seed = 1;
+	protected int numExecutionSlots = 0;
+	protected boolean averageProbabilities = false;
+
+	private transient ExecutorService executor;
+
+	/**
+	 * Returns a string describing classifier
+	 *
+	 * @return a description suitable for displaying in the
+	 *         explorer/experimenter gui
+	 */
+	public String globalInfo() {
+		return "Voting ensemble of FAMR networks. Each network is trained on a different random presentation order "
+				+ "of the same training set, which is converted and scaled only once and shared by all the networks. "
+				+ "Training and scoring run in parallel over the networks.";
+	}
+
+	/**
+	 * Returns an enumeration describing the available options
+	 *
+	 * @return an enumeration of all the available options
+	 */
+	public Enumeration<Option> listOptions() {
+		Vector<Option> newVector = new Vector<Option>(4);
+
+		newVector.addElement(new Option("\tnumber of networks.\n" + "\t(default " + numMembers + ")",
+				"I", 1, "-I <int>"));
+		newVector.addElement(new Option("\tseed.\n" + "\t(default " + seed + ")",
+				"S", 1, "-S <int>"));
+		newVector.addElement(new Option("\tnumber of execution slots, 0 = number of cores.\n" + "\t(default "
+				+ numExecutionSlots + ")", "num-slots", 1, "-num-slots <int>"));
+		newVector.addElement(new Option("\taverage probabilities instead of voting.", "P", 0, "-P"));
+
+		for (Option option : Collections.list(super.listOptions())) {
+			// the ensemble is always trained from scratch
+			if (!option.name().equals("resume")) {
+				newVector.addElement(option);
+			}
+		}
+		return newVector.elements();
+	}
+
+	/**
+	 * Parses a given list of options.
+	 *
+	 * @param options
+	 *            the list of options as an array of strings
+	 * @throws Exception
+	 *             if an option is not supported
+	 */
+	public void setOptions(String[] options) throws Exception {
+		String membersString = Utils.getOption('I', options);
+		if (membersString.length() != 0) {
+			setNumMembers(Integer.parseInt(membersString));
+		}
+
+		String seedString = Utils.getOption('S', options);
+		if (seedString.length() != 0) {
+			setSeed(Integer.parseInt(seedString));
+		}
+
+		String slotsString = Utils.getOption("num-slots", options);
+		if (slotsString.length() != 0) {
+			setNumExecutionSlots(Integer.parseInt(slotsString));
+		}
+
+		setAverageProbabilities(Utils.getFlag('P', options));
+
+		if (Utils.getOption("resume", options).length() != 0) {
+			throw new Exception("FAMR_Voting does not support -resume");
+		}
+		super.setOptions(options);
+	}
+
+	/**
+	 * Gets the current settings of the classifier.
+	 *
+	 * @return an array of strings suitable for passing to setOptions
+	 */
+	public String[] getOptions() {
+		Vector<String> result = new Vector<String>();
+
+		result.add("-I");
+		result.add("" + getNumMembers());
+
+		result.add("-S");
+		result.add("" + getSeed());
+
+		result.add("-num-slots");
+		result.add("" + getNumExecutionSlots());
+
+		if (getAverageProbabilities()) {
+			result.add("-P");
+		}
+
+		Collections.addAll(result, super.getOptions());
+		return result.toArray(new String[result.size()]);
+	}
+
+	/**
+	 * Builds the ensemble: the training set is converted and scaled once, then
+	 * the networks are trained concurrently, each on its own permutation
+	 *
+	 * @param trainingSet
+	 *            the data to train the classifier with
+	 * @throws Exception
+	 *             if something goes wrong during building
+	 */
+	public void buildClassifier(Instances trainingSet) throws Exception {
+
+		// can classifier handle the data?
+		getCapabilities().testWithFail(trainingSet);
+
+		// remove instances with missing class
+		trainingSet = new Instances(trainingSet);
+		trainingSet.deleteWithMissingClass();
+
+		if (numMembers < 1) {
+			throw new Exception("The ensemble needs at least one network");
+		}
+		inputLayout = new InputLayout(trainingSet);
+		if (inputLayout.getBinaryDimension() > 0 && this.getBetaA() != 1) {
+			throw new Exception("Nominal attributes are supported only for fast learning (betaA = 1)");
+		}
+
+		List<Pattern> patterns = ro.unitbv.famr.weka.Utils.getPatternsFromInstances(trainingSet, inputLayout);
+		final PreparedDataset dataset = getAutoScale()
+				? new PreparedDataset(patterns, Scaler.fit(patterns, getExecutionSlots()), trainingSet.numClasses())
+				: new PreparedDataset(patterns, getIMin(), getIMax(), trainingSet.numClasses());
+
+		members = new FAMR[numMembers];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(numMembers);
+		for (int m = 0; m < numMembers; m++) {
+			final int member = m;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					FAMR famr = new FAMR(getRhoInitA(), getBetaA(), getRhoAB(), getIterations(), getIMin(), getIMax(),
+							dataset.getNumClasses(), getStorage());
+					famr.setScaler(dataset.getScaler());
+					famr.setTieBreak(getTieBreak());
+					famr.setMemoryCap(getMemoryCap(), getMemoryCapAction());
+					famr.setCategoryBudget(getCategoryBudget(), getEvictionPolicy(), getEvictionGrace());
+					famr.train(dataset, dataset.permutation(seed + member));
+					members[member] = famr;
+					return null;
+				}
+			});
+		}
+		invokeAll(tasks);
+
+		Logger.log("FAMR_Voting: trained " + numMembers + " networks on " + dataset.size() + " patterns");
+		for (int m = 0; m < numMembers; m++) {
+			if (members[m].isMemoryCapReached()) {
+				Logger.log("network " + m + " reached the memory cap of " + getMemoryCap() + " bytes: "
+						+ getMemoryCapAction());
+			}
+			if (members[m].getEvictionCount() > 0) {
+				Logger.log("network " + m + " evicted " + members[m].getEvictionCount()
+						+ " input categories at the budget of " + getCategoryBudget());
+			}
+		}
+	}
+
+	/**
+	 * Not supported: the ensemble is always trained from scratch
+	 *
+	 * @param path
+	 *            must be empty
+	 */
+	public void setResumeModelPath(String path) {
+		if (path != null && path.length() != 0) {
+			throw new IllegalArgumentException("FAMR_Voting does not support resuming from a saved model");
+		}
+		super.setResumeModelPath("");
+	}
+
+	/**
+	 * Not supported: ModelFormat holds a single network
+	 *
+	 * @param path
+	 *            the file which would have been written
+	 * @throws Exception
+	 *             always
+	 */
+	public void exportModel(String path) throws Exception {
+		throw new Exception("An ensemble can not be exported in ModelFormat, which holds a single network");
+	}
+
+	/**
+	 * Computes the class distribution for the given instance, by voting or by
+	 * averaging the probabilities of the networks
+	 *
+	 * @param instance
+	 *            the instance to be classified
+	 * @return the class distribution
+	 * @throws Exception
+	 *             if something goes wrong
+	 */
+	public double[] distributionForInstance(Instance instance) throws Exception {
+		final Pattern pattern = inputLayout.getPattern(instance);
+		// scale once here, the networks only read the pattern afterwards
+		scale(pattern);
+		final int numClasses = instance.numClasses();
+		if (getExecutionSlots() == 1) {
+			double[] result = new double[numClasses];
+			for (FAMR famr : members) {
+				addPrediction(famr, pattern, result);
+			}
+			return normalize(result);
+		}
+
+		List<Callable<double[]>> tasks = new ArrayList<Callable<double[]>>(members.length);
+		for (final FAMR famr : members) {
+			tasks.add(new Callable<double[]>() {
+				public double[] call() {
+					double[] partial = new double[numClasses];
+					addPrediction(famr, pattern, partial);
+					return partial;
+				}
+			});
+		}
+		double[] result = new double[numClasses];
+		for (double[] partial : invokeAll(tasks)) {
+			for (int k = 0; k < numClasses; k++) {
+				result[k] += partial[k];
+			}
+		}
+		return normalize(result);
+	}
+
+	/**
+	 * Outputs the prediction for the given instance.
+	 *
+	 * @param instance
+	 *            the instance for which prediction is to be computed
+	 * @return the prediction
+	 * @throws Exception
+	 *             if something goes wrong
+	 */
+	public double classifyInstance(Instance instance) throws Exception {
+		double[] distribution = distributionForInstance(instance);
+		if (Utils.sum(distribution) == 0) {
+			return Utils.missingValue();
+		}
+		return Utils.maxIndex(distribution);
+	}
+
+	/**
+	 * Computes the class distributions for a batch of instances. Each network
+	 * scores the whole batch in its own task.
+	 *
+	 * @param instances
+	 *            the instances to be classified
+	 * @return the class distributions, one row per instance
+	 * @throws Exception
+	 *             if something goes wrong
+	 */
+	public double[][] distributionsForInstances(Instances instances) throws Exception {
+		final List<Pattern> patterns = new ArrayList<Pattern>(instances.numInstances());
+		for (Instance instance : instances) {
+			Pattern pattern = inputLayout.getPattern(instance);
+			scale(pattern);
+			patterns.add(pattern);
+		}
+		final int numClasses = instances.numClasses();
+
+		List<Callable<double[][]>> tasks = new ArrayList<Callable<double[][]>>(members.length);
+		for (final FAMR famr : members) {
+			tasks.add(new Callable<double[][]>() {
+				public double[][] call() {
+					double[][] partial = new double[patterns.size()][numClasses];
+					for (int i = 0; i < partial.length; i++) {
+						addPrediction(famr, patterns.get(i), partial[i]);
+					}
+					return partial;
+				}
+			});
+		}
+		double[][] result = new double[patterns.size()][numClasses];
+		for (double[][] partial : invokeAll(tasks)) {
+			for (int i = 0; i < result.length; i++) {
+				for (int k = 0; k < numClasses; k++) {
+					result[i][k] += partial[i][k];
+				}
+			}
+		}
+		for (double[] distribution : result) {
+			normalize(distribution);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the preferred number of instances in a batch
+	 */
+	public String getBatchSize() {
+		return "100";
+	}
+
+	/**
+	 * Not used: the batch size is not configurable
+	 *
+	 * @param size
+	 *            the batch size
+	 */
+	public void setBatchSize(String size) {
+	}
+
+	/**
+	 * @return true, the batch prediction is done in parallel over the networks
+	 */
+	public boolean implementsMoreEfficientBatchPrediction() {
+		return true;
+	}
+
+	/**
+	 * Scales the pattern in the same way as the training data
+	 *
+	 * @param pattern
+	 *            the pattern to be scaled
+	 */
+	private void scale(Pattern pattern) {
+		Scaler scaler = members[0].getScaler();
+		if (scaler != null) {
+			scaler.scale(pattern);
+		} else {
+			pattern.scaleInput(getIMin(), getIMax());
+		}
+	}
+
+	/**
+	 * Adds the vote, or the probabilities, of a network to result
+	 *
+	 * @param famr
+	 *            the voting network
+	 * @param pattern
+	 *            the scaled pattern
+	 * @param result
+	 *            the accumulated votes
+	 */
+	private void addPrediction(FAMR famr, Pattern pattern, double[] result) {
+		if (averageProbabilities) {
+			double[] probabilities = famr.getProbabilities(pattern);
+			for (int k = 0; k < result.length; k++) {
+				result[k] += probabilities[k];
+			}
+		} else {
+			int estimatedClass = famr.classifySingleInstance(pattern);
+			if (estimatedClass >= 0) {
+				result[estimatedClass]++;
+			}
+		}
+	}
+
+	/**
+	 * Normalizes the votes to sum 1; a zero vector is left unchanged
+	 *
+	 * @param votes
+	 *            the accumulated votes
+	 * @return votes
+	 */
+	private static double[] normalize(double[] votes) {
+		double sum = Utils.sum(votes);
+		if (sum > 0) {
+			Utils.normalize(votes, sum);
+		}
+		return votes;
+	}
+
+	/**
+	 * @return the number of threads to be used
+	 */
+	private int getExecutionSlots() {
+		int slots = numExecutionSlots <= 0 ? Runtime.getRuntime().availableProcessors() : numExecutionSlots;
+		return Math.min(slots, Math.max(1, numMembers));
+	}
+
+	/**
+	 * Runs the tasks on the executor and waits for all of them. The networks
+	 * keep per-input state, so calls are serialized: each network is used by
+	 * one task at a time.
+	 *
+	 * @param tasks
+	 *            the tasks to be run
+	 * @return the results, in the order of the tasks
+	 * @throws Exception
+	 *             the first exception thrown by a task
+	 */
+	private synchronized <T> List<T> invokeAll(List<Callable<T>> tasks) throws Exception {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(getExecutionSlots(), new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "FAMR_Voting");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		List<T> results = new ArrayList<T>(tasks.size());
+		for (Future<T> future : executor.invokeAll(tasks)) {
+			results.add(future.get());
+		}
+		return results;
+	}
+
+	/**
+	 * Returns textual description of the classifier.
+	 *
+	 * @return textual description of the classifier
+	 */
+	public String toString() {
+		return "Voting ensemble of " + numMembers + " FAMR networks\n\n";
+	}
+
+	/**
+	 * Returns the tip text for this property
+	 *
+	 * @return tip text for this property suitable for displaying in the
+	 *         explorer/experimenter gui
+	 */
+	public String numMembersTipText() {
+		return "The number of networks in the ensemble.";
+	}
+
+	/**
+	 * Get the number of networks.
+	 *
+	 * @return the number of networks
+	 */
+	public int getNumMembers() {
+		return numMembers;
+	}
+
+	/**
+	 * Set the number of networks.
+	 *
+	 * @param numMembers
+	 *            the number of networks, at least 1
+	 */
+	public void setNumMembers(int numMembers) {
+		if (numMembers < 1) {
+			throw new IllegalArgumentException("The ensemble needs at least one network");
+		}
+		this.numMembers = numMembers;
+	}
+
+	/**
+	 * Returns the tip text for this property
+	 *
+	 * @return tip text for this property suitable for displaying in the
+	 *         explorer/experimenter gui
+	 */
+	public String memoryCapTipText() {
+		return "The most bytes the input categories of each network may hold during training; 0 for no cap.";
+	}
+
+	/**
+	 * Returns the tip text for this property
+	 *
+	 * @return tip text for this property suitable for displaying in the
+	 *         explorer/experimenter gui
+	 */
+	public String categoryBudgetTipText() {
+		return "The most input categories of each network during training; 0 for no budget.";
+	}
+
+	/**
+	 * Returns the tip text for this property
+	 *
+	 * @return tip text for this property suitable for displaying in the
+	 *         explorer/experimenter gui
+	 */
+	public String seedTipText() {
+		return "The seed used for the presentation orders.";
+	}
+
+	/**
+	 * Get the seed.
+	 *
+	 * @return the seed
+	 */
+	public int getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Set the seed.
+	 *
+	 * @param seed
+	 *            the seed
+	 */
+	public void setSeed(int seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Returns the tip text for this property
+	 *
+	 * @return tip text for this property suitable for displaying in the
+	 *         explorer/experimenter gui
+	 */
+	public String numExecutionSlotsTipText() {
+		return "The number of threads used for training and scoring; 0 means the number of cores.";
+	}
+
+	/**
+	 * Get the number of execution slots.
+	 *
+	 * @return the number of execution slots
+	 */
+	public int getNumExecutionSlots() {
+		return numExecutionSlots;
+	}
+
+	/**
+	 * Set the number of execution slots.
+	 *
+	 * @param numExecutionSlots
+	 *            the number of threads; 0 means the number of cores
+	 */
+	public synchronized void setNumExecutionSlots(int numExecutionSlots) {
+		this.numExecutionSlots = numExecutionSlots;
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Returns the tip text for this property
+	 *
+	 * @return tip text for this property suitable for displaying in the
+	 *         explorer/experimenter gui
+	 */
+	public String averageProbabilitiesTipText() {
+		return "Whether the class probabilities are averaged, instead of counting the votes.";
+	}
+
+	/**
+	 * Get the value of averageProbabilities.
+	 *
+	 * @return Value of averageProbabilities.
+	 */
+	public boolean getAverageProbabilities() {
+		return averageProbabilities;
+	}
+
+	/**
+	 * Set the value of averageProbabilities.
+	 *
+	 * @param averageProbabilities
+	 *            Value to assign to averageProbabilities.
+	 */
+	public void setAverageProbabilities(boolean averageProbabilities) {
+		this.averageProbabilities = averageProbabilities;
+	}
+
+	/**
+	 * Returns the revision string.
+	 *
+	 * @return the revision
+	 */
+	public String getRevision() {
+		return RevisionUtils.extract("$Revision: 1$");
+	}
+}